@@ -106,6 +106,7 @@ dependencies {
         exclude(group = "org.jetbrains.kotlin")
     }
     testImplementation("org.robolectric:robolectric:4.4")
+    testImplementation("com.squareup.okhttp3:mockwebserver:3.14.9")
 
     // support libraries
     implementation("androidx.palette:palette-ktx:1.0.0")
@@ -3,12 +3,14 @@ package acr.browser.lightning
 import acr.browser.lightning.browser.di.AppComponent
 import acr.browser.lightning.browser.di.DaggerAppComponent
 import acr.browser.lightning.browser.di.DatabaseScheduler
+import acr.browser.lightning.browser.di.DiskScheduler
 import acr.browser.lightning.browser.di.injector
 import acr.browser.lightning.browser.proxy.ProxyAdapter
 import acr.browser.lightning.database.bookmark.BookmarkExporter
 import acr.browser.lightning.database.bookmark.BookmarkRepository
 import acr.browser.lightning.device.BuildInfo
 import acr.browser.lightning.device.BuildType
+import acr.browser.lightning.html.InternalPageServer
 import acr.browser.lightning.log.Logger
 import acr.browser.lightning.preference.DeveloperPreferences
 import acr.browser.lightning.utils.FileUtils
@@ -19,6 +21,7 @@ import android.os.Build
 import android.os.StrictMode
 import android.webkit.WebView
 import com.squareup.leakcanary.LeakCanary
+import io.reactivex.Completable
 import io.reactivex.Scheduler
 import io.reactivex.Single
 import io.reactivex.plugins.RxJavaPlugins
@@ -40,6 +43,10 @@ class BrowserApp : Application() {
     @field:DatabaseScheduler
     internal lateinit var databaseScheduler: Scheduler
 
+    @Inject
+    @field:DiskScheduler
+    internal lateinit var diskScheduler: Scheduler
+
     @Inject
     internal lateinit var logger: Logger
 
@@ -110,6 +117,10 @@ class BrowserApp : Application() {
             .subscribeOn(databaseScheduler)
             .subscribe()
 
+        Completable.fromAction { InternalPageServer.deleteLegacyPageFiles(this) }
+            .subscribeOn(diskScheduler)
+            .subscribe()
+
         if (developerPreferences.useLeakCanary && buildInfo.buildType == BuildType.DEBUG) {
             LeakCanary.install(this)
         }
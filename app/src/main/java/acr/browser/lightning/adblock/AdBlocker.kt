@@ -14,4 +14,15 @@ interface AdBlocker {
      */
     fun isAd(url: String): Boolean
 
+    /**
+     * Determines if the given URL requested by the page at [pageUrl] is an ad or not. Ad blockers
+     * whose decisions depend on the page making the request, such as for third party requests,
+     * should override this method.
+     *
+     * @param url the URL to check for being an ad.
+     * @param pageUrl the URL of the page making the request, which may be empty if it is unknown.
+     * @return true if it is an ad, false if it is not an ad.
+     */
+    fun isAd(url: String, pageUrl: String): Boolean = isAd(url)
+
 }
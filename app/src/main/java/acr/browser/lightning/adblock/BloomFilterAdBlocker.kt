@@ -1,41 +1,53 @@
 package acr.browser.lightning.adblock
 
 import acr.browser.lightning.R
+import acr.browser.lightning.adblock.metrics.AdBlockMetrics
+import acr.browser.lightning.adblock.source.HostsDataSource
 import acr.browser.lightning.adblock.source.HostsDataSourceProvider
 import acr.browser.lightning.adblock.source.HostsResult
+import acr.browser.lightning.adblock.source.HostsValidators
+import acr.browser.lightning.adblock.util.BlockedBloomFilter
 import acr.browser.lightning.adblock.util.BloomFilter
-import acr.browser.lightning.adblock.util.DefaultBloomFilter
+import acr.browser.lightning.adblock.util.DecisionCache
 import acr.browser.lightning.adblock.util.DelegatingBloomFilter
-import acr.browser.lightning.adblock.util.`object`.JvmObjectStore
+import acr.browser.lightning.adblock.util.`object`.BloomFilterObjectStore
 import acr.browser.lightning.adblock.util.`object`.ObjectStore
+import acr.browser.lightning.adblock.util.hash.MurmurHash
 import acr.browser.lightning.adblock.util.hash.MurmurHashHostAdapter
 import acr.browser.lightning.adblock.util.hash.MurmurHashStringAdapter
 import acr.browser.lightning.database.adblock.Host
 import acr.browser.lightning.database.adblock.HostsRepository
 import acr.browser.lightning.database.adblock.HostsRepositoryInfo
+import acr.browser.lightning.database.adblock.baseDomainStart
 import acr.browser.lightning.browser.di.DatabaseScheduler
 import acr.browser.lightning.browser.di.MainScheduler
 import acr.browser.lightning.extensions.toast
 import acr.browser.lightning.log.Logger
+import acr.browser.lightning.utils.urlAuthority
 import android.app.Application
 import android.net.Uri
+import io.reactivex.Completable
 import io.reactivex.Maybe
 import io.reactivex.Scheduler
 import io.reactivex.Single
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.rxkotlin.plusAssign
 import io.reactivex.rxkotlin.subscribeBy
+import java.io.File
 import java.net.URISyntaxException
 import javax.inject.Inject
 import javax.inject.Singleton
 
 /**
- * An [AdBlocker] that is backed by a [BloomFilter].
+ * An [AdBlocker] that is backed by a [BloomFilter]. A host is blocked if either the host itself or
+ * any of its parent domains is on the block list, so blocking `ads.example.com` also blocks
+ * `cdn.ads.example.com`.
  *
  * @param logger The logger used to log status.
  * @param hostsDataSourceProvider The provider that provides the data source used to populate the
  * bloom filter and [hostsRepository].
  * @param hostsRepository The long term store for blocked hosts.
+ * @param adBlockMetrics The metrics in which lookup latencies and load timings are recorded.
  * @param databaseScheduler The scheduler used to communicate with the database asynchronously.
  */
 @Singleton
@@ -45,20 +57,42 @@ class BloomFilterAdBlocker @Inject constructor(
     private val hostsRepository: HostsRepository,
     private val hostsRepositoryInfo: HostsRepositoryInfo,
     private val application: Application,
+    private val adBlockMetrics: AdBlockMetrics,
     @DatabaseScheduler private val databaseScheduler: Scheduler,
     @MainScheduler private val mainScheduler: Scheduler
 ) : AdBlocker {
 
     private val bloomFilter: DelegatingBloomFilter<Host> = DelegatingBloomFilter()
-    private val objectStore: ObjectStore<DefaultBloomFilter<Host>> =
-        JvmObjectStore(application, MurmurHashStringAdapter())
+    private val objectStore: ObjectStore<BlockedBloomFilter<Host>> =
+        BloomFilterObjectStore(application, MurmurHashStringAdapter(), MurmurHashHostAdapter())
+
+    private val decisionCache = DecisionCache(DECISION_CACHE_CAPACITY)
 
     private val compositeDisposable = CompositeDisposable()
 
     init {
+        adBlockMetrics.registerDecisionCache("Ad", decisionCache)
+        Completable.fromAction(::deleteLegacyBloomFilter)
+            .subscribeOn(databaseScheduler)
+            .subscribe()
         populateAdBlockerFromDataSource(forceRefresh = false)
     }
 
+    /**
+     * Delete the bloom filter that earlier versions stored with Java serialization, which is never
+     * read since the filter is stored by the [objectStore].
+     */
+    private fun deleteLegacyBloomFilter() {
+        val name = "$LEGACY_OBJECT_STORE_PREFIX${MurmurHashStringAdapter().hash(BLOOM_FILTER_KEY)}"
+        listOf(application.cacheDir, application.filesDir)
+            .map { File(it, name) }
+            .filter(File::exists)
+            .forEach {
+                logger.log(TAG, "Deleting legacy bloom filter ${it.path}")
+                it.delete()
+            }
+    }
+
     /**
      * Force the ad blocker to (re)populate its internal hosts filter from the provided hosts data
      * source.
@@ -72,29 +106,7 @@ class BloomFilterAdBlocker @Inject constructor(
                     hostsRepositoryInfo.identity == hostsDataSource.identifier()
                         && hostsRepository.hasHosts()
                         && !forceRefresh
-                }.switchIfEmpty(
-                    hostsDataSourceProvider
-                        .createHostsDataSource()
-                        .loadHosts()
-                        .flatMapMaybe {
-                            when (it) {
-                                is HostsResult.Success -> Maybe.just(it.hosts)
-                                is HostsResult.Failure -> Maybe.empty<List<Host>>().doOnComplete {
-                                    logger.log(TAG, "Unable to load hosts", it.cause)
-                                }
-                            }
-                        }
-                        .flatMapSingleElement {
-                            logger.log(TAG, "Loaded ${it.size} hosts")
-                            // Clear out the old hosts and bloom filter now that we have the new hosts.
-                            hostsRepository.removeAllHosts()
-                                .andThen(hostsRepository.addHosts(it))
-                                .andThen(createAndSaveBloomFilter(it))
-                                .doOnSuccess {
-                                    hostsRepositoryInfo.identity = hostsDataSource.identifier()
-                                }
-                        }
-                )
+                }.switchIfEmpty(loadHostsAndBloomFilter(hostsDataSource))
             }
             .filter {
                 // If we were unsuccessful in loading hosts and we don't have hosts in the repo, don't
@@ -105,6 +117,7 @@ class BloomFilterAdBlocker @Inject constructor(
             .subscribeBy(
                 onSuccess = {
                     bloomFilter.delegate = it
+                    decisionCache.invalidate()
                     logger.log(TAG, "Finished loading bloom filter")
                 },
                 onComplete = {
@@ -113,44 +126,164 @@ class BloomFilterAdBlocker @Inject constructor(
             )
     }
 
+    /**
+     * Load the hosts from the [hostsDataSource] and bring the hosts repository and the bloom
+     * filter up to date. If the hosts have not been modified since they were stored, the stored
+     * bloom filter is used without touching the repository.
+     */
+    private fun loadHostsAndBloomFilter(
+        hostsDataSource: HostsDataSource
+    ): Maybe<BloomFilter<Host>> = hostsDataSource
+        .loadHosts()
+        .timed { adBlockMetrics.recordHostsLoaded(it) }
+        .flatMapMaybe { result ->
+            when (result) {
+                is HostsResult.Success -> {
+                    logger.log(TAG, "Loaded ${result.hosts.size} hosts")
+                    // The validators no longer describe the repository once it starts changing.
+                    storeValidators(null)
+                    // Apply only the changed hosts, the current hosts remain in use until the
+                    // update is published.
+                    updateHostsAndBloomFilter(result.hosts)
+                        .timed { adBlockMetrics.recordHostsIndexed(it) }
+                        .doOnSuccess {
+                            hostsRepositoryInfo.identity = hostsDataSource.identifier()
+                            storeValidators(result.validators)
+                        }
+                        .toMaybe()
+                }
+                is HostsResult.NotModified -> loadStoredBloomFilter()
+                    .filter { hostsRepository.hasHosts() }
+                    .doOnSuccess { logger.log(TAG, "Hosts have not been modified") }
+                    .switchIfEmpty(Maybe.defer {
+                        // Without the stored hosts, the hosts must be requested unconditionally.
+                        logger.log(TAG, "Stored hosts are missing, requesting all hosts")
+                        storeValidators(null)
+                        loadHostsAndBloomFilter(hostsDataSource)
+                    })
+                is HostsResult.Failure -> Maybe.empty<BloomFilter<Host>>().doOnComplete {
+                    logger.log(TAG, "Unable to load hosts", result.cause)
+                }
+            }
+        }
+
+    private fun storeValidators(validators: HostsValidators?) {
+        hostsRepositoryInfo.hostsETag = validators?.eTag
+        hostsRepositoryInfo.hostsLastModified = validators?.lastModified
+    }
+
     private fun loadStoredBloomFilter(): Maybe<BloomFilter<Host>> = Maybe.fromCallable {
         objectStore.retrieve(BLOOM_FILTER_KEY)
     }
 
+    /**
+     * Replace the hosts in the [hostsRepository] and bring the stored bloom filter up to date.
+     *
+     * Hosts cannot be removed from a bloom filter, so small updates only add the base domains of
+     * the new hosts to the stored filter and leave the removed hosts to be rejected by the
+     * [hostsRepository]. The filter is sized for a fraction more base domains than it is built
+     * from, and is rebuilt once the base domains added since it was built would exceed that
+     * fraction, so it never holds more elements than its false positive rate was computed for.
+     */
+    private fun updateHostsAndBloomFilter(hosts: List<Host>): Single<BloomFilter<Host>> {
+        val previousChanges = hostsRepositoryInfo.bloomFilterChanges
+        hostsRepositoryInfo.bloomFilterChanges = HostsRepositoryInfo.BLOOM_FILTER_CHANGES_UNKNOWN
+
+        return hostsRepository.replaceHosts(hosts).flatMap { diff ->
+            Maybe.fromCallable<BloomFilter<Host>> {
+                val addedBaseDomains = diff.addedHosts.toBaseDomains()
+                val changes = previousChanges + addedBaseDomains.size
+                val maxChanges =
+                    hostsRepositoryInfo.bloomFilterBaseDomains * MAX_INCREMENTAL_CHANGE_RATIO
+                if (previousChanges == HostsRepositoryInfo.BLOOM_FILTER_CHANGES_UNKNOWN
+                    || changes > maxChanges
+                ) {
+                    return@fromCallable null
+                }
+                val storedBloomFilter = objectStore.retrieve(BLOOM_FILTER_KEY)
+                    ?: return@fromCallable null
+
+                logger.log(TAG, "Adding ${addedBaseDomains.size} base domains to bloom filter")
+                if (addedBaseDomains.isNotEmpty()) {
+                    storedBloomFilter.putAll(addedBaseDomains)
+                    objectStore.store(BLOOM_FILTER_KEY, storedBloomFilter)
+                }
+                hostsRepositoryInfo.bloomFilterChanges = changes
+
+                storedBloomFilter
+            }.switchIfEmpty(createAndSaveBloomFilter(hosts))
+        }
+    }
+
     private fun createAndSaveBloomFilter(hosts: List<Host>): Single<BloomFilter<Host>> =
         Single.fromCallable {
             logger.log(TAG, "Constructing bloom filter from list")
 
-            val bloomFilter = DefaultBloomFilter(
-                numberOfElements = hosts.size,
+            val baseDomains = hosts.toBaseDomains()
+            val bloomFilter = BlockedBloomFilter(
+                // Leave room for the hosts added by incremental updates.
+                numberOfElements = (baseDomains.size * (1 + MAX_INCREMENTAL_CHANGE_RATIO)).toInt(),
                 falsePositiveRate = 0.01,
                 hashingAlgorithm = MurmurHashHostAdapter()
             )
-            bloomFilter.putAll(hosts)
+            bloomFilter.putAll(baseDomains)
             objectStore.store(BLOOM_FILTER_KEY, bloomFilter)
+            hostsRepositoryInfo.bloomFilterBaseDomains = baseDomains.size
+            hostsRepositoryInfo.bloomFilterChanges = 0
 
             bloomFilter
         }
 
+    private fun List<Host>.toBaseDomains(): Set<Host> = mapTo(HashSet()) {
+        Host(it.name.substring(it.name.baseDomainStart()))
+    }
+
+    /**
+     * Decisions only depend on the host of the [url], so they are cached by the URL authority,
+     * which is much cheaper to extract than the host.
+     */
     override fun isAd(url: String): Boolean {
-        val domain = url.host() ?: return false
+        val authority = url.urlAuthority() ?: return isHostAd(url)
+        return decisionCache.getOrPut(authority) { isHostAd(url) }
+    }
 
-        val mightBeOnBlockList = bloomFilter.mightContain(domain)
+    private fun isHostAd(url: String): Boolean {
+        val domain = url.host() ?: return false
+        val name = domain.name
 
-        return when {
-            mightBeOnBlockList -> {
-                val isOnBlockList = hostsRepository.containsHost(domain)
-                if (isOnBlockList) {
-                    logger.log(TAG, "URL '$url' is an ad")
-                } else {
-                    logger.log(TAG, "False positive for $url")
-                }
+        // The bloom filter holds the base domain of every blocked host, so a miss means that
+        // neither the host nor any of its parent domains can be on the block list.
+        val baseDomainStart = name.baseDomainStart()
+        val startNanos = System.nanoTime()
+        val baseDomainHash = MurmurHash.hash32(name, baseDomainStart, name.length - baseDomainStart)
+        if (!bloomFilter.mightContainHash(baseDomainHash)) {
+            adBlockMetrics.recordBloomNegative(System.nanoTime() - startNanos)
+            return false
+        }
 
-                isOnBlockList
-            }
-            domain.name.startsWith("www.") -> isAd(domain.name.substring(4))
-            else -> false
+        val bloomNanos = System.nanoTime()
+        val isOnBlockList = hostsRepository.containsHostOrParent(domain)
+        adBlockMetrics.recordBloomPositive(
+            bloomNanos = bloomNanos - startNanos,
+            confirmationNanos = System.nanoTime() - bloomNanos,
+            isAd = isOnBlockList
+        )
+        if (isOnBlockList) {
+            logger.log(TAG, "URL '$url' is an ad")
+        } else {
+            logger.log(TAG, "False positive for $url")
         }
+
+        return isOnBlockList
+    }
+
+    /**
+     * Reports the time in milliseconds between subscribing to the [Single] and its success to the
+     * [onTimed] function.
+     */
+    private fun <T> Single<T>.timed(onTimed: (Long) -> Unit): Single<T> = Single.defer {
+        val startMillis = System.currentTimeMillis()
+        doOnSuccess { onTimed(System.currentTimeMillis() - startMillis) }
     }
 
     /**
@@ -166,6 +299,9 @@ class BloomFilterAdBlocker @Inject constructor(
     companion object {
         private const val TAG = "BloomFilterAdBlocker"
         private const val BLOOM_FILTER_KEY = "AdBlockingBloomFilter"
+        private const val LEGACY_OBJECT_STORE_PREFIX = "object-store-"
+        private const val DECISION_CACHE_CAPACITY = 512
+        private const val MAX_INCREMENTAL_CHANGE_RATIO = 0.1
     }
 
 }
@@ -0,0 +1,94 @@
+package acr.browser.lightning.adblock
+
+import acr.browser.lightning.R
+import acr.browser.lightning.adblock.filter.FilterList
+import acr.browser.lightning.adblock.filter.FilterListParser
+import acr.browser.lightning.adblock.source.HostsSourceType
+import acr.browser.lightning.adblock.source.selectedHostsSource
+import acr.browser.lightning.browser.di.DiskScheduler
+import acr.browser.lightning.browser.di.MainScheduler
+import acr.browser.lightning.extensions.toast
+import acr.browser.lightning.log.Logger
+import acr.browser.lightning.preference.UserPreferences
+import android.app.Application
+import io.reactivex.Maybe
+import io.reactivex.Scheduler
+import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.rxkotlin.plusAssign
+import io.reactivex.rxkotlin.subscribeBy
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * An [AdBlocker] that is backed by a [FilterList] compiled from a local filter list in the Adblock
+ * Plus syntax, such as EasyList. Unlike a hosts file, a filter list can block requests by their
+ * path and query, e.g. `/ads/` or `?adunit=`, and can depend on the page making the request.
+ *
+ * Decisions depend on the whole URL and on the page, so they are not cached by host.
+ *
+ * @param logger The logger used to log status.
+ * @param userPreferences The preferences that hold the selected filter list.
+ * @param filterListParser The parser used to read the filter list.
+ * @param diskScheduler The scheduler used to read and compile the filter list.
+ */
+@Singleton
+class FilterListAdBlocker @Inject constructor(
+    private val logger: Logger,
+    private val userPreferences: UserPreferences,
+    private val filterListParser: FilterListParser,
+    private val application: Application,
+    @DiskScheduler private val diskScheduler: Scheduler,
+    @MainScheduler private val mainScheduler: Scheduler
+) : AdBlocker {
+
+    @Volatile
+    private var filterList: FilterList = FilterList.EMPTY
+
+    private val compositeDisposable = CompositeDisposable()
+
+    init {
+        loadFilterList()
+    }
+
+    /**
+     * Read and compile the filter list selected in the preferences, replacing the current filters
+     * once it has been compiled. If no filter list is selected, all requests are allowed.
+     */
+    fun loadFilterList() {
+        compositeDisposable.clear()
+        compositeDisposable += Maybe.fromCallable {
+            (userPreferences.selectedHostsSource() as? HostsSourceType.FilterList)?.file
+        }.map { file ->
+            FilterList.compile(filterListParser.parseInput(file.inputStream()))
+        }.subscribeOn(diskScheduler)
+            .observeOn(mainScheduler)
+            .subscribeBy(
+                onSuccess = {
+                    filterList = it
+                    logger.log(TAG, "Finished loading ${it.size} filters")
+                },
+                onComplete = {
+                    filterList = FilterList.EMPTY
+                },
+                onError = {
+                    logger.log(TAG, "Unable to load filter list", it)
+                    application.toast(R.string.ad_block_load_failure)
+                }
+            )
+    }
+
+    override fun isAd(url: String): Boolean = isAd(url, pageUrl = "")
+
+    override fun isAd(url: String, pageUrl: String): Boolean {
+        val isBlocked = filterList.isBlocked(url, pageUrl)
+        if (isBlocked) {
+            logger.log(TAG, "URL '$url' is an ad")
+        }
+        return isBlocked
+    }
+
+    companion object {
+        private const val TAG = "FilterListAdBlocker"
+    }
+
+}
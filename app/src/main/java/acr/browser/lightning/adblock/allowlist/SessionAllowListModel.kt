@@ -1,9 +1,12 @@
 package acr.browser.lightning.adblock.allowlist
 
+import acr.browser.lightning.adblock.metrics.AdBlockMetrics
+import acr.browser.lightning.adblock.util.DecisionCache
 import acr.browser.lightning.database.allowlist.AdBlockAllowListRepository
 import acr.browser.lightning.database.allowlist.AllowListEntry
 import acr.browser.lightning.browser.di.DatabaseScheduler
 import acr.browser.lightning.log.Logger
+import acr.browser.lightning.utils.urlAuthority
 import androidx.core.net.toUri
 import io.reactivex.Completable
 import io.reactivex.Scheduler
@@ -17,20 +20,31 @@ import javax.inject.Singleton
 class SessionAllowListModel @Inject constructor(
     private val adBlockAllowListModel: AdBlockAllowListRepository,
     @DatabaseScheduler private val ioScheduler: Scheduler,
-    private val logger: Logger
+    private val logger: Logger,
+    adBlockMetrics: AdBlockMetrics
 ) : AllowListModel {
 
     private var whitelistSet = hashSetOf<String>()
+    private val decisionCache = DecisionCache(DECISION_CACHE_CAPACITY)
 
     init {
+        adBlockMetrics.registerDecisionCache("Allow list", decisionCache)
         adBlockAllowListModel
             .allAllowListItems()
             .map { it.map(AllowListEntry::domain).toHashSet() }
             .subscribeOn(ioScheduler)
-            .subscribe { hashSet -> whitelistSet = hashSet }
+            .subscribe { hashSet ->
+                whitelistSet = hashSet
+                decisionCache.invalidate()
+            }
     }
 
-    override fun isUrlAllowedAds(url: String): Boolean =
+    override fun isUrlAllowedAds(url: String): Boolean {
+        val authority = url.urlAuthority() ?: return isHostAllowedAds(url)
+        return decisionCache.getOrPut(authority) { isHostAllowedAds(url) }
+    }
+
+    private fun isHostAllowedAds(url: String): Boolean =
         url.toUri().host?.let(whitelistSet::contains) ?: false
 
     override fun addUrlToAllowList(url: String) {
@@ -51,6 +65,7 @@ class SessionAllowListModel @Inject constructor(
                 .subscribe { logger.log(TAG, "whitelist item added to database") }
 
             whitelistSet.add(host)
+            decisionCache.invalidate()
         }
     }
 
@@ -63,10 +78,12 @@ class SessionAllowListModel @Inject constructor(
                 .subscribe { logger.log(TAG, "whitelist item removed from database") }
 
             whitelistSet.remove(host)
+            decisionCache.invalidate()
         }
     }
 
     companion object {
         private const val TAG = "SessionAllowListModel"
+        private const val DECISION_CACHE_CAPACITY = 64
     }
 }
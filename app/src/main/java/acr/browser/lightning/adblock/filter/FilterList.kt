@@ -0,0 +1,163 @@
+package acr.browser.lightning.adblock.filter
+
+import acr.browser.lightning.adblock.util.hash.MurmurHash
+
+/**
+ * An immutable, compiled set of [NetworkFilter] that can be matched against requests.
+ *
+ * Every filter is indexed by a single token, a run of letters, digits and `%` that any URL matched
+ * by the filter must also contain as a whole token. Matching a request only evaluates the filters
+ * indexed by the tokens of its URL, so the cost of a lookup depends on the length of the URL rather
+ * than the size of the filter list. Filters without a usable token are evaluated for every
+ * request, and are rare in practice.
+ */
+class FilterList private constructor(
+    private val blockingFilters: TokenIndex,
+    private val exceptionFilters: TokenIndex
+) {
+
+    /**
+     * The number of filters in the list.
+     */
+    val size: Int = blockingFilters.size + exceptionFilters.size
+
+    /**
+     * True if a request to the [requestUrl] made by the page at the [pageUrl] is matched by a
+     * blocking filter and not by an exception filter. The [pageUrl] may be empty if it is unknown.
+     */
+    fun isBlocked(requestUrl: String, pageUrl: String): Boolean {
+        val request = FilterRequest(requestUrl, pageUrl)
+        return blockingFilters.findMatch(request) != null
+            && exceptionFilters.findMatch(request) == null
+    }
+
+    /**
+     * Filters indexed by the hash of their least common token.
+     */
+    private class TokenIndex(
+        private val filtersByToken: Map<Int, Array<NetworkFilter>>,
+        private val untokenizedFilters: Array<NetworkFilter>
+    ) {
+
+        val size: Int = filtersByToken.values.sumBy { it.size } + untokenizedFilters.size
+
+        fun findMatch(request: FilterRequest): NetworkFilter? {
+            untokenizedFilters.firstOrNull { it.matches(request) }?.let { return it }
+
+            if (filtersByToken.isEmpty()) {
+                return null
+            }
+
+            val url = request.url
+            var index = 0
+            while (index < url.length) {
+                if (!url[index].isTokenChar()) {
+                    index++
+                    continue
+                }
+                val tokenStart = index
+                while (index < url.length && url[index].isTokenChar()) {
+                    index++
+                }
+                if (index - tokenStart < MIN_TOKEN_LENGTH) {
+                    continue
+                }
+                val filters = filtersByToken[MurmurHash.hash32(url, tokenStart, index - tokenStart)]
+                    ?: continue
+                filters.firstOrNull { it.matches(request) }?.let { return it }
+            }
+
+            return null
+        }
+    }
+
+    companion object {
+
+        private const val MIN_TOKEN_LENGTH = 2
+
+        /**
+         * Tokens that appear in so many URLs that indexing a filter by them would not narrow down
+         * the candidates, only used when a filter has no other token.
+         */
+        private val COMMON_TOKENS = setOf("http", "https", "www", "com", "js", "html")
+
+        /**
+         * A filter list that does not block any request.
+         */
+        val EMPTY = compile(emptyList())
+
+        /**
+         * Compile the [filters] into a [FilterList].
+         */
+        fun compile(filters: List<NetworkFilter>): FilterList {
+            val (exceptionFilters, blockingFilters) = filters.partition(NetworkFilter::isException)
+            return FilterList(blockingFilters.toTokenIndex(), exceptionFilters.toTokenIndex())
+        }
+
+        private fun List<NetworkFilter>.toTokenIndex(): TokenIndex {
+            val tokensByFilter = map { it.indexableTokens() }
+
+            // Index each filter by its least frequently used token so the buckets stay small.
+            val tokenFrequencies = HashMap<String, Int>()
+            tokensByFilter.forEach { tokens ->
+                tokens.forEach { tokenFrequencies[it] = (tokenFrequencies[it] ?: 0) + 1 }
+            }
+
+            val filtersByToken = HashMap<Int, MutableList<NetworkFilter>>()
+            val untokenizedFilters = ArrayList<NetworkFilter>()
+            forEachIndexed { index, filter ->
+                val token = tokensByFilter[index].minWithOrNull(
+                    compareBy<String>(
+                        { it in COMMON_TOKENS },
+                        { tokenFrequencies[it] },
+                        { -it.length }
+                    )
+                )
+                if (token == null) {
+                    untokenizedFilters.add(filter)
+                } else {
+                    filtersByToken.getOrPut(MurmurHash.hash32(token), ::ArrayList).add(filter)
+                }
+            }
+
+            return TokenIndex(
+                filtersByToken.mapValues { (_, filters) -> filters.toTypedArray() },
+                untokenizedFilters.toTypedArray()
+            )
+        }
+
+        /**
+         * Returns the tokens of the pattern that must appear as whole tokens in any URL that the
+         * filter matches. A run of token characters that touches a wildcard, or an unanchored end
+         * of the pattern, may only be part of a longer token in the URL, so it is not indexable.
+         */
+        private fun NetworkFilter.indexableTokens(): List<String> {
+            val tokens = ArrayList<String>()
+            var index = 0
+            while (index < pattern.length) {
+                if (!pattern[index].isTokenChar()) {
+                    index++
+                    continue
+                }
+                val tokenStart = index
+                while (index < pattern.length && pattern[index].isTokenChar()) {
+                    index++
+                }
+                val isStartBounded = if (tokenStart == 0) {
+                    isHostAnchored || isStartAnchored
+                } else {
+                    pattern[tokenStart - 1] != NetworkFilter.WILDCARD
+                }
+                val isEndBounded = if (index == pattern.length) {
+                    isEndAnchored
+                } else {
+                    pattern[index] != NetworkFilter.WILDCARD
+                }
+                if (isStartBounded && isEndBounded && index - tokenStart >= MIN_TOKEN_LENGTH) {
+                    tokens.add(pattern.substring(tokenStart, index))
+                }
+            }
+            return tokens
+        }
+    }
+}
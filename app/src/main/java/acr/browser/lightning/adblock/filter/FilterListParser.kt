@@ -0,0 +1,176 @@
+package acr.browser.lightning.adblock.filter
+
+import acr.browser.lightning.log.Logger
+import java.io.InputStream
+import java.util.Locale
+import javax.inject.Inject
+
+/**
+ * A parser for filter lists in the Adblock Plus syntax, such as EasyList.
+ *
+ * Only network filters are supported. Comments, element hiding filters, regular expression
+ * filters, and filters with options that cannot be evaluated on a single request (such as
+ * `$popup` or `$csp`) are skipped. The WebView does not expose the type of the resource being
+ * requested, so resource type options such as `$script` or `$image` are ignored and the filter
+ * applies to every type.
+ */
+class FilterListParser @Inject constructor(
+    private val logger: Logger
+) {
+
+    /**
+     * Parse the lines of the [inputStream] and return the supported [NetworkFilter] it contains.
+     */
+    fun parseInput(inputStream: InputStream): List<NetworkFilter> {
+        val time = System.currentTimeMillis()
+
+        val filters = ArrayList<NetworkFilter>()
+        var skipped = 0
+        inputStream.bufferedReader().useLines { lines ->
+            lines.forEach { line ->
+                val trimmedLine = line.trim()
+                if (trimmedLine.isEmpty() || trimmedLine.isComment()) {
+                    return@forEach
+                }
+                val filter = parseLine(trimmedLine)
+                if (filter != null) {
+                    filters.add(filter)
+                } else {
+                    skipped++
+                }
+            }
+        }
+
+        logger.log(TAG, "Parsed ${filters.size} filters and skipped $skipped")
+        logger.log(TAG, "Parsed filter list in: ${(System.currentTimeMillis() - time)} ms")
+
+        return filters
+    }
+
+    /**
+     * Parse a single trimmed [line] of a filter list into a [NetworkFilter], or return null if the
+     * line is not a supported network filter.
+     */
+    fun parseLine(line: String): NetworkFilter? {
+        if (line.isComment() || line.isElementHidingFilter() || line.contains(' ')) {
+            return null
+        }
+
+        val isException = line.startsWith(EXCEPTION_PREFIX)
+        val filter = if (isException) line.substring(EXCEPTION_PREFIX.length) else line
+
+        val optionsSeparator = filter.lastIndexOf(OPTIONS_SEPARATOR)
+        var pattern = if (optionsSeparator >= 0) filter.substring(0, optionsSeparator) else filter
+        if (pattern.length > 1 && pattern.startsWith('/') && pattern.endsWith('/')) {
+            // Regular expression filters are too expensive to evaluate on every request.
+            return null
+        }
+
+        var thirdParty: Boolean? = null
+        val includedDomains = ArrayList<String>()
+        val excludedDomains = ArrayList<String>()
+        if (optionsSeparator >= 0) {
+            val options = filter.substring(optionsSeparator + 1).toLowerCase(Locale.ROOT)
+            for (option in options.split(',')) {
+                when {
+                    option in THIRD_PARTY_OPTIONS -> thirdParty = true
+                    option in FIRST_PARTY_OPTIONS -> thirdParty = false
+                    option.startsWith(DOMAIN_OPTION) -> option
+                        .substring(DOMAIN_OPTION.length)
+                        .split('|')
+                        .filter(String::isNotEmpty)
+                        .forEach {
+                            if (it.startsWith('~')) {
+                                excludedDomains.add(it.substring(1))
+                            } else {
+                                includedDomains.add(it)
+                            }
+                        }
+                    option.removePrefix("~") in IGNORED_OPTIONS -> Unit
+                    else -> return null
+                }
+            }
+        }
+
+        var isHostAnchored = false
+        var isStartAnchored = false
+        var isEndAnchored = false
+        when {
+            pattern.startsWith("||") -> {
+                isHostAnchored = true
+                pattern = pattern.substring(2)
+            }
+            pattern.startsWith('|') -> {
+                isStartAnchored = true
+                pattern = pattern.substring(1)
+            }
+        }
+        if (pattern.endsWith('|')) {
+            isEndAnchored = true
+            pattern = pattern.substring(0, pattern.length - 1)
+        }
+        if (pattern.endsWith(NetworkFilter.WILDCARD)) {
+            isEndAnchored = false
+            pattern = pattern.trimEnd(NetworkFilter.WILDCARD)
+        }
+        if (!isHostAnchored && !isStartAnchored) {
+            pattern = pattern.trimStart(NetworkFilter.WILDCARD)
+        }
+
+        if (pattern.isEmpty() && includedDomains.isEmpty()) {
+            // A filter without a pattern or domains would block every request.
+            return null
+        }
+
+        return NetworkFilter(
+            pattern = pattern.toLowerCase(Locale.ROOT),
+            isException = isException,
+            isHostAnchored = isHostAnchored,
+            isStartAnchored = isStartAnchored,
+            isEndAnchored = isEndAnchored,
+            thirdParty = thirdParty,
+            includedDomains = includedDomains,
+            excludedDomains = excludedDomains
+        )
+    }
+
+    private fun String.isComment(): Boolean = startsWith('!') || startsWith('[')
+
+    private fun String.isElementHidingFilter(): Boolean =
+        contains("##") || contains("#@#") || contains("#?#") || contains("#$#")
+
+    companion object {
+        private const val TAG = "FilterListParser"
+
+        private const val EXCEPTION_PREFIX = "@@"
+        private const val OPTIONS_SEPARATOR = '$'
+        private const val DOMAIN_OPTION = "domain="
+
+        private val THIRD_PARTY_OPTIONS = setOf("third-party", "3p", "~first-party", "~1p")
+        private val FIRST_PARTY_OPTIONS = setOf("~third-party", "~3p", "first-party", "1p")
+
+        /**
+         * Options that are accepted, but that do not change which requests the filter applies to.
+         */
+        private val IGNORED_OPTIONS = setOf(
+            "script",
+            "image",
+            "stylesheet",
+            "css",
+            "object",
+            "object-subrequest",
+            "xmlhttprequest",
+            "xhr",
+            "subdocument",
+            "frame",
+            "ping",
+            "beacon",
+            "media",
+            "font",
+            "websocket",
+            "other",
+            "match-case",
+            "important"
+        )
+    }
+}
@@ -0,0 +1,97 @@
+package acr.browser.lightning.adblock.filter
+
+import acr.browser.lightning.database.adblock.baseDomainStart
+import java.util.Locale
+
+/**
+ * A request that is matched against a [FilterList], which is parsed once so that the filters can
+ * be evaluated without parsing the URLs again.
+ *
+ * @param requestUrl The URL of the resource being requested.
+ * @param pageUrl The URL of the page making the request, which may be empty if it is unknown.
+ */
+internal class FilterRequest(requestUrl: String, pageUrl: String) {
+
+    /**
+     * The lower case request URL.
+     */
+    val url: String = requestUrl.toLowerCase(Locale.ROOT)
+
+    /**
+     * The index in the [url] at which the host starts.
+     */
+    val hostStart: Int
+
+    /**
+     * The index in the [url] at which the host ends, exclusive.
+     */
+    val hostEnd: Int
+
+    private val pageHost: String?
+
+    init {
+        val authorityStart = url.authorityStart()
+        val authorityEnd = url.authorityEnd(authorityStart)
+        hostStart = url.hostStart(authorityStart, authorityEnd)
+        hostEnd = url.hostEnd(hostStart, authorityEnd)
+
+        val lowerCasePageUrl = pageUrl.toLowerCase(Locale.ROOT)
+        val pageAuthorityStart = lowerCasePageUrl.authorityStart()
+        val pageAuthorityEnd = lowerCasePageUrl.authorityEnd(pageAuthorityStart)
+        val pageHostStart = lowerCasePageUrl.hostStart(pageAuthorityStart, pageAuthorityEnd)
+        pageHost = lowerCasePageUrl
+            .substring(pageHostStart, lowerCasePageUrl.hostEnd(pageHostStart, pageAuthorityEnd))
+            .takeIf(String::isNotEmpty)
+    }
+
+    /**
+     * True if the request is made to a different base domain than the page, or if the page is
+     * unknown.
+     */
+    val isThirdParty: Boolean by lazy(LazyThreadSafetyMode.NONE) {
+        val pageHost = pageHost ?: return@lazy true
+        val host = url.substring(hostStart, hostEnd)
+        host.substring(host.baseDomainStart()) != pageHost.substring(pageHost.baseDomainStart())
+    }
+
+    /**
+     * True if the page is on the [domain] or one of its subdomains.
+     */
+    fun isPageOnDomain(domain: String): Boolean {
+        val pageHost = pageHost ?: return false
+        return pageHost == domain
+            || (pageHost.endsWith(domain) && pageHost[pageHost.length - domain.length - 1] == '.')
+    }
+
+    private fun String.authorityStart(): Int {
+        val schemeSeparator = indexOf(SCHEME_SEPARATOR)
+        return if (schemeSeparator < 0) 0 else schemeSeparator + SCHEME_SEPARATOR.length
+    }
+
+    private fun String.authorityEnd(authorityStart: Int): Int {
+        var index = authorityStart
+        while (index < length && this[index] != '/' && this[index] != '?' && this[index] != '#') {
+            index++
+        }
+        return index
+    }
+
+    private fun String.hostStart(authorityStart: Int, authorityEnd: Int): Int {
+        val userInfoEnd = lastIndexOf('@', authorityEnd - 1)
+        return if (userInfoEnd >= authorityStart) userInfoEnd + 1 else authorityStart
+    }
+
+    private fun String.hostEnd(hostStart: Int, authorityEnd: Int): Int {
+        if (hostStart < authorityEnd && this[hostStart] == '[') {
+            // An IPv6 literal contains colons, so the port can only follow the closing bracket.
+            val bracketEnd = indexOf(']', hostStart)
+            return if (bracketEnd in hostStart until authorityEnd) bracketEnd + 1 else authorityEnd
+        }
+        val portStart = indexOf(':', hostStart)
+        return if (portStart in hostStart until authorityEnd) portStart else authorityEnd
+    }
+
+    companion object {
+        private const val SCHEME_SEPARATOR = "://"
+    }
+}
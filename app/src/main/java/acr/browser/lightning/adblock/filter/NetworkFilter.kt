@@ -0,0 +1,136 @@
+package acr.browser.lightning.adblock.filter
+
+/**
+ * A compiled network filter from an Adblock Plus style filter list, e.g. `||ads.example.com^`,
+ * `/banner/*/ad.js` or `@@||example.com/ads/$domain=example.com`.
+ *
+ * The [pattern] is matched against the lower case request URL, where `*` matches any sequence of
+ * characters and `^` matches a single separator character or the end of the URL.
+ *
+ * @param pattern The lower case pattern without its anchors or options.
+ * @param isException True if the filter is an exception (`@@`) that allows matching requests.
+ * @param isHostAnchored True if the pattern must match at the start of the host or one of its
+ * labels (`||`).
+ * @param isStartAnchored True if the pattern must match at the start of the URL (`|`).
+ * @param isEndAnchored True if the pattern must match at the end of the URL (trailing `|`).
+ * @param thirdParty True if the filter only applies to third party requests, false if it only
+ * applies to first party requests, and null if it applies to both (`$third-party`).
+ * @param includedDomains The page domains on which the filter applies, or empty if the filter
+ * applies on all pages (`$domain=`).
+ * @param excludedDomains The page domains on which the filter does not apply (`$domain=~`).
+ */
+class NetworkFilter(
+    val pattern: String,
+    val isException: Boolean = false,
+    val isHostAnchored: Boolean = false,
+    val isStartAnchored: Boolean = false,
+    val isEndAnchored: Boolean = false,
+    val thirdParty: Boolean? = null,
+    val includedDomains: List<String> = emptyList(),
+    val excludedDomains: List<String> = emptyList()
+) {
+
+    /**
+     * True if the filter applies to the [request].
+     */
+    internal fun matches(request: FilterRequest): Boolean =
+        matchesOptions(request) && matchesPattern(request)
+
+    private fun matchesOptions(request: FilterRequest): Boolean {
+        if (thirdParty != null && thirdParty != request.isThirdParty) {
+            return false
+        }
+        if (includedDomains.isNotEmpty() && includedDomains.none(request::isPageOnDomain)) {
+            return false
+        }
+        return excludedDomains.none(request::isPageOnDomain)
+    }
+
+    private fun matchesPattern(request: FilterRequest): Boolean {
+        val url = request.url
+        if (isHostAnchored) {
+            // The pattern may start at the beginning of the host or of any of its labels.
+            if (matchesAt(url, request.hostStart, hasLeadingWildcard = false)) {
+                return true
+            }
+            for (index in request.hostStart until request.hostEnd) {
+                if (url[index] == '.' && matchesAt(url, index + 1, hasLeadingWildcard = false)) {
+                    return true
+                }
+            }
+            return false
+        }
+
+        return matchesAt(url, 0, hasLeadingWildcard = !isStartAnchored)
+    }
+
+    /**
+     * Match the [pattern] against the [url] starting from the index [start], backtracking to the
+     * most recent wildcard on a mismatch. An unanchored pattern behaves as if it had a leading
+     * wildcard.
+     */
+    private fun matchesAt(url: String, start: Int, hasLeadingWildcard: Boolean): Boolean {
+        var patternIndex = 0
+        var urlIndex = start
+        var wildcardPatternIndex = if (hasLeadingWildcard) 0 else -1
+        var wildcardUrlIndex = start
+
+        while (true) {
+            if (patternIndex == pattern.length) {
+                if (!isEndAnchored || urlIndex == url.length) {
+                    return true
+                }
+            } else {
+                val patternChar = pattern[patternIndex]
+                if (patternChar == WILDCARD) {
+                    patternIndex++
+                    wildcardPatternIndex = patternIndex
+                    wildcardUrlIndex = urlIndex
+                    continue
+                }
+                if (urlIndex < url.length && patternChar.matches(url[urlIndex])) {
+                    patternIndex++
+                    urlIndex++
+                    continue
+                }
+                if (patternChar == SEPARATOR && urlIndex == url.length) {
+                    patternIndex++
+                    continue
+                }
+            }
+
+            if (wildcardPatternIndex < 0 || wildcardUrlIndex >= url.length) {
+                return false
+            }
+            wildcardUrlIndex++
+            urlIndex = wildcardUrlIndex
+            patternIndex = wildcardPatternIndex
+        }
+    }
+
+    private fun Char.matches(urlChar: Char): Boolean = if (this == SEPARATOR) {
+        urlChar.isSeparatorChar()
+    } else {
+        this == urlChar
+    }
+
+    override fun toString(): String = "NetworkFilter(pattern='$pattern', isException=$isException)"
+
+    companion object {
+        internal const val WILDCARD = '*'
+        internal const val SEPARATOR = '^'
+    }
+}
+
+/**
+ * True if the character is matched by the `^` separator placeholder, which is anything but a
+ * letter, a digit, or one of `_`, `-`, `.` and `%`.
+ */
+internal fun Char.isSeparatorChar(): Boolean =
+    !(this in 'a'..'z' || this in '0'..'9' || this == '_' || this == '-' || this == '.'
+        || this == '%' || this in 'A'..'Z')
+
+/**
+ * True if the character can be part of a token used to index the filters.
+ */
+internal fun Char.isTokenChar(): Boolean = this in 'a'..'z' || this in '0'..'9' || this == '%'
@@ -0,0 +1,287 @@
+package acr.browser.lightning.adblock.metrics
+
+import acr.browser.lightning.adblock.util.DecisionCache
+import acr.browser.lightning.adblock.util.DecisionCacheStats
+import io.reactivex.Observable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicIntegerArray
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Records the cost and the effect of ad blocking: the requests blocked by each tab and page, the
+ * latency of each stage of an ad lookup, the false positive rate of the bloom filter, the hit rate
+ * of the decision caches, and the time taken to load the hosts.
+ *
+ * Every recording method uses preallocated counters and is safe to call from any thread without
+ * allocating. Allocation only happens when a [snapshot] is taken.
+ */
+@Singleton
+class AdBlockMetrics @Inject constructor() {
+
+    private val tabIds = AtomicIntegerArray(MAX_TRACKED_TABS)
+    private val tabBlockedCounts = AtomicIntegerArray(MAX_TRACKED_TABS)
+    private val pageBlockedCounts = AtomicIntegerArray(MAX_TRACKED_TABS)
+    private val totalBlocked = AtomicLong()
+
+    private val bloomStageLatency = LatencyHistogram()
+    private val confirmationStageLatency = LatencyHistogram()
+    private val bloomNegatives = AtomicLong()
+    private val bloomTruePositives = AtomicLong()
+    private val bloomFalsePositives = AtomicLong()
+
+    private val hostsLoadMillis = AtomicLong()
+    private val hostsParseMillis = AtomicLong()
+    private val hostsParsedCount = AtomicLong()
+    private val hostsIndexMillis = AtomicLong()
+
+    private val decisionCaches = ConcurrentHashMap<String, DecisionCache>()
+
+    /**
+     * Record that a request made by the tab with the [tabId] was blocked.
+     */
+    fun recordBlockedRequest(tabId: Int) {
+        totalBlocked.incrementAndGet()
+        val slot = slotOf(tabId)
+        if (slot >= 0) {
+            tabBlockedCounts.incrementAndGet(slot)
+            pageBlockedCounts.incrementAndGet(slot)
+        }
+    }
+
+    /**
+     * Record that the tab with the [tabId] started loading a new page, which resets the count of
+     * requests blocked on the page.
+     */
+    fun recordPageStarted(tabId: Int) {
+        val slot = slotOf(tabId)
+        if (slot >= 0) {
+            pageBlockedCounts.set(slot, 0)
+        }
+    }
+
+    /**
+     * Stop tracking the tab with the [tabId], which has been closed.
+     */
+    fun removeTab(tabId: Int) {
+        synchronized(tabIds) {
+            for (slot in 0 until MAX_TRACKED_TABS) {
+                if (tabIds.get(slot) == tabId) {
+                    tabBlockedCounts.set(slot, 0)
+                    pageBlockedCounts.set(slot, 0)
+                    tabIds.set(slot, NO_TAB)
+                }
+            }
+        }
+    }
+
+    /**
+     * Record a lookup that was rejected by the bloom filter after [nanos] nanoseconds.
+     */
+    fun recordBloomNegative(nanos: Long) {
+        bloomStageLatency.record(nanos)
+        bloomNegatives.incrementAndGet()
+    }
+
+    /**
+     * Record a lookup that passed the bloom filter after [bloomNanos] nanoseconds and was then
+     * confirmed against the hosts repository in [confirmationNanos] nanoseconds, where [isAd] is
+     * false if the bloom filter returned a false positive.
+     */
+    fun recordBloomPositive(bloomNanos: Long, confirmationNanos: Long, isAd: Boolean) {
+        bloomStageLatency.record(bloomNanos)
+        confirmationStageLatency.record(confirmationNanos)
+        if (isAd) {
+            bloomTruePositives.incrementAndGet()
+        } else {
+            bloomFalsePositives.incrementAndGet()
+        }
+    }
+
+    /**
+     * Record that [hostCount] hosts were parsed in [millis] milliseconds.
+     */
+    fun recordHostsParsed(hostCount: Int, millis: Long) {
+        hostsParsedCount.set(hostCount.toLong())
+        hostsParseMillis.set(millis)
+    }
+
+    /**
+     * Record that loading the hosts from their source, including parsing, took [millis]
+     * milliseconds.
+     */
+    fun recordHostsLoaded(millis: Long) {
+        hostsLoadMillis.set(millis)
+    }
+
+    /**
+     * Record that storing the loaded hosts and building the bloom filter took [millis]
+     * milliseconds.
+     */
+    fun recordHostsIndexed(millis: Long) {
+        hostsIndexMillis.set(millis)
+    }
+
+    /**
+     * Include the hit and miss counts of the [decisionCache] in the snapshots under the [name].
+     */
+    fun registerDecisionCache(name: String, decisionCache: DecisionCache) {
+        decisionCaches[name] = decisionCache
+    }
+
+    /**
+     * Returns a snapshot of the metrics recorded so far.
+     */
+    fun snapshot(): AdBlockMetricsSnapshot {
+        val tabs = (0 until MAX_TRACKED_TABS).mapNotNull { slot ->
+            val tabId = tabIds.get(slot)
+            if (tabId == NO_TAB) {
+                null
+            } else {
+                TabBlockedCount(
+                    tabId = tabId,
+                    pageBlocked = pageBlockedCounts.get(slot),
+                    tabBlocked = tabBlockedCounts.get(slot)
+                )
+            }
+        }
+        return AdBlockMetricsSnapshot(
+            totalBlocked = totalBlocked.get(),
+            tabs = tabs,
+            bloomStageLatency = bloomStageLatency.snapshot(),
+            confirmationStageLatency = confirmationStageLatency.snapshot(),
+            bloomNegatives = bloomNegatives.get(),
+            bloomTruePositives = bloomTruePositives.get(),
+            bloomFalsePositives = bloomFalsePositives.get(),
+            hostsLoadMillis = hostsLoadMillis.get(),
+            hostsParseMillis = hostsParseMillis.get(),
+            hostsParsedCount = hostsParsedCount.get(),
+            hostsIndexMillis = hostsIndexMillis.get(),
+            decisionCaches = decisionCaches.mapValues { it.value.stats() }.toSortedMap()
+        )
+    }
+
+    /**
+     * Emits a [snapshot] immediately and then periodically whenever the metrics have changed.
+     */
+    fun snapshotObservable(): Observable<AdBlockMetricsSnapshot> =
+        Observable.interval(0, SNAPSHOT_PERIOD_SECONDS, TimeUnit.SECONDS)
+            .map { snapshot() }
+            .distinctUntilChanged()
+
+    /**
+     * Returns the slot holding the counters of the tab with the [tabId], claiming a free slot if
+     * the tab is not yet tracked, or -1 if every slot is in use.
+     */
+    private fun slotOf(tabId: Int): Int {
+        for (slot in 0 until MAX_TRACKED_TABS) {
+            if (tabIds.get(slot) == tabId) {
+                return slot
+            }
+        }
+        synchronized(tabIds) {
+            // Check again, since another thread may have claimed a slot for the tab.
+            var freeSlot = -1
+            for (slot in 0 until MAX_TRACKED_TABS) {
+                val id = tabIds.get(slot)
+                if (id == tabId) {
+                    return slot
+                } else if (id == NO_TAB && freeSlot < 0) {
+                    freeSlot = slot
+                }
+            }
+            if (freeSlot >= 0) {
+                tabIds.set(freeSlot, tabId)
+            }
+            return freeSlot
+        }
+    }
+
+    companion object {
+        private const val MAX_TRACKED_TABS = 64
+        private const val NO_TAB = 0
+        private const val SNAPSHOT_PERIOD_SECONDS = 1L
+    }
+}
+
+/**
+ * The number of requests blocked in a tab.
+ *
+ * @param tabId The ID of the tab.
+ * @param pageBlocked The number of requests blocked on the current page.
+ * @param tabBlocked The number of requests blocked since the tab was opened.
+ */
+data class TabBlockedCount(val tabId: Int, val pageBlocked: Int, val tabBlocked: Int)
+
+/**
+ * A snapshot of the [AdBlockMetrics].
+ *
+ * @param totalBlocked The number of requests blocked across all tabs.
+ * @param tabs The blocked request counts of each open tab.
+ * @param bloomStageLatency The latency of the bloom filter check of each lookup.
+ * @param confirmationStageLatency The latency of confirming a bloom filter hit against the hosts.
+ * @param bloomNegatives The number of lookups rejected by the bloom filter.
+ * @param bloomTruePositives The number of bloom filter hits that were confirmed.
+ * @param bloomFalsePositives The number of bloom filter hits that were not confirmed.
+ * @param hostsLoadMillis The time taken to load the hosts from their source.
+ * @param hostsParseMillis The time taken to parse the hosts.
+ * @param hostsParsedCount The number of hosts that were parsed.
+ * @param hostsIndexMillis The time taken to store the hosts and build the bloom filter.
+ * @param decisionCaches The hit and miss counts of each registered decision cache, by name.
+ */
+data class AdBlockMetricsSnapshot(
+    val totalBlocked: Long,
+    val tabs: List<TabBlockedCount>,
+    val bloomStageLatency: LatencyHistogramSnapshot,
+    val confirmationStageLatency: LatencyHistogramSnapshot,
+    val bloomNegatives: Long,
+    val bloomTruePositives: Long,
+    val bloomFalsePositives: Long,
+    val hostsLoadMillis: Long,
+    val hostsParseMillis: Long,
+    val hostsParsedCount: Long,
+    val hostsIndexMillis: Long,
+    val decisionCaches: Map<String, DecisionCacheStats>
+) {
+
+    /**
+     * The fraction of lookups for hosts that are not blocked that the bloom filter failed to
+     * reject, or 0 if there were no such lookups.
+     */
+    val bloomFalsePositiveRate: Double
+        get() = (bloomNegatives + bloomFalsePositives).let { allowed ->
+            if (allowed == 0L) 0.0 else bloomFalsePositives.toDouble() / allowed
+        }
+
+    /**
+     * Returns a human readable report of the metrics.
+     */
+    fun dump(): String = buildString {
+        appendLine("Blocked requests: $totalBlocked")
+        tabs.forEach {
+            appendLine("  Tab ${it.tabId}: ${it.pageBlocked} on page, ${it.tabBlocked} in tab")
+        }
+        appendLine("Bloom stage: ${bloomStageLatency.describe()}")
+        appendLine("Confirmation stage: ${confirmationStageLatency.describe()}")
+        appendLine(
+            "Bloom filter: $bloomNegatives negatives, $bloomTruePositives true positives, " +
+                "$bloomFalsePositives false positives " +
+                "(${"%.3f".format(bloomFalsePositiveRate * 100)}% false positive rate)"
+        )
+        appendLine("Hosts load: $hostsLoadMillis ms")
+        decisionCaches.forEach { (name, stats) ->
+            appendLine(
+                "$name decision cache: ${stats.hits} hits, ${stats.misses} misses " +
+                    "(${"%.1f".format(stats.hitRate * 100)}% hit rate)"
+            )
+        }
+        appendLine("Hosts parse: $hostsParsedCount hosts in $hostsParseMillis ms")
+        append("Hosts index: $hostsIndexMillis ms")
+    }
+
+    private fun LatencyHistogramSnapshot.describe(): String =
+        "$count lookups, mean $meanNanos ns, p50 < ${percentileNanos(50.0)} ns, " +
+            "p99 < ${percentileNanos(99.0)} ns"
+}
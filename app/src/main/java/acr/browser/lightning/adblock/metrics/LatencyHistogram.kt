@@ -0,0 +1,77 @@
+package acr.browser.lightning.adblock.metrics
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * A histogram of latencies with power of two nanosecond buckets, where bucket `i` counts the
+ * latencies from `2^(i - 1)` up to `2^i` nanoseconds. Recording is lock free and does not allocate,
+ * so it can be done on the hot path of every request.
+ */
+class LatencyHistogram {
+
+    private val buckets = AtomicLongArray(NUMBER_OF_BUCKETS)
+    private val totalNanos = AtomicLong()
+
+    /**
+     * Record a latency of [nanos] nanoseconds.
+     */
+    fun record(nanos: Long) {
+        val bucket = (Long.SIZE_BITS - java.lang.Long.numberOfLeadingZeros(nanos.coerceAtLeast(0)))
+            .coerceAtMost(NUMBER_OF_BUCKETS - 1)
+        buckets.incrementAndGet(bucket)
+        totalNanos.addAndGet(nanos)
+    }
+
+    /**
+     * Returns a snapshot of the recorded latencies.
+     */
+    fun snapshot(): LatencyHistogramSnapshot = LatencyHistogramSnapshot(
+        bucketCounts = List(NUMBER_OF_BUCKETS, buckets::get),
+        totalNanos = totalNanos.get()
+    )
+
+    companion object {
+        /**
+         * Enough buckets to hold latencies of more than a second.
+         */
+        const val NUMBER_OF_BUCKETS = 32
+    }
+}
+
+/**
+ * A snapshot of a [LatencyHistogram].
+ *
+ * @param bucketCounts The number of latencies recorded in each bucket.
+ * @param totalNanos The sum of all recorded latencies.
+ */
+data class LatencyHistogramSnapshot(val bucketCounts: List<Long>, val totalNanos: Long) {
+
+    /**
+     * The number of recorded latencies.
+     */
+    val count: Long
+        get() = bucketCounts.sum()
+
+    /**
+     * The mean of the recorded latencies in nanoseconds, or 0 if there are none.
+     */
+    val meanNanos: Long
+        get() = if (count == 0L) 0 else totalNanos / count
+
+    /**
+     * Returns the upper bound in nanoseconds of the bucket holding the [percentile], between 0 and
+     * 100, of the recorded latencies, or 0 if there are none.
+     */
+    fun percentileNanos(percentile: Double): Long {
+        val target = (count * percentile / 100).toLong().coerceAtLeast(1)
+        var seen = 0L
+        bucketCounts.forEachIndexed { bucket, bucketCount ->
+            seen += bucketCount
+            if (seen >= target) {
+                return 1L shl bucket
+            }
+        }
+        return 0
+    }
+}
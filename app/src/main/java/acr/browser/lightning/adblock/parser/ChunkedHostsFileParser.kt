@@ -0,0 +1,271 @@
+package acr.browser.lightning.adblock.parser
+
+import acr.browser.lightning.adblock.metrics.AdBlockMetrics
+import acr.browser.lightning.database.adblock.Host
+import acr.browser.lightning.log.Logger
+import io.reactivex.Flowable
+import io.reactivex.schedulers.Schedulers
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import javax.inject.Inject
+
+/**
+ * A multi threaded parser for a hosts file that operates directly on the bytes of the file. The
+ * input is split into chunks at line boundaries and the chunks are parsed in parallel on the
+ * computation scheduler. The only [String] created for each entry is the name of the [Host].
+ *
+ * A stream is read one chunk at a time while the chunks that were already read are parsed, so only
+ * a few chunks of the stream are held in memory at once, rather than the whole file.
+ *
+ * Each line is split into tokens on whitespace, everything following a `#` is ignored, and the
+ * local addresses and `localhost` are discarded, leaving only the hosts that should be blocked.
+ */
+class ChunkedHostsFileParser @Inject constructor(
+    private val logger: Logger,
+    private val adBlockMetrics: AdBlockMetrics
+) {
+
+    /**
+     * Read the entire [inputStream] in chunks and return the list of [Host] held in the hosts file.
+     * The stream is closed once it has been read.
+     *
+     * @throws IOException If the stream could not be read.
+     */
+    fun parseInput(inputStream: InputStream): List<Host> = inputStream.use { stream ->
+        val reader = LineAlignedChunkReader(stream)
+        var readFailure: IOException? = null
+        val chunks = Flowable.generate<Chunk> { emitter ->
+            val buffer = try {
+                reader.next()
+            } catch (exception: IOException) {
+                readFailure = exception
+                null
+            }
+            if (buffer != null) {
+                emitter.onNext(Chunk(buffer, buffer.position() until buffer.limit()))
+            } else {
+                emitter.onComplete()
+            }
+        }
+
+        val hosts = parseChunks(chunks)
+        readFailure?.let { throw it }
+        hosts
+    }
+
+    /**
+     * Memory map the [file] and return the list of [Host] held in the hosts file.
+     */
+    fun parseInput(file: File): List<Host> = RandomAccessFile(file, "r").use {
+        parseInput(it.channel.map(FileChannel.MapMode.READ_ONLY, 0, it.channel.size()))
+    }
+
+    /**
+     * Parse the remaining bytes of the [buffer] and return the list of [Host] held in the hosts
+     * file. The position of the [buffer] is not modified.
+     */
+    fun parseInput(buffer: ByteBuffer): List<Host> =
+        parseChunks(Flowable.fromIterable(buffer.lineAlignedChunks()).map { Chunk(buffer, it) })
+
+    /**
+     * Parse the [chunks] in parallel, requesting a chunk only once there is a processor to parse
+     * it, and return the hosts of every chunk in order.
+     */
+    private fun parseChunks(chunks: Flowable<Chunk>): List<Host> {
+        val time = System.currentTimeMillis()
+
+        var chunkCount = 0
+        val parallelism = Runtime.getRuntime().availableProcessors()
+        val domains = chunks
+            .doOnNext { chunkCount++ }
+            .concatMapEager(
+                { chunk ->
+                    Flowable.fromCallable { ChunkParser(chunk.buffer).parse(chunk.range) }
+                        .subscribeOn(Schedulers.computation())
+                },
+                parallelism,
+                1
+            )
+            .toList()
+            .blockingGet()
+            .flatten()
+
+        val parseMillis = System.currentTimeMillis() - time
+        adBlockMetrics.recordHostsParsed(domains.size, parseMillis)
+        logger.log(TAG, "Parsed ad list in: $parseMillis ms using $chunkCount chunks")
+
+        return domains
+    }
+
+    /**
+     * Split the remaining bytes of the buffer into at most one chunk per processor, where every
+     * chunk ends immediately after a line feed or at the end of the buffer.
+     */
+    private fun ByteBuffer.lineAlignedChunks(): List<IntRange> {
+        val start = position()
+        val end = limit()
+        val chunkCount = ((end - start) / MIN_CHUNK_SIZE)
+            .coerceIn(1, Runtime.getRuntime().availableProcessors())
+
+        val chunks = ArrayList<IntRange>(chunkCount)
+        var chunkStart = start
+        for (i in 1..chunkCount) {
+            if (chunkStart >= end) {
+                break
+            }
+            val targetEnd = start + ((end - start).toLong() * i / chunkCount).toInt()
+            var chunkEnd = maxOf(chunkStart, targetEnd)
+            while (chunkEnd < end && get(chunkEnd) != LINE_FEED) {
+                chunkEnd++
+            }
+            chunkEnd = minOf(chunkEnd + 1, end)
+            chunks.add(chunkStart until chunkEnd)
+            chunkStart = chunkEnd
+        }
+
+        return chunks.ifEmpty { listOf(start until end) }
+    }
+
+    /**
+     * The [range] of the [buffer] that holds a chunk of whole lines.
+     */
+    private class Chunk(val buffer: ByteBuffer, val range: IntRange)
+
+    /**
+     * Reads the [inputStream] in chunks of at least [STREAM_CHUNK_SIZE] bytes that end immediately
+     * after a line feed or at the end of the stream. Each chunk is read into a new array, since
+     * the previous chunks may still be being parsed.
+     */
+    private class LineAlignedChunkReader(private val inputStream: InputStream) {
+
+        private var pending = ByteArray(STREAM_CHUNK_SIZE)
+        private var pendingLength = 0
+        private var isEnd = false
+
+        /**
+         * Returns a buffer holding the next chunk, or null once the stream has been read.
+         */
+        fun next(): ByteBuffer? {
+            while (!isEnd && pendingLength < pending.size) {
+                val read = inputStream.read(pending, pendingLength, pending.size - pendingLength)
+                if (read < 0) {
+                    isEnd = true
+                } else {
+                    pendingLength += read
+                }
+            }
+            if (pendingLength == 0) {
+                return null
+            }
+
+            var chunkEnd = pendingLength
+            if (!isEnd) {
+                while (chunkEnd > 0 && pending[chunkEnd - 1] != LINE_FEED) {
+                    chunkEnd--
+                }
+                if (chunkEnd == 0) {
+                    // A line is longer than the chunk, so the chunk is extended to hold it.
+                    pending = pending.copyOf(pending.size * 2)
+                    return next()
+                }
+            }
+
+            val chunk = pending
+            val remainingLength = pendingLength - chunkEnd
+            pending = ByteArray(maxOf(STREAM_CHUNK_SIZE, remainingLength))
+            System.arraycopy(chunk, chunkEnd, pending, 0, remainingLength)
+            pendingLength = remainingLength
+            return ByteBuffer.wrap(chunk, 0, chunkEnd)
+        }
+    }
+
+    /**
+     * Parses a single chunk of the [buffer]. Not thread safe, a parser should be created for each
+     * chunk that is parsed concurrently.
+     */
+    private class ChunkParser(private val buffer: ByteBuffer) {
+
+        private val hosts = ArrayList<Host>()
+        private var scratch = ByteArray(INITIAL_SCRATCH_SIZE)
+        private var tokenStart = NO_TOKEN
+        private var isComment = false
+
+        fun parse(range: IntRange): List<Host> {
+            for (index in range) {
+                when (buffer.get(index)) {
+                    LINE_FEED, CARRIAGE_RETURN -> {
+                        endToken(index)
+                        isComment = false
+                    }
+                    SPACE, TAB -> endToken(index)
+                    COMMENT -> {
+                        endToken(index)
+                        isComment = true
+                    }
+                    else -> if (!isComment && tokenStart == NO_TOKEN) {
+                        tokenStart = index
+                    }
+                }
+            }
+            endToken(range.last + 1)
+
+            return hosts
+        }
+
+        private fun endToken(tokenEnd: Int) {
+            val start = tokenStart
+            if (start == NO_TOKEN) {
+                return
+            }
+            tokenStart = NO_TOKEN
+
+            val length = tokenEnd - start
+            if (IGNORED_TOKENS.any { tokenEquals(start, length, it) }) {
+                return
+            }
+
+            if (scratch.size < length) {
+                scratch = ByteArray(length)
+            }
+            for (i in 0 until length) {
+                scratch[i] = buffer.get(start + i)
+            }
+            hosts.add(Host(String(scratch, 0, length, Charsets.UTF_8)))
+        }
+
+        private fun tokenEquals(start: Int, length: Int, token: ByteArray): Boolean {
+            if (length != token.size) {
+                return false
+            }
+            for (i in 0 until length) {
+                if (buffer.get(start + i) != token[i]) {
+                    return false
+                }
+            }
+            return true
+        }
+
+    }
+
+    companion object {
+        private const val TAG = "ChunkedHostsFileParser"
+
+        private const val MIN_CHUNK_SIZE = 64 * 1024
+        private const val STREAM_CHUNK_SIZE = 256 * 1024
+        private const val INITIAL_SCRATCH_SIZE = 256
+        private const val NO_TOKEN = -1
+
+        private const val LINE_FEED: Byte = 0x0A
+        private const val CARRIAGE_RETURN: Byte = 0x0D
+        private const val SPACE: Byte = 0x20
+        private const val TAB: Byte = 0x09
+        private const val COMMENT: Byte = 0x23
+
+        private val IGNORED_TOKENS = listOf("127.0.0.1", "0.0.0.0", "::1", "localhost")
+            .map { it.toByteArray() }
+    }
+}
@@ -1,24 +1,22 @@
 package acr.browser.lightning.adblock.source
 
 import acr.browser.lightning.BuildConfig
-import acr.browser.lightning.adblock.parser.HostsFileParser
+import acr.browser.lightning.adblock.parser.ChunkedHostsFileParser
 import acr.browser.lightning.log.Logger
 import android.content.res.AssetManager
 import io.reactivex.Single
-import java.io.InputStreamReader
 import javax.inject.Inject
-import javax.inject.Provider
 
 /**
  * A [HostsDataSource] that reads from the hosts list in assets.
  *
  * @param assetManager The store for application assets.
- * @param hostsFileParserProvider The provider used to construct the parser.
+ * @param hostsFileParser The parser used to parse the hosts file.
  * @param logger The logger used to log status.
  */
 class AssetsHostsDataSource @Inject constructor(
     private val assetManager: AssetManager,
-    private val hostsFileParserProvider: Provider<HostsFileParser>,
+    private val hostsFileParser: ChunkedHostsFileParser,
     private val logger: Logger
 ) : HostsDataSource {
 
@@ -31,10 +29,7 @@ class AssetsHostsDataSource @Inject constructor(
      * @see HostsDataSource.loadHosts
      */
     override fun loadHosts(): Single<HostsResult> = Single.create { emitter ->
-        val reader = InputStreamReader(assetManager.open(BLOCKED_DOMAINS_LIST_FILE_NAME))
-        val hostsFileParser = hostsFileParserProvider.get()
-
-        val domains = hostsFileParser.parseInput(reader)
+        val domains = hostsFileParser.parseInput(assetManager.open(BLOCKED_DOMAINS_LIST_FILE_NAME))
 
         logger.log(TAG, "Loaded ${domains.size} domains")
         emitter.onSuccess(HostsResult.Success(domains))
@@ -1,6 +1,6 @@
 package acr.browser.lightning.adblock.source
 
-import acr.browser.lightning.adblock.parser.HostsFileParser
+import acr.browser.lightning.adblock.parser.ChunkedHostsFileParser
 import acr.browser.lightning.adblock.util.hash.computeMD5
 import acr.browser.lightning.extensions.onIOExceptionResumeNext
 import acr.browser.lightning.log.Logger
@@ -10,16 +10,17 @@ import dagger.assisted.AssistedFactory
 import dagger.assisted.AssistedInject
 import io.reactivex.Single
 import java.io.File
-import java.io.InputStreamReader
 
 /**
  * A [HostsDataSource] that loads hosts from the file found in [UserPreferences].
  *
  * @param logger The logger used to log information about the loading process.
+ * @param hostsFileParser The parser used to parse the hosts file.
  * @param file The file from which hosts will be loaded. Must have read access to the file.
  */
 class FileHostsDataSource @AssistedInject constructor(
     private val logger: Logger,
+    private val hostsFileParser: ChunkedHostsFileParser,
     @Assisted private val file: File
 ) : HostsDataSource {
 
@@ -32,10 +33,7 @@ class FileHostsDataSource @AssistedInject constructor(
      * @see HostsDataSource.loadHosts
      */
     override fun loadHosts(): Single<HostsResult> = Single.create<HostsResult> { emitter ->
-        val reader = InputStreamReader(file.inputStream())
-        val hostsFileParser = HostsFileParser(logger)
-
-        val domains = hostsFileParser.parseInput(reader)
+        val domains = hostsFileParser.parseInput(file)
 
         logger.log(TAG, "Loaded ${domains.size} domains")
         emitter.onSuccess(HostsResult.Success(domains))
@@ -11,8 +11,19 @@ sealed class HostsResult {
      * A successful request.
      *
      * @param hosts The hosts to block.
+     * @param validators The validators used to check whether the hosts have been modified, or
+     * null if the source does not support them.
      */
-    data class Success(val hosts: List<Host>) : HostsResult()
+    data class Success(
+        val hosts: List<Host>,
+        val validators: HostsValidators? = null
+    ) : HostsResult()
+
+    /**
+     * A successful request for hosts that have not been modified since they were last loaded, so
+     * the stored hosts remain up to date.
+     */
+    object NotModified : HostsResult()
 
     /**
      * An unsuccessful request.
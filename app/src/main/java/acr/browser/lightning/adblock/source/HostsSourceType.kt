@@ -1,5 +1,6 @@
 package acr.browser.lightning.adblock.source
 
+import acr.browser.lightning.adblock.FilterListAdBlocker
 import acr.browser.lightning.preference.UserPreferences
 import okhttp3.HttpUrl
 import java.io.File
@@ -28,6 +29,14 @@ sealed class HostsSourceType {
      * @param httpUrl The URL of the hosts file.
      */
     class Remote(val httpUrl: HttpUrl) : HostsSourceType()
+
+    /**
+     * A local filter list in the Adblock Plus syntax, such as EasyList, which is used by the
+     * [FilterListAdBlocker] instead of a hosts file.
+     *
+     * @param file The filter list to use, must have access to it.
+     */
+    class FilterList(val file: File) : HostsSourceType()
 }
 
 /**
@@ -37,6 +46,9 @@ sealed class HostsSourceType {
 fun UserPreferences.selectedHostsSource(): HostsSourceType {
     val localFile: File? = hostsLocalFile?.let(::File)?.takeIf(File::exists)?.takeIf(File::canRead)
 
+    val filterListFile: File? =
+        filterListLocalFile?.let(::File)?.takeIf(File::exists)?.takeIf(File::canRead)
+
     val remoteUrl: HttpUrl? = hostsRemoteFile?.let { HttpUrl.parse(it) }
 
     val source = hostsSource
@@ -45,6 +57,8 @@ fun UserPreferences.selectedHostsSource(): HostsSourceType {
         HostsSourceType.Local(localFile)
     } else if (source == 2 && remoteUrl != null) {
         HostsSourceType.Remote(remoteUrl)
+    } else if (source == 3 && filterListFile != null) {
+        HostsSourceType.FilterList(filterListFile)
     } else {
         HostsSourceType.Default
     }
@@ -57,4 +71,5 @@ fun HostsSourceType.toPreferenceIndex(): Int = when (this) {
     HostsSourceType.Default -> 0
     is HostsSourceType.Local -> 1
     is HostsSourceType.Remote -> 2
+    is HostsSourceType.FilterList -> 3
 }
@@ -0,0 +1,11 @@
+package acr.browser.lightning.adblock.source
+
+/**
+ * The HTTP cache validators of a remote hosts file, which are sent with the next request for the
+ * file so that the server can reply that the file has not been modified instead of sending it.
+ *
+ * @param eTag The value of the `ETag` header of the response, or null if there was none.
+ * @param lastModified The value of the `Last-Modified` header of the response, or null if there
+ * was none.
+ */
+data class HostsValidators(val eTag: String?, val lastModified: String?)
@@ -20,5 +20,7 @@ class PreferencesHostsDataSourceProvider @Inject constructor(
             HostsSourceType.Default -> assetsHostsDataSource
             is HostsSourceType.Local -> fileHostsDataSourceFactory.create(source.file)
             is HostsSourceType.Remote -> urlHostsDataSourceFactory.create(source.httpUrl)
+            // Filter lists are not hosts files, so hosts based blocking falls back to the default.
+            is HostsSourceType.FilterList -> assetsHostsDataSource
         }
 }
@@ -1,7 +1,8 @@
 package acr.browser.lightning.adblock.source
 
-import acr.browser.lightning.adblock.parser.HostsFileParser
+import acr.browser.lightning.adblock.parser.ChunkedHostsFileParser
 import acr.browser.lightning.browser.di.HostsClient
+import acr.browser.lightning.database.adblock.HostsRepositoryInfo
 import acr.browser.lightning.extensions.onIOExceptionResumeNext
 import acr.browser.lightning.log.Logger
 import acr.browser.lightning.preference.UserPreferences
@@ -17,16 +18,34 @@ import okhttp3.HttpUrl
 import okhttp3.OkHttpClient
 import okhttp3.Request
 import okhttp3.Response
+import okhttp3.ResponseBody
 import java.io.IOException
-import java.io.InputStreamReader
+import java.io.InputStream
+import java.net.HttpURLConnection
+import java.util.zip.GZIPInputStream
 
 /**
  * A [HostsDataSource] that loads hosts from an [HttpUrl].
+ *
+ * The validators of the hosts that are currently stored are sent with the request, so a server
+ * that supports conditional requests replies with [HttpURLConnection.HTTP_NOT_MODIFIED] instead of
+ * sending the hosts again, and the stored hosts are reused without being parsed. The response body
+ * is decompressed while it is read, whether the server applied a gzip content encoding or serves a
+ * gzip compressed file.
+ *
+ * @param url The URL of the hosts file.
+ * @param okHttpClient The client used to request the hosts file.
+ * @param logger The logger used to log status.
+ * @param hostsFileParser The parser that reads the hosts from the response body.
+ * @param hostsRepositoryInfo The information about the stored hosts, which holds the validators
+ * sent with the request.
  */
 class UrlHostsDataSource @AssistedInject constructor(
     @Assisted private val url: HttpUrl,
     @HostsClient private val okHttpClient: Single<OkHttpClient>,
     private val logger: Logger,
+    private val hostsFileParser: ChunkedHostsFileParser,
+    private val hostsRepositoryInfo: HostsRepositoryInfo,
     private val userPreferences: UserPreferences,
     private val application: Application
 ) : HostsDataSource {
@@ -34,9 +53,14 @@ class UrlHostsDataSource @AssistedInject constructor(
     override fun loadHosts(): Single<HostsResult> =
         okHttpClient.flatMap { client ->
             Single.create<HostsResult> { emitter ->
+                val validators = storedValidators()
                 val request = Request.Builder()
                     .url(url)
                     .header("User-Agent", userPreferences.userAgent(application))
+                    .apply {
+                        validators?.eTag?.let { header("If-None-Match", it) }
+                        validators?.lastModified?.let { header("If-Modified-Since", it) }
+                    }
                     .get()
                     .build()
 
@@ -46,27 +70,80 @@ class UrlHostsDataSource @AssistedInject constructor(
                     }
 
                     override fun onResponse(call: Call, response: Response) {
-                        val successfulResponse = response.takeIf(Response::isSuccessful)
-                            ?: return emitter.onError(IOException("Error reading remote file"))
-                        val input =
-                            successfulResponse.body()?.byteStream()?.let(::InputStreamReader)
+                        response.use {
+                            // A server may only reply that the hosts were not modified to a
+                            // conditional request.
+                            val isNotModified = it.code() == HttpURLConnection.HTTP_NOT_MODIFIED
+                            if (isNotModified && validators != null) {
+                                logger.log(TAG, "Hosts have not been modified")
+                                return emitter.onSuccess(HostsResult.NotModified)
+                            }
+                            val successfulResponse = it.takeIf(Response::isSuccessful)
+                                ?: return emitter.onError(IOException("Error reading remote file"))
+                            val body = successfulResponse.body()
                                 ?: return emitter.onError(IOException("Empty response"))
 
-                        val hostsFileParser = HostsFileParser(logger)
-
-                        val domains = hostsFileParser.parseInput(input)
+                            val domains = try {
+                                hostsFileParser.parseInput(body.decompressedStream())
+                            } catch (exception: IOException) {
+                                return emitter.onError(exception)
+                            }
 
-                        logger.log(TAG, "Loaded ${domains.size} domains")
-                        emitter.onSuccess(HostsResult.Success(domains))
+                            logger.log(TAG, "Loaded ${domains.size} domains")
+                            emitter.onSuccess(
+                                HostsResult.Success(
+                                    hosts = domains,
+                                    validators = HostsValidators(
+                                        eTag = successfulResponse.header("ETag"),
+                                        lastModified = successfulResponse.header("Last-Modified")
+                                    )
+                                )
+                            )
+                        }
                     }
                 })
             }.onIOExceptionResumeNext(HostsResult::Failure)
         }
 
+    /**
+     * Returns the validators of the stored hosts if they were loaded from this source, or null if
+     * the hosts must be requested unconditionally.
+     */
+    private fun storedValidators(): HostsValidators? {
+        if (hostsRepositoryInfo.identity != identifier()) {
+            return null
+        }
+        val eTag = hostsRepositoryInfo.hostsETag
+        val lastModified = hostsRepositoryInfo.hostsLastModified
+        return if (eTag == null && lastModified == null) {
+            null
+        } else {
+            HostsValidators(eTag = eTag, lastModified = lastModified)
+        }
+    }
+
+    /**
+     * Returns a stream of the decompressed body. OkHttp transparently removes a gzip content
+     * encoding while the body is read, but a hosts file may also be served as a gzip file.
+     */
+    private fun ResponseBody.decompressedStream(): InputStream {
+        val contentType = contentType()
+        val isGzipFile = contentType?.type() == "application"
+            && contentType.subtype() in GZIP_SUBTYPES
+            || url.encodedPath().endsWith(GZIP_EXTENSION)
+        return if (isGzipFile) {
+            GZIPInputStream(byteStream())
+        } else {
+            byteStream()
+        }
+    }
+
     override fun identifier(): String = url.toString()
 
     companion object {
         private const val TAG = "UrlHostsDataSource"
+        private const val GZIP_EXTENSION = ".gz"
+        private val GZIP_SUBTYPES = setOf("gzip", "x-gzip")
     }
 
     /**
@@ -0,0 +1,148 @@
+package acr.browser.lightning.adblock.util
+
+import acr.browser.lightning.adblock.util.hash.HashingAlgorithm
+import kotlin.math.ln
+import kotlin.math.roundToInt
+
+/**
+ * A cache line blocked [BloomFilter], as described in "Cache-, Hash- and Space-Efficient Bloom
+ * Filters" by Putze, Sanders and Singler.
+ *
+ * The bit array is split into blocks of 512 bits, the size of a typical 64 byte cache line. The
+ * hash of an item selects a single block, and all of the hash functions of the item probe bits
+ * within that block, so a lookup touches one block instead of [numberOfHashes] random positions in
+ * the whole array. The JVM does not align arrays to cache lines, so a block spans at most two
+ * cache lines. Lookups test every probe and combine the results without branching.
+ *
+ * Confining the probes to a block raises the false positive rate slightly, which is compensated by
+ * allocating [BLOCK_OVERHEAD] times the number of bits of an equivalent [DefaultBloomFilter].
+ *
+ * @param numberOfHashes The number of hash functions, k.
+ * @param words The contents of the bit array, a whole number of blocks of [BLOCK_BITS] bits.
+ * @param hashingAlgorithm The algorithm that should be used to hash the values.
+ */
+class BlockedBloomFilter<T> internal constructor(
+    internal val numberOfHashes: Int,
+    private val words: LongArray,
+    private val hashingAlgorithm: HashingAlgorithm<T>
+) : BloomFilter<T> {
+
+    /**
+     * Create an empty bloom filter sized for the expected number of elements.
+     *
+     * @param numberOfElements The number of elements that will be added to this filter.
+     * @param falsePositiveRate The acceptable rate of false positives.
+     * @param hashingAlgorithm The algorithm that should be used to hash the values.
+     */
+    constructor(
+        numberOfElements: Int,
+        falsePositiveRate: Double,
+        hashingAlgorithm: HashingAlgorithm<T>
+    ) : this(
+        numberOfHashes = optimalNumberOfHashes(
+            numberOfElements,
+            optimalNumberOfBits(numberOfElements, falsePositiveRate)
+        ),
+        words = LongArray(
+            optimalNumberOfBlocks(optimalNumberOfBits(numberOfElements, falsePositiveRate)) *
+                WORDS_PER_BLOCK
+        ),
+        hashingAlgorithm = hashingAlgorithm
+    )
+
+    private val numberOfBlocks: Int = words.size / WORDS_PER_BLOCK
+
+    /**
+     * The number of bits, m.
+     */
+    internal val numberOfBits: Int
+        get() = words.size * Long.SIZE_BITS
+
+    /**
+     * Returns a copy of the contents of the bit array.
+     */
+    internal fun words(): LongArray = words.copyOf()
+
+    override fun put(item: T) {
+        val hash = hashingAlgorithm.hash(item)
+        val blockStart = blockStart(hash)
+        val probeHash = mix(hash)
+        var bit = probeHash.toInt()
+        val step = (probeHash ushr Int.SIZE_BITS).toInt() or 1
+        for (i in 0 until numberOfHashes) {
+            val index = blockStart + ((bit and BLOCK_MASK) ushr WORD_SHIFT)
+            words[index] = words[index] or (1L shl bit)
+            bit += step
+        }
+    }
+
+    override fun putAll(collection: Collection<T>) {
+        collection.forEach(::put)
+    }
+
+    override fun mightContain(item: T): Boolean = mightContainHash(hashingAlgorithm.hash(item))
+
+    override fun mightContainHash(hash: Int): Boolean {
+        val blockStart = blockStart(hash)
+        val probeHash = mix(hash)
+        var bit = probeHash.toInt()
+        val step = (probeHash ushr Int.SIZE_BITS).toInt() or 1
+        var result = 1L
+        for (i in 0 until numberOfHashes) {
+            // Shifting a long only uses the lowest 6 bits of the distance, the bit within the word.
+            result = result and (words[blockStart + ((bit and BLOCK_MASK) ushr WORD_SHIFT)] ushr bit)
+            bit += step
+        }
+        return (result and 1L) != 0L
+    }
+
+    /**
+     * Maps the [hash] to the index of the first word of a block, using a multiply and shift rather
+     * than a modulo.
+     */
+    private fun blockStart(hash: Int): Int =
+        (((hash.toLong() and UNSIGNED_INT_MASK) * numberOfBlocks) ushr Int.SIZE_BITS).toInt() *
+            WORDS_PER_BLOCK
+
+    /**
+     * Derives independent probe bits from the [hash], which also selected the block, using the
+     * finalizer of the 64 bit MurmurHash3.
+     */
+    private fun mix(hash: Int): Long {
+        var mixed = hash.toLong()
+        mixed = (mixed xor (mixed ushr 33)) * -0xae502812aa7333L
+        mixed = (mixed xor (mixed ushr 33)) * -0x3b314601e57a13adL
+        return mixed xor (mixed ushr 33)
+    }
+
+    companion object {
+        /**
+         * The number of bits of a block, which the number of bits of the filter is a multiple of.
+         */
+        internal const val BLOCK_BITS = 512
+        private const val BLOCK_MASK = BLOCK_BITS - 1
+        private const val WORDS_PER_BLOCK = BLOCK_BITS / Long.SIZE_BITS
+        private const val WORD_SHIFT = 6
+        private const val UNSIGNED_INT_MASK = 0xFFFFFFFFL
+
+        /**
+         * The factor by which the number of bits is increased to match the false positive rate of
+         * an unblocked filter, measured by the benchmark in the tests.
+         */
+        private const val BLOCK_OVERHEAD = 1.1
+
+        private fun optimalNumberOfBits(numberOfElements: Int, falsePositiveRate: Double): Double =
+            -numberOfElements.coerceAtLeast(1) * ln(falsePositiveRate) / (ln(2.0) * ln(2.0))
+
+        private fun optimalNumberOfHashes(numberOfElements: Int, numberOfBits: Double): Int =
+            (numberOfBits * ln(2.0) / numberOfElements.coerceAtLeast(1))
+                .roundToInt()
+                .coerceAtLeast(1)
+
+        private fun optimalNumberOfBlocks(numberOfBits: Double): Int =
+            ((numberOfBits * BLOCK_OVERHEAD + BLOCK_BITS - 1) / BLOCK_BITS)
+                .toInt()
+                .coerceAtLeast(1)
+    }
+
+}
@@ -25,4 +25,11 @@ interface BloomFilter<T> {
      * [item] was ever added, but returning `false` guarantees that it was not.
      */
     fun mightContain(item: T): Boolean
+
+    /**
+     * Returns `true` if an item that hashes to [hash] might have been added to the filter, `false`
+     * otherwise. The [hash] must be computed using the same hashing algorithm as the filter, which
+     * allows callers that can hash an item without constructing it to avoid the allocation.
+     */
+    fun mightContainHash(hash: Int): Boolean
 }
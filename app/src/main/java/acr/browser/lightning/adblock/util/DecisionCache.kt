@@ -0,0 +1,101 @@
+package acr.browser.lightning.adblock.util
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A bounded cache of `true` or `false` decisions that can be read and written concurrently from
+ * any thread without locking.
+ *
+ * The cache holds two generations of entries. New decisions are written to the current generation,
+ * and once it reaches the [capacity], it replaces the previous generation, which is dropped. A
+ * decision found in the previous generation is promoted to the current one, so frequently used
+ * keys survive while the cache never holds more than twice its [capacity].
+ *
+ * @param capacity The number of decisions held by each generation of the cache.
+ */
+class DecisionCache(private val capacity: Int) {
+
+    @Volatile
+    private var current = ConcurrentHashMap<String, Boolean>()
+
+    @Volatile
+    private var previous = ConcurrentHashMap<String, Boolean>()
+
+    private val version = AtomicInteger()
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    /**
+     * Returns the decision cached for the [key], or computes it with [decide] and caches it if it
+     * is absent. A decision that was computed while the cache was being invalidated is returned,
+     * but not cached.
+     */
+    fun getOrPut(key: String, decide: () -> Boolean): Boolean {
+        current[key]?.let {
+            hits.incrementAndGet()
+            return it
+        }
+
+        val startVersion = version.get()
+        previous[key]?.let {
+            hits.incrementAndGet()
+            put(key, it, startVersion)
+            return it
+        }
+
+        misses.incrementAndGet()
+        return decide().also { put(key, it, startVersion) }
+    }
+
+    /**
+     * Clears every decision held by the cache. Must be called whenever the inputs to the cached
+     * decisions change.
+     */
+    fun invalidate() {
+        synchronized(this) {
+            version.incrementAndGet()
+            previous = ConcurrentHashMap()
+            current = ConcurrentHashMap()
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache hit and miss counts.
+     */
+    fun stats(): DecisionCacheStats = DecisionCacheStats(hits = hits.get(), misses = misses.get())
+
+    private fun put(key: String, decision: Boolean, startVersion: Int) {
+        val generation = current
+        generation[key] = decision
+        if (generation.size >= capacity || version.get() != startVersion) {
+            synchronized(this) {
+                if (version.get() != startVersion) {
+                    // The decision may have been made using the old inputs, so discard it.
+                    generation.remove(key)
+                } else if (current === generation) {
+                    previous = generation
+                    current = ConcurrentHashMap()
+                }
+            }
+        }
+    }
+
+}
+
+/**
+ * A snapshot of the effectiveness of a [DecisionCache].
+ *
+ * @param hits The number of decisions that were found in the cache.
+ * @param misses The number of decisions that had to be computed.
+ */
+data class DecisionCacheStats(val hits: Long, val misses: Long) {
+
+    /**
+     * The fraction of lookups that were found in the cache, or 0 if there were no lookups.
+     */
+    val hitRate: Double
+        get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+
+}
@@ -3,7 +3,6 @@ package acr.browser.lightning.adblock.util
 import acr.browser.lightning.adblock.util.hash.HashingAlgorithm
 import acr.browser.lightning.adblock.util.integer.lowerHalf
 import acr.browser.lightning.adblock.util.integer.upperHalf
-import java.io.Serializable
 import java.util.BitSet
 import kotlin.math.ln
 import kotlin.math.roundToInt
@@ -28,26 +27,49 @@ import kotlin.math.roundToInt
  * positive rates, the bloom filter will not perform optimally, since the maximum number of bits is
  * limited to [Int.MAX_VALUE].
  *
- * @param numberOfElements The number of elements that will be added to this filter.
- * @param falsePositiveRate The acceptable rate of false positives.
+ * @param numberOfHashes The number of hash functions, k.
+ * @param numberOfBits The number of bits, m, which must be a multiple of [Long.SIZE_BITS].
+ * @param words The contents of the bit array, or an empty array for an empty filter.
  * @param hashingAlgorithm The algorithm that should be used to hash the values.
  */
-class DefaultBloomFilter<T>(
-    numberOfElements: Int,
-    falsePositiveRate: Double,
+class DefaultBloomFilter<T> internal constructor(
+    internal val numberOfHashes: Int,
+    internal val numberOfBits: Int,
+    words: LongArray,
     private val hashingAlgorithm: HashingAlgorithm<T>
-) : BloomFilter<T>, Serializable {
+) : BloomFilter<T> {
 
-    private val numberOfBits: Int =
-        (-numberOfElements * ln(falsePositiveRate) / (ln(2.0) * ln(2.0)))
-            .roundToInt()
-            .coerceAtLeast(1)
+    /**
+     * Create an empty bloom filter sized for the expected number of elements.
+     *
+     * @param numberOfElements The number of elements that will be added to this filter.
+     * @param falsePositiveRate The acceptable rate of false positives.
+     * @param hashingAlgorithm The algorithm that should be used to hash the values.
+     */
+    constructor(
+        numberOfElements: Int,
+        falsePositiveRate: Double,
+        hashingAlgorithm: HashingAlgorithm<T>
+    ) : this(
+        numberOfHashes = optimalNumberOfHashes(
+            numberOfElements,
+            optimalNumberOfBits(numberOfElements, falsePositiveRate)
+        ),
+        numberOfBits = optimalNumberOfBits(numberOfElements, falsePositiveRate).roundUpToWord(),
+        words = LongArray(0),
+        hashingAlgorithm = hashingAlgorithm
+    )
 
-    private val numberOfHashes: Int = (numberOfBits * ln(2.0) / numberOfElements)
-        .roundToInt()
-        .coerceAtLeast(1)
+    private val bitSet: BitSet = if (words.isEmpty()) {
+        BitSet(numberOfBits)
+    } else {
+        BitSet.valueOf(words)
+    }
 
-    private val bitSet: BitSet = BitSet(numberOfBits)
+    /**
+     * Returns the contents of the bit array, padded to [numberOfBits].
+     */
+    internal fun words(): LongArray = bitSet.toLongArray().copyOf(numberOfBits / Long.SIZE_BITS)
 
     override fun put(item: T) {
         val hash = hashingAlgorithm.hash(item)
@@ -55,7 +77,7 @@ class DefaultBloomFilter<T>(
         val lowerHalf = hash.lowerHalf()
         val upperHalf = hash.upperHalf()
 
-        val bitSize = bitSet.size()
+        val bitSize = numberOfBits
         var combinedHash = lowerHalf
         for (i in 0 until numberOfHashes) {
             bitSet.set((combinedHash and Int.MAX_VALUE) % bitSize)
@@ -67,13 +89,13 @@ class DefaultBloomFilter<T>(
         collection.forEach(::put)
     }
 
-    override fun mightContain(item: T): Boolean {
-        val hash = hashingAlgorithm.hash(item)
+    override fun mightContain(item: T): Boolean = mightContainHash(hashingAlgorithm.hash(item))
 
+    override fun mightContainHash(hash: Int): Boolean {
         val lowerHalf = hash.lowerHalf()
         val upperHalf = hash.upperHalf()
 
-        val bitSize = bitSet.size()
+        val bitSize = numberOfBits
         var combinedHash = lowerHalf
         for (i in 0 until numberOfHashes) {
             if (!bitSet.get((combinedHash and Int.MAX_VALUE) % bitSize)) {
@@ -84,5 +106,23 @@ class DefaultBloomFilter<T>(
         return true
     }
 
+    companion object {
+        private fun optimalNumberOfBits(numberOfElements: Int, falsePositiveRate: Double): Int =
+            (-numberOfElements * ln(falsePositiveRate) / (ln(2.0) * ln(2.0)))
+                .roundToInt()
+                .coerceAtLeast(1)
+
+        private fun optimalNumberOfHashes(numberOfElements: Int, numberOfBits: Int): Int =
+            (numberOfBits * ln(2.0) / numberOfElements)
+                .roundToInt()
+                .coerceAtLeast(1)
+
+        /**
+         * Round the number of bits up to a whole number of [Long] words, matching the size of the
+         * backing [BitSet].
+         */
+        private fun Int.roundUpToWord(): Int =
+            ((this + Long.SIZE_BITS - 1) / Long.SIZE_BITS) * Long.SIZE_BITS
+    }
 
 }
@@ -13,4 +13,6 @@ class DelegatingBloomFilter<T>(var delegate: BloomFilter<T>? = null) : BloomFilt
 
     override fun mightContain(item: T): Boolean = delegate?.mightContain(item) ?: false
 
+    override fun mightContainHash(hash: Int): Boolean = delegate?.mightContainHash(hash) ?: false
+
 }
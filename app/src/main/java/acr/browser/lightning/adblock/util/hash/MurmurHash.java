@@ -91,7 +91,9 @@ public final class MurmurHash {
     }
 
     /**
-     * Generates 32 bit hash from a substring.
+     * Generates 32 bit hash from a substring. The result is equal to hashing the substring with
+     * {@link #hash32(String)}, but if the substring only contains ASCII characters, no
+     * intermediate string or byte array is allocated.
      *
      * @param text   string to hash
      * @param from   starting index
@@ -99,7 +101,44 @@ public final class MurmurHash {
      * @return 32 bit hash of the given string
      */
     public static int hash32(final String text, int from, int length) {
-        return hash32(text.substring(from, from + length));
+        for (int i = from; i < from + length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                return hash32(text.substring(from, from + length));
+            }
+        }
+
+        final int m = 0x5bd1e995;
+        final int r = 24;
+        int h = 0x9747b28c ^ length;
+        int length4 = length / 4;
+
+        for (int i = 0; i < length4; i++) {
+            final int i4 = from + i * 4;
+            int k = (text.charAt(i4 + 0) & 0xff) + ((text.charAt(i4 + 1) & 0xff) << 8)
+                + ((text.charAt(i4 + 2) & 0xff) << 16) + ((text.charAt(i4 + 3) & 0xff) << 24);
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h *= m;
+            h ^= k;
+        }
+
+        final int tail = from + (length & ~3);
+        switch (length % 4) {
+            case 3:
+                h ^= (text.charAt(tail + 2) & 0xff) << 16;
+            case 2:
+                h ^= (text.charAt(tail + 1) & 0xff) << 8;
+            case 1:
+                h ^= (text.charAt(tail) & 0xff);
+                h *= m;
+        }
+
+        h ^= h >>> 13;
+        h *= m;
+        h ^= h >>> 15;
+
+        return h;
     }
 
     /**
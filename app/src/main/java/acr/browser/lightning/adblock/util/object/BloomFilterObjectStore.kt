@@ -0,0 +1,155 @@
+package acr.browser.lightning.adblock.util.`object`
+
+import acr.browser.lightning.adblock.util.BlockedBloomFilter
+import acr.browser.lightning.adblock.util.hash.HashingAlgorithm
+import acr.browser.lightning.extensions.safeUse
+import android.app.Application
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.zip.CRC32
+
+/**
+ * An [ObjectStore] that stores a [BlockedBloomFilter] in a compact, versioned binary format. The
+ * filter is restored with a single bulk read through a [FileChannel] and without reflection.
+ *
+ * The binary format is as follows:
+ * ```
+ * int     magic number
+ * int     format version
+ * int     k = number of hashes
+ * int     m = number of bits, a multiple of the block size of the filter
+ * long    CRC32 checksum of the bit array
+ * long[]  m / 64 words of the bit array
+ * ```
+ * A stored file that is truncated, in an unknown format, or that fails its checksum is deleted and
+ * treated as absent. Version 1 stored an unblocked filter, whose bits cannot be read as blocks, so
+ * it is discarded and the filter is rebuilt from the hosts.
+ *
+ * @param application Application used to construct files.
+ * @param hashingAlgorithm The hashing algorithm used to construct cache file names.
+ * @param bloomFilterHashingAlgorithm The hashing algorithm used by the stored bloom filters, which
+ * is not itself stored.
+ */
+class BloomFilterObjectStore<T>(
+    private val application: Application,
+    private val hashingAlgorithm: HashingAlgorithm<String>,
+    private val bloomFilterHashingAlgorithm: HashingAlgorithm<T>
+) : ObjectStore<BlockedBloomFilter<T>> {
+
+    /**
+     * Create the file in which to store the object, using the cache directory.
+     */
+    private fun createStorageFile(key: String) = File(
+        application.cacheDir,
+        "bloom-filter-${hashingAlgorithm.hash(key)}"
+    )
+
+    override fun retrieve(key: String): BlockedBloomFilter<T>? {
+        val storageFile = createStorageFile(key)
+        if (!storageFile.exists()) {
+            return null
+        }
+
+        val bloomFilter = FileInputStream(storageFile).channel.safeUse {
+            decode(it.readFully())
+        }
+        if (bloomFilter == null) {
+            storageFile.delete()
+        }
+
+        return bloomFilter
+    }
+
+    override fun store(key: String, value: BlockedBloomFilter<T>) {
+        val words = value.words()
+        val bitsLength = words.size * Long.SIZE_BYTES
+        val buffer = ByteBuffer.allocate(HEADER_SIZE + bitsLength)
+        buffer.position(HEADER_SIZE)
+        buffer.asLongBuffer().put(words)
+        buffer.putInt(MAGIC_POSITION, MAGIC)
+            .putInt(VERSION_POSITION, VERSION)
+            .putInt(HASHES_POSITION, value.numberOfHashes)
+            .putInt(BITS_POSITION, value.numberOfBits)
+            .putLong(CHECKSUM_POSITION, buffer.array().checksum(HEADER_SIZE, bitsLength))
+        buffer.position(0)
+
+        // Write to a temporary file first so that a partial write never replaces a valid filter.
+        val storageFile = createStorageFile(key)
+        val temporaryFile = File(storageFile.parentFile, "${storageFile.name}.tmp")
+        FileOutputStream(temporaryFile, false).channel.safeUse {
+            while (buffer.hasRemaining()) {
+                it.write(buffer)
+            }
+        }
+        temporaryFile.renameTo(storageFile)
+    }
+
+    override fun clear(key: String) {
+        val storageFile = createStorageFile(key)
+        storageFile.delete()
+    }
+
+    /**
+     * Read the entire contents of the channel into a heap [ByteBuffer], whose position is left at
+     * the number of bytes that were read.
+     */
+    private fun FileChannel.readFully(): ByteBuffer {
+        val buffer = ByteBuffer.allocate(size().toInt())
+        while (buffer.hasRemaining()) {
+            if (read(buffer) < 0) {
+                break
+            }
+        }
+        return buffer
+    }
+
+    private fun decode(buffer: ByteBuffer): BlockedBloomFilter<T>? {
+        if (buffer.position() < HEADER_SIZE
+            || buffer.getInt(MAGIC_POSITION) != MAGIC
+            || buffer.getInt(VERSION_POSITION) != VERSION
+        ) {
+            return null
+        }
+
+        val numberOfHashes = buffer.getInt(HASHES_POSITION)
+        val numberOfBits = buffer.getInt(BITS_POSITION)
+        val numberOfWords = numberOfBits / Long.SIZE_BITS
+        val bitsLength = numberOfWords * Long.SIZE_BYTES
+        if (numberOfHashes < 1
+            || numberOfBits < BlockedBloomFilter.BLOCK_BITS
+            || numberOfBits % BlockedBloomFilter.BLOCK_BITS != 0
+            || buffer.position() != HEADER_SIZE + bitsLength
+            || buffer.getLong(CHECKSUM_POSITION) != buffer.array().checksum(HEADER_SIZE, bitsLength)
+        ) {
+            return null
+        }
+
+        val words = LongArray(numberOfWords)
+        buffer.position(HEADER_SIZE)
+        buffer.asLongBuffer().get(words)
+
+        return BlockedBloomFilter(
+            numberOfHashes = numberOfHashes,
+            words = words,
+            hashingAlgorithm = bloomFilterHashingAlgorithm
+        )
+    }
+
+    private fun ByteArray.checksum(offset: Int, length: Int): Long =
+        CRC32().apply { update(this@checksum, offset, length) }.value
+
+    companion object {
+        private const val MAGIC = 0x424C4F4D
+        private const val VERSION = 2
+
+        private const val MAGIC_POSITION = 0
+        private const val VERSION_POSITION = 4
+        private const val HASHES_POSITION = 8
+        private const val BITS_POSITION = 12
+        private const val CHECKSUM_POSITION = 16
+        private const val HEADER_SIZE = 24
+    }
+}
@@ -1,11 +1,9 @@
 package acr.browser.lightning.adblock.util.`object`
 
-import java.io.Serializable
-
 /**
  * A store of objects matched to keys.
  */
-interface ObjectStore<T> where T : Any, T : Serializable {
+interface ObjectStore<T : Any> {
 
     /**
      * Retrieve the value held for [key] or `null` if it is absent.
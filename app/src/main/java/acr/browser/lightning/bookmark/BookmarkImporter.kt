@@ -10,8 +10,10 @@ import java.io.InputStream
 interface BookmarkImporter {
 
     /**
-     * Synchronously converts an [InputStream] to a [List] of [Bookmark.Entry].
+     * Converts an [InputStream] to a [Sequence] of [Bookmark.Entry]. The bookmarks may be read
+     * from the stream as the sequence is iterated, so the stream must be kept open until the
+     * sequence has been consumed, and the sequence can only be iterated once.
      */
-    fun importBookmarks(inputStream: InputStream): List<Bookmark.Entry>
+    fun importBookmarks(inputStream: InputStream): Sequence<Bookmark.Entry>
 
 }
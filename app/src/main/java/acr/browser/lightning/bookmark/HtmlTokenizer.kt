@@ -0,0 +1,192 @@
+package acr.browser.lightning.bookmark
+
+import org.jsoup.parser.Parser
+import java.io.Reader
+
+/**
+ * A tokenizer that reads the tags and the text of an HTML document one token at a time from a
+ * [Reader], without building a DOM, so that the memory it uses does not depend on the size of the
+ * document. Comments and declarations are skipped, and entities are only decoded when the text or
+ * an attribute is requested.
+ */
+class HtmlTokenizer(private val reader: Reader) {
+
+    private val buffer = CharArray(BUFFER_SIZE)
+    private var position = 0
+    private var limit = 0
+
+    private val token = StringBuilder()
+    private val rawAttributes = StringBuilder()
+
+    /**
+     * The type of the current token, or null if the end of the document has been reached.
+     */
+    var type: Type? = null
+        private set
+
+    /**
+     * The upper case name of the current tag, or an empty string if the current token is text.
+     */
+    var tagName: String = ""
+        private set
+
+    /**
+     * Advance to the next token of the document.
+     *
+     * @return the type of the next token, or null if the end of the document has been reached.
+     */
+    fun next(): Type? {
+        token.setLength(0)
+        rawAttributes.setLength(0)
+        tagName = ""
+        while (true) {
+            val char = read()
+            if (char < 0) {
+                type = null
+                return null
+            }
+            if (char != '<'.toInt()) {
+                return readText(char)
+            }
+            val tagStart = read()
+            when {
+                tagStart == '!'.toInt() || tagStart == '?'.toInt() -> skipDeclaration()
+                tagStart == '/'.toInt() -> return readTag(read(), Type.END_TAG)
+                tagStart >= 0 && Character.isLetter(tagStart) ->
+                    return readTag(tagStart, Type.START_TAG)
+                else -> {
+                    // A '<' that does not start a tag is text.
+                    token.append('<')
+                    if (tagStart >= 0) {
+                        position--
+                    }
+                    return readText(read())
+                }
+            }
+        }
+    }
+
+    /**
+     * The decoded text of the current text token, with the runs of whitespace collapsed into
+     * single spaces.
+     */
+    fun text(): String = Parser.unescapeEntities(token.toString(), false)
+
+    /**
+     * Returns the decoded value of the attribute of the current start tag with the [name], case
+     * insensitive, or null if the tag does not have the attribute.
+     */
+    fun attribute(name: String): String? = ATTRIBUTE_REGEX.findAll(rawAttributes)
+        .firstOrNull { it.groupValues[1].equals(name, ignoreCase = true) }
+        ?.groups
+        ?.let { groups -> (groups[2] ?: groups[3] ?: groups[4])?.value ?: "" }
+        ?.let { Parser.unescapeEntities(it, true) }
+
+    private fun readText(firstChar: Int): Type {
+        var char = firstChar
+        var lastWasWhitespace = false
+        while (char >= 0 && char != '<'.toInt()) {
+            if (Character.isWhitespace(char)) {
+                lastWasWhitespace = true
+            } else {
+                if (lastWasWhitespace && token.isNotEmpty()) {
+                    token.append(' ')
+                }
+                lastWasWhitespace = false
+                token.append(char.toChar())
+            }
+            char = read()
+        }
+        if (char >= 0) {
+            // The '<' that starts the next tag is read again by the next call.
+            position--
+        }
+        type = Type.TEXT
+        return Type.TEXT
+    }
+
+    private fun readTag(firstChar: Int, tagType: Type): Type {
+        var char = firstChar
+        while (char >= 0 && char != '>'.toInt() && char != '/'.toInt() &&
+            !Character.isWhitespace(char)
+        ) {
+            token.append(char.toChar().toUpperCase())
+            char = read()
+        }
+        var quote = -1
+        while (char >= 0 && (char != '>'.toInt() || quote >= 0)) {
+            rawAttributes.append(char.toChar())
+            if (quote >= 0) {
+                if (char == quote) {
+                    quote = -1
+                }
+            } else if (char == '"'.toInt() || char == '\''.toInt()) {
+                quote = char
+            }
+            char = read()
+        }
+        tagName = token.toString()
+        type = tagType
+        return tagType
+    }
+
+    /**
+     * Skip a comment, a doctype or another declaration, whose start `<!` or `<?` has been read.
+     */
+    private fun skipDeclaration() {
+        var char = read()
+        if (char == '-'.toInt()) {
+            char = read()
+            if (char == '-'.toInt()) {
+                skipComment()
+                return
+            }
+        }
+        while (char >= 0 && char != '>'.toInt()) {
+            char = read()
+        }
+    }
+
+    /**
+     * Skip the rest of a comment, up to and including the closing `-->`.
+     */
+    private fun skipComment() {
+        var dashes = 0
+        var char = read()
+        while (char >= 0 && !(char == '>'.toInt() && dashes >= 2)) {
+            dashes = if (char == '-'.toInt()) dashes + 1 else 0
+            char = read()
+        }
+    }
+
+    private fun read(): Int {
+        if (position == limit) {
+            val count = reader.read(buffer)
+            if (count <= 0) {
+                return -1
+            }
+            position = 0
+            limit = count
+        }
+        return buffer[position++].toInt()
+    }
+
+    /**
+     * The types of tokens in an HTML document.
+     */
+    enum class Type {
+        START_TAG,
+        END_TAG,
+        TEXT
+    }
+
+    companion object {
+        private const val BUFFER_SIZE = 8192
+
+        /**
+         * An attribute of a tag, with a double quoted, single quoted, unquoted or missing value.
+         */
+        private val ATTRIBUTE_REGEX =
+            Regex("([^\\s=/>\"']+)(?:\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+)))?")
+    }
+}
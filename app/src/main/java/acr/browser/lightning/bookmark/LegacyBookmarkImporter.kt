@@ -10,8 +10,8 @@ import javax.inject.Inject
  */
 class LegacyBookmarkImporter @Inject constructor() : BookmarkImporter {
 
-    override fun importBookmarks(inputStream: InputStream): List<Bookmark.Entry> {
-        return BookmarkExporter.importBookmarksFromFileStream(inputStream)
+    override fun importBookmarks(inputStream: InputStream): Sequence<Bookmark.Entry> {
+        return BookmarkExporter.importBookmarksFromFileStream(inputStream).asSequence()
     }
 
 }
@@ -1,60 +1,100 @@
 package acr.browser.lightning.bookmark
 
-import acr.browser.lightning.constant.UTF8
 import acr.browser.lightning.database.Bookmark
 import acr.browser.lightning.database.asFolder
-import org.jsoup.Jsoup
-import org.jsoup.nodes.Element
 import java.io.InputStream
 import javax.inject.Inject
 
 /**
  * An importer that supports the Netscape Bookmark File Format.
  *
+ * The file is read by a [HtmlTokenizer] as the bookmarks are consumed, so only the names of the
+ * open folders and the bookmark being read are held in memory, however large the file is.
+ *
  * See https://msdn.microsoft.com/en-us/ie/aa753582(v=vs.94)
  */
 class NetscapeBookmarkFormatImporter @Inject constructor() : BookmarkImporter {
 
-    override fun importBookmarks(inputStream: InputStream): List<Bookmark.Entry> {
-        val document = Jsoup.parse(inputStream, UTF8, "")
-
-        val rootList = document.body().children().first { it.isTag(LIST_TAG) }
+    override fun importBookmarks(inputStream: InputStream): Sequence<Bookmark.Entry> = sequence {
+        val tokenizer = HtmlTokenizer(inputStream.bufferedReader(Charsets.UTF_8))
 
-        return rootList.processFolder(ROOT_FOLDER_NAME)
-    }
+        // The folders of the open lists, the first list in the file is the root folder.
+        val folders = ArrayList<String>()
+        // The name of the last folder heading, whose list has not been opened yet.
+        var folderName: String? = null
+        // The URL of the bookmark whose title is being read.
+        var bookmarkUrl: String? = null
+        var isReadingText = false
+        val text = StringBuilder()
 
-    /**
-     * @return The [List] of [Bookmark.Entry] held by [Element] with the provided [folderName].
-     */
-    private fun Element.processFolder(folderName: String): List<Bookmark.Entry> {
-        return children()
-            .filter { it.isTag(ITEM_TAG) }
-            .flatMap {
-                val immediateChild = it.child(0)
-                when {
-                    immediateChild.isTag(FOLDER_TAG) ->
-                        immediateChild.nextElementSibling()
-                            .processFolder(computeFolderName(folderName, immediateChild.text()))
-                    immediateChild.isTag(BOOKMARK_TAG) ->
-                        listOf(
-                            Bookmark.Entry(
-                                url = immediateChild.attr(HREF),
-                                title = immediateChild.text(),
-                                position = 0,
-                                folder = folderName.asFolder()
-                            )
-                        )
-                    else -> emptyList()
+        loop@ while (true) {
+            val type = tokenizer.next() ?: break@loop
+            if (type == HtmlTokenizer.Type.TEXT) {
+                val words = tokenizer.text()
+                if (isReadingText && words.isNotEmpty()) {
+                    if (text.isNotEmpty()) {
+                        text.append(' ')
+                    }
+                    text.append(words)
                 }
+                continue@loop
             }
-    }
 
-    /**
-     * @return True if the element's tag name matches the [tagName], case insentitive, false
-     * otherwise.
-     */
-    private fun Element.isTag(tagName: String): Boolean {
-        return tagName().equals(tagName, ignoreCase = true)
+            val isStartTag = type == HtmlTokenizer.Type.START_TAG
+            val tagName = tokenizer.tagName
+            val url = bookmarkUrl
+            // The title of a bookmark ends with its link, or with the item or list if the link is
+            // not closed.
+            val endsBookmark = tagName == BOOKMARK_TAG || tagName == LIST_TAG ||
+                tagName == ITEM_TAG && isStartTag
+            if (url != null && endsBookmark) {
+                yield(
+                    Bookmark.Entry(
+                        url = url,
+                        title = text.toString(),
+                        position = 0,
+                        folder = folders.last().asFolder()
+                    )
+                )
+                bookmarkUrl = null
+                isReadingText = false
+            }
+
+            when (tagName) {
+                LIST_TAG -> if (isStartTag) {
+                    val parentFolder = folders.lastOrNull()
+                    val name = folderName
+                    folders += when {
+                        parentFolder == null -> ROOT_FOLDER_NAME
+                        name != null -> computeFolderName(parentFolder, name)
+                        else -> parentFolder
+                    }
+                    folderName = null
+                } else if (folders.isNotEmpty()) {
+                    folders.removeAt(folders.lastIndex)
+                    if (folders.isEmpty()) {
+                        // Only the bookmarks in the root list are imported.
+                        break@loop
+                    }
+                }
+                FOLDER_TAG -> if (folders.isNotEmpty()) {
+                    if (isStartTag) {
+                        text.setLength(0)
+                    } else {
+                        folderName = text.toString()
+                    }
+                    isReadingText = isStartTag
+                }
+                BOOKMARK_TAG -> if (isStartTag && folders.isNotEmpty()) {
+                    bookmarkUrl = tokenizer.attribute(HREF) ?: ""
+                    text.setLength(0)
+                    isReadingText = true
+                }
+                ITEM_TAG -> if (isStartTag) {
+                    folderName = null
+                }
+            }
+        }
     }
 
     /**
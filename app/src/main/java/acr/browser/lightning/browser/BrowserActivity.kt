@@ -25,9 +25,11 @@ import acr.browser.lightning.databinding.BrowserActivityBinding
 import acr.browser.lightning.browser.di.injector
 import acr.browser.lightning.browser.tab.DesktopTabRecyclerViewAdapter
 import acr.browser.lightning.browser.tab.DrawerTabRecyclerViewAdapter
+import acr.browser.lightning.browser.tab.TabHibernationManager
 import acr.browser.lightning.browser.tab.TabPager
 import acr.browser.lightning.browser.tab.TabViewHolder
 import acr.browser.lightning.browser.tab.TabViewState
+import acr.browser.lightning.browser.tab.WebViewFactory
 import acr.browser.lightning.dialog.BrowserDialog
 import acr.browser.lightning.dialog.DialogItem
 import acr.browser.lightning.dialog.LightningDialogBuilder
@@ -35,6 +37,7 @@ import acr.browser.lightning.search.SuggestionsAdapter
 import acr.browser.lightning.ssl.createSslDrawableForState
 import acr.browser.lightning.utils.ProxyUtils
 import acr.browser.lightning.utils.value
+import android.content.ComponentCallbacks2
 import android.content.Intent
 import android.content.pm.ActivityInfo
 import android.graphics.drawable.ColorDrawable
@@ -111,6 +114,12 @@ abstract class BrowserActivity : ThemableBrowserActivity() {
     @Inject
     internal lateinit var tabPager: TabPager
 
+    @Inject
+    internal lateinit var tabHibernationManager: TabHibernationManager
+
+    @Inject
+    internal lateinit var webViewFactory: WebViewFactory
+
     @Inject
     internal lateinit var intentExtractor: IntentExtractor
 
@@ -303,6 +312,7 @@ abstract class BrowserActivity : ThemableBrowserActivity() {
     override fun onDestroy() {
         super.onDestroy()
         presenter.onViewDetached()
+        webViewFactory.releasePool()
     }
 
     override fun onPause() {
@@ -310,6 +320,16 @@ abstract class BrowserActivity : ThemableBrowserActivity() {
         presenter.onViewHidden()
     }
 
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        tabHibernationManager.onTrimMemory(level)
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW &&
+            level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+        ) {
+            webViewFactory.clearPool()
+        }
+    }
+
     override fun onBackPressed() {
         presenter.onNavigateBack()
     }
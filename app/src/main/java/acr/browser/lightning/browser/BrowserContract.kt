@@ -204,9 +204,11 @@ interface BrowserContract {
 
         /**
          * Initialize all tabs that were previously frozen when the browser was last open, and
-         * initialize any tabs that should be opened from the initial browser action.
+         * initialize any tabs that should be opened from the initial browser action. Emits the tabs
+         * that should be selected as they are initialized, which are the tab that was selected when
+         * the browser was last open, followed by the tab opened from the initial browser action.
          */
-        fun initializeTabs(): Maybe<List<TabModel>>
+        fun initializeTabs(): Observable<TabModel>
 
         /**
          * Notifies the model that all tabs need to be frozen before the browser shuts down.
@@ -36,6 +36,7 @@ import acr.browser.lightning.database.history.HistoryRepository
 import acr.browser.lightning.html.bookmark.BookmarkPageFactory
 import acr.browser.lightning.html.history.HistoryPageFactory
 import acr.browser.lightning.search.SearchEngineProvider
+import acr.browser.lightning.search.index.FrecencyIndex
 import acr.browser.lightning.ssl.SslState
 import acr.browser.lightning.utils.Option
 import acr.browser.lightning.utils.QUERY_PLACE_HOLDER
@@ -75,6 +76,7 @@ class BrowserPresenter @Inject constructor(
     @MainScheduler private val mainScheduler: Scheduler,
     @DatabaseScheduler private val databaseScheduler: Scheduler,
     private val historyRecord: HistoryRecord,
+    private val frecencyIndex: FrecencyIndex,
     private val bookmarkPageFactory: BookmarkPageFactory,
     private val homePageInitializer: HomePageInitializer,
     private val historyPageInitializer: HistoryPageInitializer,
@@ -115,6 +117,10 @@ class BrowserPresenter @Inject constructor(
     private var pendingAction: BrowserContract.Action.LoadUrl? = null
     private var isCustomViewShowing = false
 
+    // The URL that each tab last recorded a visit to, so that a page load counts as one visit no
+    // matter how often its title or favicon changes.
+    private val visitedUrls = mutableMapOf<Int, String>()
+
     private val compositeDisposable = CompositeDisposable()
     private val allTabsDisposable = CompositeDisposable()
     private var tabDisposable: CompositeDisposable = CompositeDisposable()
@@ -142,6 +148,7 @@ class BrowserPresenter @Inject constructor(
                 this.view?.updateTabs(list.map { it.asViewState() })
 
                 allTabsDisposable.clear()
+                visitedUrls.keys.retainAll(list.mapTo(HashSet(), TabModel::id))
                 list.subscribeToUpdates(allTabsDisposable)
 
                 tabCountNotifier.notifyTabCountChange(list.size)
@@ -149,9 +156,9 @@ class BrowserPresenter @Inject constructor(
 
         compositeDisposable += model.initializeTabs()
             .observeOn(mainScheduler)
-            .switchIfEmpty(model.createTab(homePageInitializer).map(::listOf))
-            .subscribe { list ->
-                selectTab(model.selectTab(list.last().id))
+            .switchIfEmpty(model.createTab(homePageInitializer).toObservable())
+            .subscribe { tab ->
+                selectTab(model.selectTab(tab.id))
             }
     }
 
@@ -160,6 +167,7 @@ class BrowserPresenter @Inject constructor(
      */
     fun onViewDetached() {
         view = null
+        historyRecord.flush()
 
         compositeDisposable.dispose()
         tabDisposable.dispose()
@@ -170,6 +178,7 @@ class BrowserPresenter @Inject constructor(
      */
     fun onViewHidden() {
         model.freeze()
+        historyRecord.flush()
         tabIdOpenedFromAction = -1
     }
 
@@ -310,7 +319,11 @@ class BrowserPresenter @Inject constructor(
                     })
 
                     tabModel.url.takeIf { !it.isSpecialUrl() && it.isNotBlank() }?.let {
-                        historyRecord.recordVisit(title, it)
+                        if (visitedUrls.put(tabModel.id, it) != it) {
+                            historyRecord.recordVisit(title, it)
+                        } else {
+                            historyRecord.recordTitle(title, it)
+                        }
                     }
                 }
         }
@@ -1061,6 +1074,7 @@ class BrowserPresenter @Inject constructor(
             BrowserContract.HistoryOptionEvent.COPY_LINK -> navigator.copyPageLink(historyEntry.url)
             BrowserContract.HistoryOptionEvent.REMOVE ->
                 compositeDisposable += historyRepository.deleteHistoryEntry(historyEntry.url)
+                    .doOnComplete { frecencyIndex.remove(historyEntry.url) }
                     .subscribeOn(databaseScheduler)
                     .observeOn(mainScheduler)
                     .subscribeBy {
@@ -4,6 +4,7 @@ import acr.browser.lightning.browser.di.DatabaseScheduler
 import acr.browser.lightning.database.history.HistoryDatabase
 import acr.browser.lightning.log.Logger
 import acr.browser.lightning.preference.UserPreferences
+import acr.browser.lightning.search.index.FrecencyIndex
 import acr.browser.lightning.utils.WebUtils
 import android.app.Activity
 import io.reactivex.Scheduler
@@ -16,6 +17,7 @@ class NormalExitCleanup @Inject constructor(
     private val userPreferences: UserPreferences,
     private val logger: Logger,
     private val historyDatabase: HistoryDatabase,
+    private val frecencyIndex: FrecencyIndex,
     @DatabaseScheduler private val databaseScheduler: Scheduler,
     private val activity: Activity
 ) : ExitCleanup {
@@ -25,7 +27,7 @@ class NormalExitCleanup @Inject constructor(
             logger.log(TAG, "Cache Cleared")
         }
         if (userPreferences.clearHistoryExitEnabled) {
-            WebUtils.clearHistory(activity, historyDatabase, databaseScheduler)
+            WebUtils.clearHistory(activity, historyDatabase, frecencyIndex, databaseScheduler)
             logger.log(TAG, "History Cleared")
         }
         if (userPreferences.clearCookiesExitEnabled) {
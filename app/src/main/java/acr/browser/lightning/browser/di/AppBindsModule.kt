@@ -6,8 +6,8 @@ import acr.browser.lightning.adblock.source.AssetsHostsDataSource
 import acr.browser.lightning.adblock.source.HostsDataSource
 import acr.browser.lightning.adblock.source.HostsDataSourceProvider
 import acr.browser.lightning.adblock.source.PreferencesHostsDataSourceProvider
-import acr.browser.lightning.database.adblock.HostsDatabase
 import acr.browser.lightning.database.adblock.HostsRepository
+import acr.browser.lightning.database.adblock.MappedHostsRepository
 import acr.browser.lightning.database.allowlist.AdBlockAllowListDatabase
 import acr.browser.lightning.database.allowlist.AdBlockAllowListRepository
 import acr.browser.lightning.database.bookmark.BookmarkDatabase
@@ -49,7 +49,7 @@ interface AppBindsModule {
     fun bindsHostsDataSource(assetsHostsDataSource: AssetsHostsDataSource): HostsDataSource
 
     @Binds
-    fun bindsHostsRepository(hostsDatabase: HostsDatabase): HostsRepository
+    fun bindsHostsRepository(mappedHostsRepository: MappedHostsRepository): HostsRepository
 
     @Binds
     fun bindsHostsDataSourceProvider(preferencesHostsDataSourceProvider: PreferencesHostsDataSourceProvider): HostsDataSourceProvider
@@ -6,6 +6,7 @@ import acr.browser.lightning.device.BuildInfo
 import acr.browser.lightning.device.BuildType
 import acr.browser.lightning.html.ListPageReader
 import acr.browser.lightning.html.bookmark.BookmarkPageReader
+import acr.browser.lightning.html.history.HistoryPageReader
 import acr.browser.lightning.html.homepage.HomePageReader
 import acr.browser.lightning.js.InvertPage
 import acr.browser.lightning.js.TextReflow
@@ -15,6 +16,7 @@ import acr.browser.lightning.log.Logger
 import acr.browser.lightning.log.NoOpLogger
 import acr.browser.lightning.search.suggestions.RequestFactory
 import acr.browser.lightning.utils.FileUtils
+import android.app.ActivityManager
 import android.app.Application
 import android.app.DownloadManager
 import android.app.NotificationManager
@@ -81,6 +83,10 @@ class AppModule {
     @Provides
     fun providesAssetManager(application: Application): AssetManager = application.assets
 
+    @Provides
+    fun providesActivityManager(application: Application) =
+        application.getSystemService<ActivityManager>()!!
+
     @Provides
     fun providesClipboardManager(application: Application) =
         application.getSystemService<ClipboardManager>()!!
@@ -173,13 +179,12 @@ class AppModule {
     @HostsClient
     fun providesHostsHttpClient(application: Application): Single<OkHttpClient> =
         Single.fromCallable {
-            val intervalYear = TimeUnit.DAYS.toSeconds(365)
-            val suggestionsCache = File(application.cacheDir, "hosts_cache")
-
-            return@fromCallable OkHttpClient.Builder()
-                .cache(Cache(suggestionsCache, FileUtils.megabytesToBytes(5)))
-                .addNetworkInterceptor(createInterceptorWithMaxCacheAge(intervalYear))
-                .build()
+            // The hosts are revalidated by the UrlHostsDataSource, caching the responses would
+            // only keep a second copy of the hosts on disk, so the cache that earlier versions
+            // kept is deleted.
+            File(application.cacheDir, "hosts_cache").takeIf(File::exists)
+                ?.deleteRecursively()
+            return@fromCallable OkHttpClient.Builder().build()
         }.cache()
 
     @Provides
@@ -204,6 +209,9 @@ class AppModule {
     @Provides
     fun providesBookmarkPageReader(): BookmarkPageReader = MezzanineGenerator.BookmarkPageReader()
 
+    @Provides
+    fun providesHistoryPageReader(): HistoryPageReader = MezzanineGenerator.HistoryPageReader()
+
     @Provides
     fun providesTextReflow(): TextReflow = MezzanineGenerator.TextReflow()
 
@@ -21,7 +21,10 @@ import acr.browser.lightning.browser.ui.TabConfiguration
 import acr.browser.lightning.browser.ui.UiConfiguration
 import acr.browser.lightning.adblock.AdBlocker
 import acr.browser.lightning.adblock.BloomFilterAdBlocker
+import acr.browser.lightning.adblock.FilterListAdBlocker
 import acr.browser.lightning.adblock.NoOpAdBlocker
+import acr.browser.lightning.adblock.source.HostsSourceType
+import acr.browser.lightning.adblock.source.selectedHostsSource
 import acr.browser.lightning.extensions.drawable
 import acr.browser.lightning.preference.UserPreferences
 import acr.browser.lightning.utils.IntentUtils
@@ -45,11 +48,13 @@ class Browser2Module {
     fun providesAdBlocker(
         userPreferences: UserPreferences,
         bloomFilterAdBlocker: Provider<BloomFilterAdBlocker>,
+        filterListAdBlocker: Provider<FilterListAdBlocker>,
         noOpAdBlocker: NoOpAdBlocker
-    ): AdBlocker = if (userPreferences.adBlockEnabled) {
-        bloomFilterAdBlocker.get()
-    } else {
-        noOpAdBlocker
+    ): AdBlocker = when {
+        !userPreferences.adBlockEnabled -> noOpAdBlocker
+        userPreferences.selectedHostsSource() is HostsSourceType.FilterList ->
+            filterListAdBlocker.get()
+        else -> bloomFilterAdBlocker.get()
     }
 
     // TODO: dont force cast
@@ -1,20 +1,84 @@
 package acr.browser.lightning.browser.history
 
-import acr.browser.lightning.database.history.HistoryRepository
 import acr.browser.lightning.browser.di.DatabaseScheduler
+import acr.browser.lightning.database.HistoryEntry
+import acr.browser.lightning.database.history.HistoryRepository
+import acr.browser.lightning.log.Logger
+import acr.browser.lightning.search.index.FrecencyIndex
 import io.reactivex.Scheduler
+import io.reactivex.disposables.Disposable
+import io.reactivex.rxkotlin.subscribeBy
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 
 /**
- * The default history record that records the history in a permanent data store.
+ * The default history record that records the history in a permanent data store and in the
+ * [FrecencyIndex] used for search suggestions.
+ *
+ * A page load records a visit, followed by a title update every time the title or favicon of the
+ * tab changes, so visits are written behind: the visits and title updates of each URL within
+ * [COALESCE_WINDOW_MILLISECONDS] are coalesced into a single entry with the latest title that
+ * counts only the visits, and the coalesced entries are written in one transaction when the window
+ * ends or when the history is [flush]ed.
  */
 class DefaultHistoryRecord @Inject constructor(
     private val historyRepository: HistoryRepository,
-    @DatabaseScheduler private val databaseScheduler: Scheduler
+    private val frecencyIndex: FrecencyIndex,
+    @DatabaseScheduler private val databaseScheduler: Scheduler,
+    private val logger: Logger
 ) : HistoryRecord {
-    override fun recordVisit(title: String, url: String) {
-        historyRepository.visitHistoryEntry(url, title)
+
+    private val lock = Any()
+    private var pendingVisits = LinkedHashMap<String, HistoryEntry>()
+    private var scheduledFlush: Disposable? = null
+
+    override fun recordVisit(title: String, url: String) = record(title, url, visitCount = 1)
+
+    override fun recordTitle(title: String, url: String) = record(title, url, visitCount = 0)
+
+    private fun record(title: String, url: String, visitCount: Int) {
+        synchronized(lock) {
+            val pendingVisitCount = pendingVisits[url]?.visitCount ?: 0
+            pendingVisits[url] = HistoryEntry(
+                url = url,
+                title = title,
+                visitCount = pendingVisitCount + visitCount
+            )
+            if (scheduledFlush == null) {
+                scheduledFlush = databaseScheduler.scheduleDirect(
+                    {
+                        // The flush is running, so it must not be cancelled by flush().
+                        synchronized(lock) { scheduledFlush = null }
+                        flush()
+                    },
+                    COALESCE_WINDOW_MILLISECONDS,
+                    TimeUnit.MILLISECONDS
+                )
+            }
+        }
+    }
+
+    override fun flush() {
+        val visits = synchronized(lock) {
+            scheduledFlush?.dispose()
+            scheduledFlush = null
+            if (pendingVisits.isEmpty()) {
+                return
+            }
+            pendingVisits.values.toList().also { pendingVisits = LinkedHashMap() }
+        }
+
+        visits.forEach { frecencyIndex.recordVisit(it.url, it.title, it.visitCount) }
+        historyRepository.visitHistoryEntries(visits)
             .subscribeOn(databaseScheduler)
-            .subscribe()
+            .subscribeBy(
+                onComplete = { logger.log(TAG, "Wrote ${visits.size} visited pages") },
+                onError = { logger.log(TAG, "Unable to write visits", it) }
+            )
+    }
+
+    companion object {
+        private const val TAG = "DefaultHistoryRecord"
+        private const val COALESCE_WINDOW_MILLISECONDS = 3000L
     }
 }
@@ -10,4 +10,15 @@ interface HistoryRecord {
      */
     fun recordVisit(title: String, url: String)
 
+    /**
+     * Update the [title] of the last visit to the [url] without counting another visit, when the
+     * title of a page changes after it was visited.
+     */
+    fun recordTitle(title: String, url: String)
+
+    /**
+     * Write any visits that have been recorded but not yet written.
+     */
+    fun flush()
+
 }
@@ -5,4 +5,8 @@ package acr.browser.lightning.browser.history
  */
 object NoOpHistoryRecord : HistoryRecord {
     override fun recordVisit(title: String, url: String) = Unit
+
+    override fun recordTitle(title: String, url: String) = Unit
+
+    override fun flush() = Unit
 }
@@ -1,26 +1,256 @@
 package acr.browser.lightning.browser.tab
 
-import acr.browser.lightning.extensions.popIfNotEmpty
+import acr.browser.lightning.browser.di.DiskScheduler
+import acr.browser.lightning.browser.di.IncognitoMode
+import acr.browser.lightning.extensions.marshall
+import acr.browser.lightning.extensions.unmarshallBundle
+import acr.browser.lightning.extensions.writeBytesAtomically
+import acr.browser.lightning.log.Logger
+import android.app.Application
 import android.os.Bundle
-import java.util.Stack
+import androidx.annotation.WorkerThread
+import io.reactivex.Completable
+import io.reactivex.Maybe
+import io.reactivex.Scheduler
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.util.ArrayDeque
+import java.util.UUID
 import javax.inject.Inject
 
 /**
- * A model that saves [Bundle] and returns the last returned one.
+ * A model of the recently closed tabs, which returns the most recently closed tab first.
+ *
+ * Only the [MAX_CLOSED_TABS] most recently closed tabs are kept, as descriptors in memory and with
+ * their states written to files along with an index of the tabs, so that they can be reopened
+ * after the browser is restarted. The state of the most recently closed tab is also held in memory
+ * so that it is reopened without reading it back. In incognito mode the states of the tabs are
+ * only held in memory.
  */
-class RecentTabModel @Inject constructor() {
+class RecentTabModel @Inject constructor(
+    application: Application,
+    @IncognitoMode private val incognitoMode: Boolean,
+    @DiskScheduler private val diskScheduler: Scheduler,
+    private val logger: Logger
+) {
 
-    private val bundleStack: Stack<Bundle> = Stack()
+    private val directory = File(application.filesDir, DIRECTORY)
+
+    // The closed tabs, most recent first, and the states held in memory by the keys of the tabs.
+    // Both are guarded by the closed tabs.
+    private val closedTabs = ArrayDeque<ClosedTab>()
+    private val states = HashMap<String, Bundle>()
+
+    init {
+        if (!incognitoMode) {
+            onDiskThread(::loadIndex)
+        }
+    }
+
+    /**
+     * Return the last closed tab as a [Bundle], or complete without a tab if there is no
+     * previously closed tab. Removes the tab from the model.
+     */
+    fun lastClosed(): Maybe<Bundle> = Maybe.defer {
+        synchronized(closedTabs) {
+            val closedTab = closedTabs.peekFirst()
+            val state = closedTab?.let { states[it.key] }
+            if (closedTab != null && state != null) {
+                removeLastClosed(closedTab)
+                return@defer Maybe.just(state)
+            }
+        }
+        if (incognitoMode) {
+            return@defer Maybe.empty<Bundle>()
+        }
+        // The index may still be loading and the state may only be on disk, so both are read on
+        // the disk thread after the writes that were queued before them.
+        Maybe.fromCallable<Bundle> {
+            val (closedTab, state) = synchronized(closedTabs) {
+                val closedTab = closedTabs.peekFirst() ?: return@fromCallable null
+                val state = states[closedTab.key]
+                removeLastClosed(closedTab)
+                closedTab to state
+            }
+            state ?: readState(closedTab.key)
+        }.subscribeOn(diskScheduler)
+    }
+
+    /**
+     * Add the tab with the [savedBundle] state, the [title] and the [url] to the model. The next
+     * call to [lastClosed] will return this tab.
+     */
+    fun addClosedTab(savedBundle: Bundle, title: String, url: String) {
+        val closedTab = ClosedTab(UUID.randomUUID().toString(), title, url)
+        val evictedTabs = synchronized(closedTabs) {
+            closedTabs.addFirst(closedTab)
+            if (!incognitoMode) {
+                // Only the most recently closed state is held in memory, the others are on disk.
+                states.clear()
+            }
+            states[closedTab.key] = savedBundle
+            evictOldest()
+        }
+        if (incognitoMode) {
+            return
+        }
+        onDiskThread {
+            stateFile(closedTab.key).writeBytesAtomically(savedBundle.marshall())
+            evictedTabs.forEach { stateFile(it.key).delete() }
+            writeIndex()
+        }
+    }
+
+    /**
+     * Remove all closed tabs from the model and delete their states, completing once they have
+     * been deleted.
+     */
+    fun clear(): Completable {
+        synchronized(closedTabs) {
+            closedTabs.clear()
+            states.clear()
+        }
+        if (incognitoMode) {
+            return Completable.complete()
+        }
+        return diskCompletable { directory.listFiles()?.forEach { it.delete() } }
+    }
 
     /**
-     * Return the last closed tab as a [Bundle] or null if there is no previously opened tab.
-     * Removes the [Bundle] from the queue after returning it.
+     * Remove the [closedTab], which is the most recently closed tab, from the model and read the
+     * state of the next tab into memory so that it can also be reopened without reading it when
+     * it is requested. Must be called while holding the lock of the closed tabs.
      */
-    fun lastClosed(): Bundle? = bundleStack.popIfNotEmpty()
+    private fun removeLastClosed(closedTab: ClosedTab) {
+        closedTabs.removeFirst()
+        states.remove(closedTab.key)
+        if (incognitoMode) {
+            return
+        }
+        onDiskThread {
+            stateFile(closedTab.key).delete()
+            writeIndex()
+            val nextTab = synchronized(closedTabs) {
+                closedTabs.peekFirst()?.takeIf { it.key !in states }
+            } ?: return@onDiskThread
+            val state = readState(nextTab.key) ?: return@onDiskThread
+            synchronized(closedTabs) {
+                if (closedTabs.peekFirst() === nextTab) {
+                    states[nextTab.key] = state
+                }
+            }
+        }
+    }
 
     /**
-     * Add the [savedBundle] to the queue. The next call to [lastClosed] will return this [Bundle].
+     * Remove the tabs beyond the [MAX_CLOSED_TABS] most recently closed ones, and return them.
+     * Must be called while holding the lock of the closed tabs.
      */
-    fun addClosedTab(savedBundle: Bundle) = bundleStack.add(savedBundle)
+    private fun evictOldest(): List<ClosedTab> {
+        val evictedTabs = mutableListOf<ClosedTab>()
+        while (closedTabs.size > MAX_CLOSED_TABS) {
+            val evictedTab = closedTabs.removeLast()
+            states.remove(evictedTab.key)
+            evictedTabs += evictedTab
+        }
+        return evictedTabs
+    }
+
+    @WorkerThread
+    private fun readState(key: String): Bundle? = try {
+        stateFile(key).readBytes().unmarshallBundle()
+    } catch (exception: Exception) {
+        logger.log(TAG, "Unable to read closed tab $key", exception)
+        null
+    }
+
+    @WorkerThread
+    private fun loadIndex() {
+        val indexFile = File(directory, INDEX_FILE)
+        if (!indexFile.exists()) {
+            return
+        }
+        val storedTabs = try {
+            DataInputStream(indexFile.inputStream().buffered()).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    return
+                }
+                List(input.readInt()) {
+                    ClosedTab(key = input.readUTF(), title = input.readUTF(), url = input.readUTF())
+                }
+            }
+        } catch (exception: IOException) {
+            logger.log(TAG, "Unable to read the closed tabs", exception)
+            return
+        }
+        val restoredTabs = storedTabs.filter { stateFile(it.key).exists() }
+        val keptKeys = synchronized(closedTabs) {
+            // Tabs closed while the index was loading are more recent than the stored tabs.
+            closedTabs.addAll(restoredTabs)
+            evictOldest()
+            closedTabs.map(ClosedTab::key).toSet()
+        }
+        // The states of tabs that were evicted, or that were written without being added to the
+        // index before the browser was stopped, are deleted.
+        directory.listFiles { file -> file.name.endsWith(STATE_EXTENSION) }
+            ?.filter { it.name.removeSuffix(STATE_EXTENSION) !in keptKeys }
+            ?.forEach { it.delete() }
+    }
+
+    @WorkerThread
+    private fun writeIndex() {
+        val closedTabs = synchronized(closedTabs) { closedTabs.toList() }
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { output ->
+            output.writeInt(MAGIC)
+            output.writeInt(VERSION)
+            output.writeInt(closedTabs.size)
+            closedTabs.forEach {
+                output.writeUTF(it.key)
+                output.writeUTF(it.title.take(MAX_TITLE_LENGTH))
+                output.writeUTF(it.url.takeIf { url -> url.length <= MAX_URL_LENGTH }.orEmpty())
+            }
+        }
+        File(directory, INDEX_FILE).writeBytesAtomically(bytes.toByteArray())
+    }
+
+    private fun stateFile(key: String) = File(directory, key + STATE_EXTENSION)
+
+    private fun onDiskThread(action: () -> Unit) {
+        diskCompletable(action).subscribe()
+    }
+
+    private fun diskCompletable(action: () -> Unit): Completable = Completable.fromAction(action)
+        .doOnError { logger.log(TAG, "Unable to update the closed tabs", it) }
+        .onErrorComplete()
+        .subscribeOn(diskScheduler)
+
+    /**
+     * A tab that was closed, whose state is stored under the [key].
+     *
+     * @param key The key of the state of the tab.
+     * @param title The title of the tab.
+     * @param url The URL of the tab.
+     */
+    private class ClosedTab(val key: String, val title: String, val url: String)
+
+    companion object {
+        private const val TAG = "RecentTabModel"
+
+        /**
+         * The number of closed tabs that are kept.
+         */
+        const val MAX_CLOSED_TABS = 20
 
+        private const val DIRECTORY = "closed_tabs"
+        private const val INDEX_FILE = "index"
+        private const val STATE_EXTENSION = ".parcel"
+        private const val MAGIC = 0x4C434C54 // "LCLT"
+        private const val VERSION = 1
+        private const val MAX_TITLE_LENGTH = 1024
+        private const val MAX_URL_LENGTH = 8192
+    }
 }
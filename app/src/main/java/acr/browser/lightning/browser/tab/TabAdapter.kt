@@ -20,10 +20,18 @@ import io.reactivex.subjects.PublishSubject
 
 /**
  * Creates the adaptation between a [WebView] and the [TabModel] interface used by the browser.
+ *
+ * The [WebView] is released while the tab is hibernated and a new one is created by the
+ * [webViewFactory] with the same identifier when the tab is used again. The new view is restored
+ * from the state frozen when the tab was hibernated and replaces the released view in the
+ * [tabPager]. A tab restored from a frozen state may be created without a [WebView], in which
+ * case it shows the [initialUrl] and [initialFavicon] until its view is created.
  */
 class TabAdapter(
     tabInitializer: TabInitializer,
-    private val webView: WebView,
+    webView: WebView?,
+    initialUrl: String,
+    initialFavicon: Bitmap?,
     private val requestHeaders: Map<String, String>,
     private val tabWebViewClient: TabWebViewClient,
     private val tabWebChromeClient: TabWebChromeClient,
@@ -31,16 +39,39 @@ class TabAdapter(
     private val defaultUserAgent: String,
     private val defaultTabTitle: String,
     private val iconFreeze: Bitmap,
-    private val proxy: Proxy
+    private val proxy: Proxy,
+    private val webViewFactory: WebViewFactory,
+    private val tabPager: TabPager
 ) : TabModel {
 
     private var latentInitializer: FreezableBundleInitializer? = null
 
+    private var liveWebView: WebView? = webView
+    private var hibernatedUrl: String = initialUrl
+    private var hibernatedFavicon: Bitmap? = initialFavicon
+
+    /**
+     * The view of the tab, which is restored along with its state if the tab is hibernated.
+     */
+    private val webView: WebView
+        get() = liveWebView ?: restoreWebView(loadLatentState = true)
+
     private var findInPageQuery: String? = null
     private var toggleDesktop: Boolean = false
     private val downloadsSubject = PublishSubject.create<PendingDownload>()
 
     init {
+        webView?.let(::attachWebView)
+        if (tabInitializer is FreezableBundleInitializer) {
+            latentInitializer = tabInitializer
+        } else {
+            loadFromInitializer(tabInitializer)
+        }
+    }
+
+    override val id: Int = webView?.id ?: View.generateViewId()
+
+    private fun attachWebView(webView: WebView) {
         webView.webViewClient = tabWebViewClient
         webView.webChromeClient = tabWebChromeClient
         webView.setDownloadListener { url, userAgent, contentDisposition, mimetype, contentLength ->
@@ -54,14 +85,29 @@ class TabAdapter(
                 )
             )
         }
-        if (tabInitializer is FreezableBundleInitializer) {
-            latentInitializer = tabInitializer
-        } else {
-            loadFromInitializer(tabInitializer)
+        if (toggleDesktop) {
+            webView.settings.userAgentString = DESKTOP_USER_AGENT
         }
     }
 
-    override val id: Int = webView.id
+    /**
+     * Create the view of a hibernated tab. The frozen state of the tab is loaded into the view if
+     * [loadLatentState] is true, and otherwise when the tab is brought to the foreground.
+     */
+    private fun restoreWebView(loadLatentState: Boolean): WebView {
+        val webView = webViewFactory.createWebView().also { it.id = id }
+        attachWebView(webView)
+        liveWebView = webView
+        tabPager.addTab(webView)
+        if (loadLatentState) {
+            latentInitializer?.let(::loadFromInitializer)
+            latentInitializer = null
+        }
+        if (!isForeground) {
+            webView.onPause()
+        }
+        return webView
+    }
 
     override fun loadUrl(url: String) {
         if (!proxy.isProxyReady()) return
@@ -131,8 +177,8 @@ class TabAdapter(
         get() = findInPageQuery
 
     override val favicon: Bitmap?
-        get() = latentInitializer?.let { iconFreeze }
-            ?: tabWebChromeClient.faviconObservable.value?.value()
+        get() = tabWebChromeClient.faviconObservable.value?.value()
+            ?: latentInitializer?.let { hibernatedFavicon ?: iconFreeze }
 
     override fun faviconChanges(): Observable<Option<Bitmap>> = tabWebChromeClient.faviconObservable
 
@@ -142,12 +188,12 @@ class TabAdapter(
     override fun themeColorChanges(): Observable<Int> = tabWebChromeClient.colorChangeObservable
 
     override val url: String
-        get() = webView.url.orEmpty()
+        get() = liveWebView?.url ?: hibernatedUrl
 
     override fun urlChanges(): Observable<String> = tabWebViewClient.urlObservable.hide()
 
     override val title: String
-        get() = latentInitializer?.initialTitle ?: webView.title ?: defaultTabTitle
+        get() = latentInitializer?.initialTitle ?: liveWebView?.title ?: defaultTabTitle
 
     override fun titleChanges(): Observable<String> = tabWebChromeClient.titleObservable.hide()
 
@@ -206,16 +252,46 @@ class TabAdapter(
                 latentInitializer?.let(::loadFromInitializer)
                 latentInitializer = null
             } else {
-                webView.onPause()
+                liveWebView?.onPause()
             }
         }
 
+    override val isHibernated: Boolean
+        get() = liveWebView == null
+
+    override fun hibernate() {
+        val webView = liveWebView ?: return
+        if (isForeground) {
+            return
+        }
+        hibernatedUrl = webView.url ?: hibernatedUrl
+        latentInitializer = latentInitializer ?: FreezableBundleInitializer(
+            bundle = freeze(),
+            initialTitle = title
+        )
+        tabPager.removeTab(id)
+        webView.releaseView()
+        liveWebView = null
+    }
+
+    override fun rehydrate() {
+        if (liveWebView == null) {
+            restoreWebView(loadLatentState = false)
+        }
+    }
+
     override fun destroy() {
-        webView.stopLoading()
-        webView.onPause()
-        webView.clearHistory()
-        webView.removeAllViews()
-        webView.destroy()
+        tabWebViewClient.onDestroy(id)
+        liveWebView?.releaseView()
+        liveWebView = null
+    }
+
+    private fun WebView.releaseView() {
+        stopLoading()
+        onPause()
+        clearHistory()
+        removeAllViews()
+        destroy()
     }
 
     override fun freeze(): Bundle = latentInitializer?.bundle
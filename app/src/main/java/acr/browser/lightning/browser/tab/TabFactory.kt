@@ -19,17 +19,40 @@ class TabFactory @Inject constructor(
     @IconFreeze private val iconFreeze: Bitmap,
     private val proxy: Proxy,
     private val tabWebViewClientFactory: TabWebViewClient.Factory,
-    private val tabWebChromeClientProvider: Provider<TabWebChromeClient>
+    private val tabWebChromeClientProvider: Provider<TabWebChromeClient>,
+    private val tabPager: TabPager
 ) {
 
     /**
      * Constructs a tab from the [webView] with the provided [tabInitializer].
      */
-    fun constructTab(tabInitializer: TabInitializer, webView: WebView): TabModel {
+    fun constructTab(tabInitializer: TabInitializer, webView: WebView): TabModel =
+        constructTab(tabInitializer, webView, initialUrl = "", initialFavicon = null)
+
+    /**
+     * Constructs a tab that is restored from the frozen state held by the [tabInitializer] without
+     * a [WebView], which is created when the tab is used. The tab shows the [url] and [favicon] of
+     * the page it was showing until then.
+     */
+    fun constructPlaceholderTab(
+        tabInitializer: FreezableBundleInitializer,
+        url: String,
+        favicon: Bitmap?
+    ): TabModel =
+        constructTab(tabInitializer, webView = null, initialUrl = url, initialFavicon = favicon)
+
+    private fun constructTab(
+        tabInitializer: TabInitializer,
+        webView: WebView?,
+        initialUrl: String,
+        initialFavicon: Bitmap?
+    ): TabModel {
         val headers = webViewFactory.createRequestHeaders()
         return TabAdapter(
             tabInitializer = tabInitializer,
             webView = webView,
+            initialUrl = initialUrl,
+            initialFavicon = initialFavicon,
             requestHeaders = headers,
             tabWebViewClient = tabWebViewClientFactory.create(headers),
             tabWebChromeClient = tabWebChromeClientProvider.get(),
@@ -37,7 +60,9 @@ class TabFactory @Inject constructor(
             defaultUserAgent = defaultUserAgent,
             defaultTabTitle = defaultTabTitle,
             iconFreeze = iconFreeze,
-            proxy = proxy
+            proxy = proxy,
+            webViewFactory = webViewFactory,
+            tabPager = tabPager
         )
     }
 }
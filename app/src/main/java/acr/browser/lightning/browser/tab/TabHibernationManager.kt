@@ -0,0 +1,137 @@
+package acr.browser.lightning.browser.tab
+
+import acr.browser.lightning.browser.di.Browser2Scope
+import acr.browser.lightning.log.Logger
+import android.app.ActivityManager
+import android.content.ComponentCallbacks2
+import android.os.Looper
+import android.os.MessageQueue
+import android.os.SystemClock
+import java.util.ArrayDeque
+import javax.inject.Inject
+
+/**
+ * Keeps the number of tabs holding a live [android.webkit.WebView] bounded by hibernating the
+ * tabs that were least recently selected, and hibernates more of them when the system is low on
+ * memory. A hibernated tab is restored when it is selected again.
+ */
+@Browser2Scope
+class TabHibernationManager @Inject constructor(
+    activityManager: ActivityManager,
+    private val logger: Logger
+) {
+
+    // The tabs in the order they were last selected or created in, most recent last.
+    private val recentTabs = LinkedHashMap<Int, TabModel>()
+
+    private val maxLiveTabs = maxLiveTabs(activityManager)
+
+    /**
+     * Track the newly created [tab], hibernating the least recently used tabs if there are too
+     * many live tabs.
+     */
+    fun onTabCreated(tab: TabModel) {
+        recentTabs[tab.id] = tab
+        hibernateLeastRecentlyUsed(keepLive = maxLiveTabs)
+    }
+
+    /**
+     * Restore the [tab] if it is hibernated and mark it as the most recently used tab.
+     */
+    fun onTabSelected(tab: TabModel) {
+        recentTabs.remove(tab.id)
+        recentTabs[tab.id] = tab
+        tab.rehydrate()
+        hibernateLeastRecentlyUsed(keepLive = maxLiveTabs)
+    }
+
+    /**
+     * Restore the views of the hibernated [tabs] in the order they are provided, one tab each time
+     * the main thread is idle, until half as many background tabs are live as are kept live, which
+     * leaves room for the tabs that are opened after them.
+     */
+    fun rehydrateWhenIdle(tabs: List<TabModel>) {
+        val pendingTabs = ArrayDeque(tabs)
+        Looper.myQueue().addIdleHandler(MessageQueue.IdleHandler {
+            if (liveBackgroundTabs().size >= maxLiveTabs / 2) {
+                return@IdleHandler false
+            }
+            val tab = generateSequence { pendingTabs.poll() }
+                .firstOrNull { it.isHibernated && it.id in recentTabs }
+                ?: return@IdleHandler false
+            val startTime = SystemClock.elapsedRealtime()
+            tab.rehydrate()
+            val duration = SystemClock.elapsedRealtime() - startTime
+            logger.log(TAG, "Rehydrated tab ${tab.id} when idle in $duration ms")
+            pendingTabs.isNotEmpty()
+        })
+    }
+
+    /**
+     * Stop tracking the tab with the [id], which has been closed.
+     */
+    fun onTabDeleted(id: Int) {
+        recentTabs.remove(id)
+    }
+
+    /**
+     * Stop tracking all tabs, which have been closed.
+     */
+    fun onAllTabsDeleted() {
+        recentTabs.clear()
+    }
+
+    /**
+     * Hibernate background tabs in response to the memory trim [level] reported by the system. The
+     * more severe the level, the fewer tabs are kept live.
+     *
+     * @see ComponentCallbacks2.onTrimMemory
+     */
+    fun onTrimMemory(level: Int) {
+        val keepLive = when {
+            level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE -> 0
+            level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND -> maxLiveTabs / 2
+            level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN -> return
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW -> 0
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE -> maxLiveTabs / 2
+            else -> return
+        }
+        logger.log(TAG, "Trimming memory at level $level, keeping $keepLive tabs live")
+        hibernateLeastRecentlyUsed(keepLive)
+    }
+
+    /**
+     * Hibernate the least recently used background tabs until at most [keepLive] tabs other than
+     * the tab in the foreground are live.
+     */
+    private fun hibernateLeastRecentlyUsed(keepLive: Int) {
+        val liveTabs = liveBackgroundTabs()
+        liveTabs.take((liveTabs.size - keepLive).coerceAtLeast(0)).forEach {
+            logger.log(TAG, "Hibernating tab ${it.id}")
+            it.hibernate()
+        }
+    }
+
+    private fun liveBackgroundTabs(): List<TabModel> =
+        recentTabs.values.filter { !it.isHibernated && !it.isForeground }
+
+    companion object {
+        private const val TAG = "TabHibernationManager"
+
+        private const val MIN_LIVE_TABS = 2
+        private const val MAX_LIVE_TABS = 8
+        private const val MEMORY_CLASS_MB_PER_TAB = 48
+
+        /**
+         * Returns the number of background tabs that are kept live, which scales with the memory
+         * available to the app and is the minimum on low memory devices.
+         */
+        private fun maxLiveTabs(activityManager: ActivityManager): Int =
+            if (activityManager.isLowRamDevice) {
+                MIN_LIVE_TABS
+            } else {
+                (activityManager.memoryClass / MEMORY_CLASS_MB_PER_TAB)
+                    .coerceIn(MIN_LIVE_TABS, MAX_LIVE_TABS)
+            }
+    }
+}
@@ -226,6 +226,26 @@ interface TabModel {
      */
     var isForeground: Boolean
 
+    /**
+     * True if the tab has been hibernated by [hibernate] and holds no [android.webkit.WebView].
+     */
+    val isHibernated: Boolean
+
+    /**
+     * Release the view of the tab while it is in the background, keeping its state so that it can
+     * be restored by [rehydrate]. The identifier, title, favicon and URL of the tab stay the same
+     * while it is hibernated. Has no effect on the tab in the foreground.
+     */
+    fun hibernate()
+
+    /**
+     * Restore the view of a tab released by [hibernate], or of a tab restored without a view. The
+     * state of the tab is loaded into the view when the tab is brought to the foreground. Has no
+     * effect if the tab is not hibernated. A hibernated tab is also restored along with its state
+     * when it is used in any other way.
+     */
+    fun rehydrate()
+
     /**
      * Teardown the current tab and release held resources.
      */
@@ -57,6 +57,14 @@ class TabPager @Inject constructor(
         webViews.add(webView)
     }
 
+    /**
+     * Remove the [WebView] of the tab with the provided [id] from the list of views shown by this
+     * pager.
+     */
+    fun removeTab(id: Int) {
+        webViews.removeAll { it.id == id }
+    }
+
     /**
      * Show the toolbar/search box if it is currently hidden.
      */
@@ -3,10 +3,12 @@ package acr.browser.lightning.browser.tab
 import acr.browser.lightning.R
 import acr.browser.lightning.adblock.AdBlocker
 import acr.browser.lightning.adblock.allowlist.AllowListModel
+import acr.browser.lightning.adblock.metrics.AdBlockMetrics
 import acr.browser.lightning.browser.proxy.Proxy
 import acr.browser.lightning.databinding.DialogAuthRequestBinding
 import acr.browser.lightning.databinding.DialogSslWarningBinding
 import acr.browser.lightning.extensions.resizeAndShow
+import acr.browser.lightning.html.InternalPageServer
 import acr.browser.lightning.js.TextReflow
 import acr.browser.lightning.log.Logger
 import acr.browser.lightning.preference.UserPreferences
@@ -40,12 +42,14 @@ import kotlin.math.abs
 class TabWebViewClient @AssistedInject constructor(
     private val adBlocker: AdBlocker,
     private val allowListModel: AllowListModel,
+    private val adBlockMetrics: AdBlockMetrics,
     private val urlHandler: UrlHandler,
     @Assisted private val headers: Map<String, String>,
     private val proxy: Proxy,
     private val userPreferences: UserPreferences,
     private val sslWarningPreferences: SslWarningPreferences,
     private val textReflow: TextReflow,
+    private val internalPageServer: InternalPageServer,
     private val logger: Logger
 ) : WebViewClient() {
 
@@ -82,11 +86,12 @@ class TabWebViewClient @AssistedInject constructor(
 
     private fun shouldBlockRequest(pageUrl: String, requestUrl: String) =
         !allowListModel.isUrlAllowedAds(pageUrl) &&
-            adBlocker.isAd(requestUrl)
+            adBlocker.isAd(requestUrl, pageUrl)
 
     override fun onPageStarted(view: WebView, url: String, favicon: Bitmap?) {
         super.onPageStarted(view, url, favicon)
         currentUrl = url
+        adBlockMetrics.recordPageStarted(view.id)
         urlObservable.onNext(url)
         if (urlWithSslError != url) {
             urlWithSslError = null
@@ -238,13 +243,29 @@ class TabWebViewClient @AssistedInject constructor(
         view: WebView,
         request: WebResourceRequest
     ): WebResourceResponse? {
-        if (shouldBlockRequest(currentUrl, request.url.toString()) || !proxy.isProxyReady()) {
-            val empty = ByteArrayInputStream(emptyResponseByteArray)
-            return WebResourceResponse(BLOCKED_RESPONSE_MIME_TYPE, BLOCKED_RESPONSE_ENCODING, empty)
+        internalPageServer.handleRequest(currentUrl, request)?.let { return it }
+        if (shouldBlockRequest(currentUrl, request.url.toString())) {
+            adBlockMetrics.recordBlockedRequest(view.id)
+            return createBlockedResponse()
+        }
+        if (!proxy.isProxyReady()) {
+            return createBlockedResponse()
         }
         return null
     }
 
+    private fun createBlockedResponse(): WebResourceResponse {
+        val empty = ByteArrayInputStream(emptyResponseByteArray)
+        return WebResourceResponse(BLOCKED_RESPONSE_MIME_TYPE, BLOCKED_RESPONSE_ENCODING, empty)
+    }
+
+    /**
+     * Release the state held for the tab with the [tabId], which is about to be destroyed.
+     */
+    fun onDestroy(tabId: Int) {
+        adBlockMetrics.removeTab(tabId)
+    }
+
     private fun SslError.getAllSslErrorMessageCodes(): List<Int> {
         val errorCodeMessageCodes = ArrayList<Int>(1)
 
@@ -5,8 +5,15 @@ import acr.browser.lightning.browser.di.DiskScheduler
 import acr.browser.lightning.browser.di.InitialUrl
 import acr.browser.lightning.browser.di.MainScheduler
 import acr.browser.lightning.browser.tab.bundle.BundleStore
+import acr.browser.lightning.browser.tab.bundle.StoredTab
+import acr.browser.lightning.favicon.FaviconModel
+import acr.browser.lightning.log.Logger
 import acr.browser.lightning.preference.UserPreferences
+import acr.browser.lightning.utils.Option
 import acr.browser.lightning.utils.isFileUrl
+import acr.browser.lightning.utils.value
+import android.graphics.Bitmap
+import android.os.SystemClock
 import io.reactivex.Completable
 import io.reactivex.Maybe
 import io.reactivex.Observable
@@ -15,6 +22,7 @@ import io.reactivex.Single
 import io.reactivex.subjects.BehaviorSubject
 import io.reactivex.subjects.PublishSubject
 import javax.inject.Inject
+import kotlin.math.abs
 
 /**
  * The repository for tabs that implements the [BrowserContract.Model] interface. Manages the state
@@ -30,7 +38,10 @@ class TabsRepository @Inject constructor(
     private val tabFactory: TabFactory,
     private val userPreferences: UserPreferences,
     @InitialUrl private val initialUrl: String?,
-    private val permissionInitializerFactory: PermissionInitializer.Factory
+    private val permissionInitializerFactory: PermissionInitializer.Factory,
+    private val tabHibernationManager: TabHibernationManager,
+    private val faviconModel: FaviconModel,
+    private val logger: Logger
 ) : BrowserContract.Model {
 
     private var isInitialized = BehaviorSubject.createDefault(false)
@@ -45,7 +56,9 @@ class TabsRepository @Inject constructor(
             tabPager.clearTab()
         }
         val tab = tabsList.forId(id)
-        recentTabModel.addClosedTab(tab.freeze())
+        recentTabModel.addClosedTab(tab.freeze(), tab.title, tab.url)
+        tabHibernationManager.onTabDeleted(id)
+        tabPager.removeTab(id)
         tab.destroy()
         tabsList = tabsList - tab
     }.doOnComplete {
@@ -57,7 +70,11 @@ class TabsRepository @Inject constructor(
             Completable.fromAction {
                 tabPager.clearTab()
 
-                tabsList.forEach(TabModel::destroy)
+                tabHibernationManager.onAllTabsDeleted()
+                tabsList.forEach {
+                    tabPager.removeTab(it.id)
+                    it.destroy()
+                }
                 tabsList = emptyList()
             }
         }.doOnComplete {
@@ -69,27 +86,37 @@ class TabsRepository @Inject constructor(
             .subscribeOn(mainScheduler)
 
     /**
-     * Creates a tab without waiting for the browser to be initialized.
+     * Creates a tab without waiting for the browser to be initialized, and inserts it into the
+     * list of tabs at the [index], or at the end of the list if no index is provided.
      */
-    private fun createTabUnsafe(tabInitializer: TabInitializer): Single<TabModel> =
+    private fun createTabUnsafe(
+        tabInitializer: TabInitializer,
+        index: Int? = null
+    ): Single<TabModel> =
         Single.fromCallable {
             val webView = webViewFactory.createWebView()
             tabPager.addTab(webView)
             val tabAdapter = tabFactory.constructTab(tabInitializer, webView)
-
-            tabsList = tabsList + tabAdapter
+            insertTab(tabAdapter, index)
 
             return@fromCallable tabAdapter
         }.doOnSuccess {
             tabsListObservable.onNext(tabsList)
         }.subscribeOn(mainScheduler)
 
-    override fun reopenTab(): Maybe<TabModel> = Maybe.fromCallable(recentTabModel::lastClosed)
+    private fun insertTab(tab: TabModel, index: Int?) {
+        tabsList = tabsList.toMutableList().apply { add(index ?: size, tab) }
+        tabHibernationManager.onTabCreated(tab)
+    }
+
+    override fun reopenTab(): Maybe<TabModel> = recentTabModel.lastClosed()
+        .observeOn(mainScheduler)
         .flatMapSingleElement { createTab(BundleInitializer(it)) }
         .subscribeOn(mainScheduler)
 
     override fun selectTab(id: Int): TabModel {
         val selected = tabsList.forId(id)
+        tabHibernationManager.onTabSelected(selected)
         selectedTab = selected
         tabPager.selectTab(id)
 
@@ -101,34 +128,106 @@ class TabsRepository @Inject constructor(
 
     override fun tabsListChanges(): Observable<List<TabModel>> = tabsListObservable.hide()
 
-    override fun initializeTabs(): Maybe<List<TabModel>> =
-        Single.fromCallable(bundleStore::retrieve)
+    /**
+     * Restore the stored tabs in stages. The tab that was selected is restored first, with its
+     * view, so it can be shown as soon as possible. The other tabs that were frozen are restored as
+     * placeholders without a view, showing the title and the stored favicon of their page, and
+     * their views are created when they are selected or when the main thread is idle.
+     */
+    override fun initializeTabs(): Observable<TabModel> {
+        val startTime = SystemClock.elapsedRealtime()
+        // The positions of the tabs restored so far, in the order they are in the list of tabs.
+        val restoredPositions = mutableListOf<Int>()
+        val placeholders = mutableListOf<Pair<Int, TabModel>>()
+        var selectedPosition = 0
+
+        val selectedTab = bundleStore.retrieve()
+            .map { storedTab -> storedTab to storedTab.placeholderFavicon() }
             .subscribeOn(diskScheduler)
             .observeOn(mainScheduler)
-            .flatMapObservable { Observable.fromIterable(it) }
-            .concatWith(Maybe.fromCallable { initialUrl }.map {
+            .concatMapMaybe { (storedTab, favicon) ->
+                val index = restoredPositions.count { it < storedTab.position }
+                restoredPositions.add(index, storedTab.position)
+                val tabInitializer = storedTab.tabInitializer
+                if (!storedTab.isSelected && tabInitializer is FreezableBundleInitializer) {
+                    val tab = tabFactory.constructPlaceholderTab(
+                        tabInitializer = tabInitializer,
+                        url = storedTab.url,
+                        favicon = favicon.value()
+                    )
+                    insertTab(tab, index)
+                    placeholders += storedTab.position to tab
+                    return@concatMapMaybe Maybe.empty<TabModel>()
+                }
+                if (storedTab.isSelected) {
+                    selectedPosition = storedTab.position
+                }
+                createTabUnsafe(tabInitializer, index)
+                    .filter { storedTab.isSelected }
+                    .doOnSuccess { logStage("Restored the selected tab", startTime) }
+            }
+            .doOnComplete {
+                tabsListObservable.onNext(tabsList)
+                logStage(
+                    "Restored ${restoredPositions.size} tabs, ${placeholders.size} as placeholders",
+                    startTime
+                )
+                tabHibernationManager.rehydrateWhenIdle(
+                    placeholders.sortedBy { (position, _) -> abs(position - selectedPosition) }
+                        .map { (_, tab) -> tab }
+                )
+            }
+        val initialTab = Maybe.fromCallable { initialUrl }
+            .map {
                 if (it.isFileUrl()) {
                     permissionInitializerFactory.create(it)
                 } else {
                     UrlInitializer(it)
                 }
-            })
-            .flatMapSingle(::createTabUnsafe)
-            .toList()
-            .filter(List<TabModel>::isNotEmpty)
-            .doAfterTerminate {
+            }
+            .flatMapSingleElement { createTabUnsafe(it) }
+            .doOnSuccess { logStage("Opened the initial tab", startTime) }
+            .toObservable()
+
+        return selectedTab.concatWith(initialTab)
+            .doFinally {
                 isInitialized.onNext(true)
+                webViewFactory.fillPoolWhenIdle()
             }
+    }
+
+    /**
+     * Returns the stored favicon of the page of the tab if the tab is restored as a placeholder.
+     */
+    private fun StoredTab.placeholderFavicon(): Option<Bitmap> =
+        if (!isSelected && tabInitializer is FreezableBundleInitializer) {
+            Option.fromNullable(faviconModel.storedFaviconForUrl(url))
+        } else {
+            Option.None
+        }
+
+    private fun logStage(stage: String, startTime: Long) {
+        logger.log(TAG, "$stage in ${SystemClock.elapsedRealtime() - startTime} ms")
+    }
 
     override fun freeze() {
         if (userPreferences.restoreLostTabsEnabled) {
             bundleStore.save(tabsList)
+        } else {
+            bundleStore.deleteAll().subscribe()
         }
     }
 
     override fun clean() {
-        bundleStore.deleteAll()
+        // The process may be stopped as soon as the content is cleaned, so the tabs and the closed
+        // tabs are deleted before returning.
+        bundleStore.deleteAll().blockingAwait()
+        recentTabModel.clear().blockingAwait()
     }
 
     private fun List<TabModel>.forId(id: Int): TabModel = requireNotNull(find { it.id == id })
+
+    companion object {
+        private const val TAG = "TabsRepository"
+    }
 }
@@ -5,9 +5,11 @@ import acr.browser.lightning.R
 import acr.browser.lightning.browser.di.IncognitoMode
 import acr.browser.lightning.constant.FILE
 import acr.browser.lightning.extensions.snackbar
+import acr.browser.lightning.html.download.DownloadPageFactory
 import acr.browser.lightning.log.Logger
 import acr.browser.lightning.utils.IntentUtils
 import acr.browser.lightning.utils.Utils
+import acr.browser.lightning.utils.isDownloadsUrl
 import acr.browser.lightning.utils.isSpecialUrl
 import android.app.Activity
 import android.content.ActivityNotFoundException
@@ -41,12 +43,16 @@ class UrlHandler @Inject constructor(
         url: String,
         headers: Map<String, String>
     ): Boolean {
+        DownloadPageFactory.fileOpenedByUrl(url)?.let {
+            // A file is only opened from the downloads page, even when incognito.
+            return !view.url.isDownloadsUrl() || openFile(it)
+        }
         if (incognitoMode) {
             // If we are in incognito, immediately load, we don't want the url to leave the app
             return continueLoadingUrl(view, url, headers)
         }
-        if (URLUtil.isAboutUrl(url)) {
-            // If this is an about page, immediately load, we don't need to leave the app
+        if (URLUtil.isAboutUrl(url) || url.isSpecialUrl()) {
+            // If this is an about or browser page, immediately load, it never leaves the app
             return continueLoadingUrl(view, url, headers)
         }
 
@@ -108,34 +114,39 @@ class UrlHandler @Inject constructor(
 
                 return true
             }
-        } else if (URLUtil.isFileUrl(url) && !url.isSpecialUrl()) {
-            val file = File(url.replace(FILE, ""))
-
-            if (file.exists()) {
-                val newMimeType = MimeTypeMap.getSingleton()
-                    .getMimeTypeFromExtension(Utils.guessFileExtension(file.toString()))
+        } else if (URLUtil.isFileUrl(url)) {
+            return openFile(File(url.replace(FILE, "")))
+        }
+        return false
+    }
 
-                val intent = Intent(Intent.ACTION_VIEW)
-                intent.flags = Intent.FLAG_GRANT_READ_URI_PERMISSION
-                val contentUri = FileProvider.getUriForFile(
-                    activity,
-                    BuildConfig.APPLICATION_ID + ".fileprovider",
-                    file
-                )
-                intent.setDataAndType(contentUri, newMimeType)
+    /**
+     * Open the [file] in the app that views its type.
+     */
+    private fun openFile(file: File): Boolean {
+        if (file.exists()) {
+            val newMimeType = MimeTypeMap.getSingleton()
+                .getMimeTypeFromExtension(Utils.guessFileExtension(file.toString()))
 
-                try {
-                    activity.startActivity(intent)
-                } catch (e: Exception) {
-                    println("LightningWebClient: cannot open downloaded file")
-                }
+            val intent = Intent(Intent.ACTION_VIEW)
+            intent.flags = Intent.FLAG_GRANT_READ_URI_PERMISSION
+            val contentUri = FileProvider.getUriForFile(
+                activity,
+                BuildConfig.APPLICATION_ID + ".fileprovider",
+                file
+            )
+            intent.setDataAndType(contentUri, newMimeType)
 
-            } else {
-                activity.snackbar(R.string.message_open_download_fail)
+            try {
+                activity.startActivity(intent)
+            } catch (e: Exception) {
+                println("LightningWebClient: cannot open downloaded file")
             }
-            return true
+
+        } else {
+            activity.snackbar(R.string.message_open_download_fail)
         }
-        return false
+        return true
     }
 
     companion object {
@@ -1,7 +1,9 @@
 package acr.browser.lightning.browser.tab
 
 import acr.browser.lightning.Capabilities
+import acr.browser.lightning.browser.di.Browser2Scope
 import acr.browser.lightning.browser.di.IncognitoMode
+import acr.browser.lightning.browser.di.UserPrefs
 import acr.browser.lightning.browser.view.CompositeTouchListener
 import acr.browser.lightning.isSupported
 import acr.browser.lightning.log.Logger
@@ -9,26 +11,57 @@ import acr.browser.lightning.preference.UserPreferences
 import acr.browser.lightning.preference.userAgent
 import android.annotation.SuppressLint
 import android.app.Activity
+import android.app.ActivityManager
+import android.content.SharedPreferences
 import android.graphics.Color
 import android.os.Build.VERSION
 import android.os.Build.VERSION_CODES
+import android.os.Looper
+import android.os.MessageQueue
 import android.view.View
 import android.webkit.CookieManager
 import android.webkit.WebSettings
 import android.webkit.WebView
+import java.util.ArrayDeque
 import javax.inject.Inject
 
 /**
  * Constructs [WebView] instances configured for the browser based on user's preferences and create
  * the headers we will send with requests.
+ *
+ * Creating a [WebView] is slow, so a small pool of views is created ahead of time while the main
+ * thread is idle once [fillPoolWhenIdle] has been called, and new tabs take their view from the
+ * pool. The pool is refilled when a view is taken from it, and the pooled views are discarded when
+ * a preference that their settings are configured from changes, since they were configured with
+ * the previous preferences.
  */
+@Browser2Scope
 class WebViewFactory @Inject constructor(
     private val activity: Activity,
     private val logger: Logger,
     private val userPreferences: UserPreferences,
-    @IncognitoMode private val incognitoMode: Boolean
+    @IncognitoMode private val incognitoMode: Boolean,
+    @UserPrefs private val preferences: SharedPreferences,
+    activityManager: ActivityManager,
+    private val webViewPoolMetrics: WebViewPoolMetrics
 ) {
 
+    private val pool = ArrayDeque<WebView>()
+    private val poolSize = if (activityManager.isLowRamDevice) LOW_RAM_POOL_SIZE else POOL_SIZE
+    private var isPoolEnabled = false
+    private var isFillScheduled = false
+
+    // Held here since the preferences only hold a weak reference to their listeners. The pool is
+    // refilled when the next view is created, after the user is done changing preferences. A null
+    // key means that all of the preferences were cleared.
+    private val preferenceChangeListener =
+        SharedPreferences.OnSharedPreferenceChangeListener { _, key ->
+            if ((key == null || userPreferences.isWebViewSetting(key)) && pool.isNotEmpty()) {
+                logger.log(TAG, "Preference $key changed, discarding pooled views")
+                clearPool()
+            }
+        }
+
     /**
      * Create the request headers that notify websites of various privacy and data preferences.
      */
@@ -58,9 +91,69 @@ class WebViewFactory @Inject constructor(
     }
 
     /**
-     * Construct a [WebView] based on the user's preferences.
+     * Construct a [WebView] based on the user's preferences, or take one from the pool if one was
+     * created ahead of time.
+     */
+    fun createWebView(): WebView {
+        val pooledWebView = pool.pollFirst()
+        if (pooledWebView != null) {
+            webViewPoolMetrics.recordHit()
+            fillPoolWhenIdle()
+            return pooledWebView
+        }
+        val startTime = System.nanoTime()
+        val webView = buildWebView()
+        webViewPoolMetrics.recordMiss(System.nanoTime() - startTime)
+        if (isPoolEnabled) {
+            fillPoolWhenIdle()
+        }
+        return webView
+    }
+
+    /**
+     * Fill the pool of views, creating one view each time the main thread is idle until the pool
+     * is full. Must be called on the main thread.
+     */
+    fun fillPoolWhenIdle() {
+        if (!isPoolEnabled) {
+            isPoolEnabled = true
+            preferences.registerOnSharedPreferenceChangeListener(preferenceChangeListener)
+        }
+        if (isFillScheduled || pool.size >= poolSize) {
+            return
+        }
+        isFillScheduled = true
+        Looper.myQueue().addIdleHandler(MessageQueue.IdleHandler {
+            if (isPoolEnabled && pool.size < poolSize) {
+                val startTime = System.nanoTime()
+                pool.addLast(buildWebView())
+                webViewPoolMetrics.recordPooledCreation(System.nanoTime() - startTime)
+            }
+            isFillScheduled = isPoolEnabled && pool.size < poolSize
+            isFillScheduled
+        })
+    }
+
+    /**
+     * Discard the views in the pool, which is refilled when a view is next created.
+     */
+    fun clearPool() {
+        webViewPoolMetrics.recordDiscarded(pool.size)
+        pool.forEach(WebView::destroy)
+        pool.clear()
+    }
+
+    /**
+     * Discard the views in the pool and stop filling it, releasing the views before the browser
+     * is destroyed.
      */
-    fun createWebView(): WebView = WebView(activity).apply {
+    fun releasePool() {
+        isPoolEnabled = false
+        preferences.unregisterOnSharedPreferenceChangeListener(preferenceChangeListener)
+        clearPool()
+    }
+
+    private fun buildWebView(): WebView = WebView(activity).apply {
         id = View.generateViewId()
         tag = CompositeTouchListener().also(::setOnTouchListener)
         isFocusableInTouchMode = true
@@ -188,6 +281,9 @@ class WebViewFactory @Inject constructor(
     companion object {
         private const val TAG = "WebViewFactory"
 
+        private const val POOL_SIZE = 2
+        private const val LOW_RAM_POOL_SIZE = 1
+
         const val HEADER_REQUESTED_WITH = "X-Requested-With"
         const val HEADER_WAP_PROFILE = "X-Wap-Profile"
         private const val HEADER_DNT = "DNT"
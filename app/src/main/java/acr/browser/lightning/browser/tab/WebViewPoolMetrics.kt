@@ -0,0 +1,110 @@
+package acr.browser.lightning.browser.tab
+
+import acr.browser.lightning.adblock.metrics.LatencyHistogram
+import acr.browser.lightning.adblock.metrics.LatencyHistogramSnapshot
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Records how well the pool of [android.webkit.WebView] kept by the [WebViewFactory] serves the
+ * tabs: the views handed out from the pool and created on demand, the views discarded from the
+ * pool, and the time taken to create each view.
+ */
+@Singleton
+class WebViewPoolMetrics @Inject constructor() {
+
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val discarded = AtomicLong()
+    private val pooledCreationLatency = LatencyHistogram()
+    private val onDemandCreationLatency = LatencyHistogram()
+
+    /**
+     * Record that a view was handed out from the pool.
+     */
+    fun recordHit() {
+        hits.incrementAndGet()
+    }
+
+    /**
+     * Record that the pool was empty and a view was created on demand in [nanos] nanoseconds.
+     */
+    fun recordMiss(nanos: Long) {
+        misses.incrementAndGet()
+        onDemandCreationLatency.record(nanos)
+    }
+
+    /**
+     * Record that a view was created for the pool in [nanos] nanoseconds.
+     */
+    fun recordPooledCreation(nanos: Long) {
+        pooledCreationLatency.record(nanos)
+    }
+
+    /**
+     * Record that [count] views were discarded from the pool without being handed out.
+     */
+    fun recordDiscarded(count: Int) {
+        discarded.addAndGet(count.toLong())
+    }
+
+    /**
+     * Returns a snapshot of the metrics recorded so far.
+     */
+    fun snapshot(): WebViewPoolMetricsSnapshot = WebViewPoolMetricsSnapshot(
+        hits = hits.get(),
+        misses = misses.get(),
+        discarded = discarded.get(),
+        pooledCreationLatency = pooledCreationLatency.snapshot(),
+        onDemandCreationLatency = onDemandCreationLatency.snapshot()
+    )
+}
+
+/**
+ * A snapshot of the [WebViewPoolMetrics].
+ *
+ * @param hits The number of views handed out from the pool.
+ * @param misses The number of views created on demand because the pool was empty.
+ * @param discarded The number of views discarded from the pool without being handed out.
+ * @param pooledCreationLatency The time taken to create each view for the pool.
+ * @param onDemandCreationLatency The time taken to create each view on demand.
+ */
+data class WebViewPoolMetricsSnapshot(
+    val hits: Long,
+    val misses: Long,
+    val discarded: Long,
+    val pooledCreationLatency: LatencyHistogramSnapshot,
+    val onDemandCreationLatency: LatencyHistogramSnapshot
+) {
+
+    /**
+     * The fraction of views handed out from the pool, or 0 if no view was requested.
+     */
+    val hitRate: Double
+        get() = (hits + misses).let { requested ->
+            if (requested == 0L) 0.0 else hits.toDouble() / requested
+        }
+
+    /**
+     * Returns a human readable report of the metrics.
+     */
+    fun dump(): String = buildString {
+        appendLine(
+            "Requests: $hits hits, $misses misses " +
+                "(${"%.1f".format(hitRate * 100)}% hit rate)"
+        )
+        appendLine("Discarded: $discarded")
+        appendLine("Pooled creation: ${pooledCreationLatency.describe()}")
+        append("On demand creation: ${onDemandCreationLatency.describe()}")
+    }
+
+    private fun LatencyHistogramSnapshot.describe(): String =
+        "$count views, mean ${meanNanos / NANOS_PER_MILLI} ms, " +
+            "p50 < ${percentileNanos(50.0) / NANOS_PER_MILLI} ms, " +
+            "p99 < ${percentileNanos(99.0) / NANOS_PER_MILLI} ms"
+
+    companion object {
+        private const val NANOS_PER_MILLI = 1_000_000
+    }
+}
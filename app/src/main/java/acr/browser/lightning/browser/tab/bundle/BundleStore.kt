@@ -1,7 +1,8 @@
 package acr.browser.lightning.browser.tab.bundle
 
 import acr.browser.lightning.browser.tab.TabModel
-import acr.browser.lightning.browser.tab.TabInitializer
+import io.reactivex.Completable
+import io.reactivex.Observable
 
 /**
  * Used to save tab data for future restoration when the browser goes into hibernation.
@@ -14,12 +15,14 @@ interface BundleStore {
     fun save(tabs: List<TabModel>)
 
     /**
-     * Synchronously previously stored tab data.
+     * Retrieve the previously stored tabs, reading each tab when it is emitted. The tab that was
+     * selected is emitted first and the other tabs follow in the order they were stored in.
      */
-    fun retrieve(): List<TabInitializer>
+    fun retrieve(): Observable<StoredTab>
 
     /**
-     * Synchronously delete all stored tabs.
+     * Delete all stored tabs, after the tabs whose save was requested before. Completes when the
+     * tabs have been deleted.
      */
-    fun deleteAll()
+    fun deleteAll(): Completable
 }
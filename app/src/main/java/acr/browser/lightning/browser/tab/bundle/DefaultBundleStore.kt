@@ -9,6 +9,11 @@ import acr.browser.lightning.browser.tab.HistoryPageInitializer
 import acr.browser.lightning.browser.tab.HomePageInitializer
 import acr.browser.lightning.browser.tab.TabInitializer
 import acr.browser.lightning.browser.tab.TabModel
+import acr.browser.lightning.browser.tab.UrlInitializer
+import acr.browser.lightning.extensions.marshall
+import acr.browser.lightning.extensions.unmarshallBundle
+import acr.browser.lightning.extensions.writeBytesAtomically
+import acr.browser.lightning.log.Logger
 import acr.browser.lightning.utils.FileUtils
 import acr.browser.lightning.utils.isBookmarkUrl
 import acr.browser.lightning.utils.isDownloadsUrl
@@ -17,11 +22,29 @@ import acr.browser.lightning.utils.isSpecialUrl
 import acr.browser.lightning.utils.isStartPageUrl
 import android.app.Application
 import android.os.Bundle
+import androidx.annotation.WorkerThread
+import io.reactivex.Completable
+import io.reactivex.Maybe
+import io.reactivex.Observable
 import io.reactivex.Scheduler
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.util.Collections
+import java.util.UUID
+import java.util.WeakHashMap
+import java.util.zip.CRC32
 import javax.inject.Inject
 
 /**
- * A bundle store that serializes each tab state to disk and supports its retrieval.
+ * A bundle store that writes the state of each tab to its own file and the order of the tabs to a
+ * manifest, and supports their retrieval.
+ *
+ * The state of a tab is only written when it differs from the state last written for the tab, so
+ * saving the tabs costs little more than writing the tabs that changed. The files are written to a
+ * temporary file which is then renamed over the previous file, so a save that is interrupted
+ * leaves the previously saved tabs in place.
  */
 class DefaultBundleStore @Inject constructor(
     private val application: Application,
@@ -29,56 +52,226 @@ class DefaultBundleStore @Inject constructor(
     private val homePageInitializer: HomePageInitializer,
     private val downloadPageInitializer: DownloadPageInitializer,
     private val historyPageInitializer: HistoryPageInitializer,
-    @DiskScheduler private val diskScheduler: Scheduler
+    @DiskScheduler private val diskScheduler: Scheduler,
+    private val logger: Logger
 ) : BundleStore {
 
+    private val directory = File(application.filesDir, DIRECTORY)
+
+    // The keys of the state files of the tabs by their identifiers, used on the main thread.
+    private val tabKeys = HashMap<Int, String>()
+
+    // The keys of the states that were written or read, which are not written again while the
+    // tabs that hold them have not changed.
+    private val storedStates = Collections.synchronizedMap(WeakHashMap<Bundle, String>())
+
+    // The checksums of the state files by their keys.
+    private val checksums = Collections.synchronizedMap(HashMap<String, Long>())
+
     override fun save(tabs: List<TabModel>) {
-        val outState = Bundle(ClassLoader.getSystemClassLoader())
-
-        tabs.withIndex().forEach { (index, tab) ->
-            if (!tab.url.isSpecialUrl()) {
-                outState.putBundle(BUNDLE_KEY + index, tab.freeze())
-                outState.putString(TAB_TITLE_KEY + index, tab.title)
-            } else {
-                outState.putBundle(BUNDLE_KEY + index, Bundle().apply {
-                    putString(URL_KEY, tab.url)
-                })
+        val changedStates = mutableListOf<Pair<String, Bundle>>()
+        val entries = tabs.map { tab ->
+            if (tab.url.isSpecialUrl()) {
+                tabKeys.remove(tab.id)
+                return@map ManifestEntry(key = null, title = tab.title, url = tab.url)
+            }
+            val state = tab.freeze()
+            val storedKey = storedStates[state]
+            val key = storedKey ?: tabKeys[tab.id] ?: UUID.randomUUID().toString()
+            tabKeys[tab.id] = key
+            if (storedKey == null) {
+                changedStates += key to state
             }
+            ManifestEntry(key = key, title = tab.title, url = tab.url)
         }
+        val tabIds = tabs.map(TabModel::id).toSet()
+        tabKeys.keys.retainAll(tabIds)
+        val manifest = Manifest(
+            selected = tabs.indexOfFirst(TabModel::isForeground),
+            entries = entries
+        )
 
-        FileUtils.writeBundleToStorage(application, outState, BUNDLE_STORAGE)
+        Completable.fromAction {
+            changedStates.forEach { (key, state) ->
+                writeState(key, state)
+                // The state is only treated as stored once it has been written, so a state whose
+                // write failed is written again by the next save.
+                storedStates[state] = key
+            }
+            File(directory, MANIFEST_FILE).writeBytesAtomically(manifest.encode())
+            deleteUnusedStates(manifest)
+            FileUtils.deleteBundleInStorage(application, BUNDLE_STORAGE)
+        }.doOnError { logger.log(TAG, "Unable to save tabs", it) }
+            .onErrorComplete()
             .subscribeOn(diskScheduler)
             .subscribe()
     }
 
-    override fun retrieve(): List<TabInitializer> =
-        FileUtils.readBundleFromStorage(application, BUNDLE_STORAGE)?.let { bundle ->
-            bundle.keySet()
-                .filter { it.startsWith(BUNDLE_KEY) }
-                .mapNotNull { bundleKey ->
-                    bundle.getBundle(bundleKey)?.let {
-                        Pair(
-                            it,
-                            bundle.getString(TAB_TITLE_KEY + bundleKey.extractNumberFromEnd())
-                        )
-                    }
+    override fun retrieve(): Observable<StoredTab> = Observable.defer {
+        val manifest = readManifest()
+            ?: return@defer Observable.fromIterable(retrieveLegacyTabs())
+        val selected = manifest.selected.takeIf { it in manifest.entries.indices }
+            ?: manifest.entries.lastIndex
+        val positions = manifest.entries.indices.sortedBy { it != selected }
+        // The first tab that is restored is selected in place of the selected tab if the selected
+        // tab cannot be restored.
+        var isFirst = true
+        Observable.fromIterable(positions).concatMapMaybe { position ->
+            Maybe.fromCallable {
+                val entry = manifest.entries[position]
+                createInitializer(entry)?.let {
+                    StoredTab(position, isSelected = isFirst, url = entry.url, tabInitializer = it)
+                        .also { isFirst = false }
                 }
-        }?.map { (bundle, title) ->
-            return@map bundle.getString(URL_KEY)?.let { url ->
-                when {
-                    url.isBookmarkUrl() -> bookmarkPageInitializer
-                    url.isDownloadsUrl() -> downloadPageInitializer
-                    url.isStartPageUrl() -> homePageInitializer
-                    url.isHistoryUrl() -> historyPageInitializer
-                    else -> homePageInitializer
+            }
+        }
+    }
+
+    override fun deleteAll(): Completable {
+        // The tabs saved from now on are written again in full.
+        tabKeys.clear()
+        storedStates.clear()
+        return Completable.fromAction {
+            storedStates.clear()
+            checksums.clear()
+            directory.listFiles()?.forEach { it.delete() }
+            FileUtils.deleteBundleInStorage(application, BUNDLE_STORAGE)
+        }.subscribeOn(diskScheduler)
+    }
+
+    @WorkerThread
+    private fun writeState(key: String, state: Bundle) {
+        val bytes = state.marshall()
+        val checksum = bytes.checksum()
+        if (checksums[key] == checksum) {
+            return
+        }
+        File(directory, key + STATE_EXTENSION).writeBytesAtomically(bytes)
+        checksums[key] = checksum
+    }
+
+    @WorkerThread
+    private fun readState(key: String): Bundle? {
+        val file = File(directory, key + STATE_EXTENSION)
+        return try {
+            val bytes = file.readBytes()
+            bytes.unmarshallBundle()?.also {
+                checksums[key] = bytes.checksum()
+                storedStates[it] = key
+            }
+        } catch (exception: Exception) {
+            logger.log(TAG, "Unable to read the state of tab $key", exception)
+            null
+        }
+    }
+
+    @WorkerThread
+    private fun deleteUnusedStates(manifest: Manifest) {
+        val keys = manifest.entries.mapNotNull(ManifestEntry::key).toSet()
+        directory.listFiles { file -> file.name.endsWith(STATE_EXTENSION) }
+            ?.filter { it.name.removeSuffix(STATE_EXTENSION) !in keys }
+            ?.forEach {
+                checksums.remove(it.name.removeSuffix(STATE_EXTENSION))
+                it.delete()
+            }
+    }
+
+    @WorkerThread
+    private fun readManifest(): Manifest? {
+        val file = File(directory, MANIFEST_FILE)
+        if (!file.exists()) {
+            return null
+        }
+        return try {
+            DataInputStream(file.inputStream().buffered()).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    return null
                 }
-            } ?: FreezableBundleInitializer(
-                bundle, title ?: application.getString(R.string.tab_frozen)
-            )
-        } ?: emptyList()
+                val selected = input.readInt()
+                val entries = List(input.readInt()) {
+                    ManifestEntry(
+                        key = if (input.readBoolean()) input.readUTF() else null,
+                        title = input.readUTF(),
+                        url = input.readUTF()
+                    )
+                }
+                Manifest(selected, entries)
+            }
+        } catch (exception: Exception) {
+            // A corrupt manifest may also fail with an unchecked exception, such as a negative
+            // number of entries, which is handled the same as a manifest that cannot be read.
+            logger.log(TAG, "Unable to read the tab manifest", exception)
+            null
+        }
+    }
+
+    private fun Manifest.encode(): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { output ->
+            output.writeInt(MAGIC)
+            output.writeInt(VERSION)
+            output.writeInt(selected)
+            output.writeInt(entries.size)
+            entries.forEach {
+                output.writeBoolean(it.key != null)
+                it.key?.let(output::writeUTF)
+                output.writeUTF(it.title.take(MAX_TITLE_LENGTH))
+                output.writeUTF(it.url.takeIf { url -> url.length <= MAX_URL_LENGTH }.orEmpty())
+            }
+        }
+        return bytes.toByteArray()
+    }
+
+    /**
+     * Create the initializer of the tab stored in the [entry]. A tab whose state cannot be read is
+     * restored by loading its URL, or is not restored if it has no URL.
+     */
+    @WorkerThread
+    private fun createInitializer(entry: ManifestEntry): TabInitializer? {
+        val key = entry.key ?: return entry.url.toPageInitializer()
+        return readState(key)?.let {
+            FreezableBundleInitializer(it, entry.title.ifEmpty { frozenTitle() })
+        } ?: entry.url.takeIf(String::isNotBlank)?.let(::UrlInitializer)
+    }
+
+    private fun String.toPageInitializer(): TabInitializer = when {
+        isBookmarkUrl() -> bookmarkPageInitializer
+        isDownloadsUrl() -> downloadPageInitializer
+        isStartPageUrl() -> homePageInitializer
+        isHistoryUrl() -> historyPageInitializer
+        else -> homePageInitializer
+    }
+
+    private fun frozenTitle(): String = application.getString(R.string.tab_frozen)
 
-    override fun deleteAll() {
-        FileUtils.deleteBundleInStorage(application, BUNDLE_STORAGE)
+    /**
+     * Retrieve the tabs stored in a single bundle by previous versions, which are restored with the
+     * last tab selected. The bundle is deleted once the tabs have been saved again.
+     */
+    @WorkerThread
+    private fun retrieveLegacyTabs(): List<StoredTab> {
+        val bundle = FileUtils.readBundleFromStorage(application, BUNDLE_STORAGE)
+            ?: return emptyList()
+        val tabs = bundle.keySet()
+            .filter { it.startsWith(BUNDLE_KEY) }
+            .mapNotNull { bundleKey ->
+                bundle.getBundle(bundleKey)?.let {
+                    Pair(it, bundle.getString(TAB_TITLE_KEY + bundleKey.extractNumberFromEnd()))
+                }
+            }.map { (bundle, title) ->
+                val url = bundle.getString(URL_KEY)
+                Pair(
+                    url.orEmpty(),
+                    url?.toPageInitializer()
+                        ?: FreezableBundleInitializer(bundle, title ?: frozenTitle())
+                )
+            }
+        return tabs.withIndex()
+            .map { (index, tab) ->
+                val (url, tabInitializer) = tab
+                StoredTab(index, index == tabs.lastIndex, url, tabInitializer)
+            }
+            .sortedBy { !it.isSelected }
     }
 
     private fun String.extractNumberFromEnd(): String {
@@ -90,8 +283,40 @@ class DefaultBundleStore @Inject constructor(
         }
     }
 
+    private fun ByteArray.checksum(): Long = CRC32().run {
+        update(this@checksum)
+        value
+    }
+
+    /**
+     * The order of the stored tabs.
+     *
+     * @param selected The position of the selected tab, or -1 if no tab was selected.
+     * @param entries The stored tabs.
+     */
+    private class Manifest(val selected: Int, val entries: List<ManifestEntry>)
+
+    /**
+     * A tab in the [Manifest].
+     *
+     * @param key The key of the file holding the state of the tab, or null if the tab shows a page
+     * generated by the browser, which is restored by generating the page again.
+     * @param title The title of the tab.
+     * @param url The URL of the tab.
+     */
+    private class ManifestEntry(val key: String?, val title: String, val url: String)
+
     companion object {
-        private const val TAG = "TabsRepository"
+        private const val TAG = "DefaultBundleStore"
+
+        private const val DIRECTORY = "tabs"
+        private const val MANIFEST_FILE = "manifest"
+        private const val STATE_EXTENSION = ".parcel"
+        private const val MAGIC = 0x4C544142 // "LTAB"
+        private const val VERSION = 1
+        private const val MAX_TITLE_LENGTH = 1024
+        private const val MAX_URL_LENGTH = 8192
+
         private const val BUNDLE_KEY = "WEBVIEW_"
         private const val TAB_TITLE_KEY = "TITLE_"
         private const val URL_KEY = "URL_KEY"
@@ -1,7 +1,8 @@
 package acr.browser.lightning.browser.tab.bundle
 
 import acr.browser.lightning.browser.tab.TabModel
-import acr.browser.lightning.browser.tab.TabInitializer
+import io.reactivex.Completable
+import io.reactivex.Observable
 
 /**
  * A bundle store implementation that no-ops for for incognito mode.
@@ -9,7 +10,7 @@ import acr.browser.lightning.browser.tab.TabInitializer
 object IncognitoBundleStore : BundleStore {
     override fun save(tabs: List<TabModel>) = Unit
 
-    override fun retrieve(): List<TabInitializer> = emptyList()
+    override fun retrieve(): Observable<StoredTab> = Observable.empty()
 
-    override fun deleteAll() = Unit
+    override fun deleteAll(): Completable = Completable.complete()
 }
@@ -0,0 +1,18 @@
+package acr.browser.lightning.browser.tab.bundle
+
+import acr.browser.lightning.browser.tab.TabInitializer
+
+/**
+ * A tab restored from the [BundleStore].
+ *
+ * @param position The position of the tab in the list of stored tabs.
+ * @param isSelected True if the tab was the selected tab when the tabs were stored.
+ * @param url The URL of the page the tab was showing when it was stored.
+ * @param tabInitializer The initializer that restores the tab.
+ */
+data class StoredTab(
+    val position: Int,
+    val isSelected: Boolean,
+    val url: String,
+    val tabInitializer: TabInitializer
+)
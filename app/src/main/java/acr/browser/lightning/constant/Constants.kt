@@ -23,6 +23,9 @@ const val SCHEME_HOMEPAGE = "${ABOUT}home"
 const val SCHEME_BLANK = "${ABOUT}blank"
 const val SCHEME_BOOKMARKS = "${ABOUT}bookmarks"
 
+// The origin of the pages generated by the browser, which are served from memory
+const val INTERNAL_ORIGIN = "${HTTPS}lightning.invalid"
+
 const val UTF8 = "UTF-8"
 
 // Default text encoding we will use
@@ -0,0 +1,47 @@
+package acr.browser.lightning.database
+
+/**
+ * Characters that the default `simple` tokenizer of an FTS4 table treats as separators, every
+ * other character is part of a token.
+ */
+private val SEPARATOR_REGEX = Regex("[\\x00-\\x2F\\x3A-\\x40\\x5B-\\x60\\x7B-\\x7F]+")
+
+/**
+ * The scheme and `www.` subdomain at the start of a query, which are not indexed.
+ */
+private val SCHEME_REGEX = Regex("^(?:https?://)?(?:www\\.)?", RegexOption.IGNORE_CASE)
+
+/**
+ * The options of the FTS4 tables that index URLs and titles. The prefix indexes allow the short
+ * prefixes typed into the search box to be looked up without scanning every term in the index.
+ */
+const val FULL_TEXT_OPTIONS = "prefix=\"2,3\""
+
+/**
+ * Returns an SQL expression that removes the scheme and the `www.` subdomain from the URL held in
+ * the [column] before it is indexed, so that every indexed URL does not match the prefixes `h` and
+ * `w`.
+ */
+fun searchableUrl(column: String): String =
+    "replace(replace(replace($column, '://www.', '://'), 'https://', ''), 'http://', '')"
+
+/**
+ * Returns this URL or query without the `http` or `https` scheme and the `www.` subdomain at its
+ * start.
+ */
+fun String.withoutSchemeAndWww(): String = replaceFirst(SCHEME_REGEX, "")
+
+/**
+ * Returns an FTS4 `MATCH` expression for this query that matches a column containing the words of
+ * the query in order, where the last word may be incomplete, or null if the query does not contain
+ * any words.
+ *
+ * For instance, `example.com/ne` matches `https://www.example.com/news` and a title containing
+ * `example com news`, but not `news.example.com`. A scheme and `www.` at the start of the query are
+ * ignored, since they are not indexed.
+ */
+fun String.toFullTextQuery(): String? = withoutSchemeAndWww()
+    .split(SEPARATOR_REGEX)
+    .filter(String::isNotEmpty)
+    .takeIf(List<String>::isNotEmpty)
+    ?.joinToString(separator = " ", prefix = "\"", postfix = "*\"")
@@ -0,0 +1,38 @@
+package acr.browser.lightning.database
+
+import android.database.sqlite.SQLiteDatabase
+
+/**
+ * A non destructive change to the schema of a database, which upgrades the database from the
+ * previous version to the [version] while keeping its rows.
+ *
+ * @param version The version of the database after the migration has run.
+ * @param migrate Changes the schema of the database and any rows affected by the change.
+ */
+class Migration(val version: Int, val migrate: (SQLiteDatabase) -> Unit)
+
+/**
+ * Upgrade this database from the [oldVersion] to the [newVersion] by running every one of the
+ * [migrations] between the two versions in order. The upgrade is run by
+ * [android.database.sqlite.SQLiteOpenHelper.onUpgrade] within a transaction, so a database is
+ * either migrated to the new version or left untouched if a migration fails.
+ *
+ * @throws IllegalStateException if there is no migration to one of the versions.
+ */
+fun SQLiteDatabase.migrate(oldVersion: Int, newVersion: Int, migrations: List<Migration>) {
+    val migrationsByVersion = migrations.associateBy(Migration::version)
+    for (version in oldVersion + 1..newVersion) {
+        val migration = checkNotNull(migrationsByVersion[version]) {
+            "No migration from version ${version - 1} to $version"
+        }
+        migration.migrate(this)
+    }
+}
+
+/**
+ * Delete the rows of the [table] that have the same value in the [column] as a row with a
+ * greater [id], so that a unique index can be created on the [column].
+ */
+fun SQLiteDatabase.deleteDuplicates(table: String, column: String, id: String) {
+    execSQL("DELETE FROM $table WHERE $id NOT IN (SELECT MAX($id) FROM $table GROUP BY $column)")
+}
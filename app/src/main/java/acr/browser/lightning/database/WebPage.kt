@@ -17,11 +17,13 @@ sealed class WebPage(
  * A data type that represents a page that was visited by the user.
  *
  * @param lastTimeVisited The last time the page was visited in milliseconds.
+ * @param visitCount The number of times the page was visited.
  */
 data class HistoryEntry(
     override val url: String,
     override val title: String,
-    val lastTimeVisited: Long = System.currentTimeMillis()
+    val lastTimeVisited: Long = System.currentTimeMillis(),
+    val visitCount: Int = 1
 ) : WebPage(url, title)
 
 /**
@@ -6,3 +6,24 @@ package acr.browser.lightning.database.adblock
  * @param name The name of the host.
  */
 inline class Host(val name: String)
+
+/**
+ * Returns a [Sequence] of the [Host] followed by each of its parent domains, e.g.
+ * `ads.example.com`, `example.com` and `com` for `ads.example.com`.
+ */
+fun Host.labelSuffixes(): Sequence<Host> = generateSequence(name) { suffix ->
+    suffix.substringAfter('.', "").takeIf(String::isNotEmpty)
+}.map(::Host)
+
+/**
+ * Returns the index at which the base domain of the host name starts, where the base domain is
+ * made up of the last two labels of the host, e.g. `example.com` for `cdn.ads.example.com`. Hosts
+ * that have fewer than two labels are their own base domain.
+ */
+fun String.baseDomainStart(): Int {
+    val lastSeparator = lastIndexOf('.')
+    if (lastSeparator <= 0) {
+        return 0
+    }
+    return lastIndexOf('.', lastSeparator - 1) + 1
+}
@@ -59,6 +59,30 @@ class HostsDatabase @Inject constructor(
         it.onComplete()
     }
 
+    /**
+     * Only the added and removed rows are written, in a single transaction, so that other
+     * connections keep reading the previous hosts until the transaction commits.
+     */
+    override fun replaceHosts(hosts: List<Host>): Single<HostsDiff> = Single.fromCallable {
+        val diff = HostsDiff.between(allHosts().blockingGet(), hosts)
+        if (diff.isEmpty) {
+            return@fromCallable diff
+        }
+
+        database.apply {
+            beginTransaction()
+            try {
+                diff.removedHosts.forEach { delete(TABLE_HOSTS, "$KEY_NAME=?", arrayOf(it.name)) }
+                diff.addedHosts.forEach { insert(TABLE_HOSTS, null, it.toContentValues()) }
+                setTransactionSuccessful()
+            } finally {
+                endTransaction()
+            }
+        }
+
+        diff
+    }
+
     override fun removeAllHosts(): Completable = Completable.fromCallable {
         database.run {
             delete(TABLE_HOSTS, null, null)
@@ -83,6 +107,9 @@ class HostsDatabase @Inject constructor(
         return false
     }
 
+    override fun containsHostOrParent(host: Host): Boolean =
+        host.labelSuffixes().any(::containsHost)
+
     override fun hasHosts(): Boolean = DatabaseUtils.queryNumEntries(database, TABLE_HOSTS) > 0
 
     override fun allHosts(): Single<List<Host>> = Single.fromCallable {
@@ -0,0 +1,37 @@
+package acr.browser.lightning.database.adblock
+
+/**
+ * The difference between the hosts held by a [HostsRepository] and a new list of hosts.
+ *
+ * @param addedHosts The hosts in the new list that were not held by the repository.
+ * @param removedHosts The hosts held by the repository that are not in the new list.
+ */
+data class HostsDiff(val addedHosts: List<Host>, val removedHosts: List<Host>) {
+
+    /**
+     * True if the repository already holds exactly the new list of hosts.
+     */
+    val isEmpty: Boolean
+        get() = addedHosts.isEmpty() && removedHosts.isEmpty()
+
+    /**
+     * The total number of hosts that were added or removed.
+     */
+    val size: Int
+        get() = addedHosts.size + removedHosts.size
+
+    companion object {
+
+        /**
+         * Returns the difference between the [currentHosts] and the [newHosts].
+         */
+        fun between(currentHosts: Collection<Host>, newHosts: Collection<Host>): HostsDiff {
+            val currentSet = currentHosts.toHashSet()
+            val newSet = newHosts.toHashSet()
+            return HostsDiff(
+                addedHosts = newSet.filterNot(currentSet::contains),
+                removedHosts = currentSet.filterNot(newSet::contains)
+            )
+        }
+    }
+}
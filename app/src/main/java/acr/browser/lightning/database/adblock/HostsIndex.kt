@@ -0,0 +1,261 @@
+package acr.browser.lightning.database.adblock
+
+import java.io.DataOutputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+
+/**
+ * An immutable, sorted index of hosts that is read directly out of a [ByteBuffer], usually one
+ * that has been memory mapped from disk. Lookups perform a binary search over the buffer and do
+ * not allocate, and since the buffer is only ever read using absolute reads, a single index can
+ * be safely queried from any number of threads.
+ *
+ * Hosts are sorted by their reversed characters, so `example.com` sorts as `moc.elpmaxe`. All hosts
+ * that share a parent domain therefore form a contiguous range of the index, which allows
+ * [containsHostOrParent] to walk the index like a trie of domain labels.
+ *
+ * The binary format of the index is as follows:
+ * ```
+ * int     magic number
+ * int     format version
+ * int     n = number of hosts
+ * int[]   n + 1 offsets of the host names, relative to the start of the name data
+ * byte[]  the ASCII host names, sorted in reverse order and concatenated without separators
+ * ```
+ *
+ * @param buffer The buffer containing an index written by [write].
+ */
+class HostsIndex private constructor(private val buffer: ByteBuffer) {
+
+    /**
+     * The number of hosts contained in the index.
+     */
+    val size: Int = buffer.getInt(SIZE_POSITION)
+
+    private val dataPosition = HEADER_SIZE + (size + 1) * Int.SIZE_BYTES
+
+    /**
+     * Returns `true` if the index contains the host [name], `false` otherwise.
+     */
+    fun contains(name: String): Boolean {
+        var low = 0
+        var high = size - 1
+        while (low <= high) {
+            val middle = (low + high) ushr 1
+            val comparison = compareEntry(middle, name)
+            when {
+                comparison < 0 -> low = middle + 1
+                comparison > 0 -> high = middle - 1
+                else -> return true
+            }
+        }
+        return false
+    }
+
+    /**
+     * Returns `true` if the index contains the host [name] or any of its parent domains, `false`
+     * otherwise. For instance, if the index contains `ads.example.com`, then both
+     * `ads.example.com` and `cdn.ads.example.com` are matched, but `example.com` is not.
+     *
+     * The labels of the [name] are walked from right to left in a single pass, narrowing the range
+     * of candidate entries with each character.
+     */
+    fun containsHostOrParent(name: String): Boolean {
+        var low = 0
+        var high = size
+        var depth = 0
+        for (position in name.length - 1 downTo 0) {
+            val character = name[position].toInt()
+            low = lowerBound(low, high, depth, character)
+            high = lowerBound(low, high, depth, character + 1)
+            if (low >= high) {
+                return false
+            }
+            depth++
+
+            // Entries that end at this depth sort first in the range, so only the first can match.
+            val isLabelStart = position == 0 || name[position - 1] == LABEL_SEPARATOR
+            if (isLabelStart && entryLength(low) == depth) {
+                return true
+            }
+        }
+        return false
+    }
+
+    /**
+     * Returns the difference between the hosts in this index and the [hosts], ignoring the hosts
+     * that would be dropped when the [hosts] are written to a new index.
+     */
+    fun diff(hosts: List<Host>): HostsDiff {
+        val names = hosts.asSequence().map(Host::name).filter(::isIndexable).toHashSet()
+        return HostsDiff(
+            addedHosts = names.filterNot(this::contains).map(::Host),
+            removedHosts = allHosts().filterNot { it.name in names }
+        )
+    }
+
+    /**
+     * Decodes and returns every host held in the index.
+     */
+    fun allHosts(): List<Host> = (0 until size).map { index ->
+        val start = entryStart(index)
+        val end = entryEnd(index)
+        val characters = CharArray(end - start) { buffer.get(start + it).toChar() }
+        Host(String(characters))
+    }
+
+    private fun entryStart(index: Int): Int =
+        dataPosition + buffer.getInt(HEADER_SIZE + index * Int.SIZE_BYTES)
+
+    private fun entryEnd(index: Int): Int =
+        dataPosition + buffer.getInt(HEADER_SIZE + (index + 1) * Int.SIZE_BYTES)
+
+    private fun entryLength(index: Int): Int = entryEnd(index) - entryStart(index)
+
+    /**
+     * Returns the character of the entry at [index] that is [depth] characters from its end, or -1
+     * if the entry is not long enough.
+     */
+    private fun reversedCharAt(index: Int, depth: Int): Int {
+        val end = entryEnd(index)
+        return if (end - entryStart(index) > depth) {
+            buffer.get(end - 1 - depth).toInt() and 0xFF
+        } else {
+            -1
+        }
+    }
+
+    /**
+     * Returns the first index in the range [[from], [to]) whose entry has a character greater than
+     * or equal to [character] at the provided [depth], or [to] if there is no such entry. Every
+     * entry in the range must share the same last [depth] characters.
+     */
+    private fun lowerBound(from: Int, to: Int, depth: Int, character: Int): Int {
+        var low = from
+        var high = to
+        while (low < high) {
+            val middle = (low + high) ushr 1
+            if (reversedCharAt(middle, depth) < character) {
+                low = middle + 1
+            } else {
+                high = middle
+            }
+        }
+        return low
+    }
+
+    /**
+     * Compares the entry at [index] to the [name] in reversed order, returning a negative number if
+     * the entry sorts before the name, a positive number if it sorts after, and zero if they are
+     * equal.
+     */
+    private fun compareEntry(index: Int, name: String): Int {
+        val start = entryStart(index)
+        val end = entryEnd(index)
+        val entryLength = end - start
+        val commonLength = minOf(entryLength, name.length)
+        for (i in 1..commonLength) {
+            val difference = (buffer.get(end - i).toInt() and 0xFF) - name[name.length - i].toInt()
+            if (difference != 0) {
+                return difference
+            }
+        }
+        return entryLength - name.length
+    }
+
+    companion object {
+        private const val MAGIC = 0x484F5354
+        private const val VERSION = 2
+        private const val SIZE_POSITION = 2 * Int.SIZE_BYTES
+        private const val HEADER_SIZE = 3 * Int.SIZE_BYTES
+        private const val LABEL_SEPARATOR = '.'
+
+        /**
+         * Orders host names by comparing their characters from last to first.
+         */
+        private val REVERSED_ORDER = Comparator<String> { first, second ->
+            val commonLength = minOf(first.length, second.length)
+            for (i in 1..commonLength) {
+                val difference = first[first.length - i] - second[second.length - i]
+                if (difference != 0) {
+                    return@Comparator difference
+                }
+            }
+            first.length - second.length
+        }
+
+        /**
+         * An index that contains no hosts.
+         */
+        val EMPTY: HostsIndex = HostsIndex(
+            ByteBuffer.allocate(HEADER_SIZE + Int.SIZE_BYTES).apply {
+                putInt(MAGIC)
+                putInt(VERSION)
+                putInt(0)
+                putInt(0)
+            }
+        )
+
+        /**
+         * Wraps the [buffer] in an index, or returns `null` if the buffer does not contain an index
+         * in the current format or if it was truncated, so that the offsets of its hosts would be
+         * read past the end of the buffer.
+         */
+        fun from(buffer: ByteBuffer): HostsIndex? {
+            if (buffer.limit() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(Int.SIZE_BYTES) != VERSION
+            ) {
+                return null
+            }
+            val size = buffer.getInt(SIZE_POSITION)
+            val offsetsSize = (size + 1L) * Int.SIZE_BYTES
+            if (size < 0 || HEADER_SIZE + offsetsSize > buffer.limit()) {
+                return null
+            }
+            val dataPosition = HEADER_SIZE + offsetsSize.toInt()
+            val dataSize = buffer.getInt(HEADER_SIZE + size * Int.SIZE_BYTES)
+            if (buffer.getInt(HEADER_SIZE) != 0
+                || dataSize < 0
+                || dataPosition.toLong() + dataSize > buffer.limit()
+            ) {
+                return null
+            }
+            return HostsIndex(buffer)
+        }
+
+        /**
+         * Writes an index containing the [hosts] to the [outputStream]. Duplicate hosts and hosts
+         * that contain non ASCII characters, which cannot be present in an encoded URL, are
+         * dropped.
+         *
+         * @return The number of hosts that were written.
+         */
+        fun write(hosts: List<Host>, outputStream: OutputStream): Int {
+            val sortedNames = hosts.asSequence()
+                .map(Host::name)
+                .filter(::isIndexable)
+                .toSortedSet(REVERSED_ORDER)
+
+            DataOutputStream(outputStream.buffered()).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+                output.writeInt(sortedNames.size)
+
+                var offset = 0
+                output.writeInt(offset)
+                sortedNames.forEach {
+                    offset += it.length
+                    output.writeInt(offset)
+                }
+
+                sortedNames.forEach(output::writeBytes)
+            }
+
+            return sortedNames.size
+        }
+
+        private fun isIndexable(name: String): Boolean = name.all { it.toInt() < 0x80 }
+    }
+
+}
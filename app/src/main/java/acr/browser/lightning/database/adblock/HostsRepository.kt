@@ -15,6 +15,15 @@ interface HostsRepository {
      */
     fun addHosts(hosts: List<Host>): Completable
 
+    /**
+     * Replace the hosts in the repository with the [List] of [Host], applying only the hosts that
+     * were added or removed. Readers continue to see the previous hosts until the new hosts are
+     * published all at once, and never observe a partially applied update.
+     *
+     * @return A [Single] that emits the difference that was applied when the replacement finishes.
+     */
+    fun replaceHosts(hosts: List<Host>): Single<HostsDiff>
+
     /**
      * Remove all hosts in the repository.
      *
@@ -27,6 +36,12 @@ interface HostsRepository {
      */
     fun containsHost(host: Host): Boolean
 
+    /**
+     * @return `true` if the repository contains the [Host] or any of its parent domains, e.g.
+     * `example.com` for `ads.example.com`, `false` otherwise.
+     */
+    fun containsHostOrParent(host: Host): Boolean
+
     /**
      * @return `true` if the repository has been initialized, `false` otherwise.
      */
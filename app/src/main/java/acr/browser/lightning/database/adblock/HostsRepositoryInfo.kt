@@ -1,6 +1,7 @@
 package acr.browser.lightning.database.adblock
 
 import acr.browser.lightning.browser.di.AdBlockPrefs
+import acr.browser.lightning.preference.delegates.intPreference
 import acr.browser.lightning.preference.delegates.nullableStringPreference
 import android.content.SharedPreferences
 import javax.inject.Inject
@@ -15,8 +16,40 @@ class HostsRepositoryInfo @Inject constructor(@AdBlockPrefs preferences: SharedP
      */
     var identity: String? by preferences.nullableStringPreference(IDENTITY)
 
+    /**
+     * The number of base domains that have been added to the stored bloom filter since it was last
+     * rebuilt, or [BLOOM_FILTER_CHANGES_UNKNOWN] if an update to the repository may not have been
+     * applied to the bloom filter.
+     */
+    var bloomFilterChanges: Int by preferences.intPreference(BLOOM_FILTER_CHANGES, 0)
+
+    /**
+     * The number of base domains the stored bloom filter was last rebuilt from.
+     */
+    var bloomFilterBaseDomains: Int by preferences.intPreference(BLOOM_FILTER_BASE_DOMAINS, 0)
+
+    /**
+     * The `ETag` of the remote hosts file the hosts repository was populated from, or `null`.
+     */
+    var hostsETag: String? by preferences.nullableStringPreference(HOSTS_E_TAG)
+
+    /**
+     * The `Last-Modified` date of the remote hosts file the hosts repository was populated from,
+     * or `null`.
+     */
+    var hostsLastModified: String? by preferences.nullableStringPreference(HOSTS_LAST_MODIFIED)
+
     companion object {
         private const val IDENTITY = "identity"
+        private const val BLOOM_FILTER_CHANGES = "bloomFilterChanges"
+        private const val BLOOM_FILTER_BASE_DOMAINS = "bloomFilterBaseDomains"
+        private const val HOSTS_E_TAG = "hostsETag"
+        private const val HOSTS_LAST_MODIFIED = "hostsLastModified"
+
+        /**
+         * The value of [bloomFilterChanges] while the bloom filter may be out of date.
+         */
+        const val BLOOM_FILTER_CHANGES_UNKNOWN = -1
     }
 
 }
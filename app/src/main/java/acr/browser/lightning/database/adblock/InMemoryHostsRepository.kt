@@ -11,18 +11,29 @@ import javax.inject.Singleton
 @Singleton
 class InMemoryHostsRepository @Inject constructor() : HostsRepository {
 
+    @Volatile
     private var mutableHostsSet: Set<Host> = emptySet()
 
     override fun addHosts(hosts: List<Host>): Completable = Completable.fromAction {
         mutableHostsSet = hosts.toSet()
     }
 
+    override fun replaceHosts(hosts: List<Host>): Single<HostsDiff> = Single.fromCallable {
+        val newHostsSet = hosts.toSet()
+        HostsDiff.between(mutableHostsSet, newHostsSet).also {
+            mutableHostsSet = newHostsSet
+        }
+    }
+
     override fun removeAllHosts(): Completable = Completable.fromAction {
         mutableHostsSet = emptySet()
     }
 
     override fun containsHost(host: Host): Boolean = mutableHostsSet.contains(host)
 
+    override fun containsHostOrParent(host: Host): Boolean =
+        host.labelSuffixes().any(mutableHostsSet::contains)
+
     override fun hasHosts(): Boolean = mutableHostsSet.isNotEmpty()
 
     override fun allHosts(): Single<List<Host>> = Single.just(mutableHostsSet.toList())
@@ -0,0 +1,112 @@
+package acr.browser.lightning.database.adblock
+
+import acr.browser.lightning.log.Logger
+import android.app.Application
+import io.reactivex.Completable
+import io.reactivex.Single
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.channels.FileChannel
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * A [HostsRepository] backed by a [HostsIndex] that is memory mapped from a file on disk. Hosts are
+ * written to the file once when they are added, after which [containsHost] and
+ * [containsHostOrParent] are lock free and allocation free searches over the mapped file.
+ *
+ * @param application The application used to locate the index file.
+ * @param logger The logger used to log status.
+ */
+@Singleton
+class MappedHostsRepository @Inject constructor(
+    application: Application,
+    private val logger: Logger
+) : HostsRepository {
+
+    private val indexFile = File(application.filesDir, INDEX_FILE_NAME)
+
+    @Volatile
+    private var hostsIndex: HostsIndex? = null
+
+    override fun addHosts(hosts: List<Host>): Completable = Completable.fromAction {
+        publishIndex(hosts)
+    }
+
+    /**
+     * The index is immutable, so readers keep searching the previous mapping, which remains valid
+     * after the file is replaced, until the new index is published by a single volatile write. The
+     * index is left untouched if the hosts have not changed.
+     *
+     * Any change rewrites the whole index file rather than only the delta. The index is a sorted
+     * array searched in place, so inserting a single host shifts every entry after it, and an
+     * appended delta would need its own search and merge on every lookup. The rewrite is one
+     * sequential write done off the main thread only when the remote list actually changed, and
+     * the costly part of an update, rebuilding the bloom filter, is still avoided by returning
+     * the [HostsDiff].
+     */
+    override fun replaceHosts(hosts: List<Host>): Single<HostsDiff> = Single.fromCallable {
+        val diff = index().diff(hosts)
+        if (!diff.isEmpty) {
+            publishIndex(hosts)
+        }
+        logger.log(TAG, "Added ${diff.addedHosts.size} and removed ${diff.removedHosts.size} hosts")
+        diff
+    }
+
+    override fun removeAllHosts(): Completable = Completable.fromAction {
+        hostsIndex = HostsIndex.EMPTY
+        indexFile.delete()
+    }
+
+    override fun containsHost(host: Host): Boolean = index().contains(host.name)
+
+    override fun containsHostOrParent(host: Host): Boolean =
+        index().containsHostOrParent(host.name)
+
+    override fun hasHosts(): Boolean = index().size > 0
+
+    override fun allHosts(): Single<List<Host>> = Single.fromCallable { index().allHosts() }
+
+    private fun publishIndex(hosts: List<Host>) {
+        val temporaryFile = File(indexFile.parentFile, "$INDEX_FILE_NAME.tmp")
+        val count = HostsIndex.write(hosts, temporaryFile.outputStream())
+        if (!temporaryFile.renameTo(indexFile)) {
+            throw IOException("Unable to replace hosts index")
+        }
+        hostsIndex = mapIndex()
+        logger.log(TAG, "Wrote $count hosts to index")
+    }
+
+    /**
+     * Returns the current index, mapping it from disk if it has not yet been loaded. Concurrent
+     * first accesses may each map the file, which is harmless since the mapping is read only.
+     */
+    private fun index(): HostsIndex = hostsIndex ?: mapIndex().also { hostsIndex = it }
+
+    private fun mapIndex(): HostsIndex {
+        if (!indexFile.exists()) {
+            return HostsIndex.EMPTY
+        }
+
+        return try {
+            RandomAccessFile(indexFile, "r").use { randomAccessFile ->
+                val channel = randomAccessFile.channel
+                HostsIndex.from(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()))
+            } ?: HostsIndex.EMPTY.also {
+                logger.log(TAG, "Discarding hosts index in an unknown format or truncated")
+                indexFile.delete()
+            }
+        } catch (exception: IOException) {
+            logger.log(TAG, "Unable to map hosts index", exception)
+            HostsIndex.EMPTY
+        }
+    }
+
+    companion object {
+        private const val TAG = "MappedHostsRepository"
+        private const val INDEX_FILE_NAME = "hosts.index"
+    }
+
+}
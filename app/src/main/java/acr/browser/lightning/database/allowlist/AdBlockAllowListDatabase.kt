@@ -1,6 +1,9 @@
 package acr.browser.lightning.database.allowlist
 
+import acr.browser.lightning.database.Migration
 import acr.browser.lightning.database.databaseDelegate
+import acr.browser.lightning.database.deleteDuplicates
+import acr.browser.lightning.database.migrate
 import acr.browser.lightning.extensions.firstOrNullMap
 import acr.browser.lightning.extensions.useMap
 import android.app.Application
@@ -28,6 +31,21 @@ class AdBlockAllowListDatabase @Inject constructor(
 
     private val database: SQLiteDatabase by databaseDelegate()
 
+    /**
+     * The migrations of the allow list, which keep the allowed domains.
+     */
+    private val migrations = listOf(
+        Migration(2) { db ->
+            // Version 2 made the domains unique, only the latest entry of a domain is kept.
+            db.deleteDuplicates(TABLE_WHITELIST, KEY_URL, KEY_ID)
+            createUrlIndex(db)
+        }
+    )
+
+    init {
+        setWriteAheadLoggingEnabled(true)
+    }
+
     // Creating Tables
     override fun onCreate(db: SQLiteDatabase) {
         val createAllowListTable = "CREATE TABLE $TABLE_WHITELIST(" +
@@ -36,14 +54,19 @@ class AdBlockAllowListDatabase @Inject constructor(
             " $KEY_CREATED INTEGER" +
             ")"
         db.execSQL(createAllowListTable)
+        createUrlIndex(db)
+    }
+
+    /**
+     * Create the unique index of the domains, which is checked on every page load.
+     */
+    private fun createUrlIndex(db: SQLiteDatabase) {
+        db.execSQL("CREATE UNIQUE INDEX ${TABLE_WHITELIST}_$KEY_URL ON $TABLE_WHITELIST($KEY_URL)")
     }
 
     // Upgrading database
     override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
-        // Drop older table if it exists
-        db.execSQL("DROP TABLE IF EXISTS $TABLE_WHITELIST")
-        // Create tables again
-        onCreate(db)
+        db.migrate(oldVersion, newVersion, migrations)
     }
 
     private fun Cursor.bindToAllowListItem() = AllowListEntry(
@@ -64,15 +87,7 @@ class AdBlockAllowListDatabase @Inject constructor(
     }
 
     override fun allowListItemForUrl(url: String): Maybe<AllowListEntry> = Maybe.fromCallable {
-        database.query(
-            TABLE_WHITELIST,
-            null,
-            "$KEY_URL=?",
-            arrayOf(url), null,
-            null,
-            "$KEY_CREATED DESC",
-            "1"
-        ).firstOrNullMap { it.bindToAllowListItem() }
+        database.rawQuery(URL_QUERY, arrayOf(url)).firstOrNullMap { it.bindToAllowListItem() }
     }
 
     override fun addAllowListItem(whitelistItem: AllowListEntry): Completable =
@@ -81,7 +96,13 @@ class AdBlockAllowListDatabase @Inject constructor(
                 put(KEY_URL, whitelistItem.domain)
                 put(KEY_CREATED, whitelistItem.timeCreated)
             }
-            database.insert(TABLE_WHITELIST, null, values)
+            // Allowing a domain again replaces its entry, since the domains are unique.
+            database.insertWithOnConflict(
+                TABLE_WHITELIST,
+                null,
+                values,
+                SQLiteDatabase.CONFLICT_REPLACE
+            )
         }
 
     override fun removeAllowListItem(whitelistItem: AllowListEntry): Completable =
@@ -99,7 +120,7 @@ class AdBlockAllowListDatabase @Inject constructor(
     companion object {
 
         // Database version
-        private const val DATABASE_VERSION = 1
+        private const val DATABASE_VERSION = 2
 
         // Database name
         private const val DATABASE_NAME = "allowListManager"
@@ -112,5 +133,9 @@ class AdBlockAllowListDatabase @Inject constructor(
         private const val KEY_URL = "url"
         private const val KEY_CREATED = "created"
 
+        // The query made on every page load, which must be answered by the index of the URLs.
+        internal const val URL_QUERY = "SELECT * FROM $TABLE_WHITELIST WHERE $KEY_URL = ?" +
+            " ORDER BY $KEY_CREATED DESC LIMIT 1"
+
     }
 }
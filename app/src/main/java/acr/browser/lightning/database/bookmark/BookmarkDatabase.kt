@@ -2,8 +2,13 @@ package acr.browser.lightning.database.bookmark
 
 import acr.browser.lightning.R
 import acr.browser.lightning.database.Bookmark
+import acr.browser.lightning.database.FULL_TEXT_OPTIONS
+import acr.browser.lightning.database.Migration
 import acr.browser.lightning.database.asFolder
 import acr.browser.lightning.database.databaseDelegate
+import acr.browser.lightning.database.migrate
+import acr.browser.lightning.database.searchableUrl
+import acr.browser.lightning.database.toFullTextQuery
 import acr.browser.lightning.extensions.firstOrNullMap
 import acr.browser.lightning.extensions.useMap
 import android.app.Application
@@ -15,7 +20,9 @@ import android.database.sqlite.SQLiteOpenHelper
 import androidx.core.database.getStringOrNull
 import io.reactivex.Completable
 import io.reactivex.Maybe
+import io.reactivex.Observable
 import io.reactivex.Single
+import io.reactivex.subjects.PublishSubject
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -31,6 +38,30 @@ class BookmarkDatabase @Inject constructor(
 
     private val defaultBookmarkTitle: String = application.getString(R.string.untitled)
     private val database: SQLiteDatabase by databaseDelegate()
+    private val bookmarkChanges = PublishSubject.create<Unit>().toSerialized()
+
+    /**
+     * The migrations of the bookmarks, which keep the existing bookmarks.
+     */
+    private val migrations = listOf(
+        Migration(2) { db ->
+            // Version 2 added the search index, which is built from the existing bookmarks.
+            createSearchIndex(db)
+            db.execSQL(
+                "INSERT INTO $TABLE_BOOKMARK_SEARCH(docid, $KEY_URL, $KEY_TITLE)" +
+                    " SELECT $KEY_ID, ${searchableUrl(KEY_URL)}, $KEY_TITLE FROM $TABLE_BOOKMARK"
+            )
+        },
+        Migration(3) { db ->
+            // Version 3 made the URLs unique, the bookmarks of a URL are merged into one.
+            mergeDuplicateBookmarks(db)
+            createIndexes(db)
+        }
+    )
+
+    init {
+        setWriteAheadLoggingEnabled(true)
+    }
 
     // Creating Tables
     override fun onCreate(db: SQLiteDatabase) {
@@ -42,14 +73,116 @@ class BookmarkDatabase @Inject constructor(
             "${DatabaseUtils.sqlEscapeString(KEY_POSITION)} INTEGER" +
             ')'
         db.execSQL(createBookmarkTable)
+        createIndexes(db)
+        createSearchIndex(db)
+    }
+
+    /**
+     * Create the unique index of the URLs, which looks up the bookmark of a page, and the index of
+     * the folders, which lists the bookmarks of a folder in the order of their positions.
+     */
+    private fun createIndexes(db: SQLiteDatabase) {
+        db.execSQL("CREATE UNIQUE INDEX ${TABLE_BOOKMARK}_$KEY_URL ON $TABLE_BOOKMARK($KEY_URL)")
+        db.execSQL(
+            "CREATE INDEX ${TABLE_BOOKMARK}_$KEY_FOLDER" +
+                " ON $TABLE_BOOKMARK($KEY_FOLDER, $KEY_POSITION)"
+        )
+    }
+
+    /**
+     * Create the full text index of the URLs and titles of the bookmarks, which is kept up to date
+     * by triggers as the bookmarks change.
+     */
+    private fun createSearchIndex(db: SQLiteDatabase) {
+        db.execSQL(
+            "CREATE VIRTUAL TABLE $TABLE_BOOKMARK_SEARCH" +
+                " USING fts4($KEY_URL, $KEY_TITLE, $FULL_TEXT_OPTIONS)"
+        )
+        db.execSQL(
+            "CREATE TRIGGER ${TABLE_BOOKMARK_SEARCH}_insert AFTER INSERT ON $TABLE_BOOKMARK BEGIN" +
+                " INSERT INTO $TABLE_BOOKMARK_SEARCH(docid, $KEY_URL, $KEY_TITLE)" +
+                " VALUES (new.$KEY_ID, ${searchableUrl("new.$KEY_URL")}, new.$KEY_TITLE);" +
+                " END"
+        )
+        // Moving a bookmark to another folder or position does not change the index.
+        db.execSQL(
+            "CREATE TRIGGER ${TABLE_BOOKMARK_SEARCH}_update" +
+                " AFTER UPDATE OF $KEY_URL, $KEY_TITLE ON $TABLE_BOOKMARK" +
+                " WHEN old.$KEY_URL IS NOT new.$KEY_URL OR old.$KEY_TITLE IS NOT new.$KEY_TITLE" +
+                " BEGIN" +
+                " UPDATE $TABLE_BOOKMARK_SEARCH SET $KEY_URL = ${searchableUrl("new.$KEY_URL")}," +
+                " $KEY_TITLE = new.$KEY_TITLE WHERE docid = old.$KEY_ID;" +
+                " END"
+        )
+        db.execSQL(
+            "CREATE TRIGGER ${TABLE_BOOKMARK_SEARCH}_delete AFTER DELETE ON $TABLE_BOOKMARK BEGIN" +
+                " DELETE FROM $TABLE_BOOKMARK_SEARCH WHERE docid = old.$KEY_ID;" +
+                " END"
+        )
+    }
+
+    /**
+     * Merge the bookmarks that share a URL into the latest of them, which takes the title and the
+     * folder of the latest of the others that have one if it has none itself, and delete the
+     * others. Only one folder can be kept for a URL, so a URL bookmarked in several folders stays
+     * in the folder of its latest bookmark.
+     */
+    private fun mergeDuplicateBookmarks(db: SQLiteDatabase) {
+        val duplicateIds = mutableListOf<Long>()
+        val merges = mutableListOf<Pair<Long, ContentValues>>()
+        db.query(
+            TABLE_BOOKMARK,
+            arrayOf(KEY_ID, KEY_URL, KEY_TITLE, KEY_FOLDER),
+            "$KEY_URL IS NOT NULL",
+            null,
+            null,
+            null,
+            "$KEY_URL, $KEY_ID DESC"
+        ).use { cursor ->
+            var keptUrl: String? = null
+            var keptId = 0L
+            var merge = ContentValues()
+            var title: String? = null
+            var folder: String? = null
+            fun finishMerge() {
+                if (merge.size() > 0) {
+                    merges += keptId to merge
+                }
+            }
+            while (cursor.moveToNext()) {
+                val url = cursor.getString(1)
+                val rowTitle = cursor.getStringOrNull(2)
+                val rowFolder = cursor.getStringOrNull(3)
+                if (url != keptUrl) {
+                    finishMerge()
+                    keptUrl = url
+                    keptId = cursor.getLong(0)
+                    merge = ContentValues()
+                    title = rowTitle
+                    folder = rowFolder
+                    continue
+                }
+                duplicateIds += cursor.getLong(0)
+                if (title.isNullOrBlank() && !rowTitle.isNullOrBlank()) {
+                    title = rowTitle
+                    merge.put(KEY_TITLE, rowTitle)
+                }
+                if (folder.isNullOrBlank() && !rowFolder.isNullOrBlank()) {
+                    folder = rowFolder
+                    merge.put(KEY_FOLDER, rowFolder)
+                }
+            }
+            finishMerge()
+        }
+        duplicateIds.forEach { db.delete(TABLE_BOOKMARK, "$KEY_ID=?", arrayOf(it.toString())) }
+        merges.forEach { (id, values) ->
+            db.update(TABLE_BOOKMARK, values, "$KEY_ID=?", arrayOf(id.toString()))
+        }
     }
 
     // Upgrading database
     override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
-        // Drop older table if it exists
-        db.execSQL("DROP TABLE IF EXISTS ${DatabaseUtils.sqlEscapeString(TABLE_BOOKMARK)}")
-        // Create tables again
-        onCreate(db)
+        db.migrate(oldVersion, newVersion, migrations)
     }
 
     /**
@@ -62,16 +195,7 @@ class BookmarkDatabase @Inject constructor(
      */
     private fun queryWithOptionalEndSlash(url: String): Cursor {
         val alternateUrl = alternateSlashUrl(url)
-        return database.query(
-            TABLE_BOOKMARK,
-            null,
-            "$KEY_URL=? OR $KEY_URL=?",
-            arrayOf(url, alternateUrl),
-            null,
-            null,
-            null,
-            "1"
-        )
+        return database.rawQuery(URL_QUERY, arrayOf(url, alternateUrl))
     }
 
     /**
@@ -144,34 +268,78 @@ class BookmarkDatabase @Inject constructor(
                 entry.bindBookmarkToContentValues()
             )
 
-            return@fromCallable id != -1L
+            return@fromCallable (id != -1L).also { if (it) bookmarkChanges.onNext(Unit) }
         }
 
     override fun addBookmarkList(bookmarkItems: List<Bookmark.Entry>): Completable =
-        Completable.fromAction {
-            database.apply {
-                beginTransaction()
+        importBookmarks(bookmarkItems.asSequence()).ignoreElements()
 
-                for (item in bookmarkItems) {
-                    addBookmarkIfNotExists(item).subscribe()
+    /**
+     * The URLs that are already bookmarked are loaded once into a set of their normalized forms,
+     * rather than being looked up for every imported bookmark. The new bookmarks are written in
+     * batches of [IMPORT_BATCH_SIZE], each by a compiled insert statement in its own transaction.
+     */
+    override fun importBookmarks(
+        bookmarkItems: Sequence<Bookmark.Entry>
+    ): Observable<BookmarkImportProgress> = Observable.create { emitter ->
+        val bookmarkedUrls = database
+            .query(TABLE_BOOKMARK, arrayOf(KEY_URL), null, null, null, null, null)
+            .useMap { it.getStringOrNull(0) }
+            .mapNotNullTo(HashSet()) { it?.normalizedUrl() }
+        val insert = database.compileStatement(
+            "INSERT OR IGNORE INTO $TABLE_BOOKMARK($KEY_URL, $KEY_TITLE, $KEY_FOLDER," +
+                " $KEY_POSITION) VALUES (?, ?, ?, ?)"
+        )
+        var processed = 0
+        var added = 0
+        try {
+            bookmarkItems.chunked(IMPORT_BATCH_SIZE).forEach { batch ->
+                if (emitter.isDisposed) {
+                    return@create
                 }
-
-                setTransactionSuccessful()
-                endTransaction()
+                database.beginTransaction()
+                try {
+                    for (entry in batch) {
+                        if (!bookmarkedUrls.add(entry.url.normalizedUrl())) {
+                            continue
+                        }
+                        insert.bindString(1, entry.url)
+                        insert.bindString(2, entry.title.ifBlank { defaultBookmarkTitle })
+                        insert.bindString(3, entry.folder.title)
+                        insert.bindLong(4, entry.position.toLong())
+                        if (insert.executeInsert() != -1L) {
+                            added++
+                        }
+                    }
+                    database.setTransactionSuccessful()
+                } finally {
+                    database.endTransaction()
+                }
+                processed += batch.size
+                emitter.onNext(BookmarkImportProgress(processed = processed, added = added))
+            }
+        } finally {
+            insert.close()
+            if (added > 0) {
+                bookmarkChanges.onNext(Unit)
             }
         }
+        emitter.onComplete()
+    }
 
     override fun deleteBookmark(entry: Bookmark.Entry): Single<Boolean> = Single.fromCallable {
-        return@fromCallable deleteWithOptionalEndSlash(entry.url) > 0
+        return@fromCallable (deleteWithOptionalEndSlash(entry.url) > 0)
+            .also { if (it) bookmarkChanges.onNext(Unit) }
     }
 
     override fun renameFolder(oldName: String, newName: String): Completable =
         Completable.fromAction {
-            val contentValues = ContentValues(1).apply {
-                put(KEY_FOLDER, newName)
+            database.compileStatement(RENAME_FOLDER).use {
+                it.bindString(1, newName)
+                it.bindString(2, oldName)
+                it.executeUpdateDelete()
             }
-
-            database.update(TABLE_BOOKMARK, contentValues, "$KEY_FOLDER=?", arrayOf(oldName))
+            bookmarkChanges.onNext(Unit)
         }
 
     override fun deleteFolder(folderToDelete: String): Completable =
@@ -182,6 +350,7 @@ class BookmarkDatabase @Inject constructor(
             delete(TABLE_BOOKMARK, null, null)
             close()
         }
+        bookmarkChanges.onNext(Unit)
     }
 
     override fun editBookmark(
@@ -190,9 +359,48 @@ class BookmarkDatabase @Inject constructor(
     ): Completable = Completable.fromAction {
         val contentValues = newBookmark.bindBookmarkToContentValues()
 
-        updateWithOptionalEndSlash(oldBookmark.url, contentValues)
+        database.beginTransaction()
+        try {
+            if (newBookmark.url != oldBookmark.url) {
+                // URLs are unique, so the edit fails rather than replace another bookmark.
+                val editedUrl = queryWithOptionalEndSlash(oldBookmark.url)
+                    .useMap { it.getString(it.getColumnIndex(KEY_URL)) }
+                    .firstOrNull()
+                val otherBookmarks = DatabaseUtils.queryNumEntries(
+                    database,
+                    TABLE_BOOKMARK,
+                    "$KEY_URL=? AND $KEY_URL!=?",
+                    arrayOf(newBookmark.url, editedUrl.orEmpty())
+                )
+                check(otherBookmarks == 0L) { "Another bookmark of ${newBookmark.url} exists" }
+            }
+            updateWithOptionalEndSlash(oldBookmark.url, contentValues)
+            database.setTransactionSuccessful()
+        } finally {
+            database.endTransaction()
+        }
+        bookmarkChanges.onNext(Unit)
     }
 
+    override fun findBookmarksContaining(query: String): Single<List<Bookmark.Entry>> =
+        Single.fromCallable {
+            val fullTextQuery = query.toFullTextQuery() ?: return@fromCallable emptyList()
+
+            return@fromCallable database.query(
+                TABLE_BOOKMARK,
+                null,
+                "$KEY_ID IN (SELECT docid FROM $TABLE_BOOKMARK_SEARCH" +
+                    " WHERE $TABLE_BOOKMARK_SEARCH MATCH ?)",
+                arrayOf(fullTextQuery),
+                null,
+                null,
+                // Bookmarks with titles starting with the query are the most relevant.
+                "$KEY_TITLE LIKE ${DatabaseUtils.sqlEscapeString("${query.escapeLike()}%")}" +
+                    " ESCAPE '$LIKE_ESCAPE' DESC, $KEY_TITLE COLLATE NOCASE ASC",
+                "5"
+            ).useMap { it.bindToBookmarkEntry() }
+        }
+
     override fun getAllBookmarksSorted(): Single<List<Bookmark.Entry>> = Single.fromCallable {
         return@fromCallable database.query(
             TABLE_BOOKMARK,
@@ -208,50 +416,26 @@ class BookmarkDatabase @Inject constructor(
     override fun getBookmarksFromFolderSorted(folder: String?): Single<List<Bookmark>> =
         Single.fromCallable {
             val finalFolder = folder ?: ""
-            return@fromCallable database.query(
-                TABLE_BOOKMARK,
-                null,
-                "$KEY_FOLDER=?",
-                arrayOf(finalFolder),
-                null,
-                null,
-                "$KEY_POSITION ASC, $KEY_TITLE COLLATE NOCASE ASC, $KEY_URL ASC"
-            ).useMap { it.bindToBookmarkEntry() }
+            return@fromCallable database.rawQuery(FOLDER_QUERY, arrayOf(finalFolder))
+                .useMap { it.bindToBookmarkEntry() }
         }
 
     override fun getFoldersSorted(): Single<List<Bookmark.Folder>> = Single.fromCallable {
         return@fromCallable database
-            .query(
-                true,
-                TABLE_BOOKMARK,
-                arrayOf(KEY_FOLDER),
-                null,
-                null,
-                null,
-                null,
-                "$KEY_FOLDER ASC",
-                null
-            )
+            .rawQuery(FOLDER_NAMES_QUERY, null)
             .useMap { it.getString(it.getColumnIndex(KEY_FOLDER)) }
             .filter { !it.isNullOrEmpty() }
             .map(String::asFolder)
     }
 
     override fun getFolderNames(): Single<List<String>> = Single.fromCallable {
-        return@fromCallable database.query(
-            true,
-            TABLE_BOOKMARK,
-            arrayOf(KEY_FOLDER),
-            null,
-            null,
-            null,
-            null,
-            "$KEY_FOLDER ASC",
-            null
-        ).useMap { it.getString(it.getColumnIndex(KEY_FOLDER)) }
+        return@fromCallable database.rawQuery(FOLDER_NAMES_QUERY, null)
+            .useMap { it.getString(it.getColumnIndex(KEY_FOLDER)) }
             .filter { !it.isNullOrEmpty() }
     }
 
+    override fun bookmarkChanges(): Observable<Unit> = bookmarkChanges.hide()
+
     override fun count(): Long = DatabaseUtils.queryNumEntries(database, TABLE_BOOKMARK)
 
     /**
@@ -281,6 +465,21 @@ class BookmarkDatabase @Inject constructor(
         position = getInt(getColumnIndex(KEY_POSITION))
     )
 
+    /**
+     * Returns the URL without a trailing slash, which is the same for both the URL and its
+     * [alternateSlashUrl].
+     */
+    private fun String.normalizedUrl(): String = removeSuffix("/")
+
+    /**
+     * Returns the string as a LIKE pattern that matches only the string itself, with its wildcards
+     * and the escape character escaped by [LIKE_ESCAPE].
+     */
+    private fun String.escapeLike(): String =
+        replace("$LIKE_ESCAPE", "$LIKE_ESCAPE$LIKE_ESCAPE")
+            .replace("%", "$LIKE_ESCAPE%")
+            .replace("_", "${LIKE_ESCAPE}_")
+
     /**
      * URLs can represent the same thing with or without a trailing slash,
      * for instance, google.com/ is the same page as google.com. Since these
@@ -300,7 +499,7 @@ class BookmarkDatabase @Inject constructor(
     companion object {
 
         // Database version
-        private const val DATABASE_VERSION = 1
+        private const val DATABASE_VERSION = 3
 
         // Database name
         private const val DATABASE_NAME = "bookmarkManager"
@@ -308,6 +507,15 @@ class BookmarkDatabase @Inject constructor(
         // Bookmark table name
         private const val TABLE_BOOKMARK = "bookmark"
 
+        // Full text index of the bookmarks
+        private const val TABLE_BOOKMARK_SEARCH = "bookmark_search"
+
+        // The number of bookmarks written in each transaction of an import
+        private const val IMPORT_BATCH_SIZE = 500
+
+        // The character escaping the wildcards of a LIKE pattern
+        private const val LIKE_ESCAPE = '\\'
+
         // Bookmark table columns names
         private const val KEY_ID = "id"
         private const val KEY_URL = "url"
@@ -315,6 +523,17 @@ class BookmarkDatabase @Inject constructor(
         private const val KEY_FOLDER = "folder"
         private const val KEY_POSITION = "position"
 
+        // The statements made on every page load and when browsing the bookmarks, which must be
+        // answered by the indexes of the bookmarks rather than by reading the whole table.
+        internal const val URL_QUERY = "SELECT * FROM $TABLE_BOOKMARK" +
+            " WHERE $KEY_URL = ? OR $KEY_URL = ? LIMIT 1"
+        internal const val FOLDER_QUERY = "SELECT * FROM $TABLE_BOOKMARK WHERE $KEY_FOLDER = ?" +
+            " ORDER BY $KEY_POSITION ASC, $KEY_TITLE COLLATE NOCASE ASC, $KEY_URL ASC"
+        internal const val FOLDER_NAMES_QUERY = "SELECT DISTINCT $KEY_FOLDER FROM $TABLE_BOOKMARK" +
+            " ORDER BY $KEY_FOLDER ASC"
+        internal const val RENAME_FOLDER = "UPDATE $TABLE_BOOKMARK SET $KEY_FOLDER = ?" +
+            " WHERE $KEY_FOLDER = ?"
+
     }
 
 }
@@ -0,0 +1,13 @@
+package acr.browser.lightning.database.bookmark
+
+/**
+ * The progress of importing a list of bookmarks.
+ *
+ * @param processed The number of bookmarks that have been processed so far.
+ * @param added The number of processed bookmarks that were added, the others were already
+ * bookmarked.
+ */
+data class BookmarkImportProgress(
+    val processed: Int,
+    val added: Int
+)
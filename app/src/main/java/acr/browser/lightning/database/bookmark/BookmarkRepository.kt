@@ -4,6 +4,7 @@ import acr.browser.lightning.database.Bookmark
 import androidx.annotation.WorkerThread
 import io.reactivex.Completable
 import io.reactivex.Maybe
+import io.reactivex.Observable
 import io.reactivex.Single
 
 /**
@@ -45,6 +46,19 @@ interface BookmarkRepository {
      */
     fun addBookmarkList(bookmarkItems: List<Bookmark.Entry>): Completable
 
+    /**
+     * Imports bookmarks into the database, skipping the bookmarks whose URLs, with or without a
+     * trailing slash, are already bookmarked or appear earlier in the [bookmarkItems]. The
+     * bookmarks are read from the sequence as they are written, so it may be produced lazily.
+     *
+     * @param bookmarkItems the bookmarks to import.
+     * @return an observable that emits the progress of the import after each batch of bookmarks
+     * has been written, and completes once all of them have been written.
+     */
+    fun importBookmarks(
+        bookmarkItems: Sequence<Bookmark.Entry>
+    ): Observable<BookmarkImportProgress>
+
     /**
      * Deletes a bookmark from the database. The [Bookmark.Entry.url] is used to delete the
      * bookmark.
@@ -80,14 +94,26 @@ interface BookmarkRepository {
     fun deleteAllBookmarks(): Completable
 
     /**
-     * Changes the bookmark with the original URL with all the data from the new bookmark.
+     * Changes the bookmark with the original URL with all the data from the new bookmark. URLs are
+     * unique, so the edit fails if the URL is changed to the URL of another bookmark.
      *
      * @param oldBookmark the old bookmark to replace.
      * @param newBookmark the new bookmark.
-     * @return an observable that emits a completion event when the bookmark edit is done.
+     * @return an observable that emits a completion event when the bookmark edit is done, or an
+     * [IllegalStateException] if another bookmark already has the URL of the new bookmark.
      */
     fun editBookmark(oldBookmark: Bookmark.Entry, newBookmark: Bookmark.Entry): Completable
 
+    /**
+     * Finds the bookmarks whose title or URL contain the words of the query in order, where the
+     * last word of the query may be incomplete. Bookmarks with titles starting with the query are
+     * emitted first, and only the first five bookmarks are emitted.
+     *
+     * @param query the query to search for.
+     * @return an observable that emits a list of matching bookmarks.
+     */
+    fun findBookmarksContaining(query: String): Single<List<Bookmark.Entry>>
+
     /**
      * Emits a list of all bookmarks, sorted by folder, position, title, and url.
      *
@@ -118,6 +144,14 @@ interface BookmarkRepository {
      */
     fun getFolderNames(): Single<List<String>>
 
+    /**
+     * Emits each time bookmarks have been added, edited, or deleted, on the thread that changed
+     * them.
+     *
+     * @return an observable that emits after each change to the bookmarks.
+     */
+    fun bookmarkChanges(): Observable<Unit>
+
     /**
      * A synchronous call to the model that returns the number of bookmarks. Should be called from a
      * background thread.
@@ -1,6 +1,9 @@
 package acr.browser.lightning.database.downloads
 
+import acr.browser.lightning.database.Migration
 import acr.browser.lightning.database.databaseDelegate
+import acr.browser.lightning.database.deleteDuplicates
+import acr.browser.lightning.database.migrate
 import acr.browser.lightning.extensions.firstOrNullMap
 import acr.browser.lightning.extensions.useMap
 import android.app.Application
@@ -25,6 +28,21 @@ class DownloadsDatabase @Inject constructor(
 
     private val database: SQLiteDatabase by databaseDelegate()
 
+    /**
+     * The migrations of the downloads, which keep the existing downloads.
+     */
+    private val migrations = listOf(
+        Migration(2) { db ->
+            // Version 2 made the URLs unique, only the latest download of a URL is kept.
+            db.deleteDuplicates(TABLE_DOWNLOADS, KEY_URL, KEY_ID)
+            createUrlIndex(db)
+        }
+    )
+
+    init {
+        setWriteAheadLoggingEnabled(true)
+    }
+
     // Creating Tables
     override fun onCreate(db: SQLiteDatabase) {
         val createDownloadsTable =
@@ -35,54 +53,34 @@ class DownloadsDatabase @Inject constructor(
                 "${DatabaseUtils.sqlEscapeString(KEY_SIZE)} TEXT" +
                 ')'
         db.execSQL(createDownloadsTable)
+        createUrlIndex(db)
+    }
+
+    /**
+     * Create the unique index of the URLs, which looks up the download of a URL.
+     */
+    private fun createUrlIndex(db: SQLiteDatabase) {
+        db.execSQL("CREATE UNIQUE INDEX ${TABLE_DOWNLOADS}_$KEY_URL ON $TABLE_DOWNLOADS($KEY_URL)")
     }
 
     // Upgrading database
     override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
-        // Drop older table if it exists
-        db.execSQL("DROP TABLE IF EXISTS ${DatabaseUtils.sqlEscapeString(TABLE_DOWNLOADS)}")
-        // Create tables again
-        onCreate(db)
+        db.migrate(oldVersion, newVersion, migrations)
     }
 
     override fun findDownloadForUrl(url: String): Maybe<DownloadEntry> = Maybe.fromCallable {
-        database.query(
-            TABLE_DOWNLOADS,
-            null,
-            "$KEY_URL=?",
-            arrayOf(url),
-            null,
-            null,
-            "1"
-        ).firstOrNullMap { it.bindToDownloadItem() }
+        database.rawQuery(URL_QUERY, arrayOf(url)).firstOrNullMap { it.bindToDownloadItem() }
     }
 
     override fun isDownload(url: String): Single<Boolean> = Single.fromCallable {
-        database.query(
-            TABLE_DOWNLOADS,
-            null,
-            "$KEY_URL=?",
-            arrayOf(url),
-            null,
-            null,
-            null,
-            "1"
-        ).use {
+        database.rawQuery(URL_QUERY, arrayOf(url)).use {
             return@fromCallable it.moveToFirst()
         }
     }
 
     override fun addDownloadIfNotExists(entry: DownloadEntry): Single<Boolean> =
         Single.fromCallable {
-            database.query(
-                TABLE_DOWNLOADS,
-                null,
-                "$KEY_URL=?",
-                arrayOf(entry.url),
-                null,
-                null,
-                "1"
-            ).use {
+            database.rawQuery(URL_QUERY, arrayOf(entry.url)).use {
                 if (it.moveToFirst()) {
                     return@fromCallable false
                 }
@@ -153,7 +151,7 @@ class DownloadsDatabase @Inject constructor(
     companion object {
 
         // Database version
-        private const val DATABASE_VERSION = 1
+        private const val DATABASE_VERSION = 2
 
         // Database name
         private const val DATABASE_NAME = "downloadManager"
@@ -167,6 +165,9 @@ class DownloadsDatabase @Inject constructor(
         private const val KEY_TITLE = "title"
         private const val KEY_SIZE = "size"
 
+        // The query made when a download starts, which must be answered by the index of the URLs.
+        internal const val URL_QUERY = "SELECT * FROM $TABLE_DOWNLOADS WHERE $KEY_URL = ? LIMIT 1"
+
     }
 
 }
@@ -3,8 +3,14 @@
  */
 package acr.browser.lightning.database.history
 
+import acr.browser.lightning.database.FULL_TEXT_OPTIONS
 import acr.browser.lightning.database.HistoryEntry
+import acr.browser.lightning.database.Migration
 import acr.browser.lightning.database.databaseDelegate
+import acr.browser.lightning.database.deleteDuplicates
+import acr.browser.lightning.database.migrate
+import acr.browser.lightning.database.searchableUrl
+import acr.browser.lightning.database.toFullTextQuery
 import acr.browser.lightning.extensions.firstOrNullMap
 import acr.browser.lightning.extensions.useMap
 import android.app.Application
@@ -31,23 +37,120 @@ class HistoryDatabase @Inject constructor(
 
     private val database: SQLiteDatabase by databaseDelegate()
 
+    /**
+     * The migrations of the history from version 2 onwards, which keep the visited pages.
+     */
+    private val migrations = listOf(
+        Migration(3) { db ->
+            // Version 3 added the search index, which is built from the existing history.
+            createSearchIndex(db)
+            db.execSQL(
+                "INSERT INTO $TABLE_HISTORY_SEARCH(docid, $KEY_URL, $KEY_TITLE)" +
+                    " SELECT $KEY_ID, ${searchableUrl(KEY_URL)}, $KEY_TITLE FROM $TABLE_HISTORY"
+            )
+        },
+        Migration(4) { db ->
+            // Version 4 added the visit count, existing pages count as visited once.
+            db.execSQL(
+                "ALTER TABLE $TABLE_HISTORY ADD COLUMN $KEY_VISITS INTEGER NOT NULL DEFAULT 1"
+            )
+        },
+        Migration(5) { db ->
+            // Version 5 made the URLs unique, duplicate entries are merged into the latest one.
+            db.execSQL(
+                "UPDATE $TABLE_HISTORY SET $KEY_VISITS = (SELECT SUM(duplicate.$KEY_VISITS)" +
+                    " FROM $TABLE_HISTORY duplicate" +
+                    " WHERE duplicate.$KEY_URL = $TABLE_HISTORY.$KEY_URL)" +
+                    " WHERE $KEY_ID IN (SELECT MAX($KEY_ID) FROM $TABLE_HISTORY" +
+                    " GROUP BY $KEY_URL HAVING COUNT(*) > 1)"
+            )
+            db.deleteDuplicates(TABLE_HISTORY, KEY_URL, KEY_ID)
+            createUrlIndex(db)
+        },
+        Migration(6) { db ->
+            // Version 6 indexed the time of the last visit, which orders the history.
+            createTimeVisitedIndex(db)
+        }
+    )
+
+    init {
+        setWriteAheadLoggingEnabled(true)
+    }
+
     // Creating Tables
     override fun onCreate(db: SQLiteDatabase) {
         val createHistoryTable = "CREATE TABLE $TABLE_HISTORY(" +
             " $KEY_ID INTEGER PRIMARY KEY," +
             " $KEY_URL TEXT," +
             " $KEY_TITLE TEXT," +
-            " $KEY_TIME_VISITED INTEGER" +
+            " $KEY_TIME_VISITED INTEGER," +
+            " $KEY_VISITS INTEGER NOT NULL DEFAULT 1" +
             ")"
         db.execSQL(createHistoryTable)
+        createUrlIndex(db)
+        createTimeVisitedIndex(db)
+        createSearchIndex(db)
+    }
+
+    /**
+     * Create the unique index of the URLs, which finds the entry to update when a page is visited.
+     */
+    private fun createUrlIndex(db: SQLiteDatabase) {
+        db.execSQL("CREATE UNIQUE INDEX ${TABLE_HISTORY}_$KEY_URL ON $TABLE_HISTORY($KEY_URL)")
+    }
+
+    /**
+     * Create the index of the time of the last visit, which reads the most recently visited pages
+     * without sorting the whole history.
+     */
+    private fun createTimeVisitedIndex(db: SQLiteDatabase) {
+        db.execSQL(
+            "CREATE INDEX ${TABLE_HISTORY}_$KEY_TIME_VISITED ON $TABLE_HISTORY($KEY_TIME_VISITED)"
+        )
+    }
+
+    /**
+     * Create the full text index of the URLs and titles of the history, which is kept up to date
+     * by triggers as the history changes.
+     */
+    private fun createSearchIndex(db: SQLiteDatabase) {
+        db.execSQL(
+            "CREATE VIRTUAL TABLE $TABLE_HISTORY_SEARCH" +
+                " USING fts4($KEY_URL, $KEY_TITLE, $FULL_TEXT_OPTIONS)"
+        )
+        db.execSQL(
+            "CREATE TRIGGER ${TABLE_HISTORY_SEARCH}_insert AFTER INSERT ON $TABLE_HISTORY BEGIN" +
+                " INSERT INTO $TABLE_HISTORY_SEARCH(docid, $KEY_URL, $KEY_TITLE)" +
+                " VALUES (new.$KEY_ID, ${searchableUrl("new.$KEY_URL")}, new.$KEY_TITLE);" +
+                " END"
+        )
+        // Visiting a page updates its title, which rarely changes, so only changes are indexed.
+        db.execSQL(
+            "CREATE TRIGGER ${TABLE_HISTORY_SEARCH}_update" +
+                " AFTER UPDATE OF $KEY_URL, $KEY_TITLE ON $TABLE_HISTORY" +
+                " WHEN old.$KEY_URL IS NOT new.$KEY_URL OR old.$KEY_TITLE IS NOT new.$KEY_TITLE" +
+                " BEGIN" +
+                " UPDATE $TABLE_HISTORY_SEARCH SET $KEY_URL = ${searchableUrl("new.$KEY_URL")}," +
+                " $KEY_TITLE = new.$KEY_TITLE WHERE docid = old.$KEY_ID;" +
+                " END"
+        )
+        db.execSQL(
+            "CREATE TRIGGER ${TABLE_HISTORY_SEARCH}_delete AFTER DELETE ON $TABLE_HISTORY BEGIN" +
+                " DELETE FROM $TABLE_HISTORY_SEARCH WHERE docid = old.$KEY_ID;" +
+                " END"
+        )
     }
 
     // Upgrading database
     override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
-        // Drop older table if it exists
-        db.execSQL("DROP TABLE IF EXISTS $TABLE_HISTORY")
-        // Create tables again
-        onCreate(db)
+        if (oldVersion < 2) {
+            // The schema of version 1 predates the migrations and cannot be upgraded.
+            db.execSQL("DROP TABLE IF EXISTS $TABLE_HISTORY")
+            db.execSQL("DROP TABLE IF EXISTS $TABLE_HISTORY_SEARCH")
+            onCreate(db)
+            return
+        }
+        db.migrate(oldVersion, newVersion, migrations)
     }
 
     override fun deleteHistory(): Completable = Completable.fromAction {
@@ -62,59 +165,78 @@ class HistoryDatabase @Inject constructor(
     }
 
     override fun visitHistoryEntry(url: String, title: String?): Completable =
-        Completable.fromAction {
-            val values = ContentValues().apply {
-                put(KEY_TITLE, title ?: "")
-                put(KEY_TIME_VISITED, System.currentTimeMillis())
-            }
+        visitHistoryEntries(listOf(HistoryEntry(url, title ?: "")))
 
-            database.query(
-                false,
-                TABLE_HISTORY,
-                arrayOf(KEY_ID),
-                "$KEY_URL = ?",
-                arrayOf(url),
-                null,
-                null,
-                null,
-                "1"
-            ).use {
-                if (it.count > 0) {
-                    database.update(TABLE_HISTORY, values, "$KEY_URL = ?", arrayOf(url))
-                } else {
-                    addHistoryEntry(HistoryEntry(url, title ?: ""))
+    /**
+     * Upserts the visits in a single transaction. `INSERT ... ON CONFLICT` is only supported by
+     * the SQLite of API 30 and above, so each visit is an update by the unique URL index, followed
+     * by an insert if the URL has not been visited before.
+     */
+    override fun visitHistoryEntries(visits: List<HistoryEntry>): Completable =
+        Completable.fromAction {
+            database.beginTransaction()
+            try {
+                database.compileStatement(VISIT_UPDATE).use { update ->
+                    database.compileStatement(VISIT_INSERT).use { insert ->
+                        visits.forEach { visit ->
+                            update.bindString(1, visit.title)
+                            update.bindLong(2, visit.lastTimeVisited)
+                            update.bindLong(3, visit.visitCount.toLong())
+                            update.bindString(4, visit.url)
+                            if (update.executeUpdateDelete() == 0) {
+                                insert.bindString(1, visit.url)
+                                insert.bindString(2, visit.title)
+                                insert.bindLong(3, visit.lastTimeVisited)
+                                // A title update of a page that is not in the history yet.
+                                insert.bindLong(4, visit.visitCount.coerceAtLeast(1).toLong())
+                                insert.executeInsert()
+                            }
+                        }
+                    }
                 }
+                database.setTransactionSuccessful()
+            } finally {
+                database.endTransaction()
             }
         }
 
     override fun findHistoryEntriesContaining(query: String): Single<List<HistoryEntry>> =
         Single.fromCallable {
-            val search = "%$query%"
-
-            return@fromCallable database.query(
-                TABLE_HISTORY,
-                null,
-                "$KEY_TITLE LIKE ? OR $KEY_URL LIKE ?",
-                arrayOf(search, search),
-                null,
-                null,
-                "$KEY_TIME_VISITED DESC",
-                "5"
-            ).useMap { it.bindToHistoryEntry() }
+            val fullTextQuery = query.toFullTextQuery() ?: return@fromCallable emptyList()
+
+            return@fromCallable database.rawQuery(SEARCH_QUERY, arrayOf(fullTextQuery))
+                .useMap { it.bindToHistoryEntry() }
         }
 
-    override fun lastHundredVisitedHistoryEntries(): Single<List<HistoryEntry>> =
+    override fun historyEntriesBefore(cursor: HistoryCursor?, limit: Int): Single<HistoryPage> =
         Single.fromCallable {
-            database.query(
-                TABLE_HISTORY,
-                null,
-                null,
-                null,
-                null,
-                null,
-                "$KEY_TIME_VISITED DESC",
-                "100"
-            ).useMap { it.bindToHistoryEntry() }
+            // The ID orders the entries visited at the same time, so none are skipped or repeated
+            // at the end of a page.
+            // One more row than the limit is read to find out if there is a next page.
+            val rowLimit = (limit + 1).toString()
+            val rows = if (cursor != null) {
+                val time = cursor.timeVisited.toString()
+                database.rawQuery(
+                    PAGE_BEFORE_QUERY,
+                    arrayOf(time, time, cursor.id.toString(), rowLimit)
+                )
+            } else {
+                database.rawQuery(FIRST_PAGE_QUERY, arrayOf(rowLimit))
+            }.useMap { Pair(it.getLong(it.getColumnIndex(KEY_ID)), it.bindToHistoryEntry()) }
+
+            val page = rows.take(limit)
+            HistoryPage(
+                entries = page.map { (_, entry) -> entry },
+                next = page.lastOrNull()
+                    ?.takeIf { rows.size > limit }
+                    ?.let { (id, entry) -> HistoryCursor(entry.lastTimeVisited, id) }
+            )
+        }
+
+    override fun lastVisitedHistoryEntries(limit: Int): Single<List<HistoryEntry>> =
+        Single.fromCallable {
+            database.rawQuery(LAST_VISITED_QUERY, arrayOf(limit.toString()))
+                .useMap { it.bindToHistoryEntry() }
         }
 
     @WorkerThread
@@ -155,18 +277,20 @@ class HistoryDatabase @Inject constructor(
         put(KEY_URL, url)
         put(KEY_TITLE, title)
         put(KEY_TIME_VISITED, lastTimeVisited)
+        put(KEY_VISITS, visitCount)
     }
 
     private fun Cursor.bindToHistoryEntry() = HistoryEntry(
         url = getString(1),
         title = getString(2),
-        lastTimeVisited = getLong(3)
+        lastTimeVisited = getLong(3),
+        visitCount = getInt(4)
     )
 
     companion object {
 
         // Database version
-        private const val DATABASE_VERSION = 2
+        private const val DATABASE_VERSION = 6
 
         // Database name
         private const val DATABASE_NAME = "historyManager"
@@ -174,11 +298,34 @@ class HistoryDatabase @Inject constructor(
         // HistoryEntry table name
         private const val TABLE_HISTORY = "history"
 
+        // Full text index of the history
+        private const val TABLE_HISTORY_SEARCH = "history_search"
+
         // HistoryEntry table columns names
         private const val KEY_ID = "id"
         private const val KEY_URL = "url"
         private const val KEY_TITLE = "title"
         private const val KEY_TIME_VISITED = "time"
+        private const val KEY_VISITS = "visits"
+
+        // The statements made on every page load and every key press, which must be answered by
+        // the indexes of the history rather than by reading the whole table.
+        internal const val VISIT_UPDATE = "UPDATE $TABLE_HISTORY" +
+            " SET $KEY_TITLE = ?, $KEY_TIME_VISITED = ?, $KEY_VISITS = $KEY_VISITS + ?" +
+            " WHERE $KEY_URL = ?"
+        private const val VISIT_INSERT = "INSERT INTO $TABLE_HISTORY" +
+            "($KEY_URL, $KEY_TITLE, $KEY_TIME_VISITED, $KEY_VISITS) VALUES (?, ?, ?, ?)"
+        internal const val SEARCH_QUERY = "SELECT * FROM $TABLE_HISTORY" +
+            " WHERE $KEY_ID IN (SELECT docid FROM $TABLE_HISTORY_SEARCH" +
+            " WHERE $TABLE_HISTORY_SEARCH MATCH ?)" +
+            " ORDER BY $KEY_TIME_VISITED DESC LIMIT 5"
+        internal const val LAST_VISITED_QUERY = "SELECT * FROM $TABLE_HISTORY" +
+            " ORDER BY $KEY_TIME_VISITED DESC LIMIT ?"
+        internal const val FIRST_PAGE_QUERY = "SELECT * FROM $TABLE_HISTORY" +
+            " ORDER BY $KEY_TIME_VISITED DESC, $KEY_ID DESC LIMIT ?"
+        internal const val PAGE_BEFORE_QUERY = "SELECT * FROM $TABLE_HISTORY" +
+            " WHERE $KEY_TIME_VISITED <= ? AND ($KEY_TIME_VISITED < ? OR $KEY_ID < ?)" +
+            " ORDER BY $KEY_TIME_VISITED DESC, $KEY_ID DESC LIMIT ?"
 
     }
 }
@@ -0,0 +1,42 @@
+package acr.browser.lightning.database.history
+
+import acr.browser.lightning.database.HistoryEntry
+
+/**
+ * A page of the history, ordered from the most to the least recently visited entry.
+ *
+ * @param entries The entries on the page.
+ * @param next The position after the last entry on the page, from which the next page is read, or
+ * null if this is the last page.
+ */
+data class HistoryPage(
+    val entries: List<HistoryEntry>,
+    val next: HistoryCursor?
+)
+
+/**
+ * A position in the history, between the entries visited at the same time and with greater IDs
+ * and the entries visited earlier or at the same time with smaller IDs. Pages read from a cursor
+ * are stable as new pages are visited, unlike pages read from an offset.
+ *
+ * @param timeVisited The time of the last visit of the entry before the position.
+ * @param id The ID of the entry before the position.
+ */
+data class HistoryCursor(val timeVisited: Long, val id: Long) {
+
+    override fun toString(): String = "$timeVisited$SEPARATOR$id"
+
+    companion object {
+        private const val SEPARATOR = ':'
+
+        /**
+         * Returns the cursor written by [HistoryCursor.toString], or null if the [string] is not
+         * a valid cursor.
+         */
+        fun fromString(string: String): HistoryCursor? {
+            val timeVisited = string.substringBefore(SEPARATOR).toLongOrNull()
+            val id = string.substringAfter(SEPARATOR, "").toLongOrNull()
+            return if (timeVisited != null && id != null) HistoryCursor(timeVisited, id) else null
+        }
+    }
+}
@@ -37,9 +37,20 @@ interface HistoryRepository {
     fun visitHistoryEntry(url: String, title: String?): Completable
 
     /**
-     * An observable that finds all history items containing the given query. If the query is
-     * contained anywhere within the title or the URL of the history item, it will be returned. For
-     * the sake of performance, only the first five items will be emitted.
+     * An observable that records the visits in a single transaction, adding each URL to the
+     * database if it doesn't exist or updating its title and time visited and adding to its visit
+     * count if it does.
+     *
+     * @param visits the visits to record.
+     * @return a valid observable.
+     */
+    fun visitHistoryEntries(visits: List<HistoryEntry>): Completable
+
+    /**
+     * An observable that finds the most recently visited history items containing the given query.
+     * If the words of the query appear in order at the start of words within the title or the URL
+     * of the history item, it will be returned, where the last word of the query may be
+     * incomplete. For the sake of performance, only the first five items will be emitted.
      *
      * @param query the query to search for.
      * @return a valid observable that emits
@@ -48,9 +59,21 @@ interface HistoryRepository {
     fun findHistoryEntriesContaining(query: String): Single<List<HistoryEntry>>
 
     /**
-     * An observable that emits a list of the last 100 visited history items.
+     * An observable that emits a list of the most recently visited history items.
      *
+     * @param limit the maximum number of history items to emit.
      * @return a valid observable that emits a list of history items.
      */
-    fun lastHundredVisitedHistoryEntries(): Single<List<HistoryEntry>>
+    fun lastVisitedHistoryEntries(limit: Int): Single<List<HistoryEntry>>
+
+    /**
+     * An observable that emits a page of the history items visited before the [cursor], most
+     * recent first, read from the index of the visit times rather than by skipping the newer
+     * items.
+     *
+     * @param cursor the position after the previous page, or null to read the first page.
+     * @param limit the maximum number of history items on the page.
+     * @return a valid observable that emits the page of history items.
+     */
+    fun historyEntriesBefore(cursor: HistoryCursor?, limit: Int): Single<HistoryPage>
 }
@@ -0,0 +1,31 @@
+package acr.browser.lightning.extensions
+
+import android.os.Bundle
+import android.os.Parcel
+
+/**
+ * Returns the bundle marshalled into bytes, which are read back by [unmarshallBundle].
+ */
+fun Bundle.marshall(): ByteArray {
+    val parcel = Parcel.obtain()
+    return try {
+        parcel.writeBundle(this)
+        parcel.marshall()
+    } finally {
+        parcel.recycle()
+    }
+}
+
+/**
+ * Returns the bundle marshalled into these bytes by [marshall], or null if they hold no bundle.
+ */
+fun ByteArray.unmarshallBundle(): Bundle? {
+    val parcel = Parcel.obtain()
+    return try {
+        parcel.unmarshall(this, 0, size)
+        parcel.setDataPosition(0)
+        parcel.readBundle(ClassLoader.getSystemClassLoader())
+    } finally {
+        parcel.recycle()
+    }
+}
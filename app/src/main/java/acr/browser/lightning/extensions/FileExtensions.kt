@@ -0,0 +1,22 @@
+package acr.browser.lightning.extensions
+
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Write the [bytes] to a temporary file next to this file and rename it over this file, so that
+ * the file holds either its previous content or all of the bytes even if the write is interrupted.
+ */
+fun File.writeBytesAtomically(bytes: ByteArray) {
+    parentFile?.mkdirs()
+    val temporaryFile = File(parentFile, "$name.tmp")
+    FileOutputStream(temporaryFile).use {
+        it.write(bytes)
+        it.fd.sync()
+    }
+    if (!temporaryFile.renameTo(this)) {
+        temporaryFile.delete()
+        throw IOException("Unable to replace $name")
+    }
+}
@@ -0,0 +1,57 @@
+package acr.browser.lightning.favicon
+
+import java.security.MessageDigest
+import java.util.Locale
+
+/**
+ * The key of the favicon of a host in the [FaviconStore], which is the first 128 bits of the
+ * SHA-256 hash of the host, so that unlike the hash code of the host, two hosts do not share a key
+ * in practice.
+ */
+data class FaviconKey(val high: Long, val low: Long) {
+
+    /**
+     * The key as 32 hexadecimal digits.
+     */
+    override fun toString(): String = String.format(Locale.ROOT, "%016x%016x", high, low)
+
+    companion object {
+
+        private const val HEX_LENGTH = 32
+        private val HEX_REGEX = Regex("[0-9a-f]{$HEX_LENGTH}")
+
+        /**
+         * Returns the key of the favicon of the [host], ignoring its case.
+         */
+        fun forHost(host: String): FaviconKey {
+            val hash = MessageDigest.getInstance("SHA-256")
+                .digest(host.toLowerCase(Locale.ROOT).toByteArray(Charsets.UTF_8))
+            return FaviconKey(hash.readLong(0), hash.readLong(Long.SIZE_BYTES))
+        }
+
+        /**
+         * Returns the key written by [FaviconKey.toString], or null if the [string] is not a
+         * valid key.
+         */
+        fun fromString(string: String): FaviconKey? {
+            if (!HEX_REGEX.matches(string)) {
+                return null
+            }
+            return FaviconKey(string.parseHexLong(0), string.parseHexLong(HEX_LENGTH / 2))
+        }
+
+        private fun ByteArray.readLong(offset: Int): Long =
+            (offset until offset + Long.SIZE_BYTES).fold(0L) { value, index ->
+                (value shl Byte.SIZE_BITS) or (this[index].toLong() and 0xFF)
+            }
+
+        /**
+         * Parse the 16 hexadecimal digits at the [offset], which may not fit in a signed long.
+         */
+        private fun String.parseHexLong(offset: Int): Long {
+            val high = substring(offset, offset + 8).toLong(16)
+            val low = substring(offset + 8, offset + 16).toLong(16)
+            return (high shl Int.SIZE_BITS) or low
+        }
+    }
+}
@@ -2,21 +2,15 @@ package acr.browser.lightning.favicon
 
 import acr.browser.lightning.R
 import acr.browser.lightning.extensions.pad
-import acr.browser.lightning.extensions.safeUse
 import acr.browser.lightning.log.Logger
 import acr.browser.lightning.utils.DrawableUtils
-import acr.browser.lightning.utils.FileUtils
 import android.app.Application
 import android.graphics.Bitmap
-import android.graphics.BitmapFactory
-import android.util.LruCache
 import androidx.annotation.ColorInt
 import androidx.annotation.WorkerThread
 import androidx.core.net.toUri
 import io.reactivex.Completable
 import io.reactivex.Maybe
-import java.io.File
-import java.io.FileOutputStream
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -27,29 +21,12 @@ import javax.inject.Singleton
 @Singleton
 class FaviconModel @Inject constructor(
     private val application: Application,
+    private val faviconStore: FaviconStore,
     private val logger: Logger
 ) {
 
-    private val loaderOptions = BitmapFactory.Options()
     private val bookmarkIconSize =
         application.resources.getDimensionPixelSize(R.dimen.material_grid_small_icon)
-    private val faviconCache =
-        object : LruCache<String, Bitmap>(FileUtils.megabytesToBytes(1).toInt()) {
-            override fun sizeOf(key: String, value: Bitmap) = value.byteCount
-        }
-
-    /**
-     * Retrieves a favicon from the memory cache.Bitmap may not be present if no bitmap has been
-     * added for the URL or if it has been evicted from the memory cache.
-     *
-     * @param url the URL to retrieve the bitmap for.
-     * @return the bitmap associated with the URL, may be null.
-     */
-    private fun getFaviconFromMemCache(url: String): Bitmap? {
-        synchronized(faviconCache) {
-            return faviconCache.get(url)
-        }
-    }
 
     /**
      * Create the default favicon for a bookmark with the provided [title].
@@ -68,18 +45,6 @@ class FaviconModel @Inject constructor(
         )
     }
 
-    /**
-     * Adds a bitmap to the memory cache for the given URL.
-     *
-     * @param url    the URL to map the bitmap to.
-     * @param bitmap the bitmap to store.
-     */
-    private fun addFaviconToMemCache(url: String, bitmap: Bitmap) {
-        synchronized(faviconCache) {
-            faviconCache.put(url, bitmap)
-        }
-    }
-
     /**
      * Retrieves the favicon for a URL, may be from network or cache.
      *
@@ -90,26 +55,25 @@ class FaviconModel @Inject constructor(
         val uri = url.toUri().toValidUri()
             ?: return@create it.onSuccess(createDefaultBitmapForTitle(title).pad())
 
-        val cachedFavicon = getFaviconFromMemCache(url)
-
-        if (cachedFavicon != null) {
-            return@create it.onSuccess(cachedFavicon.pad())
-        }
-
-        val faviconCacheFile = getFaviconCacheFile(application, uri)
-
-        if (faviconCacheFile.exists()) {
-            val storedFavicon = BitmapFactory.decodeFile(faviconCacheFile.path, loaderOptions)
+        val storedFavicon = faviconStore.get(FaviconKey.forHost(uri.host))
 
-            if (storedFavicon != null) {
-                addFaviconToMemCache(url, storedFavicon)
-                return@create it.onSuccess(storedFavicon.pad())
-            }
+        if (storedFavicon != null) {
+            return@create it.onSuccess(storedFavicon.pad())
         }
 
         return@create it.onSuccess(createDefaultBitmapForTitle(title).pad())
     }
 
+    /**
+     * Retrieves the favicon stored for a URL, without creating a default favicon if none is stored.
+     *
+     * @param url The URL that we should retrieve the favicon for.
+     * @return the stored favicon, or null if there is none.
+     */
+    @WorkerThread
+    fun storedFaviconForUrl(url: String): Bitmap? =
+        url.toUri().toValidUri()?.let { faviconStore.get(FaviconKey.forHost(it.host)) }
+
     /**
      * Caches a favicon for a particular URL.
      *
@@ -122,30 +86,14 @@ class FaviconModel @Inject constructor(
             val uri = url.toUri().toValidUri() ?: return@create emitter.onComplete()
 
             logger.log(TAG, "Caching icon for ${uri.host}")
-            FileOutputStream(getFaviconCacheFile(application, uri)).safeUse {
-                favicon.compress(Bitmap.CompressFormat.PNG, 100, it)
-                it.flush()
-                emitter.onComplete()
-            }
+            faviconStore.put(FaviconKey.forHost(uri.host), favicon)
+            emitter.onComplete()
         }
 
     companion object {
 
         private const val TAG = "FaviconModel"
 
-        /**
-         * Creates the cache file for the favicon image. File name will be in the form of "hash of URI host".png
-         *
-         * @param app the context needed to retrieve the cache directory.
-         * @param validUri the URI to use as a unique identifier.
-         * @return a valid cache file.
-         */
-        @WorkerThread
-        fun getFaviconCacheFile(app: Application, validUri: ValidUri): File {
-            val hash = validUri.host.hashCode().toString()
-
-            return File(app.cacheDir, "$hash.png")
-        }
     }
 
 }
@@ -0,0 +1,339 @@
+package acr.browser.lightning.favicon
+
+import acr.browser.lightning.R
+import acr.browser.lightning.log.Logger
+import android.app.ActivityManager
+import android.app.Application
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.LruCache
+import androidx.annotation.WorkerThread
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.util.zip.CRC32
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.math.max
+import kotlin.math.roundToInt
+
+/**
+ * A store of the favicons of hosts, which appends the icons as PNGs to a single pack file and
+ * finds them through an index of their offsets held in memory, so reading an icon costs a seek in
+ * a file that is already open rather than opening a file per host.
+ *
+ * The index is rebuilt by reading the records when the store is first used. The file is cut off at
+ * the first record that was not completely written or whose icon does not match its checksum, an
+ * icon that no longer matches its checksum when it is read is dropped from the index, and the file
+ * is compacted when most of it is taken by icons that have been replaced. Icons are downscaled to
+ * the size they are drawn at before they are stored, and the decoded icons are kept in a memory
+ * cache sized for the device.
+ */
+@Singleton
+class FaviconStore @Inject constructor(
+    private val application: Application,
+    activityManager: ActivityManager,
+    private val logger: Logger
+) {
+
+    private val packFile = File(application.cacheDir, PACK_FILE)
+    private val iconSize =
+        application.resources.getDimensionPixelSize(R.dimen.material_grid_small_icon)
+    private val memoryCache =
+        object : LruCache<FaviconKey, Bitmap>(memoryCacheSize(activityManager)) {
+            override fun sizeOf(key: FaviconKey, value: Bitmap) = value.byteCount
+        }
+
+    // The pack file, index and sizes are guarded by the index.
+    private val index = HashMap<FaviconKey, Record>()
+    private var pack: RandomAccessFile? = null
+    private var liveBytes = 0L
+    private var deadBytes = 0L
+
+    /**
+     * Returns the decoded favicon stored for the [key], or null if there is none.
+     */
+    @WorkerThread
+    fun get(key: FaviconKey): Bitmap? {
+        memoryCache[key]?.let { return it }
+        val encoded = getEncoded(key) ?: return null
+        val bitmap = BitmapFactory.decodeByteArray(encoded, 0, encoded.size) ?: return null
+        memoryCache.put(key, bitmap)
+        return bitmap
+    }
+
+    /**
+     * Returns the favicon stored for the [key] encoded as a PNG, or null if there is none.
+     */
+    @WorkerThread
+    fun getEncoded(key: FaviconKey): ByteArray? = synchronized(index) {
+        val pack = openPack() ?: return null
+        val record = index[key] ?: return null
+        try {
+            pack.readIcon(record) ?: run {
+                logger.log(TAG, "Dropping corrupt favicon $key")
+                index.remove(key)
+                liveBytes -= record.size
+                deadBytes += record.size
+                null
+            }
+        } catch (exception: IOException) {
+            logger.log(TAG, "Unable to read favicon", exception)
+            null
+        }
+    }
+
+    /**
+     * True if a favicon is stored for the [key].
+     */
+    @WorkerThread
+    operator fun contains(key: FaviconKey): Boolean = synchronized(index) {
+        openPack()
+        key in index
+    }
+
+    /**
+     * Store the [icon] as the favicon for the [key], downscaled to the size it is drawn at. The
+     * icon is not appended again if it is the same as the stored icon.
+     */
+    @WorkerThread
+    fun put(key: FaviconKey, icon: Bitmap) {
+        val scaledIcon = icon.downscale(iconSize)
+        val encoded = ByteArrayOutputStream().also {
+            scaledIcon.compress(Bitmap.CompressFormat.PNG, 100, it)
+        }.toByteArray()
+        val checksum = encoded.checksum()
+        memoryCache.put(key, scaledIcon)
+
+        synchronized(index) {
+            val pack = openPack() ?: return
+            val existing = index[key]
+            if (existing != null && existing.length == encoded.size &&
+                existing.checksum == checksum
+            ) {
+                return
+            }
+            try {
+                val offset = pack.length()
+                pack.seek(offset)
+                pack.write(encodeRecord(key, encoded, checksum))
+                index[key] = Record(offset, encoded.size, checksum)
+                liveBytes += RECORD_HEADER_SIZE + encoded.size
+                if (existing != null) {
+                    liveBytes -= existing.size
+                    deadBytes += existing.size
+                }
+            } catch (exception: IOException) {
+                logger.log(TAG, "Unable to write favicon", exception)
+                return
+            }
+            compactIfWasteful()
+        }
+    }
+
+    /**
+     * Open the pack file and build the index if it has not been opened yet, or return null if it
+     * cannot be opened. Must be called while holding the lock of the index.
+     */
+    private fun openPack(): RandomAccessFile? {
+        pack?.let { return it }
+        return try {
+            val isNew = !packFile.exists()
+            val opened = RandomAccessFile(packFile, "rw")
+            pack = opened
+            loadIndex(opened)
+            if (isNew) {
+                deleteLegacyFavicons()
+            }
+            compactIfWasteful()
+            pack
+        } catch (exception: IOException) {
+            logger.log(TAG, "Unable to open the favicon pack", exception)
+            pack = null
+            null
+        }
+    }
+
+    private fun loadIndex(pack: RandomAccessFile) {
+        index.clear()
+        liveBytes = 0
+        deadBytes = 0
+        val fileLength = pack.length()
+        if (fileLength < FILE_HEADER_SIZE || pack.readInt() != MAGIC ||
+            pack.readInt() != VERSION
+        ) {
+            pack.setLength(0)
+            pack.writeInt(MAGIC)
+            pack.writeInt(VERSION)
+            return
+        }
+
+        var offset = FILE_HEADER_SIZE.toLong()
+        while (offset + RECORD_HEADER_SIZE <= fileLength) {
+            pack.seek(offset)
+            val key = FaviconKey(pack.readLong(), pack.readLong())
+            val length = pack.readInt()
+            val checksum = pack.readInt()
+            if (length <= 0 || length > MAX_ICON_BYTES ||
+                offset + RECORD_HEADER_SIZE + length > fileLength
+            ) {
+                break
+            }
+            val record = Record(offset, length, checksum)
+            if (pack.readIcon(record) == null) {
+                break
+            }
+            index.put(key, record)?.let {
+                liveBytes -= it.size
+                deadBytes += it.size
+            }
+            liveBytes += record.size
+            offset += record.size
+        }
+        if (offset < fileLength) {
+            logger.log(TAG, "Discarding ${fileLength - offset} bytes of invalid favicons")
+            pack.setLength(offset)
+        }
+    }
+
+    /**
+     * Rewrite the pack file with only the current icons if the replaced icons take up most of it.
+     * Must be called while holding the lock of the index.
+     */
+    private fun compactIfWasteful() {
+        val pack = pack ?: return
+        if (deadBytes < COMPACTION_MIN_DEAD_BYTES || deadBytes < liveBytes) {
+            return
+        }
+        logger.log(TAG, "Compacting favicons, $deadBytes of ${liveBytes + deadBytes} bytes unused")
+        val compactFile = File(application.cacheDir, "$PACK_FILE.compact")
+        try {
+            val compactIndex = HashMap<FaviconKey, Record>(index.size)
+            RandomAccessFile(compactFile, "rw").use { compact ->
+                compact.setLength(0)
+                compact.writeInt(MAGIC)
+                compact.writeInt(VERSION)
+                index.forEach { (key, record) ->
+                    // An icon that no longer matches its checksum is left out.
+                    val encoded = pack.readIcon(record) ?: return@forEach
+                    val offset = compact.filePointer
+                    compact.write(encodeRecord(key, encoded, record.checksum))
+                    compactIndex[key] = record.copy(offset = offset)
+                }
+                compact.fd.sync()
+            }
+            pack.close()
+            this.pack = null
+            check(compactFile.renameTo(packFile)) { "Unable to replace the favicon pack" }
+            this.pack = RandomAccessFile(packFile, "rw")
+            index.clear()
+            index.putAll(compactIndex)
+            liveBytes = compactIndex.values.fold(0L) { bytes, record -> bytes + record.size }
+            deadBytes = 0
+        } catch (exception: Exception) {
+            logger.log(TAG, "Unable to compact favicons", exception)
+            compactFile.delete()
+            if (this.pack == null) {
+                // The pack was closed, so its index is rebuilt when it is opened again.
+                index.clear()
+            }
+        }
+    }
+
+    /**
+     * Returns the icon of the [record], or null if it does not match the checksum of the record.
+     */
+    private fun RandomAccessFile.readIcon(record: Record): ByteArray? {
+        val encoded = ByteArray(record.length)
+        seek(record.offset + RECORD_HEADER_SIZE)
+        readFully(encoded)
+        return encoded.takeIf { it.checksum() == record.checksum }
+    }
+
+    private fun encodeRecord(key: FaviconKey, encoded: ByteArray, checksum: Int): ByteArray {
+        val record = ByteArrayOutputStream(RECORD_HEADER_SIZE + encoded.size)
+        DataOutputStream(record).apply {
+            writeLong(key.high)
+            writeLong(key.low)
+            writeInt(encoded.size)
+            writeInt(checksum)
+            write(encoded)
+        }
+        return record.toByteArray()
+    }
+
+    /**
+     * Delete the files that favicons were stored in before they were packed, which were named
+     * after the hash code of the host.
+     */
+    private fun deleteLegacyFavicons() {
+        application.cacheDir
+            .listFiles { file -> LEGACY_FAVICON_REGEX.matches(file.name) }
+            ?.forEach { it.delete() }
+    }
+
+    private fun Bitmap.downscale(size: Int): Bitmap {
+        if (width <= size && height <= size) {
+            return this
+        }
+        val scale = size.toFloat() / max(width, height)
+        return Bitmap.createScaledBitmap(
+            this,
+            max(1, (width * scale).roundToInt()),
+            max(1, (height * scale).roundToInt()),
+            true
+        )
+    }
+
+    /**
+     * The position of an icon in the pack file.
+     *
+     * @param offset The offset of the record of the icon.
+     * @param length The length of the encoded icon.
+     * @param checksum The CRC32 of the encoded icon.
+     */
+    private data class Record(val offset: Long, val length: Int, val checksum: Int) {
+        val size: Int
+            get() = RECORD_HEADER_SIZE + length
+    }
+
+    companion object {
+        private const val TAG = "FaviconStore"
+
+        private const val PACK_FILE = "favicons.pack"
+        private const val MAGIC = 0x4C464156 // "LFAV"
+        private const val VERSION = 1
+        private const val FILE_HEADER_SIZE = 8
+        // The key, the length and the checksum of the icon.
+        private const val RECORD_HEADER_SIZE = 24
+        private const val MAX_ICON_BYTES = 1024 * 1024
+        private const val COMPACTION_MIN_DEAD_BYTES = 256 * 1024
+
+        private const val LOW_RAM_CACHE_BYTES = 1024 * 1024
+        private const val MEMORY_CLASS_FRACTION = 64
+
+        private val LEGACY_FAVICON_REGEX = Regex("-?\\d+\\.png")
+
+        /**
+         * Returns the CRC32 of the encoded icon stored with its record.
+         */
+        private fun ByteArray.checksum(): Int = CRC32().run {
+            update(this@checksum)
+            value.toInt()
+        }
+
+        /**
+         * Returns the size of the memory cache, which is 1/64th of the memory available to the app
+         * or 1 MiB on low memory devices.
+         */
+        private fun memoryCacheSize(activityManager: ActivityManager): Int =
+            if (activityManager.isLowRamDevice) {
+                LOW_RAM_CACHE_BYTES
+            } else {
+                val memoryClassBytes = activityManager.memoryClass * 1024 * 1024
+                max(LOW_RAM_CACHE_BYTES, memoryClassBytes / MEMORY_CLASS_FRACTION)
+            }
+    }
+}
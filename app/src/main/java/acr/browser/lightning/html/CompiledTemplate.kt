@@ -0,0 +1,55 @@
+package acr.browser.lightning.html
+
+/**
+ * An HTML template compiled once into the literal fragments between its [placeholders], so that
+ * it can be rendered any number of times by appending the fragments and the content of each
+ * placeholder, without searching or parsing the template again.
+ *
+ * @param template The template containing the placeholders.
+ * @param placeholders The strings in the template that are replaced when it is rendered.
+ */
+class CompiledTemplate(template: String, placeholders: List<String>) {
+
+    private val fragments = ArrayList<String>()
+    private val slots = ArrayList<String>()
+
+    init {
+        var start = 0
+        while (true) {
+            val (index, placeholder) = template.findAnyOf(placeholders, start) ?: break
+            fragments += template.substring(start, index)
+            slots += placeholder
+            start = index + placeholder.length
+        }
+        fragments += template.substring(start)
+    }
+
+    /**
+     * Append the template to the [output], replacing each placeholder by the content that [fill]
+     * appends for it.
+     */
+    fun render(output: StringBuilder, fill: StringBuilder.(placeholder: String) -> Unit) {
+        slots.forEachIndexed { index, placeholder ->
+            output.append(fragments[index])
+            output.fill(placeholder)
+        }
+        output.append(fragments.last())
+    }
+}
+
+/**
+ * Append the [text] escaped for use in the text of an element or a quoted attribute value.
+ */
+fun StringBuilder.appendEscapedHtml(text: String): StringBuilder {
+    text.forEach {
+        when (it) {
+            '&' -> append("&amp;")
+            '<' -> append("&lt;")
+            '>' -> append("&gt;")
+            '"' -> append("&quot;")
+            '\'' -> append("&#39;")
+            else -> append(it)
+        }
+    }
+    return this
+}
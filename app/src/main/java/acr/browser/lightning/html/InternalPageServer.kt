@@ -0,0 +1,196 @@
+package acr.browser.lightning.html
+
+import acr.browser.lightning.constant.INTERNAL_ORIGIN
+import acr.browser.lightning.favicon.FaviconKey
+import acr.browser.lightning.favicon.FaviconStore
+import acr.browser.lightning.html.bookmark.BookmarkPageFactory
+import acr.browser.lightning.html.download.DownloadPageFactory
+import acr.browser.lightning.html.history.HistoryPageFactory
+import acr.browser.lightning.html.history.HistoryPageRequestHandler
+import acr.browser.lightning.html.homepage.HomePageFactory
+import acr.browser.lightning.log.Logger
+import android.app.Application
+import android.webkit.MimeTypeMap
+import android.webkit.WebResourceRequest
+import android.webkit.WebResourceResponse
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import javax.inject.Inject
+
+/**
+ * Serves the pages generated by the browser, their icons and the assets they use to the tabs from
+ * the [INTERNAL_ORIGIN], in place of the files they used to be written to. The pages and icons are
+ * read from the [InternalPageStore] and the [FaviconStore], and a page that is not in the store,
+ * such as a page restored with the back stack of a tab, is built by its factory when it is
+ * requested.
+ *
+ * The resources are served without an `ETag`, as the WebView does not cache intercepted responses
+ * and a [WebResourceResponse] may not carry the `304` status that a conditional request expects.
+ */
+class InternalPageServer @Inject constructor(
+    private val application: Application,
+    private val internalPageStore: InternalPageStore,
+    private val homePageFactory: HomePageFactory,
+    private val bookmarkPageFactory: BookmarkPageFactory,
+    private val historyPageFactory: HistoryPageFactory,
+    private val downloadPageFactory: DownloadPageFactory,
+    private val historyPageRequestHandler: HistoryPageRequestHandler,
+    private val faviconStore: FaviconStore,
+    private val logger: Logger
+) {
+
+    /**
+     * Returns the response to the [request] if it is a request for the [INTERNAL_ORIGIN], or null
+     * if it should be loaded normally.
+     *
+     * @param pageUrl The URL of the page that made the request.
+     * @param request The request to respond to.
+     */
+    fun handleRequest(pageUrl: String, request: WebResourceRequest): WebResourceResponse? {
+        val url = request.url
+        if (url.scheme != INTERNAL_SCHEME || url.authority != INTERNAL_AUTHORITY) {
+            return null
+        }
+        val path = url.path.orEmpty()
+        return when {
+            path == HistoryPageRequestHandler.ENTRIES_PATH ->
+                historyPageRequestHandler.handleRequest(pageUrl, request)
+            path.startsWith(ASSETS_PATH) -> serveAsset(path.removePrefix(ASSETS_PATH))
+            path.startsWith(FAVICONS_PATH) -> serveFavicon(path.removePrefix(FAVICONS_PATH))
+            else -> serveResource(path)
+        }
+    }
+
+    private fun serveResource(path: String): WebResourceResponse {
+        val resource = internalPageStore[path]
+            ?: buildPage(path)?.let { internalPageStore[path] }
+            ?: return createErrorResponse(STATUS_NOT_FOUND, "Not Found")
+
+        return WebResourceResponse(
+            resource.mimeType,
+            ENCODING,
+            STATUS_OK,
+            "OK",
+            mapOf("Cache-Control" to "no-cache"),
+            ByteArrayInputStream(resource.content)
+        )
+    }
+
+    /**
+     * Build the page served at the [path] if one of the factories builds it, and return its URL.
+     */
+    private fun buildPage(path: String): String? {
+        val factory = when {
+            path.endsWith(BookmarkPageFactory.FILENAME) -> bookmarkPageFactory
+            path.endsWith(HistoryPageFactory.FILENAME) -> historyPageFactory
+            path.endsWith(DownloadPageFactory.FILENAME) -> downloadPageFactory
+            path.endsWith(HomePageFactory.FILENAME) -> homePageFactory
+            else -> return null
+        }
+        logger.log(TAG, "Building page for $path")
+        return factory.buildPage().blockingGet()
+    }
+
+    private fun serveAsset(name: String): WebResourceResponse {
+        if (name.split('/').contains("..")) {
+            return createErrorResponse(STATUS_NOT_FOUND, "Not Found")
+        }
+        return try {
+            createStreamResponse(name, application.assets.open(name))
+        } catch (exception: IOException) {
+            createErrorResponse(STATUS_NOT_FOUND, "Not Found")
+        }
+    }
+
+    private fun serveFavicon(name: String): WebResourceResponse {
+        val key = FaviconKey.fromString(name.removeSuffix(PNG_EXTENSION))
+            ?: return createErrorResponse(STATUS_NOT_FOUND, "Not Found")
+        val favicon = faviconStore.getEncoded(key)
+            // The icon has not been stored yet, so the default icon is shown in its place.
+            ?: return serveResource(BookmarkPageFactory.DEFAULT_ICON_PATH)
+        return createStreamResponse(name, ByteArrayInputStream(favicon))
+    }
+
+    private fun createStreamResponse(name: String, stream: InputStream) = WebResourceResponse(
+        MimeTypeMap.getSingleton().getMimeTypeFromExtension(name.substringAfterLast('.')),
+        ENCODING,
+        STATUS_OK,
+        "OK",
+        mapOf("Cache-Control" to "no-cache"),
+        stream
+    )
+
+    private fun createErrorResponse(status: Int, reason: String) = WebResourceResponse(
+        MIME_TYPE_TEXT,
+        ENCODING,
+        status,
+        reason,
+        emptyMap(),
+        ByteArrayInputStream(EMPTY)
+    )
+
+    companion object {
+        private const val TAG = "InternalPageServer"
+
+        // The icons of the bookmark page that earlier versions wrote to the cache directory.
+        private val LEGACY_ICON_FILES = listOf("folder.png", "default.png")
+
+        private val INTERNAL_SCHEME = INTERNAL_ORIGIN.substringBefore("://")
+        private val INTERNAL_AUTHORITY = INTERNAL_ORIGIN.substringAfter("://")
+
+        private const val ASSETS_PATH = "/assets/"
+        private const val FAVICONS_PATH = "/favicons/"
+        private const val PNG_EXTENSION = ".png"
+
+        private const val MIME_TYPE_TEXT = "text/plain"
+        private const val ENCODING = "utf-8"
+        private val EMPTY = ByteArray(0)
+
+        private const val STATUS_OK = 200
+        private const val STATUS_NOT_FOUND = 404
+
+        private const val ANDROID_ASSET = "file:///android_asset/"
+
+        // The icons of the bookmark pages that earlier versions wrote to the cache directory.
+        private val LEGACY_ICON_FILES = listOf("folder.png", "default.png")
+
+        /**
+         * Delete the page and icon files that earlier versions wrote for the tabs to load, which
+         * are never read since the pages are served from memory. Once they have been deleted, this
+         * only lists the files directory of the [application]. Must be called on a disk thread.
+         */
+        fun deleteLegacyPageFiles(application: Application) {
+            val pageFiles = application.filesDir.listFiles { _, name ->
+                name == HomePageFactory.FILENAME
+                    || name == HistoryPageFactory.FILENAME
+                    || name == DownloadPageFactory.FILENAME
+                    || name.endsWith(BookmarkPageFactory.FILENAME)
+            }.orEmpty()
+            val iconFiles = LEGACY_ICON_FILES.map { File(application.cacheDir, it) }
+            (pageFiles.asList() + iconFiles).filter(File::exists).forEach(File::delete)
+        }
+
+        /**
+         * Returns the URL under which the resource at the [path] is served.
+         */
+        fun urlForPath(path: String): String = "$INTERNAL_ORIGIN$path"
+
+        /**
+         * Returns the URL under which the favicon stored for the [key] is served.
+         */
+        fun urlForFavicon(key: FaviconKey): String =
+            "$INTERNAL_ORIGIN$FAVICONS_PATH$key$PNG_EXTENSION"
+
+        /**
+         * Returns the URL under which the asset at the [url] is served to the internal pages, which
+         * may not load files, or the [url] if it is not the URL of an asset.
+         */
+        fun urlForAsset(url: String): String = if (url.startsWith(ANDROID_ASSET)) {
+            "$INTERNAL_ORIGIN$ASSETS_PATH${url.removePrefix(ANDROID_ASSET)}"
+        } else {
+            url
+        }
+    }
+}
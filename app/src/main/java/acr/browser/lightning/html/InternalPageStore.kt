@@ -0,0 +1,74 @@
+package acr.browser.lightning.html
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.CRC32
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * The pages and icons generated by the browser, held in memory and served to the tabs by the
+ * [InternalPageServer] under their paths on the [acr.browser.lightning.constant.INTERNAL_ORIGIN].
+ * It is written by the page factories and read by the threads that load the tabs.
+ */
+@Singleton
+class InternalPageStore @Inject constructor() {
+
+    private val resources = ConcurrentHashMap<String, InternalResource>()
+
+    /**
+     * Store the [content] under the [path], replacing the resource stored under it.
+     *
+     * @return true if the content differs from the content previously stored under the path.
+     */
+    fun put(path: String, mimeType: String, content: ByteArray): Boolean {
+        val eTag = CRC32().run {
+            update(content)
+            "\"${java.lang.Long.toHexString(value)}-${content.size}\""
+        }
+        val previous = resources.put(path, InternalResource(mimeType, eTag, content))
+        return previous?.eTag != eTag
+    }
+
+    /**
+     * Store the HTML [page] under the [path].
+     *
+     * @return true if the page differs from the page previously stored under the path.
+     */
+    fun putPage(path: String, page: String): Boolean =
+        put(path, MIME_TYPE_HTML, page.toByteArray(Charsets.UTF_8))
+
+    /**
+     * Returns the resource stored under the [path], or null if there is none.
+     */
+    operator fun get(path: String): InternalResource? = resources[path]
+
+    /**
+     * True if a resource is stored under the [path].
+     */
+    operator fun contains(path: String): Boolean = resources.containsKey(path)
+
+    /**
+     * Remove the resource stored under the [path].
+     */
+    fun remove(path: String) {
+        resources.remove(path)
+    }
+
+    companion object {
+        const val MIME_TYPE_HTML = "text/html"
+        const val MIME_TYPE_PNG = "image/png"
+    }
+}
+
+/**
+ * A resource generated by the browser.
+ *
+ * @param mimeType The MIME type of the resource.
+ * @param eTag The entity tag identifying the content, which changes when the content changes.
+ * @param content The content of the resource, which must not be modified.
+ */
+class InternalResource(
+    val mimeType: String,
+    val eTag: String,
+    val content: ByteArray
+)
@@ -0,0 +1,62 @@
+package acr.browser.lightning.html.bookmark
+
+import acr.browser.lightning.html.InternalPageStore
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Remembers what the bookmark pages were last stored with, so that the [BookmarkPageFactory] only
+ * renders the pages of the folders whose bookmarks or colors have changed since, and only renders
+ * the folder icon when the theme has changed. It is only used on the
+ * [acr.browser.lightning.browser.di.DiskScheduler], which renders the pages.
+ */
+@Singleton
+class BookmarkPageCache @Inject constructor(private val internalPageStore: InternalPageStore) {
+
+    private val storedPages = HashMap<String, Pair<BookmarkPageColors, List<BookmarkViewModel>>>()
+    private var folderIconColor: Int? = null
+
+    /**
+     * True if the [page] is not in the store or was not last stored with the [colors] and the
+     * [bookmarks].
+     */
+    fun isPageDirty(
+        page: String,
+        colors: BookmarkPageColors,
+        bookmarks: List<BookmarkViewModel>
+    ): Boolean = storedPages[page] != Pair(colors, bookmarks) || page !in internalPageStore
+
+    /**
+     * Record that the [page] was stored with the [colors] and the [bookmarks].
+     */
+    fun onPageStored(
+        page: String,
+        colors: BookmarkPageColors,
+        bookmarks: List<BookmarkViewModel>
+    ) {
+        storedPages[page] = Pair(colors, bookmarks)
+    }
+
+    /**
+     * Forget the pages other than the [pages] and return them, since their folders no longer
+     * exist.
+     */
+    fun retainPages(pages: Set<String>): List<String> {
+        val removedPages = storedPages.keys.filter { it !in pages }
+        removedPages.forEach(storedPages::remove)
+        return removedPages
+    }
+
+    /**
+     * True if the [icon] is not in the store or was not last stored with the [color].
+     */
+    fun isFolderIconDirty(icon: String, color: Int): Boolean =
+        folderIconColor != color || icon !in internalPageStore
+
+    /**
+     * Record that the folder icon was stored with the [color].
+     */
+    fun onFolderIconStored(color: Int) {
+        folderIconColor = color
+    }
+}
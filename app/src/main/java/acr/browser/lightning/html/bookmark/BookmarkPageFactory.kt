@@ -2,34 +2,25 @@ package acr.browser.lightning.html.bookmark
 
 import acr.browser.lightning.R
 import acr.browser.lightning.browser.theme.ThemeProvider
-import acr.browser.lightning.constant.FILE
 import acr.browser.lightning.database.Bookmark
 import acr.browser.lightning.database.bookmark.BookmarkRepository
 import acr.browser.lightning.browser.di.DatabaseScheduler
 import acr.browser.lightning.browser.di.DiskScheduler
-import acr.browser.lightning.extensions.safeUse
+import acr.browser.lightning.favicon.FaviconKey
 import acr.browser.lightning.favicon.FaviconModel
+import acr.browser.lightning.favicon.FaviconStore
 import acr.browser.lightning.favicon.toValidUri
 import acr.browser.lightning.html.HtmlPageFactory
-import acr.browser.lightning.html.jsoup.andBuild
-import acr.browser.lightning.html.jsoup.body
-import acr.browser.lightning.html.jsoup.clone
-import acr.browser.lightning.html.jsoup.id
-import acr.browser.lightning.html.jsoup.parse
-import acr.browser.lightning.html.jsoup.removeElement
-import acr.browser.lightning.html.jsoup.style
-import acr.browser.lightning.html.jsoup.tag
-import acr.browser.lightning.html.jsoup.title
+import acr.browser.lightning.html.InternalPageServer
+import acr.browser.lightning.html.InternalPageStore
 import acr.browser.lightning.utils.ThemeUtils
 import android.app.Application
 import android.graphics.Bitmap
+import android.net.Uri
 import androidx.core.net.toUri
-import dagger.Reusable
 import io.reactivex.Scheduler
 import io.reactivex.Single
-import java.io.File
-import java.io.FileOutputStream
-import java.io.FileWriter
+import java.io.ByteArrayOutputStream
 import javax.inject.Inject
 
 /**
@@ -39,15 +30,16 @@ class BookmarkPageFactory @Inject constructor(
     private val application: Application,
     private val bookmarkModel: BookmarkRepository,
     private val faviconModel: FaviconModel,
+    private val faviconStore: FaviconStore,
     @DatabaseScheduler private val databaseScheduler: Scheduler,
     @DiskScheduler private val diskScheduler: Scheduler,
-    private val bookmarkPageReader: BookmarkPageReader,
+    private val bookmarkPageTemplate: BookmarkPageTemplate,
+    private val bookmarkPageCache: BookmarkPageCache,
+    private val internalPageStore: InternalPageStore,
     private val themeProvider: ThemeProvider
 ) : HtmlPageFactory {
 
     private val title = application.getString(R.string.action_bookmarks)
-    private val folderIconFile by lazy { File(application.cacheDir, FOLDER_ICON) }
-    private val defaultIconFile by lazy { File(application.cacheDir, DEFAULT_ICON) }
 
     private fun Int.toColor(): String {
         val string = Integer.toHexString(this)
@@ -62,76 +54,71 @@ class BookmarkPageFactory @Inject constructor(
     private val textColor: String
         get() = themeProvider.color(R.attr.autoCompleteTitleColor).toColor()
 
+    /**
+     * Builds the pages of the root folder and of each folder, only rendering the pages whose
+     * bookmarks or colors have changed since they were last stored.
+     */
     override fun buildPage(): Single<String> = bookmarkModel
         .getAllBookmarksSorted()
-        .flattenAsObservable { it }
-        .groupBy<Bookmark.Folder, Bookmark>(Bookmark.Entry::folder) { it }
-        .flatMapSingle { bookmarksInFolder ->
-            val folder = bookmarksInFolder.key
-            return@flatMapSingle bookmarksInFolder
-                .toList()
-                .concatWith(
-                    if (folder == Bookmark.Folder.Root) {
-                        bookmarkModel.getFoldersSorted()
-                            .map { it.filterIsInstance<Bookmark.Folder.Entry>() }
-                    } else {
-                        Single.just(emptyList())
-                    }
-                )
-                .toList()
-                .map { bookmarksAndFolders ->
-                    Pair(folder, bookmarksAndFolders.flatten().map { it.asViewModel() })
-                }
-        }
-        .map { (folder, viewModels) -> Pair(folder, construct(viewModels)) }
         .subscribeOn(databaseScheduler)
         .observeOn(diskScheduler)
-        .doOnNext { (folder, content) ->
-            FileWriter(createBookmarkPage(folder), false).use {
-                it.write(content)
+        .map { bookmarks ->
+            val colors = BookmarkPageColors(
+                background = backgroundColor,
+                card = cardColor,
+                text = textColor
+            )
+            cacheIcons()
+
+            // The bookmarks are sorted by folder, so the folders are in the same order as they
+            // would be listed by the repository.
+            val folders = bookmarks.map(Bookmark.Entry::folder)
+                .filterIsInstance<Bookmark.Folder.Entry>()
+                .distinct()
+            val bookmarksByFolder = bookmarks.groupBy(Bookmark.Entry::folder)
+            val pages = (listOf<Bookmark.Folder>(Bookmark.Folder.Root) + folders).map { folder ->
+                // The root page lists its bookmarks followed by the folders.
+                val subfolders = if (folder == Bookmark.Folder.Root) folders else emptyList()
+                val viewModels = (bookmarksByFolder[folder].orEmpty() + subfolders)
+                    .map { it.asViewModel() }
+                val page = bookmarkPagePath(folder)
+                if (bookmarkPageCache.isPageDirty(page, colors, viewModels)) {
+                    internalPageStore.putPage(
+                        page,
+                        bookmarkPageTemplate.render(title, colors, viewModels)
+                    )
+                    bookmarkPageCache.onPageStored(page, colors, viewModels)
+                }
+                page
             }
+            bookmarkPageCache.retainPages(pages.toSet()).forEach(internalPageStore::remove)
+
+            createBookmarkPageUrl(Bookmark.Folder.Root)
         }
-        .ignoreElements()
-        .toSingle {
+
+    /**
+     * Store the folder icon if the theme has changed since it was last stored, and the default
+     * icon if it has not been stored yet.
+     */
+    private fun cacheIcons() {
+        val folderIconColor = themeProvider.color(R.attr.autoCompleteTitleColor)
+        if (bookmarkPageCache.isFolderIconDirty(FOLDER_ICON_PATH, folderIconColor)) {
             cacheIcon(
-                ThemeUtils.createThemedBitmap(
-                    application,
-                    R.drawable.ic_folder,
-                    themeProvider.color(R.attr.autoCompleteTitleColor)
-                ),
-                folderIconFile
+                ThemeUtils.createThemedBitmap(application, R.drawable.ic_folder, folderIconColor),
+                FOLDER_ICON_PATH
             )
-            cacheIcon(faviconModel.createDefaultBitmapForTitle(null), defaultIconFile)
-
-            "$FILE${createBookmarkPage(null)}"
+            bookmarkPageCache.onFolderIconStored(folderIconColor)
+        }
+        if (DEFAULT_ICON_PATH !in internalPageStore) {
+            cacheIcon(faviconModel.createDefaultBitmapForTitle(null), DEFAULT_ICON_PATH)
         }
-
-    private fun cacheIcon(icon: Bitmap, file: File) = FileOutputStream(file).safeUse {
-        icon.compress(Bitmap.CompressFormat.PNG, 100, it)
-        icon.recycle()
     }
 
-    private fun construct(list: List<BookmarkViewModel>): String {
-        return parse(bookmarkPageReader.provideHtml()) andBuild {
-            title { title }
-            style { content ->
-                content.replace("--body-bg: {COLOR}", "--body-bg: #$backgroundColor;")
-                    .replace("--box-bg: {COLOR}", "--box-bg: #$cardColor;")
-                    .replace("--box-txt: {COLOR}", "--box-txt: #$textColor;")
-            }
-            body {
-                val repeatableElement = id("repeated").removeElement()
-                id("content") {
-                    list.forEach {
-                        appendChild(repeatableElement.clone {
-                            tag("a") { attr("href", it.url) }
-                            tag("img") { attr("src", it.iconUrl) }
-                            id("title") { appendText(it.title) }
-                        })
-                    }
-                }
-            }
-        }
+    private fun cacheIcon(icon: Bitmap, path: String) {
+        val png = ByteArrayOutputStream()
+        icon.compress(Bitmap.CompressFormat.PNG, 100, png)
+        icon.recycle()
+        internalPageStore.put(path, InternalPageStore.MIME_TYPE_PNG, png.toByteArray())
     }
 
     private fun Bookmark.asViewModel(): BookmarkViewModel = when (this) {
@@ -140,13 +127,10 @@ class BookmarkPageFactory @Inject constructor(
     }
 
     private fun createViewModelForFolder(folder: Bookmark.Folder): BookmarkViewModel {
-        val folderPage = createBookmarkPage(folder)
-        val url = "$FILE$folderPage"
-
         return BookmarkViewModel(
             title = folder.title,
-            url = url,
-            iconUrl = folderIconFile.toString()
+            url = createBookmarkPageUrl(folder),
+            iconUrl = InternalPageServer.urlForPath(FOLDER_ICON_PATH)
         )
     }
 
@@ -154,44 +138,57 @@ class BookmarkPageFactory @Inject constructor(
         val bookmarkUri = entry.url.toUri().toValidUri()
 
         val iconUrl = if (bookmarkUri != null) {
-            val faviconFile = FaviconModel.getFaviconCacheFile(application, bookmarkUri)
-            if (!faviconFile.exists()) {
+            val faviconKey = FaviconKey.forHost(bookmarkUri.host)
+            if (faviconKey !in faviconStore) {
                 val defaultFavicon = faviconModel.createDefaultBitmapForTitle(entry.title)
                 faviconModel.cacheFaviconForUrl(defaultFavicon, entry.url)
                     .subscribeOn(diskScheduler)
                     .subscribe()
             }
 
-            faviconFile
+            InternalPageServer.urlForFavicon(faviconKey)
         } else {
-            defaultIconFile
+            InternalPageServer.urlForPath(DEFAULT_ICON_PATH)
         }
 
         return BookmarkViewModel(
             title = entry.title,
             url = entry.url,
-            iconUrl = iconUrl.toString()
+            iconUrl = iconUrl
         )
     }
 
     /**
-     * Create the bookmark page file.
+     * Returns the name of the bookmark page of the [folder].
      */
-    fun createBookmarkPage(folder: Bookmark.Folder?): File {
-        val prefix = if (folder?.title?.isNotBlank() == true) {
-            "${folder.title}-"
+    private fun bookmarkPageName(folder: Bookmark.Folder): String =
+        if (folder.title.isNotBlank()) {
+            "${folder.title}-$FILENAME"
         } else {
-            ""
+            FILENAME
         }
-        return File(application.filesDir, prefix + FILENAME)
-    }
+
+    /**
+     * Returns the path under which the bookmark page of the [folder] is stored.
+     */
+    private fun bookmarkPagePath(folder: Bookmark.Folder): String = "/${bookmarkPageName(folder)}"
+
+    /**
+     * Create the URL of the bookmark page of the [folder].
+     */
+    fun createBookmarkPageUrl(folder: Bookmark.Folder): String =
+        InternalPageServer.urlForPath("/${Uri.encode(bookmarkPageName(folder))}")
 
     companion object {
 
         const val FILENAME = "bookmarks.html"
 
-        private const val FOLDER_ICON = "folder.png"
-        private const val DEFAULT_ICON = "default.png"
+        /**
+         * The path of the icon shown for the bookmarks that do not have a favicon.
+         */
+        const val DEFAULT_ICON_PATH = "/icons/default.png"
+
+        private const val FOLDER_ICON_PATH = "/icons/folder.png"
 
     }
 }
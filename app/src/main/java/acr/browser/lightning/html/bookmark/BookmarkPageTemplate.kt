@@ -0,0 +1,116 @@
+package acr.browser.lightning.html.bookmark
+
+import acr.browser.lightning.html.CompiledTemplate
+import acr.browser.lightning.html.appendEscapedHtml
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * The template of the bookmark pages, compiled once into a template of the page and a template of
+ * the element repeated for each bookmark, so that a page is rendered by appending strings rather
+ * than by parsing the template into a DOM for every folder.
+ */
+@Singleton
+class BookmarkPageTemplate @Inject constructor(bookmarkPageReader: BookmarkPageReader) {
+
+    private val page: CompiledTemplate
+    private val item: CompiledTemplate
+
+    init {
+        val html = bookmarkPageReader.provideHtml()
+        val itemStart = html.indexOf(REPEATED_ELEMENT)
+        check(itemStart >= 0) { "The bookmark page template has no repeated element" }
+        val itemEnd = html.endOfElement(itemStart)
+        val itemHtml = html.substring(itemStart, itemEnd)
+        // The title is appended to the paragraph holding the icon.
+        val itemTitleIndex = itemHtml.lastIndexOf("</p>")
+        check(itemTitleIndex >= 0) { "The repeated element has no title" }
+
+        page = CompiledTemplate(
+            html.substring(0, itemStart) + ITEMS + html.substring(itemEnd),
+            listOf(TITLE, BODY_BACKGROUND, BOX_BACKGROUND, BOX_TEXT, ITEMS)
+        )
+        item = CompiledTemplate(
+            itemHtml.substring(0, itemTitleIndex) + ITEM_TITLE + itemHtml.substring(itemTitleIndex),
+            listOf(ITEM_URL, ITEM_IMAGE, ITEM_TITLE)
+        )
+    }
+
+    /**
+     * Render a bookmark page.
+     *
+     * @param title The title of the page.
+     * @param colors The colors of the page.
+     * @param bookmarks The bookmarks and folders shown on the page, in order.
+     */
+    fun render(
+        title: String,
+        colors: BookmarkPageColors,
+        bookmarks: List<BookmarkViewModel>
+    ): String = buildString {
+        page.render(this) { placeholder ->
+            when (placeholder) {
+                TITLE -> appendEscapedHtml(title)
+                BODY_BACKGROUND -> append("--body-bg: #${colors.background};")
+                BOX_BACKGROUND -> append("--box-bg: #${colors.card};")
+                BOX_TEXT -> append("--box-txt: #${colors.text};")
+                ITEMS -> bookmarks.forEach { bookmark ->
+                    item.render(this) {
+                        when (it) {
+                            ITEM_URL -> appendEscapedHtml(bookmark.url)
+                            ITEM_IMAGE -> appendEscapedHtml(bookmark.iconUrl)
+                            ITEM_TITLE -> appendEscapedHtml(bookmark.title)
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the index after the end tag of the `div` starting at the [start].
+     */
+    private fun String.endOfElement(start: Int): Int {
+        var depth = 0
+        var index = start
+        while (true) {
+            val (tagIndex, tag) = checkNotNull(findAnyOf(DIV_TAGS, index, ignoreCase = true)) {
+                "The repeated element of the bookmark page template is not closed"
+            }
+            index = tagIndex + tag.length
+            depth += if (tag == DIV_END_TAG) -1 else 1
+            if (depth == 0) {
+                return index
+            }
+        }
+    }
+
+    companion object {
+        private const val REPEATED_ELEMENT = "<div id=repeated"
+        private const val DIV_END_TAG = "</div>"
+        private val DIV_TAGS = listOf("<div", DIV_END_TAG)
+
+        private const val TITLE = "\${TITLE}"
+        private const val BODY_BACKGROUND = "--body-bg: {COLOR}"
+        private const val BOX_BACKGROUND = "--box-bg: {COLOR}"
+        private const val BOX_TEXT = "--box-txt: {COLOR}"
+        private const val ITEMS = "\${ITEMS}"
+
+        private const val ITEM_URL = "\${URL}"
+        private const val ITEM_IMAGE = "\${IMAGE}"
+        private const val ITEM_TITLE = "\${ITEM_TITLE}"
+    }
+}
+
+/**
+ * The colors of a bookmark page, as hexadecimal RGBA strings.
+ *
+ * @param background The color of the page.
+ * @param card The color of the box of each bookmark.
+ * @param text The color of the titles of the bookmarks.
+ */
+data class BookmarkPageColors(
+    val background: String,
+    val card: String,
+    val text: String
+)
@@ -2,10 +2,12 @@ package acr.browser.lightning.html.download
 
 import acr.browser.lightning.R
 import acr.browser.lightning.browser.theme.ThemeProvider
-import acr.browser.lightning.constant.FILE
+import acr.browser.lightning.constant.INTERNAL_ORIGIN
 import acr.browser.lightning.database.downloads.DownloadEntry
 import acr.browser.lightning.database.downloads.DownloadsRepository
 import acr.browser.lightning.html.HtmlPageFactory
+import acr.browser.lightning.html.InternalPageServer
+import acr.browser.lightning.html.InternalPageStore
 import acr.browser.lightning.html.ListPageReader
 import acr.browser.lightning.html.jsoup.andBuild
 import acr.browser.lightning.html.jsoup.body
@@ -18,10 +20,10 @@ import acr.browser.lightning.html.jsoup.tag
 import acr.browser.lightning.html.jsoup.title
 import acr.browser.lightning.preference.UserPreferences
 import android.app.Application
+import android.net.Uri
 import dagger.Reusable
 import io.reactivex.Single
 import java.io.File
-import java.io.FileWriter
 import javax.inject.Inject
 
 /**
@@ -32,6 +34,7 @@ class DownloadPageFactory @Inject constructor(
     private val userPreferences: UserPreferences,
     private val manager: DownloadsRepository,
     private val listPageReader: ListPageReader,
+    private val internalPageStore: InternalPageStore,
     private val themeProvider: ThemeProvider
 ) : HtmlPageFactory {
 
@@ -75,17 +78,11 @@ class DownloadPageFactory @Inject constructor(
                 }
             }
         }
-        .map { content -> Pair(createDownloadsPageFile(), content) }
-        .doOnSuccess { (page, content) ->
-            FileWriter(page, false).use { it.write(content) }
-        }
-        .map { (page, _) -> "$FILE$page" }
-
-
-    private fun createDownloadsPageFile(): File = File(application.filesDir, FILENAME)
+        .doOnSuccess { content -> internalPageStore.putPage(PATH, content) }
+        .map { InternalPageServer.urlForPath(PATH) }
 
     private fun createFileUrl(fileName: String): String =
-        "$FILE${userPreferences.downloadDirectory}/$fileName"
+        createOpenFileUrl(File(userPreferences.downloadDirectory, fileName))
 
     private fun createFileTitle(downloadItem: DownloadEntry): String {
         val contentSize = if (downloadItem.contentSize.isNotBlank()) {
@@ -101,6 +98,26 @@ class DownloadPageFactory @Inject constructor(
 
         const val FILENAME = "downloads.html"
 
+        private const val PATH = "/$FILENAME"
+        private const val OPEN_FILE_URL = "$INTERNAL_ORIGIN/downloads/open?file="
+
+        /**
+         * Returns the URL of a link that opens the downloaded [file]. The downloads page may not
+         * link to files, so the link is opened by the
+         * [acr.browser.lightning.browser.tab.UrlHandler] instead of being loaded.
+         */
+        fun createOpenFileUrl(file: File): String = OPEN_FILE_URL + Uri.encode(file.path)
+
+        /**
+         * Returns the downloaded file opened by the [url], or null if it is not a link from the
+         * downloads page.
+         */
+        fun fileOpenedByUrl(url: String): File? = if (url.startsWith(OPEN_FILE_URL)) {
+            File(Uri.decode(url.removePrefix(OPEN_FILE_URL)))
+        } else {
+            null
+        }
+
     }
 
 }
@@ -2,34 +2,24 @@ package acr.browser.lightning.html.history
 
 import acr.browser.lightning.R
 import acr.browser.lightning.browser.theme.ThemeProvider
-import acr.browser.lightning.constant.FILE
 import acr.browser.lightning.database.history.HistoryRepository
 import acr.browser.lightning.html.HtmlPageFactory
-import acr.browser.lightning.html.ListPageReader
-import acr.browser.lightning.html.jsoup.andBuild
-import acr.browser.lightning.html.jsoup.body
-import acr.browser.lightning.html.jsoup.clone
-import acr.browser.lightning.html.jsoup.id
-import acr.browser.lightning.html.jsoup.parse
-import acr.browser.lightning.html.jsoup.removeElement
-import acr.browser.lightning.html.jsoup.style
-import acr.browser.lightning.html.jsoup.tag
-import acr.browser.lightning.html.jsoup.title
+import acr.browser.lightning.html.InternalPageServer
+import acr.browser.lightning.html.InternalPageStore
 import android.app.Application
-import dagger.Reusable
 import io.reactivex.Completable
 import io.reactivex.Single
-import java.io.File
-import java.io.FileWriter
 import javax.inject.Inject
 
 /**
- * Factory for the history page.
+ * Factory for the history page. Only the first page of the history is rendered into the page, the
+ * rest is loaded by the page through the [HistoryPageRequestHandler] as it is scrolled.
  */
 class HistoryPageFactory @Inject constructor(
-    private val listPageReader: ListPageReader,
+    private val historyPageTemplate: HistoryPageTemplate,
     private val application: Application,
     private val historyRepository: HistoryRepository,
+    private val internalPageStore: InternalPageStore,
     private val themeProvider: ThemeProvider
 ) : HtmlPageFactory {
 
@@ -51,54 +41,35 @@ class HistoryPageFactory @Inject constructor(
         get() = themeProvider.color(R.attr.autoCompleteUrlColor).toColor()
 
     override fun buildPage(): Single<String> = historyRepository
-        .lastHundredVisitedHistoryEntries()
-        .map { list ->
-            parse(listPageReader.provideHtml()) andBuild {
-                title { title }
-                style { content ->
-                    content.replace("--body-bg: {COLOR}", "--body-bg: #$backgroundColor;")
-                        .replace("--divider-color: {COLOR}", "--divider-color: #$dividerColor;")
-                        .replace("--title-color: {COLOR}", "--title-color: #$textColor;")
-                        .replace("--subtitle-color: {COLOR}", "--subtitle-color: #$subtitleColor;")
-                }
-                body {
-                    val repeatedElement = id("repeated").removeElement()
-                    id("content") {
-                        list.forEach {
-                            appendChild(repeatedElement.clone {
-                                tag("a") { attr("href", it.url) }
-                                id("title") { text(it.title) }
-                                id("url") { text(it.url) }
-                            })
-                        }
-                    }
-                }
-            }
+        .historyEntriesBefore(cursor = null, limit = HistoryPageRequestHandler.PAGE_SIZE)
+        .map { page ->
+            historyPageTemplate.render(
+                title = title,
+                colors = HistoryPageColors(
+                    background = backgroundColor,
+                    divider = dividerColor,
+                    title = textColor,
+                    subtitle = subtitleColor
+                ),
+                historyPage = page
+            )
         }
-        .map { content -> Pair(createHistoryPage(), content) }
-        .doOnSuccess { (page, content) ->
-            FileWriter(page, false).use { it.write(content) }
-        }
-        .map { (page, _) -> "$FILE$page" }
+        .doOnSuccess { content -> internalPageStore.putPage(PATH, content) }
+        .map { InternalPageServer.urlForPath(PATH) }
 
     /**
-     * Use this observable to immediately delete the history page. This will clear the cached
-     * history page that was stored on file.
+     * Use this observable to immediately delete the history page held in memory.
      *
      * @return a completable that deletes the history page when subscribed to.
      */
     fun deleteHistoryPage(): Completable = Completable.fromAction {
-        with(createHistoryPage()) {
-            if (exists()) {
-                delete()
-            }
-        }
+        internalPageStore.remove(PATH)
     }
 
-    private fun createHistoryPage() = File(application.filesDir, FILENAME)
-
     companion object {
         const val FILENAME = "history.html"
+
+        private const val PATH = "/$FILENAME"
     }
 
 }
@@ -0,0 +1,13 @@
+package acr.browser.lightning.html.history
+
+import com.anthonycr.mezzanine.FileStream
+
+/**
+ * The store for the history HTML.
+ */
+@FileStream("app/src/main/html/history.html")
+interface HistoryPageReader {
+
+    fun provideHtml(): String
+
+}
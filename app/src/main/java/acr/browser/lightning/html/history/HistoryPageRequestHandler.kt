@@ -0,0 +1,96 @@
+package acr.browser.lightning.html.history
+
+import acr.browser.lightning.browser.di.DatabaseScheduler
+import acr.browser.lightning.constant.INTERNAL_ORIGIN
+import acr.browser.lightning.database.history.HistoryCursor
+import acr.browser.lightning.database.history.HistoryRepository
+import acr.browser.lightning.utils.isHistoryUrl
+import android.webkit.WebResourceRequest
+import android.webkit.WebResourceResponse
+import io.reactivex.Scheduler
+import org.json.JSONArray
+import org.json.JSONObject
+import java.io.ByteArrayInputStream
+import javax.inject.Inject
+
+/**
+ * Serves the pages of the history that follow the first one to the script of the history page,
+ * which requests them from the [ENTRIES_PATH] as the end of the list is scrolled into view. Each
+ * page is read from the database from the position where the previous page ended, so scrolling
+ * deeper into the history does not get slower.
+ */
+class HistoryPageRequestHandler @Inject constructor(
+    private val historyRepository: HistoryRepository,
+    @DatabaseScheduler private val databaseScheduler: Scheduler
+) {
+
+    /**
+     * Returns the response to the [request] for a page of the history. Only the history page may
+     * read the history, the requests of any other page are refused.
+     *
+     * @param pageUrl The URL of the page that made the request.
+     * @param request The request to respond to.
+     */
+    fun handleRequest(pageUrl: String, request: WebResourceRequest): WebResourceResponse {
+        val url = request.url
+        if (!pageUrl.isHistoryUrl()) {
+            return createResponse(STATUS_FORBIDDEN, "Forbidden", "")
+        }
+        val cursor = url.getQueryParameter(BEFORE)?.let { HistoryCursor.fromString(it) }
+            ?: return createResponse(STATUS_BAD_REQUEST, "Bad Request", "")
+
+        val page = historyRepository.historyEntriesBefore(cursor, PAGE_SIZE)
+            .subscribeOn(databaseScheduler)
+            .blockingGet()
+        val entries = JSONArray()
+        page.entries.zip(page.entries.visitDays()).forEach { (entry, day) ->
+            entries.put(
+                JSONObject()
+                    .put("url", entry.url)
+                    .put("title", entry.title)
+                    .put("day", day)
+            )
+        }
+        val json = JSONObject()
+            .put("entries", entries)
+            .put("next", page.next?.let(::nextPageUrl) ?: JSONObject.NULL)
+
+        return createResponse(STATUS_OK, "OK", json.toString())
+    }
+
+    private fun createResponse(status: Int, reason: String, body: String) = WebResourceResponse(
+        MIME_TYPE,
+        ENCODING,
+        status,
+        reason,
+        mapOf("Cache-Control" to "no-store"),
+        ByteArrayInputStream(body.toByteArray(Charsets.UTF_8))
+    )
+
+    companion object {
+        /**
+         * The number of history entries on each page.
+         */
+        const val PAGE_SIZE = 50
+
+        /**
+         * The path of the pages of the history on the [INTERNAL_ORIGIN].
+         */
+        const val ENTRIES_PATH = "/history/entries"
+
+        private const val BEFORE = "before"
+
+        private const val MIME_TYPE = "application/json"
+        private const val ENCODING = "utf-8"
+
+        private const val STATUS_OK = 200
+        private const val STATUS_BAD_REQUEST = 400
+        private const val STATUS_FORBIDDEN = 403
+
+        /**
+         * Returns the URL of the page of the history that starts after the [cursor].
+         */
+        fun nextPageUrl(cursor: HistoryCursor): String =
+            "$INTERNAL_ORIGIN$ENTRIES_PATH?$BEFORE=$cursor"
+    }
+}
@@ -0,0 +1,103 @@
+package acr.browser.lightning.html.history
+
+import acr.browser.lightning.database.HistoryEntry
+import acr.browser.lightning.database.history.HistoryPage
+import acr.browser.lightning.html.CompiledTemplate
+import acr.browser.lightning.html.appendEscapedHtml
+import java.text.DateFormat
+import java.util.Date
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * The template of the history page, which holds the first page of the history grouped by the day
+ * it was visited on. The following pages are requested by the script of the page from the
+ * [HistoryPageRequestHandler] as the list is scrolled, and appended in the same format.
+ */
+@Singleton
+class HistoryPageTemplate @Inject constructor(historyPageReader: HistoryPageReader) {
+
+    private val page = CompiledTemplate(
+        historyPageReader.provideHtml(),
+        listOf(TITLE, BODY_BACKGROUND, DIVIDER_COLOR, TITLE_COLOR, SUBTITLE_COLOR, NEXT, ITEMS)
+    )
+
+    /**
+     * Render the history page.
+     *
+     * @param title The title of the page.
+     * @param colors The colors of the page.
+     * @param historyPage The first page of the history.
+     */
+    fun render(
+        title: String,
+        colors: HistoryPageColors,
+        historyPage: HistoryPage
+    ): String = buildString {
+        page.render(this) { placeholder ->
+            when (placeholder) {
+                TITLE -> appendEscapedHtml(title)
+                BODY_BACKGROUND -> append("--body-bg: #${colors.background};")
+                DIVIDER_COLOR -> append("--divider-color: #${colors.divider};")
+                TITLE_COLOR -> append("--title-color: #${colors.title};")
+                SUBTITLE_COLOR -> append("--subtitle-color: #${colors.subtitle};")
+                NEXT -> historyPage.next?.let {
+                    appendEscapedHtml(HistoryPageRequestHandler.nextPageUrl(it))
+                }
+                ITEMS -> appendEntries(historyPage.entries)
+            }
+        }
+    }
+
+    private fun StringBuilder.appendEntries(entries: List<HistoryEntry>) {
+        var lastDay: String? = null
+        entries.zip(entries.visitDays()).forEach { (entry, day) ->
+            if (day != lastDay) {
+                lastDay = day
+                append("<h2 class='day'>").appendEscapedHtml(day).append("</h2>")
+            }
+            append("<div class='box'><a href='").appendEscapedHtml(entry.url).append("'></a>")
+            append("<p class='black'>").appendEscapedHtml(entry.title).append("</p>")
+            append("<p class='font'>").appendEscapedHtml(entry.url).append("</p></div>")
+        }
+    }
+
+    companion object {
+        private const val TITLE = "\${TITLE}"
+        private const val BODY_BACKGROUND = "--body-bg: {COLOR}"
+        private const val DIVIDER_COLOR = "--divider-color: {COLOR}"
+        private const val TITLE_COLOR = "--title-color: {COLOR}"
+        private const val SUBTITLE_COLOR = "--subtitle-color: {COLOR}"
+        private const val NEXT = "\${NEXT}"
+        private const val ITEMS = "\${ITEMS}"
+    }
+}
+
+/**
+ * Returns the day on which each of the history entries was last visited, in the order of the
+ * entries, as the label of the heading under which the entries are grouped.
+ */
+fun List<HistoryEntry>.visitDays(): List<String> {
+    // A format is created for each list since formats are not thread safe.
+    val format = DateFormat.getDateInstance(DateFormat.FULL)
+    val date = Date()
+    return map {
+        date.time = it.lastTimeVisited
+        format.format(date)
+    }
+}
+
+/**
+ * The colors of the history page, as hexadecimal RGBA strings.
+ *
+ * @param background The color of the page.
+ * @param divider The color of the lines between the entries.
+ * @param title The color of the titles of the entries.
+ * @param subtitle The color of the URLs of the entries and of the days.
+ */
+data class HistoryPageColors(
+    val background: String,
+    val divider: String,
+    val title: String,
+    val subtitle: String
+)
@@ -2,9 +2,10 @@ package acr.browser.lightning.html.homepage
 
 import acr.browser.lightning.R
 import acr.browser.lightning.browser.theme.ThemeProvider
-import acr.browser.lightning.constant.FILE
 import acr.browser.lightning.constant.UTF8
 import acr.browser.lightning.html.HtmlPageFactory
+import acr.browser.lightning.html.InternalPageServer
+import acr.browser.lightning.html.InternalPageStore
 import acr.browser.lightning.html.jsoup.andBuild
 import acr.browser.lightning.html.jsoup.body
 import acr.browser.lightning.html.jsoup.charset
@@ -17,8 +18,6 @@ import acr.browser.lightning.search.SearchEngineProvider
 import android.app.Application
 import dagger.Reusable
 import io.reactivex.Single
-import java.io.File
-import java.io.FileWriter
 import javax.inject.Inject
 
 /**
@@ -28,6 +27,7 @@ class HomePageFactory @Inject constructor(
     private val application: Application,
     private val searchEngineProvider: SearchEngineProvider,
     private val homePageReader: HomePageReader,
+    private val internalPageStore: InternalPageStore,
     private val themeProvider: ThemeProvider
 ) : HtmlPageFactory {
 
@@ -58,7 +58,7 @@ class HomePageFactory @Inject constructor(
                 }
                 charset { UTF8 }
                 body {
-                    id("image_url") { attr("src", iconUrl) }
+                    id("image_url") { attr("src", InternalPageServer.urlForAsset(iconUrl)) }
                     tag("script") {
                         html(
                             html()
@@ -69,23 +69,15 @@ class HomePageFactory @Inject constructor(
                 }
             }
         }
-        .map { content -> Pair(createHomePage(), content) }
-        .doOnSuccess { (page, content) ->
-            FileWriter(page, false).use {
-                it.write(content)
-            }
-        }
-        .map { (page, _) -> "$FILE$page" }
-
-    /**
-     * Create the home page file.
-     */
-    fun createHomePage() = File(application.filesDir, FILENAME)
+        .doOnSuccess { content -> internalPageStore.putPage(PATH, content) }
+        .map { InternalPageServer.urlForPath(PATH) }
 
     companion object {
 
         const val FILENAME = "homepage.html"
 
+        private const val PATH = "/$FILENAME"
+
     }
 
 }
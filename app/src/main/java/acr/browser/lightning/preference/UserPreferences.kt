@@ -299,6 +299,18 @@ class UserPreferences @Inject constructor(
      * The remote URL from which ad blocking hosts should be read, depending on the [hostsSource].
      */
     var hostsRemoteFile by preferences.nullableStringPreference(HOSTS_REMOTE_FILE)
+
+    /**
+     * The local filter list from which ad blocking filters should be read, depending on the
+     * [hostsSource].
+     */
+    var filterListLocalFile by preferences.nullableStringPreference(FILTER_LIST_LOCAL_FILE)
+
+    /**
+     * Returns true if the preference stored under the [key] is one that the settings of a web view
+     * are configured from, false otherwise.
+     */
+    fun isWebViewSetting(key: String): Boolean = key in WEB_VIEW_SETTINGS
 }
 
 private const val WEB_RTC = "webRtc"
@@ -349,3 +361,26 @@ private const val SEARCH_SUGGESTIONS = "searchSuggestionsChoice"
 private const val HOSTS_SOURCE = "hostsSource"
 private const val HOSTS_LOCAL_FILE = "hostsLocalFile"
 private const val HOSTS_REMOTE_FILE = "hostsRemoteFile"
+private const val FILTER_LIST_LOCAL_FILE = "filterListLocalFile"
+
+/**
+ * The keys of the preferences that the settings of a web view are configured from.
+ */
+private val WEB_VIEW_SETTINGS = setOf(
+    BLOCK_IMAGES,
+    JAVASCRIPT,
+    LOCATION,
+    OVERVIEW_MODE,
+    POPUPS,
+    SAVE_PASSWORDS,
+    TEXT_REFLOW,
+    TEXT_SIZE,
+    USE_WIDE_VIEWPORT,
+    USER_AGENT,
+    USER_AGENT_STRING,
+    BLOCK_THIRD_PARTY,
+    TEXT_ENCODING,
+    DO_NOT_TRACK,
+    SAVE_DATA,
+    IDENTIFYING_HEADERS
+)
@@ -14,6 +14,7 @@ import acr.browser.lightning.browser.di.injector
 import acr.browser.lightning.extensions.drawable
 import acr.browser.lightning.preference.UserPreferences
 import acr.browser.lightning.rx.join
+import acr.browser.lightning.search.index.FrecencyIndex
 import acr.browser.lightning.search.suggestions.NoOpSuggestionsRepository
 import acr.browser.lightning.search.suggestions.SuggestionsRepository
 import android.content.Context
@@ -42,12 +43,12 @@ class SuggestionsAdapter(
     @Inject internal lateinit var bookmarkRepository: BookmarkRepository
     @Inject internal lateinit var userPreferences: UserPreferences
     @Inject internal lateinit var historyRepository: HistoryRepository
+    @Inject internal lateinit var frecencyIndex: FrecencyIndex
     @Inject @field:DatabaseScheduler internal lateinit var databaseScheduler: Scheduler
     @Inject @field:NetworkScheduler internal lateinit var networkScheduler: Scheduler
     @Inject @field:MainScheduler internal lateinit var mainScheduler: Scheduler
     @Inject internal lateinit var searchEngineProvider: SearchEngineProvider
 
-    private var allBookmarks: List<Bookmark.Entry> = emptyList()
     private val searchFilter = SearchFilter(this)
 
     private val searchIcon = context.drawable(R.drawable.ic_search)
@@ -75,8 +76,6 @@ class SuggestionsAdapter(
             searchEngineProvider.provideSearchSuggestions()
         }
 
-        refreshBookmarks()
-
         searchFilter.input().results()
             .subscribeOn(databaseScheduler)
             .observeOn(mainScheduler)
@@ -91,14 +90,6 @@ class SuggestionsAdapter(
         }
     }
 
-    fun refreshBookmarks() {
-        bookmarkRepository.getAllBookmarksSorted()
-            .subscribeOn(databaseScheduler)
-            .subscribe { list ->
-                allBookmarks = list
-            }
-    }
-
     override fun getCount(): Int = filteredList.size
 
     override fun getItem(position: Int): Any? {
@@ -155,13 +146,15 @@ class SuggestionsAdapter(
         }
     }
 
-    private fun getBookmarksForQuery(query: String): Single<List<Bookmark.Entry>> =
-        Single.fromCallable {
-            (allBookmarks.filter {
-                it.title.toLowerCase(Locale.getDefault()).startsWith(query)
-            } + allBookmarks.filter {
-                it.url.contains(query)
-            }).distinct().take(MAX_SUGGESTIONS)
+    /**
+     * History is found in the [FrecencyIndex] without waiting for the database once the index has
+     * been built, and is found in the database until then.
+     */
+    private fun getHistoryForQuery(query: String): Single<List<HistoryEntry>> =
+        if (frecencyIndex.isReady) {
+            Single.fromCallable { frecencyIndex.findPages(query, MAX_SUGGESTIONS) }
+        } else {
+            historyRepository.findHistoryEntriesContaining(query)
         }
 
     private fun Observable<CharSequence>.results(): Flowable<List<WebPage>> = this
@@ -177,13 +170,13 @@ class SuggestionsAdapter(
                 .share()
 
             val bookmarksEntries = upstream
-                .flatMapSingle(::getBookmarksForQuery)
+                .flatMapSingle(bookmarkRepository::findBookmarksContaining)
                 .subscribeOn(databaseScheduler)
                 .startWith(emptyList<List<Bookmark.Entry>>())
                 .share()
 
             val historyEntries = upstream
-                .flatMapSingle(historyRepository::findHistoryEntriesContaining)
+                .flatMapSingle(::getHistoryForQuery)
                 .subscribeOn(databaseScheduler)
                 .startWith(emptyList<HistoryEntry>())
                 .share()
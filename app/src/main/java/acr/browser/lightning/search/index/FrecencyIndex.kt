@@ -0,0 +1,484 @@
+package acr.browser.lightning.search.index
+
+import acr.browser.lightning.browser.di.DatabaseScheduler
+import acr.browser.lightning.database.Bookmark
+import acr.browser.lightning.database.HistoryEntry
+import acr.browser.lightning.database.bookmark.BookmarkRepository
+import acr.browser.lightning.database.history.HistoryRepository
+import acr.browser.lightning.database.withoutSchemeAndWww
+import acr.browser.lightning.log.Logger
+import io.reactivex.Scheduler
+import io.reactivex.functions.BiFunction
+import io.reactivex.rxkotlin.subscribeBy
+import java.util.Locale
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.math.ln
+
+/**
+ * An in memory index of the visited pages that finds the pages matching what is typed into the
+ * search box, ranked by frecency, which combines how often and how recently a page was visited.
+ *
+ * Each page is indexed under several keys: its URL without the scheme and `www.`, its URL starting
+ * from each parent domain of its host, and its title starting from each word. The keys are held in
+ * a sorted array, so the keys starting with a query form a range found by a binary search. The keys
+ * of newly visited pages are held in a short unsorted list until they are merged into the array.
+ *
+ * The index is built from the history and bookmarks on the database scheduler when it is created,
+ * and is updated by [recordVisit] as pages are visited and whenever the bookmarks change. Bookmarks
+ * that were never visited are indexed too, ranked below every visited page. It is safe to use from
+ * any thread.
+ */
+@Singleton
+class FrecencyIndex @Inject constructor(
+    historyRepository: HistoryRepository,
+    bookmarkRepository: BookmarkRepository,
+    @DatabaseScheduler databaseScheduler: Scheduler,
+    private val logger: Logger
+) {
+
+    private val lock = Any()
+    private var index: Index? = null
+    private var changesDuringBuild: MutableList<(Index) -> Unit>? = ArrayList()
+
+    /**
+     * True once the index has been built, until then [findPages] does not find any pages.
+     */
+    val isReady: Boolean
+        get() = synchronized(lock) { index != null }
+
+    init {
+        historyRepository.lastVisitedHistoryEntries(MAX_INDEXED_PAGES)
+            .zipWith(
+                bookmarkRepository.getAllBookmarksSorted(),
+                BiFunction { history: List<HistoryEntry>, bookmarks: List<Bookmark.Entry> ->
+                    Index(bookmarks.toUrlTitles()).apply { build(history) }
+                }
+            )
+            .subscribeOn(databaseScheduler)
+            .subscribeBy(
+                onSuccess = { builtIndex ->
+                    synchronized(lock) {
+                        changesDuringBuild?.forEach { it(builtIndex) }
+                        changesDuringBuild = null
+                        index = builtIndex
+                    }
+                    logger.log(TAG, "Indexed ${builtIndex.size} pages")
+                },
+                onError = { logger.log(TAG, "Unable to build the index", it) }
+            )
+
+        bookmarkRepository.bookmarkChanges()
+            .switchMapSingle {
+                bookmarkRepository.getAllBookmarksSorted().subscribeOn(databaseScheduler)
+            }
+            .subscribeBy(
+                onNext = { bookmarks ->
+                    val urlTitles = bookmarks.toUrlTitles()
+                    change { it.updateBookmarks(urlTitles) }
+                },
+                onError = { logger.log(TAG, "Unable to update the bookmarks", it) }
+            )
+    }
+
+    /**
+     * Record [visitCount] visits to the [url] with the provided [title] at the current time. A
+     * count of zero only updates the title of a page that was already visited.
+     */
+    fun recordVisit(url: String, title: String, visitCount: Int = 1) {
+        val timeVisited = System.currentTimeMillis()
+        change { it.visit(url, title, visitCount, timeVisited) }
+    }
+
+    /**
+     * Remove the page with the [url] from the index.
+     */
+    fun remove(url: String) = change { it.remove(url) }
+
+    /**
+     * Remove every page from the index.
+     */
+    fun clear() = change(Index::clear)
+
+    /**
+     * Returns at most [limit] pages that match the [query], with the highest frecency first.
+     *
+     * A short query can match most of the keys, so only the range of matching keys is found while
+     * holding the lock, and the pages in it are ranked after releasing it. The sorted keys are
+     * never modified once published, so the range remains valid while the index changes.
+     */
+    fun findPages(query: String, limit: Int): List<HistoryEntry> {
+        val prefix = query.toIndexKey()
+        if (prefix.isEmpty()) {
+            return emptyList()
+        }
+        val matches = synchronized(lock) { index?.pagesWithPrefix(prefix) } ?: return emptyList()
+        val best = ArrayList<IndexedPage>(limit + 1)
+        matches.forEach { best.offer(it, limit) }
+        return synchronized(lock) { best.map(IndexedPage::toHistoryEntry) }
+    }
+
+    private fun change(change: (Index) -> Unit) = synchronized(lock) {
+        index?.let(change) ?: changesDuringBuild?.add(change)
+        Unit
+    }
+
+    /**
+     * Inserts the [page] into this list of pages sorted by descending score if it is among the
+     * [limit] best pages.
+     */
+    private fun MutableList<IndexedPage>.offer(page: IndexedPage, limit: Int) {
+        if (page.isRemoved || contains(page)) {
+            return
+        }
+        var position = size
+        while (position > 0 && this[position - 1].score < page.score) {
+            position--
+        }
+        if (position < limit) {
+            add(position, page)
+            if (size > limit) {
+                removeAt(size - 1)
+            }
+        }
+    }
+
+    /**
+     * The pages matching a prefix: a range of the sorted keys, and the matching pending keys.
+     */
+    private class PrefixMatches(
+        private val keyPages: Array<IndexedPage>,
+        private val range: IntRange,
+        private val pendingPages: List<IndexedPage>
+    ) {
+        fun forEach(action: (IndexedPage) -> Unit) {
+            for (index in range) {
+                action(keyPages[index])
+            }
+            pendingPages.forEach(action)
+        }
+    }
+
+    /**
+     * A visited or bookmarked page and its frecency score.
+     *
+     * The frecency of a page is the number of visits decayed exponentially by the time since the
+     * last visit. Every score decays at the same rate, so the order of the pages only changes when
+     * they are visited, and the score is stored as a logarithm that is independent of the current
+     * time: `ln(visits) + ln(2) * lastVisited / half-life`. A bookmark that was never visited has
+     * no visits and was last visited at `0`.
+     *
+     * The [score] and [isRemoved] are read by [findPages] without holding the lock.
+     */
+    private class IndexedPage(
+        val url: String,
+        var title: String,
+        var visitCount: Int,
+        var lastVisited: Long,
+        var isBookmarked: Boolean
+    ) {
+        @Volatile
+        var isRemoved = false
+
+        @Volatile
+        var score = 0.0
+            private set
+
+        init {
+            updateScore()
+        }
+
+        fun updateScore() {
+            score = ln(visitCount.coerceAtLeast(1).toDouble()) +
+                lastVisited * DECAY_PER_MILLISECOND +
+                if (isBookmarked) BOOKMARK_BONUS else 0.0
+        }
+
+        fun toHistoryEntry() = HistoryEntry(
+            url = url,
+            title = title,
+            lastTimeVisited = lastVisited,
+            visitCount = visitCount
+        )
+    }
+
+    /**
+     * The keys of the pages. Not thread safe, it is guarded by the [lock] of the [FrecencyIndex].
+     */
+    private class Index(private var bookmarks: Map<String, String>) {
+
+        private val pages = HashMap<String, IndexedPage>()
+        private var keys: Array<String> = emptyArray()
+        private var keyPages: Array<IndexedPage> = emptyArray()
+        private val pendingKeys = ArrayList<String>()
+        private val pendingKeyPages = ArrayList<IndexedPage>()
+
+        val size: Int
+            get() = pages.size
+
+        fun build(history: List<HistoryEntry>) {
+            val entries = ArrayList<Pair<String, IndexedPage>>()
+            history.forEach { entry ->
+                val page = IndexedPage(
+                    url = entry.url,
+                    title = entry.title,
+                    visitCount = entry.visitCount,
+                    lastVisited = entry.lastTimeVisited,
+                    isBookmarked = entry.url in bookmarks
+                )
+                pages[entry.url] = page
+                keysOf(entry.url, entry.title).mapTo(entries) { it to page }
+            }
+            bookmarks.forEach { (url, title) ->
+                if (url !in pages) {
+                    val page = bookmarkedPage(url, title)
+                    pages[url] = page
+                    keysOf(url, title).mapTo(entries) { it to page }
+                }
+            }
+            entries.sortBy { it.first }
+            keys = Array(entries.size) { entries[it].first }
+            keyPages = Array(entries.size) { entries[it].second }
+        }
+
+        fun visit(url: String, title: String, visitCount: Int, timeVisited: Long) {
+            val page = pages[url]
+            if (page == null) {
+                // A page that is not indexed yet was visited at least once, like in the history.
+                val newPage = IndexedPage(
+                    url = url,
+                    title = title,
+                    visitCount = visitCount.coerceAtLeast(1),
+                    lastVisited = timeVisited,
+                    isBookmarked = url in bookmarks
+                )
+                pages[url] = newPage
+                addKeys(keysOf(url, title), newPage)
+            } else {
+                if (visitCount > 0) {
+                    page.visitCount += visitCount
+                    page.lastVisited = timeVisited
+                    page.updateScore()
+                }
+                updateTitle(page, title)
+            }
+        }
+
+        /**
+         * Replace the bookmarks, a map of their URLs to their titles, updating the bonus of the
+         * pages that were bookmarked or unbookmarked, and the pages of unvisited bookmarks.
+         */
+        fun updateBookmarks(updatedBookmarks: Map<String, String>) {
+            val previousBookmarks = bookmarks
+            bookmarks = updatedBookmarks
+            previousBookmarks.keys.forEach { url ->
+                if (url !in updatedBookmarks) {
+                    val page = pages[url] ?: return@forEach
+                    if (page.visitCount == 0) {
+                        remove(url)
+                    } else {
+                        page.isBookmarked = false
+                        page.updateScore()
+                    }
+                }
+            }
+            updatedBookmarks.forEach { (url, title) ->
+                val page = pages[url]
+                if (page == null) {
+                    val newPage = bookmarkedPage(url, title)
+                    pages[url] = newPage
+                    addKeys(keysOf(url, title), newPage)
+                } else {
+                    if (!page.isBookmarked) {
+                        page.isBookmarked = true
+                        page.updateScore()
+                    }
+                    if (page.visitCount == 0) {
+                        updateTitle(page, title)
+                    }
+                }
+            }
+        }
+
+        /**
+         * Remove the history of the page with the [url], a bookmarked page remains indexed as an
+         * unvisited bookmark.
+         */
+        fun remove(url: String) {
+            val page = pages[url] ?: return
+            val bookmarkTitle = bookmarks[url]
+            if (bookmarkTitle == null) {
+                pages.remove(url)
+                page.isRemoved = true
+            } else {
+                page.visitCount = 0
+                page.lastVisited = 0
+                page.updateScore()
+                updateTitle(page, bookmarkTitle)
+            }
+        }
+
+        /**
+         * Remove the history of every page, leaving the unvisited bookmarks.
+         */
+        fun clear() {
+            pages.values.forEach { it.isRemoved = true }
+            pages.clear()
+            keys = emptyArray()
+            keyPages = emptyArray()
+            pendingKeys.clear()
+            pendingKeyPages.clear()
+            build(emptyList())
+        }
+
+        fun pagesWithPrefix(prefix: String): PrefixMatches {
+            val start = keys.firstIndexFrom(0) { it >= prefix }
+            val end = keys.firstIndexFrom(start) { !it.startsWith(prefix) }
+            val pendingPages = ArrayList<IndexedPage>()
+            pendingKeys.forEachIndexed { index, key ->
+                if (key.startsWith(prefix)) {
+                    pendingPages += pendingKeyPages[index]
+                }
+            }
+            return PrefixMatches(keyPages, start until end, pendingPages)
+        }
+
+        /**
+         * Returns the first index from [fromIndex] of the sorted keys for which the [predicate],
+         * which must hold for every key after the first it holds for, is true.
+         */
+        private inline fun Array<String>.firstIndexFrom(
+            fromIndex: Int,
+            predicate: (String) -> Boolean
+        ): Int {
+            var low = fromIndex
+            var high = size
+            while (low < high) {
+                val middle = (low + high) ushr 1
+                if (predicate(this[middle])) {
+                    high = middle
+                } else {
+                    low = middle + 1
+                }
+            }
+            return low
+        }
+
+        private fun bookmarkedPage(url: String, title: String) = IndexedPage(
+            url = url,
+            title = title,
+            visitCount = 0,
+            lastVisited = 0,
+            isBookmarked = true
+        )
+
+        private fun updateTitle(page: IndexedPage, title: String) {
+            // The page also remains reachable through the words of its previous title.
+            if (title.isNotEmpty() && title != page.title) {
+                page.title = title
+                addKeys(titleKeysOf(title), page)
+            }
+        }
+
+        private fun addKeys(newKeys: Collection<String>, page: IndexedPage) {
+            newKeys.forEach {
+                pendingKeys += it
+                pendingKeyPages += page
+            }
+            if (pendingKeys.size >= MAX_PENDING_KEYS) {
+                mergePendingKeys()
+            }
+        }
+
+        /**
+         * Merge the pending keys into the sorted keys, dropping the keys of removed pages.
+         */
+        private fun mergePendingKeys() {
+            val pending = pendingKeys.indices.sortedBy(pendingKeys::get)
+            val mergedKeys = ArrayList<String>(keys.size + pending.size)
+            val mergedPages = ArrayList<IndexedPage>(keys.size + pending.size)
+            var sortedIndex = 0
+            var pendingIndex = 0
+            while (sortedIndex < keys.size || pendingIndex < pending.size) {
+                val takeSorted = pendingIndex == pending.size || sortedIndex < keys.size &&
+                    keys[sortedIndex] <= pendingKeys[pending[pendingIndex]]
+                val key: String
+                val page: IndexedPage
+                if (takeSorted) {
+                    key = keys[sortedIndex]
+                    page = keyPages[sortedIndex]
+                    sortedIndex++
+                } else {
+                    key = pendingKeys[pending[pendingIndex]]
+                    page = pendingKeyPages[pending[pendingIndex]]
+                    pendingIndex++
+                }
+                if (!page.isRemoved) {
+                    mergedKeys += key
+                    mergedPages += page
+                }
+            }
+            keys = mergedKeys.toTypedArray()
+            keyPages = mergedPages.toTypedArray()
+            pendingKeys.clear()
+            pendingKeyPages.clear()
+        }
+
+        private fun keysOf(url: String, title: String): Set<String> {
+            val keys = LinkedHashSet<String>()
+            val address = url.toIndexKey()
+            if (address.isNotEmpty()) {
+                keys += address
+            }
+            val hostEnd = address.indexOf('/').takeIf { it >= 0 } ?: address.length
+            var dot = address.indexOf('.')
+            while (dot in 0 until hostEnd) {
+                val nextDot = address.indexOf('.', dot + 1)
+                if (nextDot !in 0 until hostEnd) {
+                    break
+                }
+                keys += address.substring(dot + 1)
+                dot = nextDot
+            }
+            keys += titleKeysOf(title)
+            return keys
+        }
+
+        private fun titleKeysOf(title: String): List<String> {
+            val lowercaseTitle = title.toLowerCase(Locale.ROOT)
+            return WORD_REGEX.findAll(lowercaseTitle)
+                .take(MAX_TITLE_WORDS)
+                .map { lowercaseTitle.substring(it.range.first).take(MAX_KEY_LENGTH) }
+                .toList()
+        }
+    }
+
+    companion object {
+        private const val TAG = "FrecencyIndex"
+
+        /**
+         * The number of most recently visited pages that are indexed when the index is built,
+         * which bounds the memory used by the keys.
+         */
+        private const val MAX_INDEXED_PAGES = 5000
+        private const val MAX_KEY_LENGTH = 32
+        private const val MAX_TITLE_WORDS = 6
+        private const val MAX_PENDING_KEYS = 512
+
+        private const val HALF_LIFE_MILLISECONDS = 30 * 24 * 60 * 60 * 1000L
+        private val DECAY_PER_MILLISECOND = ln(2.0) / HALF_LIFE_MILLISECONDS
+
+        /**
+         * A bookmarked page ranks as if it had been visited twice as often.
+         */
+        private val BOOKMARK_BONUS = ln(2.0)
+
+        private val WORD_REGEX = Regex("[\\p{L}\\p{N}]+")
+
+        private fun List<Bookmark.Entry>.toUrlTitles(): Map<String, String> =
+            associateTo(HashMap()) { it.url to it.title }
+
+        private fun String.toIndexKey(): String =
+            trim().toLowerCase(Locale.ROOT).withoutSchemeAndWww().take(MAX_KEY_LENGTH)
+    }
+}
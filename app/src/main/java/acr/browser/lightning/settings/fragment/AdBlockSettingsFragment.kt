@@ -3,6 +3,7 @@ package acr.browser.lightning.settings.fragment
 import acr.browser.lightning.BuildConfig
 import acr.browser.lightning.R
 import acr.browser.lightning.adblock.BloomFilterAdBlocker
+import acr.browser.lightning.adblock.FilterListAdBlocker
 import acr.browser.lightning.adblock.source.HostsSourceType
 import acr.browser.lightning.adblock.source.selectedHostsSource
 import acr.browser.lightning.adblock.source.toPreferenceIndex
@@ -38,6 +39,7 @@ class AdBlockSettingsFragment : AbstractSettingsFragment() {
     @Inject @field:MainScheduler internal lateinit var mainScheduler: Scheduler
     @Inject @field:DiskScheduler internal lateinit var diskScheduler: Scheduler
     @Inject internal lateinit var bloomFilterAdBlocker: BloomFilterAdBlocker
+    @Inject internal lateinit var filterListAdBlocker: FilterListAdBlocker
 
     private var recentSummaryUpdater: SummaryUpdater? = null
     private val compositeDisposable = CompositeDisposable()
@@ -92,6 +94,8 @@ class AdBlockSettingsFragment : AbstractSettingsFragment() {
         HostsSourceType.Default -> getString(R.string.block_source_default)
         is HostsSourceType.Local -> getString(R.string.block_source_local_description, file.path)
         is HostsSourceType.Remote -> getString(R.string.block_source_remote_description, httpUrl)
+        is HostsSourceType.FilterList ->
+            getString(R.string.block_source_filter_list_description, file.path)
     }
 
     private fun showHostsSourceChooser(summaryUpdater: SummaryUpdater) {
@@ -111,7 +115,7 @@ class AdBlockSettingsFragment : AbstractSettingsFragment() {
                 title = R.string.block_source_local,
                 isConditionMet = userPreferences.selectedHostsSource() is HostsSourceType.Local,
                 onClick = {
-                    showFileChooser(summaryUpdater)
+                    showFileChooser(summaryUpdater, FILE_REQUEST_CODE)
                 }
             ),
             DialogItem(
@@ -120,18 +124,26 @@ class AdBlockSettingsFragment : AbstractSettingsFragment() {
                 onClick = {
                     showUrlChooser(summaryUpdater)
                 }
+            ),
+            DialogItem(
+                title = R.string.block_source_filter_list,
+                isConditionMet =
+                    userPreferences.selectedHostsSource() is HostsSourceType.FilterList,
+                onClick = {
+                    showFileChooser(summaryUpdater, FILTER_LIST_REQUEST_CODE)
+                }
             )
         )
     }
 
-    private fun showFileChooser(summaryUpdater: SummaryUpdater) {
+    private fun showFileChooser(summaryUpdater: SummaryUpdater, requestCode: Int) {
         this.recentSummaryUpdater = summaryUpdater
         val intent = Intent(Intent.ACTION_OPEN_DOCUMENT).apply {
             addCategory(Intent.CATEGORY_OPENABLE)
             type = TEXT_MIME_TYPE
         }
 
-        startActivityForResult(intent, FILE_REQUEST_CODE)
+        startActivityForResult(intent, requestCode)
     }
 
     private fun showUrlChooser(summaryUpdater: SummaryUpdater) {
@@ -156,7 +168,7 @@ class AdBlockSettingsFragment : AbstractSettingsFragment() {
         if (requestCode == FILE_REQUEST_CODE) {
             if (resultCode == Activity.RESULT_OK) {
                 data?.data?.also { uri ->
-                    compositeDisposable += readTextFromUri(uri)
+                    compositeDisposable += readTextFromUri(uri, AD_HOSTS_FILE)
                         .subscribeOn(diskScheduler)
                         .observeOn(mainScheduler)
                         .subscribeBy(
@@ -175,23 +187,49 @@ class AdBlockSettingsFragment : AbstractSettingsFragment() {
             } else {
                 activity?.toast(R.string.action_message_canceled)
             }
+        } else if (requestCode == FILTER_LIST_REQUEST_CODE) {
+            if (resultCode == Activity.RESULT_OK) {
+                data?.data?.also { uri ->
+                    compositeDisposable += readTextFromUri(uri, FILTER_LIST_FILE)
+                        .subscribeOn(diskScheduler)
+                        .observeOn(mainScheduler)
+                        .subscribeBy(
+                            onComplete = { activity?.toast(R.string.action_message_canceled) },
+                            onSuccess = { file ->
+                                userPreferences.hostsSource =
+                                    HostsSourceType.FilterList(file).toPreferenceIndex()
+                                userPreferences.filterListLocalFile = file.path
+                                recentSummaryUpdater?.updateSummary(
+                                    userPreferences.selectedHostsSource().toSummary()
+                                )
+                                updateForNewHostsSource()
+                            }
+                        )
+                }
+            } else {
+                activity?.toast(R.string.action_message_canceled)
+            }
         }
         super.onActivityResult(requestCode, resultCode, data)
     }
 
     private fun updateForNewHostsSource() {
-        bloomFilterAdBlocker.populateAdBlockerFromDataSource(forceRefresh = true)
+        if (userPreferences.selectedHostsSource() is HostsSourceType.FilterList) {
+            filterListAdBlocker.loadFilterList()
+        } else {
+            bloomFilterAdBlocker.populateAdBlockerFromDataSource(forceRefresh = true)
+        }
         updateRefreshHostsEnabledStatus()
     }
 
-    private fun readTextFromUri(uri: Uri): Maybe<File> = Maybe.create {
+    private fun readTextFromUri(uri: Uri, fileName: String): Maybe<File> = Maybe.create {
         val externalFilesDir = activity?.getExternalFilesDir("")
             ?: return@create it.onComplete()
         val inputStream = activity?.contentResolver?.openInputStream(uri)
             ?: return@create it.onComplete()
 
         try {
-            val outputFile = File(externalFilesDir, AD_HOSTS_FILE)
+            val outputFile = File(externalFilesDir, fileName)
 
             val input = Okio.source(inputStream)
             val output = Okio.buffer(Okio.sink(outputFile))
@@ -204,7 +242,9 @@ class AdBlockSettingsFragment : AbstractSettingsFragment() {
 
     companion object {
         private const val FILE_REQUEST_CODE = 100
+        private const val FILTER_LIST_REQUEST_CODE = 101
         private const val AD_HOSTS_FILE = "local_hosts.txt"
+        private const val FILTER_LIST_FILE = "local_filter_list.txt"
         private const val TEXT_MIME_TYPE = "text/*"
     }
 }
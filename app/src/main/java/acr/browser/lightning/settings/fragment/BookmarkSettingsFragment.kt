@@ -7,6 +7,7 @@ import acr.browser.lightning.R
 import acr.browser.lightning.bookmark.LegacyBookmarkImporter
 import acr.browser.lightning.bookmark.NetscapeBookmarkFormatImporter
 import acr.browser.lightning.database.bookmark.BookmarkExporter
+import acr.browser.lightning.database.bookmark.BookmarkImportProgress
 import acr.browser.lightning.database.bookmark.BookmarkRepository
 import acr.browser.lightning.browser.di.DatabaseScheduler
 import acr.browser.lightning.browser.di.MainScheduler
@@ -25,11 +26,12 @@ import android.os.Environment
 import androidx.appcompat.app.AlertDialog
 import com.anthonycr.grant.PermissionsManager
 import com.anthonycr.grant.PermissionsResultAction
+import io.reactivex.Observable
 import io.reactivex.Scheduler
-import io.reactivex.Single
 import io.reactivex.disposables.Disposable
 import io.reactivex.rxkotlin.subscribeBy
 import java.io.File
+import java.io.InputStream
 import javax.inject.Inject
 
 class BookmarkSettingsFragment : AbstractSettingsFragment() {
@@ -219,23 +221,28 @@ class BookmarkSettingsFragment : AbstractSettingsFragment() {
             if (fileList[which].isDirectory) {
                 showImportBookmarkDialog(fileList[which])
             } else {
-                Single.fromCallable(fileList[which]::inputStream)
-                    .map {
-                        if (fileList[which].extension == EXTENSION_HTML) {
-                            netscapeBookmarkFormatImporter.importBookmarks(it)
+                // The bookmarks are parsed as they are written, so the file is kept open until
+                // the import has finished.
+                Observable.using<BookmarkImportProgress, InputStream>(
+                    { fileList[which].inputStream() },
+                    { inputStream ->
+                        val importer = if (fileList[which].extension == EXTENSION_HTML) {
+                            netscapeBookmarkFormatImporter
                         } else {
-                            legacyBookmarkImporter.importBookmarks(it)
+                            legacyBookmarkImporter
                         }
-                    }
-                    .flatMap {
-                        bookmarkRepository.addBookmarkList(it).andThen(Single.just(it.size))
-                    }
+                        bookmarkRepository.importBookmarks(importer.importBookmarks(inputStream))
+                    },
+                    { it.close() }
+                )
+                    .doOnNext { logger.log(TAG, "Importing bookmarks: $it") }
+                    .last(BookmarkImportProgress(processed = 0, added = 0))
                     .subscribeOn(databaseScheduler)
                     .observeOn(mainScheduler)
                     .subscribeBy(
-                        onSuccess = { count ->
+                        onSuccess = { progress ->
                             activity?.apply {
-                                snackbar("$count ${getString(R.string.message_import)}")
+                                snackbar("${progress.added} ${getString(R.string.message_import)}")
                             }
                         },
                         onError = {
@@ -1,15 +1,31 @@
 package acr.browser.lightning.settings.fragment
 
 import acr.browser.lightning.R
+import acr.browser.lightning.adblock.metrics.AdBlockMetrics
+import acr.browser.lightning.browser.di.MainScheduler
 import acr.browser.lightning.browser.di.injector
+import acr.browser.lightning.browser.tab.WebViewPoolMetrics
+import acr.browser.lightning.extensions.resizeAndShow
 import acr.browser.lightning.extensions.snackbar
+import acr.browser.lightning.log.Logger
 import acr.browser.lightning.preference.DeveloperPreferences
 import android.os.Bundle
+import androidx.appcompat.app.AlertDialog
+import io.reactivex.Scheduler
+import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.rxkotlin.plusAssign
+import io.reactivex.rxkotlin.subscribeBy
 import javax.inject.Inject
 
 class DebugSettingsFragment : AbstractSettingsFragment() {
 
     @Inject internal lateinit var developerPreferences: DeveloperPreferences
+    @Inject internal lateinit var adBlockMetrics: AdBlockMetrics
+    @Inject internal lateinit var webViewPoolMetrics: WebViewPoolMetrics
+    @Inject internal lateinit var logger: Logger
+    @Inject @field:MainScheduler internal lateinit var mainScheduler: Scheduler
+
+    private val compositeDisposable = CompositeDisposable()
 
     override fun providePreferencesXmlResource() = R.xml.preference_debug
 
@@ -25,9 +41,64 @@ class DebugSettingsFragment : AbstractSettingsFragment() {
                 developerPreferences.useLeakCanary = change
             }
         )
+
+        val adBlockMetricsPreference = clickablePreference(
+            preference = AD_BLOCK_METRICS,
+            onClick = ::showAdBlockMetrics
+        )
+        compositeDisposable += adBlockMetrics.snapshotObservable()
+            .observeOn(mainScheduler)
+            .subscribeBy { snapshot ->
+                adBlockMetricsPreference.summary = getString(
+                    R.string.debug_ad_block_metrics_summary,
+                    snapshot.totalBlocked,
+                    snapshot.bloomFalsePositiveRate * 100
+                )
+            }
+
+        val webViewPoolSnapshot = webViewPoolMetrics.snapshot()
+        clickablePreference(
+            preference = WEB_VIEW_POOL_METRICS,
+            summary = getString(
+                R.string.debug_web_view_pool_metrics_summary,
+                webViewPoolSnapshot.hits,
+                webViewPoolSnapshot.misses
+            ),
+            onClick = ::showWebViewPoolMetrics
+        )
+    }
+
+    override fun onDestroy() {
+        super.onDestroy()
+        compositeDisposable.clear()
+    }
+
+    private fun showAdBlockMetrics() {
+        val dump = adBlockMetrics.snapshot().dump()
+        logger.log(TAG, dump)
+        val activity = activity ?: return
+        AlertDialog.Builder(activity).apply {
+            setTitle(R.string.debug_ad_block_metrics)
+            setMessage(dump)
+            setPositiveButton(R.string.action_ok, null)
+        }.resizeAndShow()
+    }
+
+    private fun showWebViewPoolMetrics() {
+        val dump = webViewPoolMetrics.snapshot().dump()
+        logger.log(TAG, dump)
+        val activity = activity ?: return
+        AlertDialog.Builder(activity).apply {
+            setTitle(R.string.debug_web_view_pool_metrics)
+            setMessage(dump)
+            setPositiveButton(R.string.action_ok, null)
+        }.resizeAndShow()
     }
 
     companion object {
+        private const val TAG = "DebugSettingsFragment"
         private const val LEAK_CANARY = "leak_canary_enabled"
+        private const val AD_BLOCK_METRICS = "ad_block_metrics"
+        private const val WEB_VIEW_POOL_METRICS = "web_view_pool_metrics"
     }
 }
@@ -12,6 +12,7 @@ import acr.browser.lightning.dialog.DialogItem
 import acr.browser.lightning.extensions.snackbar
 import acr.browser.lightning.isSupported
 import acr.browser.lightning.preference.UserPreferences
+import acr.browser.lightning.search.index.FrecencyIndex
 import acr.browser.lightning.utils.WebUtils
 import android.os.Bundle
 import android.webkit.WebView
@@ -23,6 +24,7 @@ class PrivacySettingsFragment : AbstractSettingsFragment() {
 
     @Inject internal lateinit var historyRepository: HistoryRepository
     @Inject internal lateinit var userPreferences: UserPreferences
+    @Inject internal lateinit var frecencyIndex: FrecencyIndex
     @Inject @field:DatabaseScheduler internal lateinit var databaseScheduler: Scheduler
     @Inject @field:MainScheduler internal lateinit var mainScheduler: Scheduler
 
@@ -148,7 +150,12 @@ class PrivacySettingsFragment : AbstractSettingsFragment() {
         val activity = activity
         if (activity != null) {
             // TODO: 6/9/17 clearHistory is not synchronous
-            WebUtils.clearHistory(activity, historyRepository, databaseScheduler)
+            WebUtils.clearHistory(
+                activity,
+                historyRepository,
+                frecencyIndex,
+                databaseScheduler
+            )
         } else {
             throw RuntimeException("Activity was null in clearHistory")
         }
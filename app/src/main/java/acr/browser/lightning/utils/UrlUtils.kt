@@ -18,6 +18,7 @@
 package acr.browser.lightning.utils
 
 import acr.browser.lightning.constant.FILE
+import acr.browser.lightning.constant.INTERNAL_ORIGIN
 import acr.browser.lightning.html.bookmark.BookmarkPageFactory
 import acr.browser.lightning.html.download.DownloadPageFactory
 import acr.browser.lightning.html.history.HistoryPageFactory
@@ -75,46 +76,83 @@ fun String?.isFileUrl(): Boolean = this != null && this.startsWith(FILE)
 /**
  * Returns whether the given url is the bookmarks/history page or a normal website
  */
-fun String?.isSpecialUrl(): Boolean =
-    this != null
-        && this.startsWith(FILE)
-        && (this.endsWith(BookmarkPageFactory.FILENAME)
-        || this.endsWith(DownloadPageFactory.FILENAME)
-        || this.endsWith(HistoryPageFactory.FILENAME)
-        || this.endsWith(HomePageFactory.FILENAME))
+fun String?.isSpecialUrl(): Boolean = isInternalPage(BookmarkPageFactory.FILENAME)
+        || isInternalPage(DownloadPageFactory.FILENAME)
+        || isInternalPage(HistoryPageFactory.FILENAME)
+        || isInternalPage(HomePageFactory.FILENAME)
 
 /**
  * Determines if the url is a url for the bookmark page.
  *
  * @return true if the url is a bookmark url, false otherwise.
  */
-fun String?.isBookmarkUrl(): Boolean =
-    this != null && this.startsWith(FILE) && this.endsWith(BookmarkPageFactory.FILENAME)
+fun String?.isBookmarkUrl(): Boolean = isInternalPage(BookmarkPageFactory.FILENAME)
 
 /**
  * Determines if the url is a url for the bookmark page.
  *
  * @return true if the url is a bookmark url, false otherwise.
  */
-fun String?.isDownloadsUrl(): Boolean =
-    this != null && this.startsWith(FILE) && this.endsWith(DownloadPageFactory.FILENAME)
+fun String?.isDownloadsUrl(): Boolean = isInternalPage(DownloadPageFactory.FILENAME)
 
 /**
  * Determines if the url is a url for the history page.
  *
  * @return true if the url is a history url, false otherwise.
  */
-fun String?.isHistoryUrl(): Boolean =
-    this != null && this.startsWith(FILE) && this.endsWith(HistoryPageFactory.FILENAME)
+fun String?.isHistoryUrl(): Boolean = isInternalPage(HistoryPageFactory.FILENAME)
 
 /**
  * Determines if the url is a url for the start page.
  *
  * @return true if the url is a start page url, false otherwise.
  */
-fun String?.isStartPageUrl(): Boolean =
-    this != null && this.startsWith(FILE) && this.endsWith(HomePageFactory.FILENAME)
+fun String?.isStartPageUrl(): Boolean = isInternalPage(HomePageFactory.FILENAME)
 
+/**
+ * Returns the authority of the URL, which is everything between the `://` that follows the scheme
+ * and the start of the path, query or fragment, or `null` if the URL does not have one. This is a
+ * cheap alternative to parsing the URL for callers that only need a key that identifies the host.
+ */
+fun String.urlAuthority(): String? {
+    val schemeEnd = indexOf(SCHEME_SEPARATOR)
+    if (schemeEnd <= 0 || !regionIsScheme(schemeEnd)) {
+        return null
+    }
+
+    val start = schemeEnd + SCHEME_SEPARATOR.length
+    var end = start
+    while (end < length && this[end] != '/' && this[end] != '?' && this[end] != '#') {
+        end++
+    }
+
+    return substring(start, end)
+}
+
+/**
+ * True if the URL is the URL of a page generated by the browser, whose name ends with the
+ * [filename].
+ */
+private fun String?.isInternalPage(filename: String): Boolean =
+    this != null && this.startsWith(INTERNAL_PAGE_PREFIX) && this.endsWith(filename)
+
+/**
+ * Returns true if the first [length] characters of the string are a valid URL scheme.
+ */
+private fun String.regionIsScheme(length: Int): Boolean {
+    for (i in 0 until length) {
+        val char = this[i]
+        val isLetter = char in 'a'..'z' || char in 'A'..'Z'
+        val isSymbol = char in '0'..'9' || char == '+' || char == '-' || char == '.'
+        if (!isLetter && (i == 0 || !isSymbol)) {
+            return false
+        }
+    }
+    return true
+}
+
+private const val SCHEME_SEPARATOR = "://"
+private const val INTERNAL_PAGE_PREFIX = "$INTERNAL_ORIGIN/"
 private val ACCEPTED_URI_SCHEMA =
     Pattern.compile("(?i)((?:http|https|file)://|(?:inline|data|about|javascript):|(?:.*:.*@))(.*)")
 const val QUERY_PLACE_HOLDER = "%s"
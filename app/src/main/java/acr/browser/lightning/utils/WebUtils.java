@@ -8,6 +8,7 @@ import android.webkit.WebView;
 import android.webkit.WebViewDatabase;
 
 import acr.browser.lightning.database.history.HistoryRepository;
+import acr.browser.lightning.search.index.FrecencyIndex;
 import androidx.annotation.NonNull;
 import io.reactivex.Scheduler;
 
@@ -28,7 +29,9 @@ public final class WebUtils {
 
     public static void clearHistory(@NonNull Context context,
                                     @NonNull HistoryRepository historyRepository,
+                                    @NonNull FrecencyIndex frecencyIndex,
                                     @NonNull Scheduler databaseScheduler) {
+        frecencyIndex.clear();
         historyRepository.deleteHistory()
             .subscribeOn(databaseScheduler)
             .subscribe();
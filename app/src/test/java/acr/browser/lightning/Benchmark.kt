@@ -0,0 +1,19 @@
+package acr.browser.lightning
+
+/**
+ * Returns the median time in nanoseconds taken to run the [block] [measuredIterations] times, after
+ * running it [warmUpIterations] times to warm it up. Used by the manual benchmarks, which are
+ * ignored when the unit tests are run.
+ */
+inline fun benchmarkNanos(
+    warmUpIterations: Int = 5,
+    measuredIterations: Int = 10,
+    block: () -> Unit
+): Long {
+    repeat(warmUpIterations) { block() }
+    return (0 until measuredIterations).map {
+        val start = System.nanoTime()
+        block()
+        System.nanoTime() - start
+    }.sorted()[measuredIterations / 2]
+}
@@ -0,0 +1,20 @@
+package acr.browser.lightning
+
+import android.os.Looper
+import android.os.MessageQueue
+
+/**
+ * Runs the idle handlers registered with the message queue of the current thread once, as the
+ * queue does when it becomes idle, removing the handlers that return false.
+ */
+fun runIdleHandlers() {
+    val field = MessageQueue::class.java.getDeclaredField("mIdleHandlers")
+    field.isAccessible = true
+    @Suppress("UNCHECKED_CAST")
+    val idleHandlers = field.get(Looper.myQueue()) as MutableList<MessageQueue.IdleHandler>
+    idleHandlers.toList().forEach {
+        if (!it.queueIdle()) {
+            idleHandlers.remove(it)
+        }
+    }
+}
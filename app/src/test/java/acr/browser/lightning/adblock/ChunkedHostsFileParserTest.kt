@@ -0,0 +1,162 @@
+package acr.browser.lightning.adblock
+
+import acr.browser.lightning.adblock.metrics.AdBlockMetrics
+import acr.browser.lightning.adblock.parser.ChunkedHostsFileParser
+import acr.browser.lightning.adblock.parser.HostsFileParser
+import acr.browser.lightning.benchmarkNanos
+import acr.browser.lightning.database.adblock.Host
+import acr.browser.lightning.log.NoOpLogger
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Ignore
+import org.junit.Test
+import java.io.File
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.nio.ByteBuffer
+
+/**
+ * Unit tests and a benchmark for [ChunkedHostsFileParser].
+ */
+class ChunkedHostsFileParserTest {
+
+    @Test
+    fun `line parsing is valid`() {
+        val testInput = """
+            127.0.0.1 localhost #comment comment
+            ::1 localhost #comment comment
+            #
+            # another comment
+            #
+            127.0.0.1	fake.domain1.com
+            127.0.0.1	fake.domain2.com    # comment
+            0.0.0.0	fake.domain3.com    # comment
+            # random comment
+            ::1 domain4.com
+            0.0.0.0 multiline1.com multiline2.com # comment
+            0.0.0.0 comment.close.by.com#comment
+            """
+
+        val hostsFileParser = ChunkedHostsFileParser(NoOpLogger(), AdBlockMetrics())
+        val mutableList = hostsFileParser.parseInput(testInput.trimIndent().byteInputStream())
+
+        assertThat(mutableList).hasSize(7)
+        assertThat(mutableList).contains(
+            Host("fake.domain1.com"),
+            Host("fake.domain2.com"),
+            Host("fake.domain3.com"),
+            Host("domain4.com"),
+            Host("multiline1.com"),
+            Host("multiline2.com"),
+            Host("comment.close.by.com")
+        )
+    }
+
+    @Test
+    fun `carriage returns and a missing trailing line feed are handled`() {
+        val testInput = "127.0.0.1 first.com\r\n127.0.0.1 second.com\r\n127.0.0.1 third.com"
+
+        val hostsFileParser = ChunkedHostsFileParser(NoOpLogger(), AdBlockMetrics())
+        val mutableList = hostsFileParser.parseInput(testInput.byteInputStream())
+
+        assertThat(mutableList).containsExactly(
+            Host("first.com"),
+            Host("second.com"),
+            Host("third.com")
+        )
+    }
+
+    @Test
+    fun `hosts spanning multiple chunks are all parsed in order`() {
+        val hosts = (0 until 100_000).map { "0.0.0.0 host$it.example.com # comment $it" }
+        val testInput = hosts.joinToString(separator = "\n").toByteArray()
+
+        val hostsFileParser = ChunkedHostsFileParser(NoOpLogger(), AdBlockMetrics())
+        val mutableList = hostsFileParser.parseInput(ByteBuffer.wrap(testInput))
+
+        assertThat(mutableList).containsExactlyElementsOf(
+            (0 until 100_000).map { Host("host$it.example.com") }
+        )
+    }
+
+    @Test
+    fun `streamed hosts are read in chunks and all parsed in order`() {
+        val hosts = (0 until 100_000).map { "0.0.0.0 host$it.example.com # comment $it" }
+        // A line that is longer than a chunk of the stream.
+        val longComment = "#" + "x".repeat(600_000)
+        val testInput = (hosts + longComment + "0.0.0.0 last.example.com").joinToString("\n")
+        val inputStream = ReadCountingInputStream(testInput.byteInputStream())
+
+        val hostsFileParser = ChunkedHostsFileParser(NoOpLogger(), AdBlockMetrics())
+        val mutableList = hostsFileParser.parseInput(inputStream)
+
+        assertThat(mutableList).containsExactlyElementsOf(
+            (0 until 100_000).map { Host("host$it.example.com") } + Host("last.example.com")
+        )
+        // The stream is read in bounded reads, rather than into a single array.
+        assertThat(inputStream.largestRead).isLessThan(testInput.length / 2)
+        assertThat(inputStream.isClosed).isTrue()
+    }
+
+    @Test(expected = IOException::class)
+    fun `stream read failure is thrown`() {
+        val failingInputStream = object : InputStream() {
+            override fun read(): Int = throw IOException("Connection reset")
+            override fun read(b: ByteArray, off: Int, len: Int): Int =
+                throw IOException("Connection reset")
+        }
+
+        ChunkedHostsFileParser(NoOpLogger(), AdBlockMetrics()).parseInput(failingInputStream)
+    }
+
+    @Test
+    fun `bundled hosts file is parsed identically to HostsFileParser`() {
+        val hostsFile = File(BUNDLED_HOSTS_FILE)
+        val chunkedParser = ChunkedHostsFileParser(NoOpLogger(), AdBlockMetrics())
+        val lineParser = HostsFileParser(NoOpLogger())
+
+        val expectedHosts = lineParser.parseInput(InputStreamReader(hostsFile.inputStream()))
+        assertThat(chunkedParser.parseInput(hostsFile)).containsExactlyElementsOf(expectedHosts)
+    }
+
+    @Ignore("Manual benchmark, run on its own to compare the parsers")
+    @Test
+    fun `parsing the bundled hosts file is compared to HostsFileParser`() {
+        val hostsFile = File(BUNDLED_HOSTS_FILE)
+        val chunkedParser = ChunkedHostsFileParser(NoOpLogger(), AdBlockMetrics())
+        val lineParser = HostsFileParser(NoOpLogger())
+
+        val chunkedNanos = benchmarkNanos { chunkedParser.parseInput(hostsFile) }
+        val lineNanos = benchmarkNanos {
+            lineParser.parseInput(InputStreamReader(hostsFile.inputStream()))
+        }
+
+        println("HostsFileParser: ${lineNanos / 1_000_000.0} ms")
+        println("ChunkedHostsFileParser: ${chunkedNanos / 1_000_000.0} ms")
+    }
+
+    /**
+     * Records the largest read made from the [inputStream] and whether it was closed.
+     */
+    private class ReadCountingInputStream(inputStream: InputStream) :
+        FilterInputStream(inputStream) {
+
+        var largestRead = 0
+            private set
+        var isClosed = false
+            private set
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int =
+            super.read(b, off, len).also { largestRead = maxOf(largestRead, it) }
+
+        override fun close() {
+            isClosed = true
+            super.close()
+        }
+    }
+
+    companion object {
+        private const val BUNDLED_HOSTS_FILE = "src/main/assets/hosts.txt"
+    }
+}
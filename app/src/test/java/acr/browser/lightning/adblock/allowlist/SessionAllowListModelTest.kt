@@ -2,6 +2,7 @@ package acr.browser.lightning.adblock.allowlist
 
 import acr.browser.lightning.SDK_VERSION
 import acr.browser.lightning.TestApplication
+import acr.browser.lightning.adblock.metrics.AdBlockMetrics
 import acr.browser.lightning.database.allowlist.AdBlockAllowListRepository
 import acr.browser.lightning.database.allowlist.AllowListEntry
 import acr.browser.lightning.log.NoOpLogger
@@ -30,7 +31,7 @@ class SessionAllowListModelTest {
     @Test
     fun `isUrlAllowListed checks domain`() {
         whenever(adBlockAllowListModel.allAllowListItems()).thenReturn(Single.just(listOf(AllowListEntry("test.com", 0))))
-        val sessionAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger())
+        val sessionAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger(), AdBlockMetrics())
 
         assertThat(sessionAllowListModel.isUrlAllowedAds("http://test.com/12345")).isTrue()
         assertThat(sessionAllowListModel.isUrlAllowedAds("https://test.com")).isTrue()
@@ -42,7 +43,7 @@ class SessionAllowListModelTest {
         whenever(adBlockAllowListModel.allAllowListItems()).thenReturn(Single.just(emptyList()))
         whenever(adBlockAllowListModel.allowListItemForUrl(any())).thenReturn(Maybe.empty())
         whenever(adBlockAllowListModel.addAllowListItem(any())).thenReturn(Completable.complete())
-        val sessionAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger())
+        val sessionAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger(), AdBlockMetrics())
 
         assertThat(sessionAllowListModel.isUrlAllowedAds("http://test.com")).isFalse()
 
@@ -56,7 +57,7 @@ class SessionAllowListModelTest {
         whenever(adBlockAllowListModel.allAllowListItems()).thenReturn(Single.just(listOf(AllowListEntry("test.com", 0))))
         whenever(adBlockAllowListModel.allowListItemForUrl(any())).thenReturn(Maybe.empty())
         whenever(adBlockAllowListModel.removeAllowListItem(any())).thenReturn(Completable.complete())
-        val sessionAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger())
+        val sessionAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger(), AdBlockMetrics())
 
         assertThat(sessionAllowListModel.isUrlAllowedAds("http://test.com")).isTrue()
 
@@ -76,13 +77,13 @@ class SessionAllowListModelTest {
             }
         }
 
-        val oldAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger())
+        val oldAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger(), AdBlockMetrics())
 
         assertThat(oldAllowListModel.isUrlAllowedAds("http://test.com")).isFalse()
 
         oldAllowListModel.addUrlToAllowList("https://test.com/12345")
 
-        val newAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger())
+        val newAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger(), AdBlockMetrics())
 
         assertThat(newAllowListModel.isUrlAllowedAds("http://test.com")).isTrue()
     }
@@ -103,13 +104,13 @@ class SessionAllowListModelTest {
             }
         }
 
-        val oldAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger())
+        val oldAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger(), AdBlockMetrics())
 
         assertThat(oldAllowListModel.isUrlAllowedAds("http://test.com")).isTrue()
 
         oldAllowListModel.removeUrlFromAllowList("https://test.com/12345")
 
-        val newAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger())
+        val newAllowListModel = SessionAllowListModel(adBlockAllowListModel, Schedulers.trampoline(), NoOpLogger(), AdBlockMetrics())
 
         assertThat(newAllowListModel.isUrlAllowedAds("http://test.com")).isFalse()
     }
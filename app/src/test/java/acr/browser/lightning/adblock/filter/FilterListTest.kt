@@ -0,0 +1,120 @@
+package acr.browser.lightning.adblock.filter
+
+import acr.browser.lightning.log.NoOpLogger
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+/**
+ * Tests for [FilterList] and [FilterListParser].
+ */
+class FilterListTest {
+
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private val filterListParser = FilterListParser(NoOpLogger())
+
+    private val filterList = FilterList.compile(
+        filterListParser.parseInput(
+            """
+            [Adblock Plus 2.0]
+            ! Title: Test list
+            example.com##.ad-banner
+            ||ads.example.com^
+            /ads/*
+            ?adunit=
+            ||tracker.net^${'$'}third-party
+            /banner/*${'$'}domain=news.com|~sports.news.com
+            @@||example.org/ads/allowed^
+            |https://start.com/ad-*.gif|
+            ad*banner
+            /^https?:\/\/regex\./
+            ||popup.com^${'$'}popup
+            ||scripts.com^${'$'}script,~image
+            """.trimIndent().byteInputStream()
+        )
+    )
+
+    @Test
+    fun `unsupported lines are skipped`() {
+        assertThat(filterList.size).isEqualTo(9)
+        assertThat(filterListParser.parseLine("! comment")).isNull()
+        assertThat(filterListParser.parseLine("example.com##.ad-banner")).isNull()
+        assertThat(filterListParser.parseLine("/^https?:\\/\\/regex\\./")).isNull()
+        assertThat(filterListParser.parseLine("||popup.com^\$popup")).isNull()
+        assertThat(filterListParser.parseLine("*")).isNull()
+    }
+
+    @Test
+    fun `host anchored filter blocks the host and its subdomains`() {
+        assertThat(filterList.isBlocked("https://ads.example.com/banner.png", "")).isTrue()
+        assertThat(filterList.isBlocked("https://cdn.ads.example.com/x.js", "")).isTrue()
+        assertThat(filterList.isBlocked("https://ADS.example.com:8080/", "")).isTrue()
+        assertThat(filterList.isBlocked("https://user@ads.example.com/", "")).isTrue()
+        assertThat(filterList.isBlocked("https://notads.example.com/", "")).isFalse()
+        assertThat(filterList.isBlocked("https://ads.example.com.evil.org/", "")).isFalse()
+    }
+
+    @Test
+    fun `path and query filters block same host requests`() {
+        val pageUrl = "https://news.site/"
+
+        assertThat(filterList.isBlocked("https://news.site/ads/banner.js", pageUrl)).isTrue()
+        assertThat(filterList.isBlocked("https://site.com/page?adunit=3", pageUrl)).isTrue()
+        assertThat(filterList.isBlocked("https://news.site/uploads/x.js", pageUrl)).isFalse()
+    }
+
+    @Test
+    fun `third party filter only blocks requests from other domains`() {
+        assertThat(filterList.isBlocked("https://tracker.net/pixel", "https://other.com/"))
+            .isTrue()
+        assertThat(filterList.isBlocked("https://tracker.net/pixel", "https://www.tracker.net/"))
+            .isFalse()
+    }
+
+    @Test
+    fun `domain filter only blocks requests from included domains`() {
+        val url = "https://cdn.com/banner/1.png"
+
+        assertThat(filterList.isBlocked(url, "https://news.com/")).isTrue()
+        assertThat(filterList.isBlocked(url, "https://www.news.com/")).isTrue()
+        assertThat(filterList.isBlocked(url, "https://sports.news.com/")).isFalse()
+        assertThat(filterList.isBlocked(url, "https://other.com/")).isFalse()
+        assertThat(filterList.isBlocked(url, "")).isFalse()
+    }
+
+    @Test
+    fun `exception filter allows blocked requests`() {
+        assertThat(filterList.isBlocked("https://example.org/ads/allowed", "")).isFalse()
+        assertThat(filterList.isBlocked("https://example.org/ads/allowed.js", "")).isTrue()
+        assertThat(filterList.isBlocked("https://example.org/ads/other", "")).isTrue()
+    }
+
+    @Test
+    fun `anchors and wildcards are respected`() {
+        assertThat(filterList.isBlocked("https://start.com/ad-123.gif", "")).isTrue()
+        assertThat(filterList.isBlocked("https://start.com/ad-123.gif?x=1", "")).isFalse()
+        assertThat(filterList.isBlocked("http://start.com/ad-123.gif", "")).isFalse()
+        assertThat(filterList.isBlocked("https://x.com/myadxbanners", "")).isTrue()
+    }
+
+    @Test
+    fun `resource type options are ignored`() {
+        assertThat(filterList.isBlocked("https://scripts.com/a.js", "")).isTrue()
+    }
+
+    @Test
+    fun `filter list is loaded from a local file`() {
+        val file = temporaryFolder.newFile("filters.txt")
+        file.writeText((0 until 10_000).joinToString(separator = "\n") { "/ad$it/*" })
+
+        val fileFilterList = FilterList.compile(filterListParser.parseInput(file.inputStream()))
+
+        assertThat(fileFilterList.size).isEqualTo(10_000)
+        assertThat(fileFilterList.isBlocked("https://site.com/ad9999/x.png", "")).isTrue()
+        assertThat(fileFilterList.isBlocked("https://site.com/ad10000/x.png", "")).isFalse()
+        assertThat(FilterList.EMPTY.isBlocked("https://site.com/ad1/x.png", "")).isFalse()
+    }
+}
@@ -0,0 +1,100 @@
+package acr.browser.lightning.adblock.metrics
+
+import acr.browser.lightning.adblock.util.DecisionCache
+import acr.browser.lightning.adblock.util.DecisionCacheStats
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.entry
+import org.junit.Test
+
+/**
+ * Tests for [AdBlockMetrics] and [LatencyHistogram].
+ */
+class AdBlockMetricsTest {
+
+    @Test
+    fun `blocked requests are counted per tab and per page`() {
+        val adBlockMetrics = AdBlockMetrics()
+
+        repeat(3) { adBlockMetrics.recordBlockedRequest(tabId = 1) }
+        adBlockMetrics.recordBlockedRequest(tabId = 2)
+        adBlockMetrics.recordPageStarted(tabId = 1)
+        adBlockMetrics.recordBlockedRequest(tabId = 1)
+
+        val snapshot = adBlockMetrics.snapshot()
+        assertThat(snapshot.totalBlocked).isEqualTo(5)
+        assertThat(snapshot.tabs).containsExactlyInAnyOrder(
+            TabBlockedCount(tabId = 1, pageBlocked = 1, tabBlocked = 4),
+            TabBlockedCount(tabId = 2, pageBlocked = 1, tabBlocked = 1)
+        )
+    }
+
+    @Test
+    fun `removed tabs are no longer tracked and their slots are reused`() {
+        val adBlockMetrics = AdBlockMetrics()
+
+        for (tabId in 1..1000) {
+            adBlockMetrics.recordBlockedRequest(tabId)
+            adBlockMetrics.removeTab(tabId)
+        }
+        adBlockMetrics.recordBlockedRequest(tabId = 1001)
+
+        assertThat(adBlockMetrics.snapshot().tabs).containsExactly(
+            TabBlockedCount(tabId = 1001, pageBlocked = 1, tabBlocked = 1)
+        )
+    }
+
+    @Test
+    fun `bloom false positive rate only counts lookups of hosts that are not blocked`() {
+        val adBlockMetrics = AdBlockMetrics()
+
+        repeat(98) { adBlockMetrics.recordBloomNegative(nanos = 100) }
+        repeat(2) {
+            adBlockMetrics.recordBloomPositive(
+                bloomNanos = 100,
+                confirmationNanos = 1000,
+                isAd = false
+            )
+        }
+        repeat(50) {
+            adBlockMetrics.recordBloomPositive(
+                bloomNanos = 100,
+                confirmationNanos = 1000,
+                isAd = true
+            )
+        }
+
+        val snapshot = adBlockMetrics.snapshot()
+        assertThat(snapshot.bloomFalsePositiveRate).isEqualTo(0.02)
+        assertThat(snapshot.bloomStageLatency.count).isEqualTo(150)
+        assertThat(snapshot.confirmationStageLatency.count).isEqualTo(52)
+    }
+
+    @Test
+    fun `registered decision caches are reported by name`() {
+        val adBlockMetrics = AdBlockMetrics()
+        val decisionCache = DecisionCache(capacity = 10)
+        adBlockMetrics.registerDecisionCache("Ad", decisionCache)
+
+        repeat(3) { decisionCache.getOrPut("example.com") { true } }
+
+        val snapshot = adBlockMetrics.snapshot()
+        assertThat(snapshot.decisionCaches)
+            .containsExactly(entry("Ad", DecisionCacheStats(hits = 2, misses = 1)))
+        assertThat(snapshot.dump()).contains("Ad decision cache: 2 hits, 1 misses")
+    }
+
+    @Test
+    fun `latency histogram reports the bucket bounds of percentiles`() {
+        val histogram = LatencyHistogram()
+
+        repeat(90) { histogram.record(100) }
+        repeat(10) { histogram.record(5000) }
+
+        val snapshot = histogram.snapshot()
+        assertThat(snapshot.count).isEqualTo(100)
+        assertThat(snapshot.meanNanos).isEqualTo(590)
+        assertThat(snapshot.percentileNanos(50.0)).isEqualTo(128)
+        assertThat(snapshot.percentileNanos(99.0)).isEqualTo(8192)
+        assertThat(LatencyHistogram().snapshot().percentileNanos(50.0)).isEqualTo(0)
+    }
+}
@@ -0,0 +1,142 @@
+package acr.browser.lightning.adblock.source
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.adblock.metrics.AdBlockMetrics
+import acr.browser.lightning.adblock.parser.ChunkedHostsFileParser
+import acr.browser.lightning.database.adblock.Host
+import acr.browser.lightning.database.adblock.HostsRepositoryInfo
+import acr.browser.lightning.device.ScreenSize
+import acr.browser.lightning.log.NoOpLogger
+import acr.browser.lightning.preference.UserPreferences
+import android.app.Application
+import android.content.Context
+import io.reactivex.Single
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okio.Buffer
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+import java.io.ByteArrayOutputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Tests for [UrlHostsDataSource] against a local server.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class UrlHostsDataSourceTest {
+
+    private val server = MockWebServer()
+    private val application: Application = RuntimeEnvironment.application
+    private val hostsRepositoryInfo = HostsRepositoryInfo(
+        application.getSharedPreferences("ad_block_test", Context.MODE_PRIVATE)
+    )
+    private val userPreferences = UserPreferences(
+        application.getSharedPreferences("user_test", Context.MODE_PRIVATE),
+        ScreenSize(application)
+    ).apply {
+        userAgentChoice = 2
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    @Test
+    fun `hosts are requested unconditionally and their validators are returned`() {
+        server.enqueue(
+            MockResponse()
+                .setBody(HOSTS_FILE)
+                .setHeader("ETag", E_TAG)
+                .setHeader("Last-Modified", LAST_MODIFIED)
+        )
+        val dataSource = createDataSource("/hosts.txt")
+
+        val result = dataSource.loadHosts().blockingGet()
+
+        assertThat(result).isEqualTo(
+            HostsResult.Success(
+                hosts = listOf(Host("ads.example.com"), Host("tracker.example.org")),
+                validators = HostsValidators(eTag = E_TAG, lastModified = LAST_MODIFIED)
+            )
+        )
+        val request = server.takeRequest()
+        assertThat(request.getHeader("If-None-Match")).isNull()
+        assertThat(request.getHeader("If-Modified-Since")).isNull()
+    }
+
+    @Test
+    fun `stored validators are sent and unmodified hosts are not parsed`() {
+        server.enqueue(MockResponse().setResponseCode(304))
+        val dataSource = createDataSource("/hosts.txt")
+        hostsRepositoryInfo.identity = dataSource.identifier()
+        hostsRepositoryInfo.hostsETag = E_TAG
+        hostsRepositoryInfo.hostsLastModified = LAST_MODIFIED
+
+        val result = dataSource.loadHosts().blockingGet()
+
+        assertThat(result).isEqualTo(HostsResult.NotModified)
+        val request = server.takeRequest()
+        assertThat(request.getHeader("If-None-Match")).isEqualTo(E_TAG)
+        assertThat(request.getHeader("If-Modified-Since")).isEqualTo(LAST_MODIFIED)
+    }
+
+    @Test
+    fun `validators of hosts from another source are not sent`() {
+        server.enqueue(MockResponse().setResponseCode(304))
+        val dataSource = createDataSource("/hosts.txt")
+        hostsRepositoryInfo.identity = "https://other.example.com/hosts.txt"
+        hostsRepositoryInfo.hostsETag = E_TAG
+
+        val result = dataSource.loadHosts().blockingGet()
+
+        assertThat(result).isInstanceOf(HostsResult.Failure::class.java)
+        assertThat(server.takeRequest().getHeader("If-None-Match")).isNull()
+    }
+
+    @Test
+    fun `gzip compressed hosts file is decompressed while it is parsed`() {
+        val compressed = ByteArrayOutputStream().also { output ->
+            GZIPOutputStream(output).use { it.write(HOSTS_FILE.toByteArray()) }
+        }.toByteArray()
+        server.enqueue(
+            MockResponse()
+                .setBody(Buffer().write(compressed))
+                .setHeader("Content-Type", "application/gzip")
+        )
+        val dataSource = createDataSource("/hosts.gz")
+
+        val result = dataSource.loadHosts().blockingGet() as HostsResult.Success
+
+        assertThat(result.hosts).containsExactly(Host("ads.example.com"), Host("tracker.example.org"))
+    }
+
+    private fun createDataSource(path: String) = UrlHostsDataSource(
+        url = server.url(path),
+        okHttpClient = Single.just(OkHttpClient()),
+        logger = NoOpLogger(),
+        hostsFileParser = ChunkedHostsFileParser(NoOpLogger(), AdBlockMetrics()),
+        hostsRepositoryInfo = hostsRepositoryInfo,
+        userPreferences = userPreferences,
+        application = application
+    )
+
+    companion object {
+        private const val E_TAG = "\"abc123\""
+        private const val LAST_MODIFIED = "Sat, 01 May 2021 00:00:00 GMT"
+        private val HOSTS_FILE = """
+            # A hosts file
+            127.0.0.1 localhost
+            0.0.0.0 ads.example.com
+            0.0.0.0 tracker.example.org
+        """.trimIndent()
+    }
+}
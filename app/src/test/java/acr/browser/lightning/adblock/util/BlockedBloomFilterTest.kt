@@ -0,0 +1,117 @@
+package acr.browser.lightning.adblock.util
+
+import acr.browser.lightning.adblock.util.hash.MurmurHash
+import acr.browser.lightning.adblock.util.hash.MurmurHashStringAdapter
+import acr.browser.lightning.benchmarkNanos
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Ignore
+import org.junit.Test
+
+/**
+ * Unit tests for [BlockedBloomFilter] and a benchmark comparing it to [DefaultBloomFilter].
+ */
+class BlockedBloomFilterTest {
+
+    @Test
+    fun `empty bloom filter returns false for all values`() {
+        val bloomFilter = BlockedBloomFilter(TEST_SIZE, 0.01, MurmurHashStringAdapter())
+
+        for (i in 0 until TEST_SIZE) {
+            assertThat(bloomFilter.mightContain(i.toString())).isFalse()
+        }
+    }
+
+    @Test
+    fun `strings may be present after adding collection to filter`() {
+        val bloomFilter = BlockedBloomFilter(TEST_SIZE, 0.01, MurmurHashStringAdapter())
+        val collection = (0 until TEST_SIZE).map(Int::toString)
+
+        bloomFilter.putAll(collection)
+
+        collection.forEach {
+            assertThat(bloomFilter.mightContain(it)).isTrue()
+            assertThat(bloomFilter.mightContainHash(MurmurHash.hash32(it))).isTrue()
+        }
+    }
+
+    @Test
+    fun `strings that are not in the filter return false positives near the accepted rate`() {
+        val bloomFilter = BlockedBloomFilter(TEST_SIZE, 0.01, MurmurHashStringAdapter())
+        bloomFilter.putAll((0 until TEST_SIZE).map(Int::toString))
+
+        val falsePositives = (TEST_SIZE until 2 * TEST_SIZE).count {
+            bloomFilter.mightContain(it.toString())
+        }
+
+        assertThat(falsePositives.toDouble() / TEST_SIZE).isLessThan(0.015)
+    }
+
+    @Ignore("Manual benchmark, run on its own to compare the filters")
+    @Test
+    fun `blocked bloom filter is compared to the default bloom filter`() {
+        println("filter              hosts     false positives  lookup ns/op  memory KiB")
+        BENCHMARK_SIZES.forEach { size ->
+            val hosts = (0 until size).map { "host$it.example.com" }
+            val absentHashes = IntArray(size) { MurmurHash.hash32("absent$it.example.org") }
+            val lookupHashes = IntArray(LOOKUP_COUNT) {
+                // Half of the lookups are for blocked hosts, as on a page with many ads.
+                if (it % 2 == 0) MurmurHash.hash32(hosts[it % size]) else absentHashes[it % size]
+            }
+
+            val defaultBloomFilter = DefaultBloomFilter(size, 0.01, MurmurHashStringAdapter())
+            defaultBloomFilter.putAll(hosts)
+            val blockedBloomFilter = BlockedBloomFilter(size, 0.01, MurmurHashStringAdapter())
+            blockedBloomFilter.putAll(hosts)
+
+            val defaultResult = measure(defaultBloomFilter, absentHashes, lookupHashes)
+            val blockedResult = measure(blockedBloomFilter, absentHashes, lookupHashes)
+
+            report("DefaultBloomFilter", size, defaultResult, defaultBloomFilter.numberOfBits)
+            report("BlockedBloomFilter", size, blockedResult, blockedBloomFilter.numberOfBits)
+
+            assertThat(blockedResult.falsePositiveRate).isLessThan(0.015)
+            // Every blocked host must be found, only the false positives may differ.
+            assertThat(defaultResult.hits).isGreaterThanOrEqualTo(LOOKUP_COUNT / 2)
+            assertThat(blockedResult.hits).isGreaterThanOrEqualTo(LOOKUP_COUNT / 2)
+        }
+    }
+
+    private class Result(val falsePositiveRate: Double, val nanosPerLookup: Double, val hits: Int)
+
+    private fun measure(
+        bloomFilter: BloomFilter<String>,
+        absentHashes: IntArray,
+        lookupHashes: IntArray
+    ): Result {
+        val falsePositives = absentHashes.count(bloomFilter::mightContainHash)
+
+        var hits = 0
+        val nanos = benchmarkNanos {
+            hits = lookupHashes.count(bloomFilter::mightContainHash)
+        }
+
+        return Result(
+            falsePositiveRate = falsePositives.toDouble() / absentHashes.size,
+            nanosPerLookup = nanos.toDouble() / lookupHashes.size,
+            hits = hits
+        )
+    }
+
+    private fun report(name: String, size: Int, result: Result, numberOfBits: Int) {
+        println(
+            "%-18s %7d %17.4f %13.1f %11d".format(
+                name,
+                size,
+                result.falsePositiveRate,
+                result.nanosPerLookup,
+                numberOfBits / Byte.SIZE_BITS / 1024
+            )
+        )
+    }
+
+    companion object {
+        private const val TEST_SIZE = 100_000
+        private val BENCHMARK_SIZES = listOf(100_000, 500_000, 1_000_000)
+        private const val LOOKUP_COUNT = 1_000_000
+    }
+}
@@ -0,0 +1,69 @@
+package acr.browser.lightning.adblock.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+/**
+ * Tests for [DecisionCache].
+ */
+class DecisionCacheTest {
+
+    @Test
+    fun `decision is computed once and then cached`() {
+        val decisionCache = DecisionCache(CAPACITY)
+        var computations = 0
+
+        repeat(3) {
+            assertThat(decisionCache.getOrPut("example.com") { computations++; true }).isTrue()
+        }
+
+        assertThat(computations).isEqualTo(1)
+        assertThat(decisionCache.stats()).isEqualTo(DecisionCacheStats(hits = 2, misses = 1))
+        assertThat(decisionCache.stats().hitRate).isEqualTo(2.0 / 3)
+    }
+
+    @Test
+    fun `invalidate clears cached decisions`() {
+        val decisionCache = DecisionCache(CAPACITY)
+        decisionCache.getOrPut("example.com") { true }
+
+        decisionCache.invalidate()
+
+        assertThat(decisionCache.getOrPut("example.com") { false }).isFalse()
+    }
+
+    @Test
+    fun `decision made during invalidation is not cached`() {
+        val decisionCache = DecisionCache(CAPACITY)
+
+        assertThat(decisionCache.getOrPut("example.com") {
+            decisionCache.invalidate()
+            true
+        }).isTrue()
+
+        assertThat(decisionCache.getOrPut("example.com") { false }).isFalse()
+    }
+
+    @Test
+    fun `recently used decisions survive eviction`() {
+        val decisionCache = DecisionCache(CAPACITY)
+        decisionCache.getOrPut("kept.com") { true }
+
+        for (i in 0 until 10 * CAPACITY) {
+            decisionCache.getOrPut("kept.com") { false }
+            decisionCache.getOrPut("$i.com") { false }
+        }
+
+        assertThat(decisionCache.getOrPut("kept.com") { false }).isTrue()
+        assertThat(decisionCache.getOrPut("0.com") { true }).isTrue()
+    }
+
+    @Test
+    fun `empty cache has zero hit rate`() {
+        assertThat(DecisionCache(CAPACITY).stats().hitRate).isEqualTo(0.0)
+    }
+
+    companion object {
+        private const val CAPACITY = 16
+    }
+}
@@ -0,0 +1,117 @@
+package acr.browser.lightning.adblock.util.`object`
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.adblock.util.BlockedBloomFilter
+import acr.browser.lightning.adblock.util.hash.MurmurHashStringAdapter
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+import java.io.RandomAccessFile
+
+/**
+ * Tests for [BloomFilterObjectStore].
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class BloomFilterObjectStoreTest {
+
+    private val application = RuntimeEnvironment.application
+
+    private val objectStore = BloomFilterObjectStore(
+        application,
+        MurmurHashStringAdapter(),
+        MurmurHashStringAdapter()
+    )
+
+    private fun createBloomFilter() = BlockedBloomFilter(
+        MAX_TEST_VALUE,
+        0.01,
+        MurmurHashStringAdapter()
+    ).apply {
+        putAll((0 until MAX_TEST_VALUE).map(Int::toString))
+    }
+
+    @Test
+    fun `absent key retrieves null`() {
+        assertThat(objectStore.retrieve("absent")).isNull()
+    }
+
+    @Test
+    fun `stored bloom filter is restored with identical contents`() {
+        val bloomFilter = createBloomFilter()
+        objectStore.store(KEY, bloomFilter)
+
+        val restoredBloomFilter = objectStore.retrieve(KEY)!!
+
+        assertThat(restoredBloomFilter.numberOfHashes).isEqualTo(bloomFilter.numberOfHashes)
+        assertThat(restoredBloomFilter.numberOfBits).isEqualTo(bloomFilter.numberOfBits)
+        assertThat(restoredBloomFilter.words()).isEqualTo(bloomFilter.words())
+        for (i in 0 until 2 * MAX_TEST_VALUE) {
+            assertThat(restoredBloomFilter.mightContain(i.toString()))
+                .isEqualTo(bloomFilter.mightContain(i.toString()))
+        }
+    }
+
+    @Test
+    fun `corrupt bloom filter is discarded`() {
+        objectStore.store(KEY, createBloomFilter())
+        val storageFile = application.cacheDir.listFiles()!!.single {
+            it.name.startsWith("bloom-filter-")
+        }
+        RandomAccessFile(storageFile, "rw").use {
+            val position = storageFile.length() / 2
+            it.seek(position)
+            val byte = it.read()
+            it.seek(position)
+            it.write(byte.inv())
+        }
+
+        assertThat(objectStore.retrieve(KEY)).isNull()
+        assertThat(storageFile.exists()).isFalse()
+    }
+
+    @Test
+    fun `bloom filter stored in the unblocked format is discarded`() {
+        objectStore.store(KEY, createBloomFilter())
+        val storageFile = application.cacheDir.listFiles()!!.single {
+            it.name.startsWith("bloom-filter-")
+        }
+        RandomAccessFile(storageFile, "rw").use {
+            it.seek(Int.SIZE_BYTES.toLong())
+            it.writeInt(1)
+        }
+
+        assertThat(objectStore.retrieve(KEY)).isNull()
+        assertThat(storageFile.exists()).isFalse()
+    }
+
+    @Test
+    fun `truncated bloom filter is discarded`() {
+        objectStore.store(KEY, createBloomFilter())
+        val storageFile = application.cacheDir.listFiles()!!.single {
+            it.name.startsWith("bloom-filter-")
+        }
+        RandomAccessFile(storageFile, "rw").use {
+            it.setLength(storageFile.length() - 1)
+        }
+
+        assertThat(objectStore.retrieve(KEY)).isNull()
+    }
+
+    @Test
+    fun `cleared bloom filter retrieves null`() {
+        objectStore.store(KEY, createBloomFilter())
+        objectStore.clear(KEY)
+
+        assertThat(objectStore.retrieve(KEY)).isNull()
+    }
+
+    companion object {
+        private const val KEY = "key"
+        private const val MAX_TEST_VALUE = 10_000
+    }
+}
@@ -0,0 +1,172 @@
+package acr.browser.lightning.bookmark
+
+import acr.browser.lightning.benchmarkNanos
+import acr.browser.lightning.database.Bookmark
+import acr.browser.lightning.database.asFolder
+import org.assertj.core.api.Assertions.assertThat
+import org.jsoup.Jsoup
+import org.junit.Ignore
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.FilterInputStream
+import java.io.InputStream
+
+/**
+ * Unit tests for [NetscapeBookmarkFormatImporter] and a benchmark of importing a large file.
+ */
+class NetscapeBookmarkFormatImporterTest {
+
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private val importer = NetscapeBookmarkFormatImporter()
+
+    @Test
+    fun `bookmarks are imported with the names of their nested folders`() {
+        val bookmarks = import(
+            """
+            <!DOCTYPE NETSCAPE-Bookmark-file-1>
+            <!-- This is an automatically generated file. <DL> -->
+            <META HTTP-EQUIV="Content-Type" CONTENT="text/html; charset=UTF-8">
+            <TITLE>Bookmarks</TITLE>
+            <H1>Bookmarks</H1>
+            <DL><p>
+                <DT><A HREF="https://example.com/" ADD_DATE="1">Example</A>
+                <DT><H3 ADD_DATE="2">Work</H3>
+                <DL><p>
+                    <DT><A href='https://example.com/a?b=1&amp;c=2' ICON="x>y">Tom &amp; Jerry</A>
+                    <DT><H3>Tools</H3>
+                    <DL><p>
+                        <DT><A HREF=https://tools.example.com>
+                            Many   <b>Tools</b>
+                        </A>
+                    </DL><p>
+                    <DT><A HREF="https://unclosed.example.com/">Unclosed
+                </DL><p>
+                <DT><A HREF="https://last.example.com/">1 < 2</A>
+            </DL><p>
+            <DL><p>
+                <DT><A HREF="https://ignored.example.com/">Outside of the root list</A>
+            </DL><p>
+            """.trimIndent()
+        )
+
+        assertThat(bookmarks).containsExactly(
+            bookmark("https://example.com/", "Example", ""),
+            bookmark("https://example.com/a?b=1&c=2", "Tom & Jerry", "Work"),
+            bookmark("https://tools.example.com", "Many Tools", "Work/Tools"),
+            bookmark("https://unclosed.example.com/", "Unclosed", "Work"),
+            bookmark("https://last.example.com/", "1 < 2", "")
+        )
+    }
+
+    @Test
+    fun `bookmarks are read lazily from the file`() {
+        val file = generateFile(BENCHMARK_SIZE)
+        val inputStream = ByteCountingInputStream(file.inputStream())
+
+        val first = importer.importBookmarks(inputStream).take(2).toList()
+
+        assertThat(first).containsExactly(
+            bookmark("https://site0.example.com/page?id=0", "Page 0 & more", "Folder 0"),
+            bookmark("https://site1.example.com/page?id=1", "Page 1 & more", "Folder 0")
+        )
+        // Only the buffer holding the first bookmarks was read, and the stream was left open.
+        assertThat(inputStream.bytesRead).isLessThan(file.length() / 100)
+        assertThat(inputStream.isClosed).isFalse()
+        inputStream.close()
+    }
+
+    @Test
+    fun `every bookmark of a large file is imported`() {
+        val file = generateFile(BENCHMARK_SIZE)
+
+        val count = file.inputStream().use { importer.importBookmarks(it).count() }
+
+        assertThat(count).isEqualTo(BENCHMARK_SIZE)
+    }
+
+    @Ignore("Manual benchmark, run on its own to compare the importer to parsing a DOM")
+    @Test
+    fun `streaming import is compared to parsing a DOM`() {
+        val file = generateFile(BENCHMARK_SIZE)
+        println("Bookmark file: ${file.length() / 1024} KiB, $BENCHMARK_SIZE bookmarks")
+
+        val streamingNanos = benchmarkNanos(WARM_UP_ITERATIONS, MEASURED_ITERATIONS) {
+            file.inputStream().use { importer.importBookmarks(it).count() }
+        }
+        val domNanos = benchmarkNanos(WARM_UP_ITERATIONS, MEASURED_ITERATIONS) {
+            file.inputStream().use { Jsoup.parse(it, Charsets.UTF_8.name(), "") }
+        }
+
+        println("Streaming import: ${streamingNanos / 1_000_000} ms")
+        println("Jsoup DOM parse only: ${domNanos / 1_000_000} ms")
+    }
+
+    private fun import(html: String): List<Bookmark.Entry> =
+        importer.importBookmarks(html.byteInputStream()).toList()
+
+    private fun bookmark(url: String, title: String, folder: String) = Bookmark.Entry(
+        url = url,
+        title = title,
+        position = 0,
+        folder = folder.asFolder()
+    )
+
+    /**
+     * Generates a file in the format exported by desktop browsers, with the [size] bookmarks in
+     * folders of a hundred bookmarks.
+     */
+    private fun generateFile(size: Int): File = temporaryFolder.newFile("bookmarks.html").apply {
+        bufferedWriter().use { writer ->
+            writer.write("<!DOCTYPE NETSCAPE-Bookmark-file-1>\n<H1>Bookmarks</H1>\n<DL><p>\n")
+            (0 until size).chunked(FOLDER_SIZE).forEachIndexed { folder, ids ->
+                writer.write("    <DT><H3 ADD_DATE=\"1600000000\">Folder $folder</H3>\n")
+                writer.write("    <DL><p>\n")
+                ids.forEach {
+                    writer.write(
+                        "        <DT><A HREF=\"https://site$it.example.com/page?id=$it\"" +
+                            " ADD_DATE=\"1600000000\"" +
+                            " ICON=\"data:image/png;base64,iVBORw0KGgo=\">" +
+                            "Page $it &amp; more</A>\n"
+                    )
+                }
+                writer.write("    </DL><p>\n")
+            }
+            writer.write("</DL><p>\n")
+        }
+    }
+
+    /**
+     * An [InputStream] that counts the bytes read from it and whether it was closed.
+     */
+    private class ByteCountingInputStream(inputStream: InputStream) :
+        FilterInputStream(inputStream) {
+
+        var bytesRead = 0L
+            private set
+        var isClosed = false
+            private set
+
+        override fun read(): Int = super.read().also { if (it >= 0) bytesRead++ }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int =
+            super.read(b, off, len).also { if (it > 0) bytesRead += it }
+
+        override fun skip(n: Long): Long = super.skip(n).also { bytesRead += it }
+
+        override fun close() {
+            isClosed = true
+            super.close()
+        }
+    }
+
+    companion object {
+        private const val BENCHMARK_SIZE = 100_000
+        private const val FOLDER_SIZE = 100
+        private const val WARM_UP_ITERATIONS = 2
+        private const val MEASURED_ITERATIONS = 5
+    }
+}
@@ -0,0 +1,120 @@
+package acr.browser.lightning.browser.history
+
+import acr.browser.lightning.database.HistoryEntry
+import acr.browser.lightning.database.bookmark.BookmarkRepository
+import acr.browser.lightning.database.history.HistoryRepository
+import acr.browser.lightning.log.NoOpLogger
+import acr.browser.lightning.search.index.FrecencyIndex
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.argumentCaptor
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.verifyNoMoreInteractions
+import io.reactivex.Completable
+import io.reactivex.Observable
+import io.reactivex.Single
+import io.reactivex.schedulers.TestScheduler
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for [DefaultHistoryRecord].
+ */
+class DefaultHistoryRecordTest {
+
+    private val testScheduler = TestScheduler()
+    private val historyRepository = mock<HistoryRepository> {
+        on { visitHistoryEntries(any()) } doReturn Completable.complete()
+        on { lastVisitedHistoryEntries(any()) } doReturn Single.just(emptyList())
+    }
+    private val bookmarkRepository = mock<BookmarkRepository> {
+        on { getAllBookmarksSorted() } doReturn Single.just(emptyList())
+        on { bookmarkChanges() } doReturn Observable.never()
+    }
+    private val frecencyIndex =
+        FrecencyIndex(historyRepository, bookmarkRepository, testScheduler, NoOpLogger())
+    private val historyRecord =
+        DefaultHistoryRecord(historyRepository, frecencyIndex, testScheduler, NoOpLogger())
+
+    @Test
+    fun `visits to a url within the window are written once with the latest title`() {
+        historyRecord.recordVisit("", "https://example.com")
+        historyRecord.recordTitle("Example", "https://example.com")
+        historyRecord.recordVisit("Other", "https://other.com")
+        historyRecord.recordTitle("Example Domain", "https://example.com")
+
+        testScheduler.advanceTimeBy(3, TimeUnit.SECONDS)
+
+        val captor = argumentCaptor<List<HistoryEntry>>()
+        verify(historyRepository).visitHistoryEntries(captor.capture())
+        assertThat(captor.firstValue.map { it.url to it.title }).containsExactlyInAnyOrder(
+            "https://example.com" to "Example Domain",
+            "https://other.com" to "Other"
+        )
+        // One page load is one visit, however often its title changes.
+        assertThat(captor.firstValue.map { it.visitCount }).containsOnly(1)
+        assertThat(frecencyIndex.findPages("example", limit = 5).map { it.title to it.visitCount })
+            .containsExactly("Example Domain" to 1)
+    }
+
+    @Test
+    fun `each visit to a url within the window is counted`() {
+        historyRecord.recordVisit("Example", "https://example.com")
+        historyRecord.recordTitle("Example", "https://example.com")
+        historyRecord.recordVisit("Example", "https://example.com")
+        historyRecord.recordVisit("Other", "https://other.com")
+
+        historyRecord.flush()
+        testScheduler.triggerActions()
+
+        val captor = argumentCaptor<List<HistoryEntry>>()
+        verify(historyRepository).visitHistoryEntries(captor.capture())
+        assertThat(captor.firstValue.map { it.url to it.visitCount }).containsExactlyInAnyOrder(
+            "https://example.com" to 2,
+            "https://other.com" to 1
+        )
+        // The index counts the same visits as the history.
+        assertThat(frecencyIndex.findPages("example", limit = 5).map { it.visitCount })
+            .containsExactly(2)
+    }
+
+    @Test
+    fun `title updates without a visit do not count a visit`() {
+        historyRecord.recordTitle("Example", "https://example.com")
+
+        historyRecord.flush()
+
+        val captor = argumentCaptor<List<HistoryEntry>>()
+        verify(historyRepository).visitHistoryEntries(captor.capture())
+        assertThat(captor.firstValue.map { it.url to it.visitCount })
+            .containsExactly("https://example.com" to 0)
+    }
+
+    @Test
+    fun `flush writes the pending visits immediately`() {
+        historyRecord.recordVisit("Example", "https://example.com")
+
+        historyRecord.flush()
+        testScheduler.triggerActions()
+
+        verify(historyRepository).visitHistoryEntries(any())
+
+        // The scheduled write has nothing left to write.
+        testScheduler.advanceTimeBy(3, TimeUnit.SECONDS)
+        historyRecord.flush()
+
+        verify(historyRepository, times(1)).visitHistoryEntries(any())
+    }
+
+    @Test
+    fun `nothing is written without visits`() {
+        historyRecord.flush()
+        testScheduler.advanceTimeBy(3, TimeUnit.SECONDS)
+
+        verify(historyRepository).lastVisitedHistoryEntries(any())
+        verifyNoMoreInteractions(historyRepository)
+    }
+}
@@ -0,0 +1,80 @@
+package acr.browser.lightning.browser.tab
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.log.NoOpLogger
+import android.app.Application
+import android.os.Bundle
+import io.reactivex.schedulers.Schedulers
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for [RecentTabModel].
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class RecentTabModelTest {
+
+    private val application: Application = RuntimeEnvironment.application
+
+    private fun createModel(incognitoMode: Boolean = false) = RecentTabModel(
+        application,
+        incognitoMode,
+        Schedulers.trampoline(),
+        NoOpLogger()
+    )
+
+    private fun state(index: Int) = Bundle().apply { putInt(KEY, index) }
+
+    private fun RecentTabModel.addClosedTab(index: Int) =
+        addClosedTab(state(index), "Tab $index", "https://example.com/$index")
+
+    private fun RecentTabModel.lastClosedIndex(): Int? =
+        lastClosed().blockingGet()?.getInt(KEY)
+
+    @Test
+    fun `tabs are reopened most recent first and only the most recent are kept`() {
+        val recentTabModel = createModel()
+
+        (1..RecentTabModel.MAX_CLOSED_TABS + 5).forEach { recentTabModel.addClosedTab(it) }
+
+        val reopened = generateSequence { recentTabModel.lastClosedIndex() }.toList()
+        assertThat(reopened).isEqualTo((RecentTabModel.MAX_CLOSED_TABS + 5 downTo 6).toList())
+    }
+
+    @Test
+    fun `closed tabs survive a new model`() {
+        createModel().apply {
+            clear().blockingAwait()
+            addClosedTab(1)
+            addClosedTab(2)
+        }
+
+        val recentTabModel = createModel()
+
+        assertThat(recentTabModel.lastClosedIndex()).isEqualTo(2)
+        assertThat(recentTabModel.lastClosedIndex()).isEqualTo(1)
+        assertThat(recentTabModel.lastClosedIndex()).isNull()
+    }
+
+    @Test
+    fun `incognito closed tabs are not written to disk`() {
+        createModel().clear().blockingAwait()
+        createModel(incognitoMode = true).apply {
+            addClosedTab(1)
+            addClosedTab(2)
+            assertThat(lastClosedIndex()).isEqualTo(2)
+        }
+
+        assertThat(createModel().lastClosedIndex()).isNull()
+    }
+
+    companion object {
+        private const val KEY = "index"
+    }
+}
@@ -0,0 +1,165 @@
+package acr.browser.lightning.browser.tab
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.log.NoOpLogger
+import acr.browser.lightning.runIdleHandlers
+import android.app.ActivityManager
+import android.content.ComponentCallbacks2
+import android.graphics.Bitmap
+import android.os.Bundle
+import android.webkit.WebView
+import androidx.core.content.getSystemService
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.doAnswer
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.whenever
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+import javax.inject.Provider
+
+/**
+ * Tests for [TabHibernationManager].
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class TabHibernationManagerTest {
+
+    private val tabHibernationManager = TabHibernationManager(
+        RuntimeEnvironment.application.getSystemService<ActivityManager>()!!,
+        NoOpLogger()
+    )
+
+    @Test
+    fun `least recently used tabs are hibernated when too many are live`() {
+        val tabs = (1..10).map(::createTab)
+        tabs.forEach(tabHibernationManager::onTabCreated)
+
+        assertThat(tabs.first().isHibernated).isTrue()
+        assertThat(tabs.last().isHibernated).isFalse()
+    }
+
+    @Test
+    fun `selected tab is rehydrated and kept live`() {
+        val tabs = (1..10).map(::createTab)
+        tabs.forEach(tabHibernationManager::onTabCreated)
+
+        tabHibernationManager.onTabSelected(tabs.first())
+
+        verify(tabs.first()).rehydrate()
+        verify(tabs.first(), never()).hibernate()
+    }
+
+    @Test
+    fun `background tabs are hibernated when memory is critical`() {
+        val foreground = createTab(1)
+        whenever(foreground.isForeground).thenReturn(true)
+        val background = createTab(2)
+        tabHibernationManager.onTabCreated(foreground)
+        tabHibernationManager.onTabCreated(background)
+
+        tabHibernationManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)
+
+        assertThat(background.isHibernated).isTrue()
+        verify(foreground, never()).hibernate()
+    }
+
+    @Test
+    fun `tabs are not hibernated when the UI is hidden`() {
+        val tab = createTab(1)
+        tabHibernationManager.onTabCreated(tab)
+
+        tabHibernationManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)
+
+        verify(tab, never()).hibernate()
+    }
+
+    @Test
+    fun `restored background tabs stay placeholders`() {
+        val tabs = (1..3).map(::createPlaceholderTab)
+        tabs.forEach(tabHibernationManager::onTabCreated)
+
+        assertThat(tabs.map(TabModel::isHibernated)).containsOnly(true)
+        assertThat(tabs.map(TabModel::url)).containsExactly(URL + 1, URL + 2, URL + 3)
+        assertThat(tabs.map(TabModel::title)).containsExactly(TITLE + 1, TITLE + 2, TITLE + 3)
+        verify(webViewFactory, never()).createWebView()
+    }
+
+    @Test
+    fun `placeholder tabs are rehydrated in order one on each idle pass`() {
+        val tabs = (1..10).map(::createPlaceholderTab)
+        tabs.forEach(tabHibernationManager::onTabCreated)
+
+        tabHibernationManager.rehydrateWhenIdle(tabs)
+        runIdleHandlers()
+
+        assertThat(tabs.map(TabModel::isHibernated)).containsExactly(false, *Array(9) { true })
+        verify(webViewFactory, times(1)).createWebView()
+
+        repeat(tabs.size) { runIdleHandlers() }
+
+        // Only some of the tabs are rehydrated, leaving room for the tabs opened after them.
+        val liveTabs = tabs.takeWhile { !it.isHibernated }
+        assertThat(liveTabs.size).isBetween(1, tabs.size - 1)
+        assertThat(tabs.drop(liveTabs.size).map(TabModel::isHibernated)).containsOnly(true)
+    }
+
+    @Test
+    fun `selected placeholder tab is rehydrated at once`() {
+        val tabs = (1..3).map(::createPlaceholderTab)
+        tabs.forEach(tabHibernationManager::onTabCreated)
+
+        tabHibernationManager.onTabSelected(tabs[1])
+
+        assertThat(tabs.map(TabModel::isHibernated)).containsExactly(true, false, true)
+        verify(webViewFactory, times(1)).createWebView()
+    }
+
+    private val webViewFactory = mock<WebViewFactory> {
+        on { createRequestHeaders() } doReturn emptyMap()
+        on { createWebView() } doAnswer { mock<WebView>() }
+    }
+
+    private val tabFactory = TabFactory(
+        webViewFactory = webViewFactory,
+        userPreferences = mock(),
+        defaultUserAgent = "",
+        defaultTabTitle = "",
+        iconFreeze = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888),
+        proxy = mock(),
+        tabWebViewClientFactory = mock {
+            on { create(any()) } doAnswer { mock<TabWebViewClient>() }
+        },
+        tabWebChromeClientProvider = Provider { mock<TabWebChromeClient>() },
+        tabPager = mock()
+    )
+
+    private fun createPlaceholderTab(id: Int): TabModel = tabFactory.constructPlaceholderTab(
+        FreezableBundleInitializer(Bundle(), TITLE + id),
+        url = URL + id,
+        favicon = null
+    )
+
+    private fun createTab(id: Int): TabModel {
+        var isHibernated = false
+        return mock<TabModel>().also { tab ->
+            whenever(tab.id).thenReturn(id)
+            whenever(tab.isHibernated).thenAnswer { isHibernated }
+            doAnswer { isHibernated = true }.whenever(tab).hibernate()
+            doAnswer { isHibernated = false }.whenever(tab).rehydrate()
+        }
+    }
+
+    companion object {
+        private const val URL = "https://example.com/"
+        private const val TITLE = "Tab "
+    }
+}
@@ -0,0 +1,103 @@
+package acr.browser.lightning.browser.tab
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.device.ScreenSize
+import acr.browser.lightning.log.NoOpLogger
+import acr.browser.lightning.preference.UserPreferences
+import acr.browser.lightning.runIdleHandlers
+import android.app.Activity
+import android.app.ActivityManager
+import android.content.Context
+import androidx.core.content.getSystemService
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the pool of views kept by [WebViewFactory].
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class WebViewFactoryTest {
+
+    private val activity = Robolectric.buildActivity(Activity::class.java).get()
+    private val preferences = activity.getSharedPreferences("user_test", Context.MODE_PRIVATE)
+    private val userPreferences = UserPreferences(preferences, ScreenSize(activity))
+    private val webViewPoolMetrics = WebViewPoolMetrics()
+    private val webViewFactory = WebViewFactory(
+        activity,
+        NoOpLogger(),
+        userPreferences,
+        false,
+        preferences,
+        activity.getSystemService<ActivityManager>()!!,
+        webViewPoolMetrics
+    )
+
+    @After
+    fun tearDown() {
+        webViewFactory.releasePool()
+    }
+
+    private fun fillPool() {
+        webViewFactory.fillPoolWhenIdle()
+        repeat(POOL_SIZE + 1) { runIdleHandlers() }
+    }
+
+    @Test
+    fun `views are created on demand until the pool is filled`() {
+        webViewFactory.createWebView()
+
+        val snapshot = webViewPoolMetrics.snapshot()
+        assertThat(snapshot.misses).isEqualTo(1)
+        assertThat(snapshot.pooledCreationLatency.count).isEqualTo(0)
+    }
+
+    @Test
+    fun `the pool is filled when idle and refilled when a view is taken`() {
+        fillPool()
+        assertThat(webViewPoolMetrics.snapshot().pooledCreationLatency.count).isEqualTo(POOL_SIZE)
+
+        val webView = webViewFactory.createWebView()
+        runIdleHandlers()
+
+        val snapshot = webViewPoolMetrics.snapshot()
+        assertThat(webView).isNotNull
+        assertThat(snapshot.hits).isEqualTo(1)
+        assertThat(snapshot.misses).isEqualTo(0)
+        assertThat(snapshot.pooledCreationLatency.count).isEqualTo(POOL_SIZE + 1)
+    }
+
+    @Test
+    fun `changing a web view setting discards the pooled views`() {
+        fillPool()
+
+        userPreferences.javaScriptEnabled = false
+        webViewFactory.createWebView()
+
+        val snapshot = webViewPoolMetrics.snapshot()
+        assertThat(snapshot.discarded).isEqualTo(POOL_SIZE.toLong())
+        assertThat(snapshot.misses).isEqualTo(1)
+    }
+
+    @Test
+    fun `changing other preferences keeps the pooled views`() {
+        fillPool()
+
+        userPreferences.webRtcEnabled = true
+        webViewFactory.createWebView()
+
+        val snapshot = webViewPoolMetrics.snapshot()
+        assertThat(snapshot.discarded).isEqualTo(0)
+        assertThat(snapshot.hits).isEqualTo(1)
+    }
+
+    companion object {
+        private const val POOL_SIZE = 2
+    }
+}
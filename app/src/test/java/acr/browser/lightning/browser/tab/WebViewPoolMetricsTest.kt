@@ -0,0 +1,38 @@
+package acr.browser.lightning.browser.tab
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+/**
+ * Tests for [WebViewPoolMetrics].
+ */
+class WebViewPoolMetricsTest {
+
+    @Test
+    fun `hits and misses are counted and give the hit rate`() {
+        val webViewPoolMetrics = WebViewPoolMetrics()
+
+        repeat(3) { webViewPoolMetrics.recordHit() }
+        webViewPoolMetrics.recordMiss(nanos = 50_000_000)
+
+        val snapshot = webViewPoolMetrics.snapshot()
+        assertThat(snapshot.hits).isEqualTo(3)
+        assertThat(snapshot.misses).isEqualTo(1)
+        assertThat(snapshot.hitRate).isEqualTo(0.75)
+        assertThat(snapshot.onDemandCreationLatency.count).isEqualTo(1)
+        assertThat(snapshot.pooledCreationLatency.count).isEqualTo(0)
+    }
+
+    @Test
+    fun `hit rate is zero when no view was requested`() {
+        val webViewPoolMetrics = WebViewPoolMetrics()
+
+        webViewPoolMetrics.recordPooledCreation(nanos = 20_000_000)
+        webViewPoolMetrics.recordDiscarded(count = 2)
+
+        val snapshot = webViewPoolMetrics.snapshot()
+        assertThat(snapshot.hitRate).isEqualTo(0.0)
+        assertThat(snapshot.discarded).isEqualTo(2)
+        assertThat(snapshot.pooledCreationLatency.count).isEqualTo(1)
+    }
+}
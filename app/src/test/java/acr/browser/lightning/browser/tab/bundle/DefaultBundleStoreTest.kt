@@ -0,0 +1,184 @@
+package acr.browser.lightning.browser.tab.bundle
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.browser.tab.FreezableBundleInitializer
+import acr.browser.lightning.browser.tab.TabModel
+import acr.browser.lightning.browser.tab.UrlInitializer
+import acr.browser.lightning.log.NoOpLogger
+import acr.browser.lightning.utils.FileUtils
+import android.app.Application
+import android.os.Bundle
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import io.reactivex.schedulers.Schedulers
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+import java.io.DataOutputStream
+import java.io.File
+
+/**
+ * Tests for [DefaultBundleStore].
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class DefaultBundleStoreTest {
+
+    private val application: Application = RuntimeEnvironment.application
+
+    private val directory = File(application.filesDir, "tabs")
+
+    private val defaultBundleStore = DefaultBundleStore(
+        application,
+        mock(),
+        mock(),
+        mock(),
+        mock(),
+        Schedulers.trampoline(),
+        NoOpLogger()
+    )
+
+    @Before
+    fun setUp() {
+        defaultBundleStore.deleteAll().blockingAwait()
+    }
+
+    @Test
+    fun `saved tabs are retrieved with the selected tab first`() {
+        defaultBundleStore.save(
+            listOf(
+                createTab(id = 1, state = state(1)),
+                createTab(id = 2, state = state(2), isForeground = true),
+                createTab(id = 3, state = state(3))
+            )
+        )
+
+        val storedTabs = defaultBundleStore.retrieve().toList().blockingGet()
+
+        assertThat(storedTabs.map(StoredTab::position)).containsExactly(1, 0, 2)
+        assertThat(storedTabs.map(StoredTab::isSelected)).containsExactly(true, false, false)
+        assertThat(storedTabs.map(StoredTab::url)).containsExactly(URL + 2, URL + 1, URL + 3)
+        assertThat(storedTabs.map { it.storedIndex() }).containsExactly(2, 1, 3)
+        assertThat(storedTabs.map { it.initialTitle() })
+            .containsExactly(TITLE + 2, TITLE + 1, TITLE + 3)
+    }
+
+    @Test
+    fun `unchanged states are not written again`() {
+        val unchangedState = state(1)
+        defaultBundleStore.save(listOf(createTab(id = 1, state = unchangedState)))
+        stateFiles().forEach { it.delete() }
+
+        defaultBundleStore.save(
+            listOf(
+                createTab(id = 1, state = unchangedState),
+                createTab(id = 2, state = state(2))
+            )
+        )
+
+        assertThat(stateFiles()).hasSize(1)
+    }
+
+    @Test
+    fun `states of closed tabs and unknown states are deleted`() {
+        defaultBundleStore.save(
+            listOf(createTab(id = 1, state = state(1)), createTab(id = 2, state = state(2)))
+        )
+        File(directory, "orphan.parcel").writeBytes(ByteArray(1))
+
+        defaultBundleStore.save(listOf(createTab(id = 2, state = state(2))))
+
+        assertThat(stateFiles()).hasSize(1)
+        val storedTab = defaultBundleStore.retrieve().blockingSingle()
+        assertThat(storedTab.storedIndex()).isEqualTo(2)
+    }
+
+    @Test
+    fun `tabs whose state cannot be read are restored from their URL`() {
+        defaultBundleStore.save(listOf(createTab(id = 1, state = state(1))))
+        stateFiles().forEach { it.delete() }
+
+        val storedTab = defaultBundleStore.retrieve().blockingSingle()
+
+        assertThat(storedTab.tabInitializer).isInstanceOf(UrlInitializer::class.java)
+        assertThat(storedTab.url).isEqualTo(URL + 1)
+    }
+
+    @Test
+    fun `a corrupt manifest is treated as no stored tabs`() {
+        directory.mkdirs()
+        DataOutputStream(File(directory, "manifest").outputStream()).use {
+            it.writeInt(0x4C544142)
+            it.writeInt(1)
+            it.writeInt(0)
+            it.writeInt(-1)
+        }
+
+        assertThat(defaultBundleStore.retrieve().toList().blockingGet()).isEmpty()
+    }
+
+    @Test
+    fun `tabs saved by previous versions are migrated`() {
+        val legacyBundle = Bundle().apply {
+            putBundle("WEBVIEW_0", state(1))
+            putString("TITLE_0", TITLE + 1)
+            putBundle("WEBVIEW_1", state(2))
+            putString("TITLE_1", TITLE + 2)
+        }
+        FileUtils.writeBundleToStorage(application, legacyBundle, LEGACY_BUNDLE).blockingAwait()
+
+        val storedTabs = defaultBundleStore.retrieve().toList().blockingGet()
+
+        assertThat(storedTabs.map { it.storedIndex() }).containsExactlyInAnyOrder(1, 2)
+        assertThat(storedTabs.map { it.initialTitle() })
+            .containsExactlyInAnyOrder(TITLE + 1, TITLE + 2)
+        assertThat(storedTabs.map(StoredTab::isSelected)).containsExactly(true, false)
+
+        defaultBundleStore.save(emptyList())
+
+        assertThat(File(application.filesDir, LEGACY_BUNDLE)).doesNotExist()
+        assertThat(defaultBundleStore.retrieve().toList().blockingGet()).isEmpty()
+    }
+
+    @Test
+    fun `all stored tabs are deleted`() {
+        defaultBundleStore.save(listOf(createTab(id = 1, state = state(1))))
+
+        defaultBundleStore.deleteAll().blockingAwait()
+
+        assertThat(directory.listFiles().orEmpty()).isEmpty()
+        assertThat(defaultBundleStore.retrieve().toList().blockingGet()).isEmpty()
+    }
+
+    private fun stateFiles(): List<File> =
+        directory.listFiles { file -> file.name.endsWith(".parcel") }.orEmpty().toList()
+
+    private fun state(index: Int) = Bundle().apply { putInt(KEY, index) }
+
+    private fun StoredTab.storedIndex(): Int =
+        (tabInitializer as FreezableBundleInitializer).bundle.getInt(KEY)
+
+    private fun StoredTab.initialTitle(): String =
+        (tabInitializer as FreezableBundleInitializer).initialTitle
+
+    private fun createTab(id: Int, state: Bundle, isForeground: Boolean = false): TabModel =
+        mock {
+            on { this.id } doReturn id
+            on { url } doReturn URL + id
+            on { title } doReturn TITLE + id
+            on { this.isForeground } doReturn isForeground
+            on { freeze() } doReturn state
+        }
+
+    companion object {
+        private const val KEY = "index"
+        private const val URL = "https://example.com/"
+        private const val TITLE = "Tab "
+        private const val LEGACY_BUNDLE = "SAVED_TABS.parcel"
+    }
+}
@@ -0,0 +1,148 @@
+package acr.browser.lightning.database
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.database.allowlist.AdBlockAllowListDatabase
+import acr.browser.lightning.database.bookmark.BookmarkDatabase
+import acr.browser.lightning.database.downloads.DownloadsDatabase
+import acr.browser.lightning.database.history.HistoryDatabase
+import android.app.Application
+import android.database.sqlite.SQLiteDatabase
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+
+/**
+ * Tests that the databases keep their rows when they are upgraded from earlier versions.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class MigrationTest {
+
+    private val application: Application = RuntimeEnvironment.application
+
+    @Test
+    fun `history is kept and duplicate pages are merged when upgrading from version 2`() {
+        createDatabase("historyManager", version = 2) {
+            execSQL(
+                "CREATE TABLE history(id INTEGER PRIMARY KEY, url TEXT, title TEXT, time INTEGER)"
+            )
+            execSQL("INSERT INTO history(url, title, time) VALUES ('https://a.com/', 'A', 1)")
+            execSQL("INSERT INTO history(url, title, time) VALUES ('https://b.com/', 'B', 2)")
+            execSQL("INSERT INTO history(url, title, time) VALUES ('https://a.com/', 'Alpha', 3)")
+        }
+
+        val historyDatabase = HistoryDatabase(application)
+        val history = historyDatabase.lastVisitedHistoryEntries(10).blockingGet()
+        val found = historyDatabase.findHistoryEntriesContaining("alpha").blockingGet()
+        historyDatabase.close()
+
+        assertThat(history.map { Triple(it.url, it.title, it.visitCount) }).containsExactly(
+            Triple("https://a.com/", "Alpha", 2),
+            Triple("https://b.com/", "B", 1)
+        )
+        assertThat(found.map(HistoryEntry::url)).containsExactly("https://a.com/")
+    }
+
+    @Test
+    fun `bookmarks are kept and duplicate urls are merged when upgrading from version 1`() {
+        createDatabase("bookmarkManager", version = 1) {
+            execSQL(
+                "CREATE TABLE bookmark(id INTEGER PRIMARY KEY, url TEXT, title TEXT," +
+                    " folder TEXT, position INTEGER)"
+            )
+            execSQL(
+                "INSERT INTO bookmark(url, title, folder, position) VALUES" +
+                    " ('https://a.com/', 'A', 'Folder', 0)," +
+                    " ('https://b.com/', 'B', '', 1)," +
+                    " ('https://a.com/', 'A again', '', 2)," +
+                    " ('https://c.com/', '', 'Old', 3)," +
+                    " ('https://c.com/', 'C', 'Older', 4)," +
+                    " ('https://c.com/', '', 'New', 5)"
+            )
+        }
+
+        val bookmarkDatabase = BookmarkDatabase(application)
+        val bookmarks = bookmarkDatabase.getAllBookmarksSorted().blockingGet()
+        val found = bookmarkDatabase.findBookmarksContaining("again").blockingGet()
+        bookmarkDatabase.close()
+
+        // The latest bookmark of a URL is kept, with the title and folder of an earlier one if
+        // it has none.
+        assertThat(bookmarks.map { Triple(it.url, it.title, it.folder.title) })
+            .containsExactlyInAnyOrder(
+                Triple("https://a.com/", "A again", "Folder"),
+                Triple("https://b.com/", "B", ""),
+                Triple("https://c.com/", "C", "New")
+            )
+        assertThat(found.map(Bookmark.Entry::url)).containsExactly("https://a.com/")
+    }
+
+    @Test
+    fun `downloads and allowed domains are kept when upgrading from version 1`() {
+        createDatabase("downloadManager", version = 1) {
+            execSQL(
+                "CREATE TABLE download(id INTEGER PRIMARY KEY, url TEXT, title TEXT, size TEXT)"
+            )
+            execSQL(
+                "INSERT INTO download(url, title, size) VALUES" +
+                    " ('https://a.com/a.zip', 'a.zip', '1 MB')," +
+                    " ('https://a.com/a.zip', 'a.zip', '2 MB')"
+            )
+        }
+        createDatabase("allowListManager", version = 1) {
+            execSQL("CREATE TABLE allowList(id INTEGER PRIMARY KEY, url TEXT, created INTEGER)")
+            execSQL("INSERT INTO allowList(url, created) VALUES ('a.com', 1), ('a.com', 2)")
+        }
+
+        val downloadsDatabase = DownloadsDatabase(application)
+        val downloads = downloadsDatabase.getAllDownloads().blockingGet()
+        downloadsDatabase.close()
+        val allowListDatabase = AdBlockAllowListDatabase(application)
+        val allowList = allowListDatabase.allAllowListItems().blockingGet()
+        allowListDatabase.close()
+
+        assertThat(downloads.map { it.contentSize }).containsExactly("2 MB")
+        assertThat(allowList.map { it.domain to it.timeCreated }).containsExactly("a.com" to 2L)
+    }
+
+    @Test
+    fun `missing migration fails the upgrade`() {
+        val migrations = listOf(Migration(2) {}, Migration(4) {})
+
+        assertThatThrownBy { database().migrate(1, 4, migrations) }
+            .isInstanceOf(IllegalStateException::class.java)
+            .hasMessage("No migration from version 2 to 3")
+    }
+
+    @Test
+    fun `migrations run in order of their versions`() {
+        val versions = mutableListOf<Int>()
+        val migrations = listOf(3, 1, 2, 4).map { version ->
+            Migration(version) { versions += version }
+        }
+
+        database().migrate(1, 3, migrations)
+
+        assertThat(versions).containsExactly(2, 3)
+    }
+
+    private fun database(): SQLiteDatabase = SQLiteDatabase.create(null)
+
+    /**
+     * Create the database with the [name] at the [version], as it was created by an earlier
+     * version of the browser.
+     */
+    private fun createDatabase(name: String, version: Int, create: SQLiteDatabase.() -> Unit) {
+        val path = application.getDatabasePath(name).apply { parentFile?.mkdirs() }
+        SQLiteDatabase.openOrCreateDatabase(path, null).apply {
+            create()
+            this.version = version
+            close()
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package acr.browser.lightning.database
+
+import acr.browser.lightning.extensions.useMap
+import android.database.sqlite.SQLiteDatabase
+
+/**
+ * A step of a query plan that reads every row of a table, rather than searching an index.
+ */
+private val TABLE_SCAN = Regex("SCAN (TABLE )?\\w+( AS \\w+)?")
+
+/**
+ * Returns the steps of the query plan that SQLite chooses for the [sql] query with the [args].
+ */
+fun SQLiteDatabase.queryPlan(sql: String, vararg args: String): List<String> =
+    rawQuery("EXPLAIN QUERY PLAN $sql", args).useMap {
+        it.getString(it.getColumnIndex("detail"))
+    }
+
+/**
+ * True if this step of a query plan reads every row of a table.
+ */
+val String.isTableScan: Boolean
+    get() = TABLE_SCAN.matches(this)
+
+/**
+ * True if this step of a query plan sorts the rows of a table.
+ */
+val String.isSort: Boolean
+    get() = startsWith("USE TEMP B-TREE FOR ORDER BY")
@@ -0,0 +1,110 @@
+package acr.browser.lightning.database
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.database.allowlist.AdBlockAllowListDatabase
+import acr.browser.lightning.database.bookmark.BookmarkDatabase
+import acr.browser.lightning.database.downloads.DownloadsDatabase
+import acr.browser.lightning.database.history.HistoryDatabase
+import android.database.sqlite.SQLiteOpenHelper
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+
+/**
+ * Tests that the queries made on every page load and every key press are answered by the indexes
+ * of the databases rather than by reading or sorting whole tables.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class QueryPlanTest {
+
+    private val historyDatabase = HistoryDatabase(RuntimeEnvironment.application)
+    private val bookmarkDatabase = BookmarkDatabase(RuntimeEnvironment.application)
+    private val downloadsDatabase = DownloadsDatabase(RuntimeEnvironment.application)
+    private val allowListDatabase = AdBlockAllowListDatabase(RuntimeEnvironment.application)
+
+    @After
+    fun tearDown() {
+        historyDatabase.close()
+        bookmarkDatabase.close()
+        downloadsDatabase.close()
+        allowListDatabase.close()
+    }
+
+    @Test
+    fun `history queries use the url and time indexes`() {
+        assertIndexed(
+            historyDatabase,
+            HistoryDatabase.VISIT_UPDATE,
+            "Title",
+            "1000",
+            "1",
+            "https://a.com"
+        )
+        assertIndexed(historyDatabase, HistoryDatabase.LAST_VISITED_QUERY, "100")
+        assertIndexed(historyDatabase, HistoryDatabase.FIRST_PAGE_QUERY, "51")
+        assertIndexed(
+            historyDatabase,
+            HistoryDatabase.PAGE_BEFORE_QUERY,
+            "1000",
+            "1000",
+            "10",
+            "51"
+        )
+        assertIndexed(
+            historyDatabase,
+            HistoryDatabase.SEARCH_QUERY,
+            "\"exa*\"",
+            // Only the few pages matching the query are sorted.
+            allowSort = true
+        )
+    }
+
+    @Test
+    fun `bookmark queries use the url and folder indexes`() {
+        assertIndexed(
+            bookmarkDatabase,
+            BookmarkDatabase.URL_QUERY,
+            "https://a.com",
+            "https://a.com/"
+        )
+        assertIndexed(bookmarkDatabase, BookmarkDatabase.FOLDER_QUERY, "Folder", allowSort = true)
+        assertIndexed(bookmarkDatabase, BookmarkDatabase.FOLDER_NAMES_QUERY)
+        assertIndexed(bookmarkDatabase, BookmarkDatabase.RENAME_FOLDER, "New", "Old")
+    }
+
+    @Test
+    fun `downloads and allow list queries use the url indexes`() {
+        assertIndexed(downloadsDatabase, DownloadsDatabase.URL_QUERY, "https://a.com/file.zip")
+        assertIndexed(allowListDatabase, AdBlockAllowListDatabase.URL_QUERY, "a.com")
+    }
+
+    @Test
+    fun `databases use write ahead logging`() {
+        listOf(historyDatabase, bookmarkDatabase, downloadsDatabase, allowListDatabase).forEach {
+            assertThat(it.writableDatabase.isWriteAheadLoggingEnabled)
+                .describedAs(it.databaseName)
+                .isTrue()
+        }
+    }
+
+    private fun assertIndexed(
+        openHelper: SQLiteOpenHelper,
+        sql: String,
+        vararg args: String,
+        allowSort: Boolean = false
+    ) {
+        val queryPlan = openHelper.readableDatabase.queryPlan(sql, *args)
+
+        assertThat(queryPlan).describedAs(sql).isNotEmpty
+        assertThat(queryPlan.filter { it.isTableScan }).describedAs(sql).isEmpty()
+        if (!allowSort) {
+            assertThat(queryPlan.filter { it.isSort }).describedAs(sql).isEmpty()
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package acr.browser.lightning.database.adblock
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Tests for [HostsIndex].
+ */
+class HostsIndexTest {
+
+    private fun createIndex(vararg names: String): HostsIndex {
+        val outputStream = ByteArrayOutputStream()
+        HostsIndex.write(names.map(::Host), outputStream)
+        return HostsIndex.from(ByteBuffer.wrap(outputStream.toByteArray()))!!
+    }
+
+    @Test
+    fun `empty index contains no hosts`() {
+        assertThat(HostsIndex.EMPTY.size).isEqualTo(0)
+        assertThat(HostsIndex.EMPTY.contains("example.com")).isFalse()
+        assertThat(createIndex().contains("example.com")).isFalse()
+    }
+
+    @Test
+    fun `index contains every written host`() {
+        val names = (0 until 1000).map { "host$it.example.com" }
+        val index = createIndex(*names.toTypedArray())
+
+        assertThat(index.size).isEqualTo(1000)
+        names.forEach {
+            assertThat(index.contains(it)).isTrue()
+        }
+    }
+
+    @Test
+    fun `index does not contain hosts that were not written`() {
+        val index = createIndex("ads.example.com", "tracker.example.com", "example.org")
+
+        assertThat(index.contains("example.com")).isFalse()
+        assertThat(index.contains("ads.example.co")).isFalse()
+        assertThat(index.contains("ads.example.com.au")).isFalse()
+        assertThat(index.contains("")).isFalse()
+    }
+
+    @Test
+    fun `subdomains of indexed hosts are matched`() {
+        val index = createIndex("ads.example.com", "tracker.org", "b.c")
+
+        assertThat(index.containsHostOrParent("ads.example.com")).isTrue()
+        assertThat(index.containsHostOrParent("cdn.ads.example.com")).isTrue()
+        assertThat(index.containsHostOrParent("a.b.cdn.ads.example.com")).isTrue()
+        assertThat(index.containsHostOrParent("www.tracker.org")).isTrue()
+        assertThat(index.containsHostOrParent("a.b.c")).isTrue()
+    }
+
+    @Test
+    fun `parents and partial labels of indexed hosts are not matched`() {
+        val index = createIndex("ads.example.com", "tracker.org", "b.c")
+
+        assertThat(index.containsHostOrParent("example.com")).isFalse()
+        assertThat(index.containsHostOrParent("com")).isFalse()
+        assertThat(index.containsHostOrParent("badads.example.com")).isFalse()
+        assertThat(index.containsHostOrParent("ads.example.com.au")).isFalse()
+        assertThat(index.containsHostOrParent("ab.c")).isFalse()
+        assertThat(index.containsHostOrParent("")).isFalse()
+    }
+
+    @Test
+    fun `duplicate and non ASCII hosts are dropped`() {
+        val index = createIndex("example.com", "example.com", "exämple.com")
+
+        assertThat(index.size).isEqualTo(1)
+        assertThat(index.allHosts()).containsExactly(Host("example.com"))
+    }
+
+    @Test
+    fun `diff contains only added and removed hosts`() {
+        val index = createIndex("kept.com", "removed.com", "also-removed.com")
+
+        val diff = index.diff(
+            listOf(Host("kept.com"), Host("added.com"), Host("added.com"), Host("exämple.com"))
+        )
+
+        assertThat(diff.addedHosts).containsExactly(Host("added.com"))
+        assertThat(diff.removedHosts)
+            .containsExactlyInAnyOrder(Host("removed.com"), Host("also-removed.com"))
+        assertThat(index.diff(index.allHosts()).isEmpty).isTrue()
+    }
+
+    @Test
+    fun `buffer in an unknown format is rejected`() {
+        assertThat(HostsIndex.from(ByteBuffer.wrap(ByteArray(64)))).isNull()
+        assertThat(HostsIndex.from(ByteBuffer.wrap(ByteArray(2)))).isNull()
+    }
+
+    @Test
+    fun `truncated or corrupt buffer is rejected`() {
+        val outputStream = ByteArrayOutputStream()
+        HostsIndex.write(listOf(Host("example.com"), Host("ads.example.org")), outputStream)
+        val bytes = outputStream.toByteArray()
+
+        assertThat(HostsIndex.from(ByteBuffer.wrap(bytes.copyOf(bytes.size - 1)))).isNull()
+        assertThat(HostsIndex.from(ByteBuffer.wrap(bytes.copyOf(16)))).isNull()
+        assertThat(HostsIndex.from(ByteBuffer.wrap(bytes.copyOf().also { it[11] = -1 }))).isNull()
+        assertThat(HostsIndex.from(ByteBuffer.wrap(bytes.copyOf().also { it[8] = 0x7F })))
+            .isNull()
+        assertThat(HostsIndex.from(ByteBuffer.wrap(bytes))).isNotNull()
+    }
+}
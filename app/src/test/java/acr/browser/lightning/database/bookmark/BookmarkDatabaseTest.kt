@@ -0,0 +1,117 @@
+package acr.browser.lightning.database.bookmark
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.database.Bookmark
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the search index and the import of [BookmarkDatabase].
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class BookmarkDatabaseTest {
+
+    private val bookmarkDatabase = BookmarkDatabase(RuntimeEnvironment.application)
+
+    @After
+    fun tearDown() {
+        bookmarkDatabase.close()
+    }
+
+    @Test
+    fun `bookmarks with titles starting with the query are found first`() {
+        bookmarkDatabase.addBookmarkList(
+            listOf(
+                bookmark("https://news.example.com/", "Example News"),
+                bookmark("https://newspaper.org/", "Newspaper"),
+                bookmark("https://other.org/", "Other")
+            )
+        ).blockingAwait()
+
+        val urls = bookmarkDatabase.findBookmarksContaining("news").blockingGet().map { it.url }
+
+        assertThat(urls).containsExactly("https://newspaper.org/", "https://news.example.com/")
+    }
+
+    @Test
+    fun `wildcards in the query only match themselves in titles`() {
+        bookmarkDatabase.addBookmarkList(
+            listOf(
+                bookmark("https://songs.example.com/", "100 best songs"),
+                bookmark("https://cotton.example.com/", "100% cotton")
+            )
+        ).blockingAwait()
+
+        assertThat(bookmarkDatabase.findBookmarksContaining("100%").blockingGet().map { it.url })
+            .containsExactly("https://cotton.example.com/", "https://songs.example.com/")
+    }
+
+    @Test
+    fun `search index follows edited and deleted bookmarks`() {
+        val oldBookmark = bookmark("https://example.com/", "Old title")
+        val newBookmark = bookmark("https://example.com/", "New title")
+        bookmarkDatabase.addBookmarkIfNotExists(oldBookmark).blockingGet()
+        bookmarkDatabase.editBookmark(oldBookmark, newBookmark).blockingAwait()
+
+        assertThat(bookmarkDatabase.findBookmarksContaining("old").blockingGet()).isEmpty()
+        assertThat(bookmarkDatabase.findBookmarksContaining("new").blockingGet())
+            .containsExactly(newBookmark)
+
+        bookmarkDatabase.deleteBookmark(newBookmark).blockingGet()
+
+        assertThat(bookmarkDatabase.findBookmarksContaining("new").blockingGet()).isEmpty()
+    }
+
+    @Test
+    fun `editing a bookmark to the url of another bookmark fails and keeps both`() {
+        val example = bookmark("https://example.com/", "Example")
+        val other = bookmark("https://other.org/", "Other")
+        bookmarkDatabase.addBookmarkList(listOf(example, other)).blockingAwait()
+
+        bookmarkDatabase.editBookmark(example, other.copy(title = "Renamed")).test()
+            .assertError(IllegalStateException::class.java)
+
+        assertThat(bookmarkDatabase.getAllBookmarksSorted().blockingGet())
+            .containsExactlyInAnyOrder(example, other)
+    }
+
+    @Test
+    fun `import skips bookmarked urls and reports progress after each batch`() {
+        bookmarkDatabase.addBookmarkIfNotExists(bookmark("https://example.com/", "Example"))
+            .blockingGet()
+        val imported = (0 until 1200).map { bookmark("https://site$it.org", "Site $it") } +
+            bookmark("https://example.com", "Example without slash") +
+            bookmark("https://site7.org/", "Site 7 with slash") +
+            bookmark("https://new.org/", "")
+
+        val progress = bookmarkDatabase.importBookmarks(imported.asSequence())
+            .test()
+            .assertComplete()
+            .values()
+
+        assertThat(progress).containsExactly(
+            BookmarkImportProgress(processed = 500, added = 500),
+            BookmarkImportProgress(processed = 1000, added = 1000),
+            BookmarkImportProgress(processed = 1203, added = 1201)
+        )
+        assertThat(bookmarkDatabase.count()).isEqualTo(1202)
+        assertThat(bookmarkDatabase.findBookmarkForUrl("https://new.org/").blockingGet().title)
+            .isEqualTo("Untitled")
+        assertThat(bookmarkDatabase.findBookmarkForUrl("https://example.com/").blockingGet().title)
+            .isEqualTo("Example")
+    }
+
+    private fun bookmark(url: String, title: String) = Bookmark.Entry(
+        url = url,
+        title = title,
+        position = 0,
+        folder = Bookmark.Folder.Root
+    )
+}
@@ -0,0 +1,108 @@
+package acr.browser.lightning.database.history
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.database.HistoryEntry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+
+/**
+ * Tests for the search index and the pages of [HistoryDatabase].
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class HistoryDatabaseTest {
+
+    private val historyDatabase = HistoryDatabase(RuntimeEnvironment.application)
+
+    @After
+    fun tearDown() {
+        historyDatabase.close()
+    }
+
+    @Test
+    fun `history is found by word prefixes of the title and url`() {
+        historyDatabase.visitHistoryEntry("https://www.example.com/news", "Daily Headlines")
+            .blockingAwait()
+        historyDatabase.visitHistoryEntry("https://weather.org/", "Forecast").blockingAwait()
+
+        assertThat(findUrls("exa")).containsExactly("https://www.example.com/news")
+        assertThat(findUrls("example.com/ne")).containsExactly("https://www.example.com/news")
+        assertThat(findUrls("daily head")).containsExactly("https://www.example.com/news")
+        assertThat(findUrls("FORE")).containsExactly("https://weather.org/")
+        assertThat(findUrls("we")).containsExactly("https://weather.org/")
+        assertThat(findUrls("https://www.example.com/news"))
+            .containsExactly("https://www.example.com/news")
+    }
+
+    @Test
+    fun `scheme, www and the middle of words are not matched`() {
+        historyDatabase.visitHistoryEntry("https://www.example.com/", "Example").blockingAwait()
+
+        assertThat(findUrls("https")).isEmpty()
+        assertThat(findUrls("www")).isEmpty()
+        assertThat(findUrls("ample")).isEmpty()
+        assertThat(findUrls("://")).isEmpty()
+    }
+
+    @Test
+    fun `search index follows updated and deleted history`() {
+        historyDatabase.visitHistoryEntry("https://example.com/", "Old title").blockingAwait()
+        historyDatabase.visitHistoryEntry("https://example.com/", "New title").blockingAwait()
+
+        assertThat(findUrls("old")).isEmpty()
+        assertThat(findUrls("new")).containsExactly("https://example.com/")
+
+        historyDatabase.deleteHistoryEntry("https://example.com/").blockingAwait()
+
+        assertThat(findUrls("new")).isEmpty()
+    }
+
+    @Test
+    fun `pages follow each other without gaps or repeats when visits share a time`() {
+        historyDatabase.visitHistoryEntries(
+            (0 until 7).map {
+                HistoryEntry(
+                    url = "https://example.com/$it",
+                    title = "Page $it",
+                    // Pairs of pages are visited at the same time.
+                    lastTimeVisited = 1000L + it / 2
+                )
+            }
+        ).blockingAwait()
+
+        val first = historyDatabase.historyEntriesBefore(cursor = null, limit = 3).blockingGet()
+        val second = historyDatabase.historyEntriesBefore(first.next, limit = 3).blockingGet()
+        val third = historyDatabase.historyEntriesBefore(second.next, limit = 3).blockingGet()
+
+        assertThat((first.entries + second.entries + third.entries).map { it.url }).containsExactly(
+            "https://example.com/6",
+            "https://example.com/5",
+            "https://example.com/4",
+            "https://example.com/3",
+            "https://example.com/2",
+            "https://example.com/1",
+            "https://example.com/0"
+        )
+        assertThat(first.next).isNotNull()
+        assertThat(second.next).isNotNull()
+        assertThat(third.next).isNull()
+    }
+
+    @Test
+    fun `cursor is written and read as a string`() {
+        val cursor = HistoryCursor(timeVisited = 1620000000000, id = 42)
+
+        assertThat(HistoryCursor.fromString(cursor.toString())).isEqualTo(cursor)
+        assertThat(HistoryCursor.fromString("1620000000000")).isNull()
+        assertThat(HistoryCursor.fromString("a:b")).isNull()
+    }
+
+    private fun findUrls(query: String): List<String> =
+        historyDatabase.findHistoryEntriesContaining(query).blockingGet().map { it.url }
+}
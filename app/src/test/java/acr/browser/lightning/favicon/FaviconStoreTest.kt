@@ -0,0 +1,187 @@
+package acr.browser.lightning.favicon
+
+import acr.browser.lightning.SDK_VERSION
+import acr.browser.lightning.TestApplication
+import acr.browser.lightning.log.NoOpLogger
+import android.app.ActivityManager
+import android.app.Application
+import android.graphics.Bitmap
+import androidx.core.content.getSystemService
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.RandomAccessFile
+import java.util.zip.CRC32
+
+/**
+ * Tests for [FaviconStore] and [FaviconKey].
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = TestApplication::class, sdk = [SDK_VERSION])
+class FaviconStoreTest {
+
+    private val application: Application = RuntimeEnvironment.application
+    private val packFile = File(application.cacheDir, "favicons.pack")
+
+    @After
+    fun tearDown() {
+        packFile.delete()
+    }
+
+    @Test
+    fun `stored favicons are found by a new store`() {
+        val example = FaviconKey.forHost("example.com")
+        val other = FaviconKey.forHost("other.org")
+        createStore().put(example, Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888))
+        val encoded = createStore().getEncoded(example)
+
+        val store = createStore()
+
+        assertThat(example in store).isTrue()
+        assertThat(other in store).isFalse()
+        assertThat(store.getEncoded(example)).isEqualTo(encoded).isNotEmpty()
+    }
+
+    @Test
+    fun `same favicon is not appended again`() {
+        val key = FaviconKey.forHost("example.com")
+        val store = createStore()
+        store.put(key, Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888))
+        val length = packFile.length()
+
+        store.put(key, Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888))
+
+        assertThat(packFile.length()).isEqualTo(length)
+    }
+
+    @Test
+    fun `incompletely written favicon is discarded`() {
+        val key = FaviconKey.forHost("example.com")
+        createStore().put(key, Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888))
+        val length = packFile.length()
+        // A record header promising more bytes than were written.
+        packFile.appendBytes(ByteArray(16) + byteArrayOf(0, 0, 1, 0) + ByteArray(4 + 10))
+
+        val store = createStore()
+
+        assertThat(key in store).isTrue()
+        assertThat(packFile.length()).isEqualTo(length)
+    }
+
+    @Test
+    fun `favicon that does not match its checksum is discarded with the favicons after it`() {
+        val first = FaviconKey.forHost("first.com")
+        val second = FaviconKey.forHost("second.com")
+        val third = FaviconKey.forHost("third.com")
+        writePack(first to ByteArray(100) { 1 }, second to ByteArray(100) { 2 })
+        val length = packFile.length()
+        writePack(third to ByteArray(100) { 3 }, append = true)
+        corruptIcon(recordEnd = length)
+
+        val store = createStore()
+
+        assertThat(first in store).isTrue()
+        assertThat(second in store).isFalse()
+        assertThat(third in store).isFalse()
+        assertThat(packFile.length()).isEqualTo(FILE_HEADER_SIZE + RECORD_HEADER_SIZE + 100L)
+    }
+
+    @Test
+    fun `favicon corrupted after it was indexed is not returned`() {
+        val key = FaviconKey.forHost("example.com")
+        writePack(key to ByteArray(100) { 1 })
+        val store = createStore()
+        assertThat(key in store).isTrue()
+
+        corruptIcon(recordEnd = packFile.length())
+
+        assertThat(store.getEncoded(key)).isNull()
+        assertThat(key in store).isFalse()
+    }
+
+    @Test
+    fun `compaction keeps the latest favicon of every key`() {
+        val replaced = FaviconKey.forHost("replaced.com")
+        val kept = (0 until 10).map { index ->
+            FaviconKey.forHost("kept$index.com") to ByteArray(100) { index.toByte() }
+        }
+        // Enough replaced favicons that most of the pack is unused.
+        val replacements = (0 until 300).map { index ->
+            replaced to ByteArray(1024) { index.toByte() }
+        }
+        writePack(*(kept + replacements).toTypedArray())
+        val length = packFile.length()
+
+        val store = createStore()
+
+        assertThat(packFile.length()).isLessThan(length)
+        kept.forEach { (key, icon) -> assertThat(store.getEncoded(key)).isEqualTo(icon) }
+        assertThat(store.getEncoded(replaced)).isEqualTo(replacements.last().second)
+        val reopened = createStore()
+        kept.forEach { (key, icon) -> assertThat(reopened.getEncoded(key)).isEqualTo(icon) }
+        assertThat(reopened.getEncoded(replaced)).isEqualTo(replacements.last().second)
+    }
+
+    @Test
+    fun `keys ignore the case of the host and are written as hexadecimal`() {
+        val key = FaviconKey.forHost("Example.COM")
+
+        assertThat(key).isEqualTo(FaviconKey.forHost("example.com"))
+        assertThat(key).isNotEqualTo(FaviconKey.forHost("example.org"))
+        assertThat(key.toString()).hasSize(32)
+        assertThat(FaviconKey.fromString(key.toString())).isEqualTo(key)
+        assertThat(FaviconKey.fromString("-123")).isNull()
+    }
+
+    private fun createStore() = FaviconStore(
+        application,
+        application.getSystemService<ActivityManager>()!!,
+        NoOpLogger()
+    )
+
+    /**
+     * Write the [records] to the pack file in the format of the [FaviconStore].
+     */
+    private fun writePack(vararg records: Pair<FaviconKey, ByteArray>, append: Boolean = false) {
+        DataOutputStream(FileOutputStream(packFile, append)).use { output ->
+            if (!append) {
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+            }
+            records.forEach { (key, icon) ->
+                output.writeLong(key.high)
+                output.writeLong(key.low)
+                output.writeInt(icon.size)
+                output.writeInt(CRC32().run {
+                    update(icon)
+                    value.toInt()
+                })
+                output.write(icon)
+            }
+        }
+    }
+
+    /**
+     * Flip the last byte of the icon of the record that ends at [recordEnd].
+     */
+    private fun corruptIcon(recordEnd: Long) = RandomAccessFile(packFile, "rw").use {
+        it.seek(recordEnd - 1)
+        val last = it.read()
+        it.seek(recordEnd - 1)
+        it.write(last xor 0xFF)
+    }
+
+    companion object {
+        private const val MAGIC = 0x4C464156
+        private const val VERSION = 1
+        private const val FILE_HEADER_SIZE = 8
+        private const val RECORD_HEADER_SIZE = 24
+    }
+}
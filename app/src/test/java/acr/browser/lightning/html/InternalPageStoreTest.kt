@@ -0,0 +1,34 @@
+package acr.browser.lightning.html
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+/**
+ * Tests for [InternalPageStore].
+ */
+class InternalPageStoreTest {
+
+    private val internalPageStore = InternalPageStore()
+
+    @Test
+    fun `entity tag changes only when the content changes`() {
+        assertThat(internalPageStore.putPage("/bookmarks.html", "<p>one</p>")).isTrue()
+        val eTag = internalPageStore["/bookmarks.html"]?.eTag
+
+        assertThat(internalPageStore.putPage("/bookmarks.html", "<p>one</p>")).isFalse()
+        assertThat(internalPageStore["/bookmarks.html"]?.eTag).isEqualTo(eTag)
+
+        assertThat(internalPageStore.putPage("/bookmarks.html", "<p>two</p>")).isTrue()
+        assertThat(internalPageStore["/bookmarks.html"]?.eTag).isNotEqualTo(eTag)
+    }
+
+    @Test
+    fun `removed resources are no longer stored`() {
+        internalPageStore.put("/icons/folder.png", InternalPageStore.MIME_TYPE_PNG, byteArrayOf(1))
+
+        internalPageStore.remove("/icons/folder.png")
+
+        assertThat("/icons/folder.png" in internalPageStore).isFalse()
+        assertThat(internalPageStore["/icons/folder.png"]).isNull()
+    }
+}
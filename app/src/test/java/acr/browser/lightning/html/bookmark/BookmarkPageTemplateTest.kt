@@ -0,0 +1,75 @@
+package acr.browser.lightning.html.bookmark
+
+import org.assertj.core.api.Assertions.assertThat
+import org.jsoup.Jsoup
+import org.junit.Test
+import java.io.File
+
+/**
+ * Unit tests for [BookmarkPageTemplate].
+ */
+class BookmarkPageTemplateTest {
+
+    private val template = BookmarkPageTemplate(object : BookmarkPageReader {
+        override fun provideHtml(): String = File("src/main/html/bookmarks.html").readText()
+    })
+
+    private val colors = BookmarkPageColors(
+        background = "111111ff",
+        card = "222222ff",
+        text = "333333ff"
+    )
+
+    @Test
+    fun `page is rendered with a box for each bookmark`() {
+        val html = template.render(
+            title = "Bookmarks",
+            colors = colors,
+            bookmarks = listOf(
+                BookmarkViewModel("Example", "https://example.com/", "/cache/example.png"),
+                BookmarkViewModel("Folder", "file:///files/Folder-bookmarks.html", "/folder.png")
+            )
+        )
+
+        val document = Jsoup.parse(html)
+        val boxes = document.select("div.box")
+        assertThat(document.title()).isEqualTo("Bookmarks")
+        assertThat(boxes.map { it.selectFirst("a").attr("href") })
+            .containsExactly("https://example.com/", "file:///files/Folder-bookmarks.html")
+        assertThat(boxes.map { it.selectFirst("img").attr("src") })
+            .containsExactly("/cache/example.png", "/folder.png")
+        assertThat(boxes.map { it.selectFirst("p").text() }).containsExactly("Example", "Folder")
+        assertThat(html).contains(
+            "--body-bg: #111111ff;",
+            "--box-bg: #222222ff;",
+            "--box-txt: #333333ff;"
+        )
+        assertThat(html).doesNotContain("{COLOR}", "\${")
+    }
+
+    @Test
+    fun `titles and urls are escaped`() {
+        val html = template.render(
+            title = "<Bookmarks>",
+            colors = colors,
+            bookmarks = listOf(
+                BookmarkViewModel("Tom & <b>Jerry</b>", "https://example.com/?a='1'&b=2", "")
+            )
+        )
+
+        val document = Jsoup.parse(html)
+        assertThat(document.title()).isEqualTo("<Bookmarks>")
+        assertThat(document.select("div.box a").attr("href"))
+            .isEqualTo("https://example.com/?a='1'&b=2")
+        assertThat(document.select("div.box p").text()).isEqualTo("Tom & <b>Jerry</b>")
+        assertThat(document.select("div.box b")).isEmpty()
+    }
+
+    @Test
+    fun `page without bookmarks has no boxes`() {
+        val html = template.render(title = "Bookmarks", colors = colors, bookmarks = emptyList())
+
+        assertThat(Jsoup.parse(html).select("div.box")).isEmpty()
+        assertThat(Jsoup.parse(html).getElementById("content")).isNotNull
+    }
+}
@@ -0,0 +1,189 @@
+package acr.browser.lightning.search.index
+
+import acr.browser.lightning.database.Bookmark
+import acr.browser.lightning.database.HistoryEntry
+import acr.browser.lightning.database.bookmark.BookmarkRepository
+import acr.browser.lightning.database.history.HistoryRepository
+import acr.browser.lightning.log.NoOpLogger
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import io.reactivex.Scheduler
+import io.reactivex.Single
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.schedulers.TestScheduler
+import io.reactivex.subjects.PublishSubject
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for [FrecencyIndex].
+ */
+class FrecencyIndexTest {
+
+    private val now = System.currentTimeMillis()
+    private val bookmarks = mutableListOf<Bookmark.Entry>()
+    private val bookmarkChanges = PublishSubject.create<Unit>()
+
+    @Test
+    fun `pages are found by url, parent domain and title words`() {
+        val frecencyIndex = createIndex(
+            history = listOf(
+                HistoryEntry("https://www.news.example.com/world", "Breaking World News", now)
+            )
+        )
+
+        listOf("news.exa", "https://www.news", "example.com/wo", "EXAMPLE", "break", "world ne")
+            .forEach {
+                assertThat(findUrls(frecencyIndex, it))
+                    .describedAs(it)
+                    .containsExactly("https://www.news.example.com/world")
+            }
+        listOf("https", "www", "com", "ample", "  ").forEach {
+            assertThat(findUrls(frecencyIndex, it)).describedAs(it).isEmpty()
+        }
+    }
+
+    @Test
+    fun `pages are ranked by visit count decayed by the time since the last visit`() {
+        val frecencyIndex = createIndex(
+            history = listOf(
+                HistoryEntry("https://example.com/recent", "", now, visitCount = 1),
+                HistoryEntry("https://example.com/frequent", "", now - days(60), visitCount = 10),
+                HistoryEntry("https://example.com/stale", "", now - days(300), visitCount = 10),
+                HistoryEntry("https://example.com/bookmark", "", now - days(45), visitCount = 1)
+            ),
+            bookmarkedUrls = listOf("https://example.com/bookmark")
+        )
+
+        assertThat(findUrls(frecencyIndex, "example")).containsExactly(
+            "https://example.com/frequent",
+            "https://example.com/recent",
+            "https://example.com/bookmark",
+            "https://example.com/stale"
+        )
+    }
+
+    @Test
+    fun `visits add new pages and raise the rank of visited pages`() {
+        val frecencyIndex = createIndex(
+            history = listOf(
+                HistoryEntry("https://example.com/a", "", now, visitCount = 2),
+                HistoryEntry("https://example.com/b", "", now, visitCount = 1)
+            )
+        )
+
+        // Enough new pages to merge the pending keys into the sorted keys.
+        (0 until 1000).forEach { frecencyIndex.recordVisit("https://site$it.org/", "Site $it") }
+        repeat(2) { frecencyIndex.recordVisit("https://example.com/b", "Renamed") }
+
+        assertThat(findUrls(frecencyIndex, "example.com/"))
+            .containsExactly("https://example.com/b", "https://example.com/a")
+        assertThat(findUrls(frecencyIndex, "renamed")).containsExactly("https://example.com/b")
+        assertThat(findUrls(frecencyIndex, "site999")).containsExactly("https://site999.org/")
+        assertThat(findUrls(frecencyIndex, "site 999")).containsExactly("https://site999.org/")
+    }
+
+    @Test
+    fun `removed pages are not found`() {
+        val frecencyIndex = createIndex(
+            history = listOf(
+                HistoryEntry("https://example.com/a", "", now),
+                HistoryEntry("https://example.com/b", "", now)
+            )
+        )
+
+        frecencyIndex.remove("https://example.com/a")
+
+        assertThat(findUrls(frecencyIndex, "example")).containsExactly("https://example.com/b")
+
+        frecencyIndex.clear()
+
+        assertThat(findUrls(frecencyIndex, "example")).isEmpty()
+    }
+
+    @Test
+    fun `short queries rank every matching page`() {
+        val frecencyIndex = createIndex(
+            history = (0 until 2000).map {
+                HistoryEntry("https://example.com/$it", "", now - days(60), visitCount = 1)
+            } + HistoryEntry("https://example.com/~best", "", now, visitCount = 10)
+        )
+
+        assertThat(findUrls(frecencyIndex, "e").first()).isEqualTo("https://example.com/~best")
+    }
+
+    @Test
+    fun `bookmarks are indexed and ranked as they change`() {
+        val frecencyIndex = createIndex(
+            history = listOf(
+                HistoryEntry("https://example.com/a", "", now - days(45), visitCount = 1),
+                HistoryEntry("https://example.com/b", "", now - days(30), visitCount = 1)
+            ),
+            bookmarkedUrls = listOf("https://example.com/unvisited")
+        )
+
+        assertThat(findUrls(frecencyIndex, "example")).containsExactly(
+            "https://example.com/b",
+            "https://example.com/a",
+            "https://example.com/unvisited"
+        )
+
+        bookmarks.removeAt(0)
+        bookmarks += bookmark("https://example.com/a", "Bookmarked Page")
+        bookmarkChanges.onNext(Unit)
+
+        assertThat(findUrls(frecencyIndex, "example"))
+            .containsExactly("https://example.com/a", "https://example.com/b")
+
+        frecencyIndex.clear()
+
+        assertThat(findUrls(frecencyIndex, "bookmarked")).containsExactly("https://example.com/a")
+        assertThat(frecencyIndex.findPages("example", limit = 5).single().visitCount).isZero()
+    }
+
+    @Test
+    fun `visits recorded while the index is built are applied once it is built`() {
+        val testScheduler = TestScheduler()
+        val frecencyIndex = createIndex(
+            history = listOf(HistoryEntry("https://example.com/a", "", now)),
+            scheduler = testScheduler
+        )
+
+        frecencyIndex.recordVisit("https://example.com/b", "")
+
+        assertThat(frecencyIndex.isReady).isFalse()
+        assertThat(findUrls(frecencyIndex, "example")).isEmpty()
+
+        testScheduler.triggerActions()
+
+        assertThat(frecencyIndex.isReady).isTrue()
+        assertThat(findUrls(frecencyIndex, "example"))
+            .containsExactlyInAnyOrder("https://example.com/a", "https://example.com/b")
+    }
+
+    private fun createIndex(
+        history: List<HistoryEntry>,
+        bookmarkedUrls: List<String> = emptyList(),
+        scheduler: Scheduler = Schedulers.trampoline()
+    ): FrecencyIndex {
+        val historyRepository = mock<HistoryRepository> {
+            on { lastVisitedHistoryEntries(any()) } doReturn Single.just(history)
+        }
+        bookmarkedUrls.mapTo(bookmarks) { bookmark(it, "") }
+        val bookmarkRepository = mock<BookmarkRepository> {
+            on { getAllBookmarksSorted() } doReturn Single.fromCallable { bookmarks.toList() }
+            on { bookmarkChanges() } doReturn bookmarkChanges
+        }
+        return FrecencyIndex(historyRepository, bookmarkRepository, scheduler, NoOpLogger())
+    }
+
+    private fun bookmark(url: String, title: String) =
+        Bookmark.Entry(url = url, title = title, position = 0, folder = Bookmark.Folder.Root)
+
+    private fun findUrls(frecencyIndex: FrecencyIndex, query: String): List<String> =
+        frecencyIndex.findPages(query, limit = 5).map(HistoryEntry::url)
+
+    private fun days(count: Long) = TimeUnit.DAYS.toMillis(count)
+}